@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -142,6 +142,7 @@ public class ASTCacheTests extends BaseTestCase {
 		checkSingleThreadAccess();
 		checkAccessWithSequentialReconciler();
 		checkAccessWithConcurrentReconciler();
+		checkRetainedAST();
 	}
 	
 	private void checkActiveElement() throws Exception {
@@ -311,6 +312,42 @@ public class ASTCacheTests extends BaseTestCase {
 		}
 	}
 
+	private void checkRetainedAST() throws Exception {
+		final ASTCache cache= new ASTCache();
+		final IASTTranslationUnit[] asts= new IASTTranslationUnit[2];
+		cache.setActiveElement(fTU1);
+		assertFalse(cache.hasCachedAST(fTU1));
+		cache.runOnAST(fTU1, true, null, new ASTRunnable() {
+			@Override
+			public IStatus runOnAST(ILanguage lang, IASTTranslationUnit ast) throws CoreException {
+				assertNotNull(ast);
+				asts[0]= ast;
+				return Status.OK_STATUS;
+			}
+		});
+		assertTrue(cache.hasCachedAST(fTU1));
+
+		// The AST of the previously active element is restored.
+		cache.setActiveElement(fTU2);
+		assertFalse(cache.hasCachedAST(fTU1));
+		assertFalse(cache.hasCachedAST(fTU2));
+		cache.setActiveElement(fTU1);
+		assertTrue(cache.hasCachedAST(fTU1));
+		cache.runOnAST(fTU1, false, null, new ASTRunnable() {
+			@Override
+			public IStatus runOnAST(ILanguage lang, IASTTranslationUnit ast) throws CoreException {
+				assertSame(asts[0], ast);
+				return Status.OK_STATUS;
+			}
+		});
+
+		// Retained ASTs can be discarded.
+		cache.setActiveElement(fTU2);
+		cache.disposeRetainedASTs();
+		cache.setActiveElement(fTU1);
+		assertFalse(cache.hasCachedAST(fTU1));
+	}
+
 	private void waitForAST(ASTCache cache, ITranslationUnit tUnit, ASTRunnable runnable) {
 		if (DEBUG) System.out.println("waiting for "+tUnit.getElementName());
 		long start= System.currentTimeMillis();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2002, 2006 IBM Corporation and others.
+ * Copyright (c) 2002, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.cdt.core.model.tests;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 
@@ -21,7 +22,10 @@ import junit.framework.TestSuite;
 import org.eclipse.cdt.core.dom.IPDOMManager;
 import org.eclipse.cdt.core.model.CoreModel;
 import org.eclipse.cdt.core.model.IBuffer;
+import org.eclipse.cdt.core.model.ICElement;
 import org.eclipse.cdt.core.model.ICProject;
+import org.eclipse.cdt.core.model.ISourceRange;
+import org.eclipse.cdt.core.model.ISourceReference;
 import org.eclipse.cdt.core.model.ITranslationUnit;
 import org.eclipse.cdt.core.model.IWorkingCopy;
 import org.eclipse.cdt.core.testplugin.CProjectHelper;
@@ -48,6 +52,8 @@ public class WorkingCopyTests extends TestCase {
 	public static Test suite() {
 		TestSuite suite= new TestSuite(WorkingCopyTests.class.getName());
 		suite.addTest(new WorkingCopyTests("testWorkingCopy"));
+		suite.addTest(new WorkingCopyTests("testEditInFunctionBody"));
+		suite.addTest(new WorkingCopyTests("testEditAddingMacroExpansion"));
 		//suite.addTest(new WorkingCopyTests("testHashing"));
 		return suite;
 	}		
@@ -112,4 +118,68 @@ public class WorkingCopyTests extends TestCase {
 		
 		Thread.sleep(1000);	
 	}
+
+	public void testEditInFunctionBody() throws Exception {
+		final String code= "int f() {\n\treturn 1;\n}\nint g() {\n\treturn 2;\n}\n";
+		IFile file= fCProject.getProject().getFile("EditInFunctionBody.cpp");
+		file.create(new ByteArrayInputStream(code.getBytes()), false, monitor);
+		ITranslationUnit tu= (ITranslationUnit) CoreModel.getDefault().create(file);
+		IWorkingCopy wc= tu.getWorkingCopy();
+		try {
+			wc.reconcile();
+			IBuffer buffer= wc.getBuffer();
+
+			// Edit confined to the body of f, the model is updated without a parse.
+			buffer.replace(code.indexOf('1'), 1, "1 +\n\t\t2");
+			wc.reconcile();
+			String newCode= buffer.getContents();
+			ICElement[] children= wc.getChildren();
+			assertEquals(2, children.length);
+			ISourceRange f= ((ISourceReference) children[0]).getSourceRange();
+			assertEquals(0, f.getStartPos());
+			assertEquals(newCode.indexOf("int g") - 1, f.getLength());
+			assertEquals(1, f.getStartLine());
+			assertEquals(4, f.getEndLine());
+			ISourceRange g= ((ISourceReference) children[1]).getSourceRange();
+			assertEquals(newCode.indexOf("int g"), g.getStartPos());
+			assertEquals(newCode.indexOf("g()"), g.getIdStartPos());
+			assertEquals(5, g.getStartLine());
+			assertEquals(7, g.getEndLine());
+
+			// Edit changing the structure, the translation unit is parsed again.
+			buffer.replace(newCode.indexOf("2;"), 2, "2; } int h() { return 3;");
+			wc.reconcile();
+			newCode= buffer.getContents();
+			children= wc.getChildren();
+			assertEquals(3, children.length);
+			assertEquals(newCode.indexOf("int h"), ((ISourceReference) children[1]).getSourceRange().getStartPos());
+			assertEquals(newCode.indexOf("int g"), ((ISourceReference) children[2]).getSourceRange().getStartPos());
+		} finally {
+			wc.destroy();
+		}
+	}
+
+	public void testEditAddingMacroExpansion() throws Exception {
+		final String code= "#define END(x) }\nint f() {\n\tEND;\n}\n";
+		IFile file= fCProject.getProject().getFile("EditAddingMacroExpansion.cpp");
+		file.create(new ByteArrayInputStream(code.getBytes()), false, monitor);
+		ITranslationUnit tu= (ITranslationUnit) CoreModel.getDefault().create(file);
+		IWorkingCopy wc= tu.getWorkingCopy();
+		try {
+			wc.reconcile();
+			IBuffer buffer= wc.getBuffer();
+
+			// Parentheses turn the name into a macro expansion ending the body, the translation
+			// unit is parsed again.
+			buffer.replace(code.indexOf("END;") + 3, 0, "(1)");
+			wc.reconcile();
+			String newCode= buffer.getContents();
+			ICElement[] children= wc.getChildren();
+			ISourceRange f= ((ISourceReference) children[1]).getSourceRange();
+			assertEquals(newCode.indexOf("int f"), f.getStartPos());
+			assertEquals(newCode.indexOf(";\n}"), f.getStartPos() + f.getLength());
+		} finally {
+			wc.destroy();
+		}
+	}
 }
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.core.parser.tests.ast2;
+
+import junit.framework.TestSuite;
+
+import org.eclipse.cdt.core.parser.ParserLanguage;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.TypeInterner;
+
+/**
+ * Compares the time needed for resolving the names of code with many overloaded functions, with
+ * and without sharing the pointer and qualifier types composed during overload resolution. The
+ * test is too expensive to run as part of normal testing, but should be run after changes to the
+ * sharing of types.
+ * <p>
+ * n.b. this is intentionally not added to any test suite.
+ */
+public class TypeInternerBenchmark extends AST2TestBase {
+	private static final int CLASS_COUNT = 100;
+	private static final int RUNS = 5;
+
+	public static TestSuite suite() {
+		return suite(TypeInternerBenchmark.class);
+	}
+
+	public void testOverloadResolution() throws Exception {
+		final String code = createOverloadHeavyCode();
+		// Warm up.
+		run(code, false);
+		run(code, true);
+
+		long withoutSharing = 0;
+		long withSharing = 0;
+		for (int i = 0; i < RUNS; i++) {
+			withoutSharing += run(code, false);
+			withSharing += run(code, true);
+		}
+		System.out.println("Overload resolution without shared types: " + withoutSharing / RUNS +
+				" ms, with shared types: " + withSharing / RUNS + " ms");
+	}
+
+	private long run(String code, boolean shareTypes) throws Exception {
+		TypeInterner.setEnabled(shareTypes);
+		try {
+			long start = System.currentTimeMillis();
+			parseAndCheckBindings(code, ParserLanguage.CPP);
+			return System.currentTimeMillis() - start;
+		} finally {
+			TypeInterner.setEnabled(true);
+		}
+	}
+
+	/**
+	 * Creates a class hierarchy with overloaded functions taking pointers and references with
+	 * different qualifiers, and calls of the functions with all classes of the hierarchy.
+	 */
+	private static String createOverloadHeavyCode() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("struct C0 {};\n");
+		for (int i = 1; i < CLASS_COUNT; i++) {
+			buf.append("struct C").append(i).append(" : C").append(i - 1).append(" {};\n");
+		}
+		for (int i = 0; i < CLASS_COUNT; i += 10) {
+			buf.append("void f(C").append(i).append("*);\n");
+			buf.append("void f(const C").append(i).append("*);\n");
+			buf.append("void f(const volatile C").append(i).append("*);\n");
+			buf.append("void f(const C").append(i).append("&, int);\n");
+			buf.append("void f(C").append(i).append("* const*, int);\n");
+		}
+		buf.append("void f(const void*);\n");
+		buf.append("template<typename T> void g(const T*, T*);\n");
+		buf.append("void test() {\n");
+		for (int i = 0; i < CLASS_COUNT; i++) {
+			buf.append("  C").append(i).append(" c").append(i).append(";\n");
+			buf.append("  const C").append(i).append("* p").append(i).append(" = &c").append(i).append(";\n");
+			buf.append("  f(&c").append(i).append(");\n");
+			buf.append("  f(p").append(i).append(");\n");
+			buf.append("  f(c").append(i).append(", 1);\n");
+			buf.append("  g(p").append(i).append(", &c").append(i).append(");\n");
+		}
+		buf.append("}\n");
+		return buf.toString();
+	}
+}
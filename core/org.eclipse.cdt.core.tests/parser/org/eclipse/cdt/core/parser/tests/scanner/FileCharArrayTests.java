@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2010, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,8 +20,11 @@ import java.io.OutputStream;
 import junit.framework.TestSuite;
 
 import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.parser.InternalParserUtil;
 import org.eclipse.cdt.internal.core.parser.scanner.AbstractCharArray;
 import org.eclipse.cdt.internal.core.parser.scanner.FileCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.FileContentCache;
+import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
 import org.eclipse.cdt.internal.core.parser.scanner.LazyCharArray;
 
 public class FileCharArrayTests extends BaseTestCase {
@@ -84,6 +87,39 @@ public class FileCharArrayTests extends BaseTestCase {
 
 	}
 
+	public void testSharedContentOfExternalFile() throws IOException {
+		createFile(true, 1000);
+		FileContentCache cache= FileContentCache.getSharedInstance();
+		long maxSize= cache.getMaxSize();
+		try {
+			cache.setMaxSize(10000);
+			InternalFileContent content1= InternalParserUtil.createExternalFileContent(fFile.getPath(), "utf-8");
+			InternalFileContent content2= InternalParserUtil.createExternalFileContent(fFile.getPath(), "utf-8");
+			assertNotSame(content1, content2);
+			assertSame(content1.getSource(), content2.getSource());
+			checkContent(content2.getSource(), 1, 1000);
+
+			// A change of the size invalidates the cached content.
+			writeFile(true, 1001);
+			InternalFileContent content3= InternalParserUtil.createExternalFileContent(fFile.getPath(), "utf-8");
+			assertNotSame(content1.getSource(), content3.getSource());
+			assertEquals(1001, content3.getSource().getLength());
+
+			// So does a different encoding.
+			InternalFileContent content4= InternalParserUtil.createExternalFileContent(fFile.getPath(), "iso-8859-1");
+			assertNotSame(content3.getSource(), content4.getSource());
+
+			// Files exceeding the size of the cache are not cached.
+			cache.setMaxSize(100);
+			assertEquals(0, cache.getSize());
+			InternalFileContent content5= InternalParserUtil.createExternalFileContent(fFile.getPath(), "utf-8");
+			InternalFileContent content6= InternalParserUtil.createExternalFileContent(fFile.getPath(), "utf-8");
+			assertNotSame(content5.getSource(), content6.getSource());
+		} finally {
+			cache.setMaxSize(maxSize);
+		}
+	}
+
 	public void checkContent(AbstractCharArray charArray, int from, int to) {
 		for (int i = from; i < to; i++) {
 			assertEquals(i % 127, charArray.get(i));
@@ -99,6 +135,10 @@ public class FileCharArrayTests extends BaseTestCase {
 
 	private void createFile(boolean aligned, int charSize) throws IOException {
 		fFile= File.createTempFile("data", ".txt");
+		writeFile(aligned, charSize);
+	}
+
+	private void writeFile(boolean aligned, int charSize) throws IOException {
 		OutputStream out= new BufferedOutputStream(new FileOutputStream(fFile));
 		try {
 			if (!aligned) {
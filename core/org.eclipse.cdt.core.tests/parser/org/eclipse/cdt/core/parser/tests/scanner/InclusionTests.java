@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2009 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -26,6 +26,7 @@ import org.eclipse.cdt.core.parser.ParserMode;
 import org.eclipse.cdt.core.parser.ScannerInfo;
 import org.eclipse.cdt.core.testplugin.CProjectHelper;
 import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
+import org.eclipse.cdt.internal.core.parser.scanner.HeaderTokenCache;
 import org.eclipse.cdt.internal.core.pdom.indexer.PDOMNullIndexer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -305,4 +306,69 @@ public class InclusionTests extends PreprocessorTestsBase {
     	validateInteger("2");
     	validateEOF();
     }
+
+    // /* The tokens are replayed in different macro contexts */
+    // #if A == 1
+    // int one;
+    // #else
+    // int two;
+    // #endif
+    // #include "nested.h"
+    // int a<:A:>;
+
+    // #define A 1
+    // #include "cached.h"
+    // #undef A
+    // #define A 2
+    // #include "cached.h"
+    public void testHeaderTokenCache() throws Exception {
+    	StringBuilder[] contents= getTestContent(2);
+    	importFile("cached.h", contents[0].toString());
+    	importFile("nested.h", "int n;");
+    	IFile base= importFile("base.cpp", contents[1].toString());
+
+    	HeaderTokenCache cache= HeaderTokenCache.getSharedInstance();
+    	long maxSize= cache.getMaxSize();
+    	cache.clear();
+    	cache.setMaxSize(1000);
+    	try {
+    		FileContent reader= FileContent.create(base);
+    		initializeScanner(reader, ParserLanguage.CPP, ParserMode.COMPLETE_PARSE, new ScannerInfo());
+    		validateToken(IToken.t_int);
+    		validateIdentifier("one");
+    		validateToken(IToken.tSEMI);
+    		validateToken(IToken.t_int);
+    		validateIdentifier("n");
+    		validateToken(IToken.tSEMI);
+    		validateToken(IToken.t_int);
+    		validateIdentifier("a");
+    		validateToken(IToken.tLBRACKET);
+    		validateInteger("1");
+    		validateToken(IToken.tRBRACKET);
+    		validateToken(IToken.tSEMI);
+
+    		validateToken(IToken.t_int);
+    		validateIdentifier("two");
+    		validateToken(IToken.tSEMI);
+    		validateToken(IToken.t_int);
+    		validateIdentifier("n");
+    		validateToken(IToken.tSEMI);
+    		validateToken(IToken.t_int);
+    		validateIdentifier("a");
+    		validateToken(IToken.tLBRACKET);
+    		validateInteger("2");
+    		validateToken(IToken.tRBRACKET);
+    		validateToken(IToken.tSEMI);
+    		validateEOF();
+    		validateProblemCount(0);
+    		assertEquals(2, fLocationResolver.getComments().length);
+
+    		// Both headers are lexed once, the second inclusions replay the tokens.
+    		assertEquals(2, cache.getMisses());
+    		assertEquals(2, cache.getHits());
+    	} finally {
+    		cache.clear();
+    		cache.setMaxSize(maxSize);
+    	}
+    }
 }
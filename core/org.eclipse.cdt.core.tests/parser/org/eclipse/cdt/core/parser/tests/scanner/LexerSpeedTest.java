@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.core.parser.tests.scanner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.cdt.core.parser.IToken;
+import org.eclipse.cdt.internal.core.parser.scanner.AbstractCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.CharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.FileCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.ILexerLog;
+import org.eclipse.cdt.internal.core.parser.scanner.Lexer;
+import org.eclipse.cdt.internal.core.parser.scanner.Lexer.LexerOptions;
+
+/**
+ * Measures the throughput of the lexer with and without the fast path, over the headers found
+ * below a directory. The directory is given as the first argument or by the system property
+ * <code>speedTest.dir</code>, it defaults to the headers of the GNU C++ library. Only files that
+ * are small enough to be read into a single array are lexed.
+ * <p>
+ * n.b. this is intentionally not added to any test suite.
+ */
+public class LexerSpeedTest {
+	private static final String DEFAULT_DIR = "/usr/include/c++"; //$NON-NLS-1$
+
+	public static void main(String[] args) {
+		try {
+			String dir= args.length > 0 ? args[0] : System.getProperty("speedTest.dir", DEFAULT_DIR); //$NON-NLS-1$
+			new LexerSpeedTest().runTest(new File(dir), 20);
+		} catch (Exception e) {
+			System.out.println(e);
+		}
+	}
+
+	public void test() throws Exception {
+		runTest(new File(System.getProperty("speedTest.dir", DEFAULT_DIR)), 5); //$NON-NLS-1$
+	}
+
+	private void runTest(File dir, int n) throws Exception {
+		List<char[]> files= new ArrayList<char[]>();
+		long chars= collectFiles(dir, files);
+		System.out.println(files.size() + " files, " + chars + " characters");
+
+		for (int i= 0; i < n; ++i) {
+			for (boolean fastPath : new boolean[] { false, true }) {
+				long time= testLex(files, fastPath);
+				System.out.println((fastPath ? "Fast path: " : "General path: ") + time + " millisecs"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		Lexer.setUseFastPath(true);
+	}
+
+	private long testLex(List<char[]> files, boolean fastPath) throws Exception {
+		Lexer.setUseFastPath(fastPath);
+		LexerOptions options= new LexerOptions();
+		long startTime= System.currentTimeMillis();
+		for (char[] file : files) {
+			Lexer lexer= new Lexer(file, options, ILexerLog.NULL, null);
+			while (lexer.nextToken().getType() != IToken.tEND_OF_INPUT) {
+			}
+		}
+		return System.currentTimeMillis() - startTime;
+	}
+
+	private long collectFiles(File file, List<char[]> files) throws IOException {
+		if (file.isDirectory()) {
+			long chars= 0;
+			File[] children= file.listFiles();
+			if (children != null) {
+				for (File child : children) {
+					chars+= collectFiles(child, files);
+				}
+			}
+			return chars;
+		}
+		InputStream in= new FileInputStream(file);
+		try {
+			AbstractCharArray content= FileCharArray.create(file.getPath(), "UTF-8", in); //$NON-NLS-1$
+			if (content instanceof CharArray) {
+				char[] chars= ((CharArray) content).getArray();
+				files.add(chars);
+				return chars.length;
+			}
+			return 0;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2013 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,9 @@
  *******************************************************************************/
 package org.eclipse.cdt.core.parser.tests.scanner;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import junit.framework.TestSuite;
 
 import org.eclipse.cdt.core.parser.IGCCToken;
@@ -18,6 +21,7 @@ import org.eclipse.cdt.core.parser.IProblem;
 import org.eclipse.cdt.core.parser.IToken;
 import org.eclipse.cdt.core.parser.tests.ast2.TestLexerLog;
 import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.parser.scanner.CharArray;
 import org.eclipse.cdt.internal.core.parser.scanner.Lexer;
 import org.eclipse.cdt.internal.core.parser.scanner.Lexer.LexerOptions;
 import org.eclipse.cdt.internal.core.parser.scanner.Token;
@@ -836,4 +840,49 @@ public class LexerTests extends BaseTestCase {
 		token(IToken.tPOUND);
 		eof();
 	}
+
+	public void testFastPath() throws Exception {
+		String[] inputs= {
+				"int a_1 = b$c + d@e; // comment\n",
+				"ab\\\ncd ef\\ \r\ngh // line \\\n comment\nij",
+				"x??=y??/\nz ??( ??) a?b:c ?? // ??/\n more\n",
+				"\\u00e4b \u00e4\u00f6 x\\U000000e4y \"a\\n\" '\\\\' /* * */ \t\f\u000b id",
+				"\r\n#define  X(a)\t\ta ## b\r\r  end",
+				"ident",
+		};
+		LexerOptions[] options= { DEFAULT_OPTIONS, NO_DOLLAR, SLASH_PERCENT, CPP_OPTIONS };
+		try {
+			for (String input : inputs) {
+				for (LexerOptions option : options) {
+					Lexer.setUseFastPath(false);
+					List<String> expected= lexAll(input, option, false);
+					Lexer.setUseFastPath(true);
+					List<String> actual= lexAll(input, option, true);
+					assertEquals(input, expected, actual);
+				}
+			}
+		} finally {
+			Lexer.setUseFastPath(true);
+		}
+	}
+
+	private List<String> lexAll(String input, LexerOptions options, boolean fastPath) throws Exception {
+		fLog.clear();
+		fLog.setInput(input);
+		Lexer lexer= new Lexer(new CharArray(input), options, fLog, null);
+		assertEquals(fastPath, lexer.usesFastPath());
+		List<String> result= new ArrayList<String>();
+		Token t;
+		do {
+			t= lexer.nextToken();
+			result.add(t.getType() + ":" + t.getOffset() + ":" + t.getEndOffset() + ":" + t.getImage());
+		} while (t.getType() != IToken.tEND_OF_INPUT);
+		while (fLog.getCommentCount() > 0) {
+			result.add(fLog.removeFirstComment());
+		}
+		while (fLog.getProblemCount() > 0) {
+			result.add(fLog.removeFirstProblem());
+		}
+		return result;
+	}
 }
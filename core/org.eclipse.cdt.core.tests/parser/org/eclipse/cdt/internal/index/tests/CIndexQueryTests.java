@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.index.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.regex.Pattern;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.dom.ast.IBinding;
+import org.eclipse.cdt.core.index.IIndexFile;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IIndexName;
+import org.eclipse.cdt.core.index.IndexFilter;
+import org.eclipse.cdt.core.index.IndexLocationFactory;
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.index.CIndex;
+import org.eclipse.cdt.internal.core.index.IIndexFragment;
+import org.eclipse.cdt.internal.core.index.IIndexFragmentBinding;
+import org.eclipse.cdt.internal.core.index.IIndexFragmentName;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Tests for querying the fragments of a {@link CIndex} concurrently.
+ */
+public class CIndexQueryTests extends BaseTestCase {
+	private static final long TIMEOUT = 10000;
+
+	/**
+	 * A fragment with a single name, answering the queries after a delay.
+	 */
+	private static class SlowFragment extends EmptyIndexFragment {
+		final IIndexFragmentName fName;
+		final long fDelay;
+		volatile boolean fFinished;
+		volatile boolean fSawCancellation;
+
+		SlowFragment(int offset, long delay) {
+			fName= createName(offset);
+			fDelay= delay;
+		}
+
+		@Override
+		public IIndexFragmentName[] findNames(IBinding binding, int flags) {
+			sleep(fDelay);
+			fFinished= true;
+			return new IIndexFragmentName[] { fName };
+		}
+
+		@Override
+		public IIndexFragmentBinding[] findBindings(Pattern[] patterns, boolean isFullyQualified,
+				IndexFilter filter, IProgressMonitor monitor) {
+			final long end= System.currentTimeMillis() + TIMEOUT;
+			while (!monitor.isCanceled() && System.currentTimeMillis() < end) {
+				sleep(10);
+			}
+			fSawCancellation= monitor.isCanceled();
+			sleep(fDelay);
+			fFinished= true;
+			return IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+		}
+	}
+
+	public static Test suite() {
+		return suite(CIndexQueryTests.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		System.setProperty(CIndex.QUERY_THREADS_PROPERTY, "2");
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static IIndexFragmentName createName(final int offset) {
+		final IIndexFileLocation location= IndexLocationFactory.getExternalIFL("/file" + offset + ".h");
+		final IIndexFile file= (IIndexFile) Proxy.newProxyInstance(CIndexQueryTests.class.getClassLoader(),
+				new Class<?>[] { IIndexFile.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						switch (method.getName()) {
+						case "getLocation":
+							return location;
+						case "getLinkageID":
+							return 1;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		return (IIndexFragmentName) Proxy.newProxyInstance(CIndexQueryTests.class.getClassLoader(),
+				new Class<?>[] { IIndexFragmentName.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						switch (method.getName()) {
+						case "getFile":
+							return file;
+						case "getNodeOffset":
+							return offset;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	public void testResultOrder() throws Exception {
+		SlowFragment[] fragments= new SlowFragment[4];
+		for (int i = 0; i < fragments.length; i++) {
+			// The last fragments finish first.
+			fragments[i]= new SlowFragment(i, (fragments.length - i) * 50);
+		}
+		IIndexName[] names= new CIndex(fragments).findNames(null, 0);
+		assertEquals(fragments.length, names.length);
+		for (int i = 0; i < fragments.length; i++) {
+			assertSame(fragments[i].fName, names[i]);
+		}
+	}
+
+	public void testExceptionPropagation() throws Exception {
+		final CoreException failure= new CoreException(CCorePlugin.createStatus("failure"));
+		SlowFragment slow= new SlowFragment(2, 300);
+		IIndexFragment[] fragments= {
+			new SlowFragment(0, 0),
+			new EmptyIndexFragment() {
+				@Override
+				public IIndexFragmentName[] findNames(IBinding binding, int flags) throws CoreException {
+					throw failure;
+				}
+			},
+			slow
+		};
+		try {
+			new CIndex(fragments).findNames(null, 0);
+			fail("Exception expected");
+		} catch (CoreException e) {
+			assertSame(failure, e);
+		}
+		// The queries of the other fragments must not outlive the call.
+		assertTrue(slow.fFinished);
+	}
+
+	public void testCancellation() throws Exception {
+		final NullProgressMonitor monitor= new NullProgressMonitor();
+		SlowFragment slow= new SlowFragment(1, 200);
+		IIndexFragment[] fragments= {
+			new EmptyIndexFragment() {
+				@Override
+				public IIndexFragmentBinding[] findBindings(Pattern[] patterns, boolean isFullyQualified,
+						IndexFilter filter, IProgressMonitor m) {
+					m.setCanceled(true);
+					return IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+				}
+			},
+			slow
+		};
+		try {
+			new CIndex(fragments).findBindings(new Pattern[] { Pattern.compile("a") }, false, IndexFilter.ALL,
+					monitor);
+			fail("Cancellation expected");
+		} catch (OperationCanceledException e) {
+		}
+		assertTrue(slow.fSawCancellation);
+		assertTrue(slow.fFinished);
+	}
+}
@@ -96,7 +96,7 @@ public class EmptyIndexFragment implements IIndexFragment {
 	}
 
 	@Override
-	public IIndexFragmentName[] findNames(IBinding binding,	int flags) {
+	public IIndexFragmentName[] findNames(IBinding binding,	int flags) throws CoreException {
 		return IIndexFragmentName.EMPTY_NAME_ARRAY;
 	}
 
@@ -115,6 +115,11 @@ public class EmptyIndexFragment implements IIndexFragment {
 		return 0;
 	}
 
+	@Override
+	public long getCacheEvictions() {
+		return 0;
+	}
+
 	@Override
 	@Deprecated
 	public IIndexFragmentFile getFile(int linkageID, IIndexFileLocation location)
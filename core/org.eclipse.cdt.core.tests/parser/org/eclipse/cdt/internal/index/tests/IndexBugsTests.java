@@ -86,8 +86,11 @@ import org.eclipse.cdt.core.testplugin.CTestPlugin;
 import org.eclipse.cdt.core.testplugin.TestScannerProvider;
 import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
 import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
+import org.eclipse.cdt.internal.core.CCoreInternals;
 import org.eclipse.cdt.internal.core.dom.parser.ASTNode;
 import org.eclipse.cdt.internal.core.pdom.CModelListener;
+import org.eclipse.cdt.internal.core.pdom.PDOMManager;
+import org.eclipse.cdt.internal.core.pdom.WritablePDOM;
 import org.eclipse.cdt.internal.core.pdom.indexer.IndexerPreferences;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -97,6 +100,7 @@ import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.runtime.CoreException;
@@ -2615,4 +2619,194 @@ public class IndexBugsTests extends BaseTestCase {
 		}
 	}
 
+	//	// common.h
+	//	struct Common { int field; };
+
+	//	// source.cpp
+	//	#include "common.h"
+	//	Common var;
+	//	void func(Common& c) { c.field= 1; }
+	public void testParallelParserThreads() throws Exception {
+		IndexerPreferences.set(fCProject.getProject(), IndexerPreferences.KEY_PARSER_THREADS, "4");
+		try {
+			String[] contents= getContentsForTest(2);
+			TestSourceReader.createFile(fCProject.getProject(), "common.h", contents[0]);
+			final int sourceCount= 20;
+			for (int i = 0; i < sourceCount; i++) {
+				String source= contents[1].replace("var", "var" + i).replace("func", "func" + i);
+				TestSourceReader.createFile(fCProject.getProject(), "source" + i + ".cpp", source);
+			}
+			CCorePlugin.getIndexManager().reindex(fCProject);
+			waitForIndexer();
+			fIndex.acquireReadLock();
+			try {
+				IIndexBinding[] common= fIndex.findBindings("Common".toCharArray(), IndexFilter.ALL_DECLARED, npm());
+				assertEquals(1, common.length);
+				assertEquals(2 * sourceCount, fIndex.findReferences(common[0]).length);
+				for (int i = 0; i < sourceCount; i++) {
+					assertEquals(1, fIndex.findBindings(("var" + i).toCharArray(), IndexFilter.ALL_DECLARED, npm()).length);
+					assertEquals(1, fIndex.findBindings(("func" + i).toCharArray(), IndexFilter.ALL_DECLARED, npm()).length);
+				}
+			} finally {
+				fIndex.releaseReadLock();
+			}
+		} finally {
+			Properties defaults = IndexerPreferences.getDefaultIndexerProperties();
+			IndexerPreferences.set(fCProject.getProject(), IndexerPreferences.KEY_PARSER_THREADS,
+					defaults.getProperty(IndexerPreferences.KEY_PARSER_THREADS));
+		}
+	}
+
+	//	// common.h
+	//	struct Common { int field; };
+
+	//	// source.cpp
+	//	#include "common.h"
+	//	Common var;
+	//	void func(Common& c) { c.field= 1; }
+	public void testCompactProjectPDOM() throws Exception {
+		String[] contents= getContentsForTest(2);
+		TestSourceReader.createFile(fCProject.getProject(), "common.h", contents[0]);
+		final int sourceCount= 40;
+		IFile[] sources= new IFile[sourceCount];
+		for (int i = 0; i < sourceCount; i++) {
+			String source= contents[1].replace("var", "var" + i).replace("func", "func" + i);
+			sources[i]= TestSourceReader.createFile(fCProject.getProject(), "source" + i + ".cpp", source);
+		}
+		waitForIndexer();
+		// Removing files leaves free space in the database.
+		for (int i = 1; i < sourceCount; i += 2) {
+			sources[i].delete(true, npm());
+		}
+		waitForIndexer();
+
+		final PDOMManager manager= CCoreInternals.getPDOMManager();
+		File oldLocation= ((WritablePDOM) manager.getPDOM(fCProject)).getDB().getLocation();
+		long oldLength= oldLocation.length();
+		int fileCount;
+		fIndex.acquireReadLock();
+		try {
+			fileCount= fIndex.getAllFiles().length;
+		} finally {
+			fIndex.releaseReadLock();
+		}
+
+		manager.compactProjectPDOM(fCProject, npm());
+		File newLocation= ((WritablePDOM) manager.getPDOM(fCProject)).getDB().getLocation();
+		assertFalse(oldLocation.equals(newLocation));
+		assertFalse(oldLocation.exists());
+		assertTrue(newLocation.length() < oldLength);
+
+		fIndex= CCorePlugin.getIndexManager().getIndex(fCProject);
+		fIndex.acquireReadLock();
+		try {
+			assertEquals(fileCount, fIndex.getAllFiles().length);
+			IIndexBinding[] common= fIndex.findBindings("Common".toCharArray(), IndexFilter.ALL_DECLARED, npm());
+			assertEquals(1, common.length);
+			assertEquals(sourceCount, fIndex.findReferences(common[0]).length);
+			assertEquals(1, fIndex.findDefinitions(common[0]).length);
+			for (int i = 0; i < sourceCount; i++) {
+				int expected= i % 2 == 0 ? 1 : 0;
+				assertEquals(expected, fIndex.findBindings(("var" + i).toCharArray(), IndexFilter.ALL_DECLARED, npm()).length);
+				IIndexBinding[] func= fIndex.findBindings(("func" + i).toCharArray(), IndexFilter.ALL_DECLARED, npm());
+				assertEquals(expected, func.length);
+				if (expected == 1) {
+					assertEquals(1, fIndex.findDefinitions(func[0]).length);
+				}
+			}
+		} finally {
+			fIndex.releaseReadLock();
+		}
+	}
+
+	//	// common.h
+	//	struct Common { int field; };
+
+	//	// common.h
+	//	struct Common { int field; int other; };
+
+	//	// source.cpp
+	//	#include "common.h"
+	//	Common var;
+	//	void func(Common& c) { c.field= 1; }
+
+	//	// source.cpp
+	//	#include "common.h"
+	//	Common var;
+	//	void func(Common& c) { c.field= 1; c.other= 2; }
+	public void testParallelParserThreadsWithRewrittenHeader() throws Exception {
+		final String[] contents= getContentsForTest(4);
+		ICProject single= CProjectHelper.createCCProject("__single__", "bin", IPDOMManager.ID_FAST_INDEXER);
+		try {
+			String expected= indexSharedHeader(single, "1", contents);
+			assertTrue(expected, expected.contains("other: "));
+			String actual= indexSharedHeader(fCProject, "4", contents);
+			assertEquals(expected, actual);
+		} finally {
+			CProjectHelper.delete(single);
+		}
+	}
+
+	/**
+	 * Indexes sources sharing a header, then changes the header and the sources at once, such
+	 * that the header is rewritten while the sources are parsed. Returns a description of the
+	 * resulting index.
+	 */
+	private String indexSharedHeader(final ICProject cproject, String parserThreads,
+			final String[] contents) throws Exception {
+		final IProject project= cproject.getProject();
+		final int sourceCount= 20;
+		IndexerPreferences.set(project, IndexerPreferences.KEY_PARSER_THREADS, parserThreads);
+		try {
+			TestSourceReader.createFile(project, "common.h", contents[0]);
+			for (int i = 0; i < sourceCount; i++) {
+				TestSourceReader.createFile(project, "source" + i + ".cpp", createSource(contents[2], i));
+			}
+			waitForIndexer(cproject);
+			ResourcesPlugin.getWorkspace().run(new IWorkspaceRunnable() {
+				@Override
+				public void run(IProgressMonitor monitor) throws CoreException {
+					TestSourceReader.createFile(project, "common.h", contents[1]);
+					for (int i = 0; i < sourceCount; i++) {
+						TestSourceReader.createFile(project, "source" + i + ".cpp", createSource(contents[3], i));
+					}
+				}
+			}, npm());
+			waitForIndexer(cproject);
+
+			IIndex index= CCorePlugin.getIndexManager().getIndex(cproject);
+			index.acquireReadLock();
+			try {
+				StringBuilder buf= new StringBuilder();
+				appendBindings(buf, index, "Common");
+				appendBindings(buf, index, "Common::field");
+				appendBindings(buf, index, "Common::other");
+				for (int i = 0; i < sourceCount; i++) {
+					appendBindings(buf, index, "var" + i);
+					appendBindings(buf, index, "func" + i);
+				}
+				buf.append("files: ").append(index.getAllFiles().length);
+				return buf.toString();
+			} finally {
+				index.releaseReadLock();
+			}
+		} finally {
+			Properties defaults = IndexerPreferences.getDefaultIndexerProperties();
+			IndexerPreferences.set(project, IndexerPreferences.KEY_PARSER_THREADS,
+					defaults.getProperty(IndexerPreferences.KEY_PARSER_THREADS));
+		}
+	}
+
+	private static String createSource(String content, int i) {
+		return content.replace("var", "var" + i).replace("func", "func" + i);
+	}
+
+	private void appendBindings(StringBuilder buf, IIndex index, String name) throws CoreException {
+		for (IIndexBinding binding : index.findBindings(getPattern(name), true, IndexFilter.ALL_DECLARED, npm())) {
+			buf.append(binding.getName()).append(": ");
+			buf.append(index.findDeclarations(binding).length).append(' ');
+			buf.append(index.findDefinitions(binding).length).append(' ');
+			buf.append(index.findReferences(binding).length).append('\n');
+		}
+	}
 }
@@ -21,6 +21,7 @@ public class IndexTests extends TestSuite {
 	public static Test suite() {
 		TestSuite suite = new IndexTests();
 		
+		suite.addTest(CIndexQueryTests.suite());
 		suite.addTest(IndexCompositeTests.suite());
 		suite.addTest(IndexListenerTest.suite());
 		suite.addTest(IndexLocationTest.suite());
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/ 
 package org.eclipse.cdt.internal.index.tests;
 
+import java.io.File;
 import java.util.Arrays;
 
 import junit.framework.TestSuite;
@@ -48,10 +49,15 @@ import org.eclipse.cdt.core.dom.ast.cpp.ICPPVariable;
 import org.eclipse.cdt.core.index.IIndex;
 import org.eclipse.cdt.core.index.IIndexBinding;
 import org.eclipse.cdt.core.index.IndexFilter;
+import org.eclipse.cdt.core.index.IndexLocationFactory;
+import org.eclipse.cdt.core.model.LanguageManager;
 import org.eclipse.cdt.core.model.ICProject;
 import org.eclipse.cdt.core.testplugin.CProjectHelper;
 import org.eclipse.cdt.core.testplugin.util.TestSourceReader;
+import org.eclipse.cdt.internal.core.CCoreInternals;
 import org.eclipse.cdt.internal.core.pdom.CModelListener;
+import org.eclipse.cdt.internal.core.pdom.IndexContentStore;
+import org.eclipse.cdt.internal.core.pdom.WritablePDOM;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMFile;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMNode;
 import org.eclipse.core.resources.IFile;
@@ -1495,4 +1501,94 @@ public class IndexUpdateTests extends IndexTestBase {
 			fIndex.releaseReadLock();
 		}
 	}
+
+	//	struct Base {};
+	//	struct Derived : Base {};
+
+	//	struct Other {};
+	public void testContentStore() throws Exception {
+		WritablePDOM pdom= (WritablePDOM) CCoreInternals.getPDOMManager().getPDOM(fCppProject);
+		File location= nonExistentTempFile("contentStore", ".store");
+		IndexContentStore store= new IndexContentStore(location, pdom.getLocationConverter(),
+				LanguageManager.getInstance().getPDOMLinkageFactoryMappings(), 100);
+		pdom.setContentStore(store);
+		try {
+			setupFile(2, true);
+			updateFile();
+			fIndex.acquireReadLock();
+			try {
+				assertNull(findBinding("Derived"));
+				assertNotNull(findBinding("Other"));
+			} finally {
+				fIndex.releaseReadLock();
+			}
+
+			// Switching back to the first content takes the names from the store.
+			fFile= TestSourceReader.createFile(fFile.getParent(), fFile.getName(), fContents[0].toString());
+			waitUntilFileIsIndexed(fIndex, fFile);
+			fIndex.acquireReadLock();
+			try {
+				final ICPPClassType s = (ICPPClassType) findBinding("Derived");
+				assertNotNull(s);
+				final ICPPBase[] bases = s.getBases();
+				assertEquals(1, bases.length);
+				assertEquals("Base", bases[0].getBaseClass().getName());
+				assertNull(findBinding("Other"));
+			} finally {
+				fIndex.releaseReadLock();
+			}
+			assertTrue(location.length() > 0);
+		} finally {
+			pdom.setContentStore(null);
+			store.close();
+			location.delete();
+		}
+	}
+
+	//	struct A {};
+
+	//	struct B {};
+
+	//	struct C {};
+	public void testContentStoreEviction() throws Exception {
+		WritablePDOM pdom= (WritablePDOM) CCoreInternals.getPDOMManager().getPDOM(fCppProject);
+		File location= nonExistentTempFile("contentStore", ".store");
+		IndexContentStore store= new IndexContentStore(location, pdom.getLocationConverter(),
+				LanguageManager.getInstance().getPDOMLinkageFactoryMappings(), 1);
+		pdom.setContentStore(store);
+		try {
+			setupFile(3, true);
+			final long hashA= getContentsHash(pdom);
+			updateFile();
+			final long hashB= getContentsHash(pdom);
+			assertTrue(storeContains(pdom, store, hashA));
+
+			// Storing the second version evicts the first one.
+			updateFile();
+			assertTrue(storeContains(pdom, store, hashB));
+			assertFalse(storeContains(pdom, store, hashA));
+		} finally {
+			pdom.setContentStore(null);
+			store.close();
+			location.delete();
+		}
+	}
+
+	private long getContentsHash(WritablePDOM pdom) throws Exception {
+		pdom.acquireReadLock();
+		try {
+			return pdom.getFiles(IndexLocationFactory.getWorkspaceIFL(fFile))[0].getContentsHash();
+		} finally {
+			pdom.releaseReadLock();
+		}
+	}
+
+	private boolean storeContains(WritablePDOM pdom, IndexContentStore store, long hash) throws Exception {
+		pdom.acquireReadLock();
+		try {
+			return store.contains(pdom.getFiles(IndexLocationFactory.getWorkspaceIFL(fFile))[0], hash);
+		} finally {
+			pdom.releaseReadLock();
+		}
+	}
 }
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.io.File;
+import java.util.Random;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.db.BTree;
+import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.db.IBTreeComparator;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Compares building a b-tree by inserting the records one by one with building it bottom up,
+ * and with packing it after the insertion as it is done for exported indexes, with respect to
+ * the time needed and the size of the resulting database. The test is too
+ * expensive to run as part of normal testing, but should be run after changes to the b-tree.
+ * <p>
+ * n.b. this is intentionally not added to any test suite.
+ */
+public class BTreeBenchmark extends BaseTestCase {
+	private static final int RECORD_COUNT = 1000000;
+
+	public static Test suite() {
+		return suite(BTreeBenchmark.class);
+	}
+
+	public void testInsertVersusBulkLoad() throws Exception {
+		run(false, false);
+		run(false, true);
+		run(true, false);
+	}
+
+	private void run(boolean bulkLoad, boolean pack) throws Exception {
+		File file = File.createTempFile("btreebenchmark", "db");
+		// A cache that is smaller than the database, as it is the case for large indexes.
+		final Database db = new Database(file, new ChunkCache(4 * 1024 * 1024), 0, false);
+		try {
+			db.setExclusiveLock();
+			Random random = new Random(42);
+			long[] records = new long[RECORD_COUNT];
+			for (int i = 0; i < records.length; i++) {
+				records[i] = db.malloc(Database.INT_SIZE);
+				db.putInt(records[i], random.nextInt(Integer.MAX_VALUE));
+			}
+			db.flush();
+			long sizeOfRecords = db.getSizeBytes();
+			db.resetCacheCounters();
+
+			BTree btree = new BTree(db, Database.DATA_AREA, new IBTreeComparator() {
+				@Override
+				public int compare(long record1, long record2) throws CoreException {
+					int v1 = db.getInt(record1);
+					int v2 = db.getInt(record2);
+					return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+				}
+			});
+			long start = System.currentTimeMillis();
+			if (bulkLoad) {
+				btree.bulkLoad(records, records.length);
+			} else {
+				for (long record : records) {
+					btree.insert(record);
+				}
+			}
+			db.flush();
+			long time = System.currentTimeMillis() - start;
+			long packingTime = 0;
+			if (pack) {
+				start = System.currentTimeMillis();
+				assertTrue(btree.pack());
+				db.flush();
+				packingTime = System.currentTimeMillis() - start;
+			}
+			assertEquals("", btree.getInvariantsErrorReport());
+			System.out.println((bulkLoad ? "Bulk load: " : "Insertion: ") + time + " ms, " +
+					(pack ? "packing: " + packingTime + " ms, " : "") + "size of tree: " +
+					(db.getSizeBytes() - sizeOfRecords) / 1024 + " KB, cache misses: " + db.getCacheMisses());
+		} finally {
+			db.close();
+			file.delete();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2009 Symbian Software Systems and others.
+ * Copyright (c) 2006, 2014 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -120,6 +120,47 @@ public class BTreeTests extends BaseTestCase {
 		}
 	}
 
+	/**
+	 * Tests building b-trees of various sizes bottom up, followed by insertions and deletions.
+	 */
+	public void testBulkLoad() throws Exception {
+		Random random = new Random(4711);
+		int[] sizes = {0, 1, 3, 15, 16, 17, 100, 1000, 12345};
+		for (int degree = 2; degree <= 8; degree += 3) {
+			for (int size : sizes) {
+				init(degree);
+				try {
+					SortedSet<Integer> expected = new TreeSet<Integer>();
+					long[] records = new long[size];
+					for (int i = 0; i < size; i++) {
+						// Duplicates are added once, only.
+						int value = random.nextInt(size * 2 + 1);
+						expected.add(value);
+						records[i] = new BTMockRecord(db, value).getRecord();
+					}
+					btree.bulkLoad(records, size);
+					assertBTreeMatchesSortedSet("[bulk load] ", btree, expected);
+					assertBTreeInvariantsHold("[bulk load]");
+					assertFalse(btree.pack());
+
+					for (int i = 0; i < 100; i++) {
+						int value = random.nextInt(Integer.MAX_VALUE);
+						if (expected.add(value))
+							btree.insert(new BTMockRecord(db, value).getRecord());
+					}
+					assertBTreeMatchesSortedSet("[insert] ", btree, expected);
+					assertBTreeInvariantsHold("[insert]");
+
+					assertEquals(size + 100 > 2 * degree - 1, btree.pack());
+					assertBTreeMatchesSortedSet("[pack] ", btree, expected);
+					assertBTreeInvariantsHold("[pack]");
+				} finally {
+					finish();
+				}
+			}
+		}
+	}
+
 	/**
 	 * Insert/Delete a random number of records into/from the B-tree
 	 * @param seed the seed for obtaining the deterministic random testing
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.util.Random;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Measures the throughput of concurrent readers of a database. The test is too expensive to
+ * run as part of normal testing, but should be run after changes to the chunk cache.
+ * <p>
+ * n.b. this is intentionally not added to any test suite.
+ */
+public class ChunkCacheBenchmark extends ChunkCacheTests {
+	private static final int READS_PER_THREAD = 5000000;
+
+	public static Test suite() {
+		return suite(ChunkCacheBenchmark.class);
+	}
+
+	@Override
+	protected ChunkCache createCache() {
+		// Large enough for all chunks, such that the readers hit the cache.
+		return new ChunkCache(2L * CHUNK_COUNT * Database.CHUNK_SIZE);
+	}
+
+	public void testReaderThroughput() throws Exception {
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		for (int threadCount = 1; threadCount <= maxThreads; threadCount *= 2) {
+			long time = runReaders(threadCount);
+			long reads = (long) threadCount * READS_PER_THREAD;
+			System.out.println(threadCount + " reader thread(s): " + reads * 1000 / Math.max(1, time) +
+					" reads/s, hits: " + db.getCacheHits() + ", misses: " + db.getCacheMisses() +
+					", evictions: " + db.getCacheEvictions());
+		}
+	}
+
+	public void testBulkAccessThroughput() throws Exception {
+		final char[] chars = new char[100];
+		final byte[] bytes = new byte[200];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (0x400 + i);
+		}
+		db.setExclusiveLock();
+		try {
+			// Characters beyond latin-1 are stored as chars, rather than bytes.
+			IString[] strings = new IString[records.length];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = db.newString(chars);
+			}
+			for (int round = 0; round < 3; round++) {
+				long start = System.currentTimeMillis();
+				for (int i = 0; i < READS_PER_THREAD; i++) {
+					final int idx = i % records.length;
+					final long record = records[idx] + 8;
+					strings[idx].getChars();
+					db.putBytes(record, bytes, bytes.length);
+					db.getBytes(record, bytes);
+				}
+				long time = System.currentTimeMillis() - start;
+				System.out.println("bulk access: " + (long) READS_PER_THREAD * 1000 / Math.max(1, time) +
+						" rounds/s");
+			}
+		} finally {
+			db.giveUpExclusiveLock(true);
+		}
+	}
+
+	private long runReaders(int threadCount) throws InterruptedException {
+		db.resetCacheCounters();
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threads.length; t++) {
+			final Random random = new Random(t);
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < READS_PER_THREAD; i++) {
+							db.getInt(records[random.nextInt(records.length)]);
+						}
+					} catch (CoreException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+		}
+		long start = System.currentTimeMillis();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return System.currentTimeMillis() - start;
+	}
+
+	@Override
+	public void testConcurrentReaders() throws Exception {
+		// Covered by ChunkCacheTests.
+	}
+
+	@Override
+	public void testWriteAfterConcurrentReaders() throws Exception {
+		// Covered by ChunkCacheTests.
+	}
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
+
+/**
+ * Tests for the {@link ChunkCache} when used by concurrent readers.
+ */
+public class ChunkCacheTests extends BaseTestCase {
+	protected static final int CHUNK_COUNT = 500;
+
+	protected File dbFile;
+	protected Database db;
+	protected long[] records;
+
+	public static Test suite() {
+		return suite(ChunkCacheTests.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dbFile = File.createTempFile("chunkcachetest", "db");
+		db = new Database(dbFile, createCache(), 0, false);
+		db.setExclusiveLock();
+		// Every record occupies a chunk of its own.
+		records = new long[CHUNK_COUNT];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = db.malloc(Database.MAX_MALLOC_SIZE);
+			db.putInt(records[i], i);
+		}
+		db.giveUpExclusiveLock(true);
+		db.setLocked(true);
+	}
+
+	protected ChunkCache createCache() {
+		// Small enough for chunks being evicted.
+		return new ChunkCache(64 * Database.CHUNK_SIZE, 4);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		db.setExclusiveLock();
+		db.close();
+		dbFile.deleteOnExit();
+		super.tearDown();
+	}
+
+	public void testSegments() throws Exception {
+		ChunkCache cache = new ChunkCache(100 * Database.CHUNK_SIZE, 6);
+		assertEquals(4, cache.getSegmentCount());
+		assertEquals(100 * Database.CHUNK_SIZE, cache.getMaxSize());
+		cache.setMaxSize(10 * Database.CHUNK_SIZE);
+		assertEquals(10 * Database.CHUNK_SIZE, cache.getMaxSize());
+
+		cache = new ChunkCache(2 * Database.CHUNK_SIZE, 16);
+		assertEquals(2, cache.getSegmentCount());
+	}
+
+	public void testConcurrentReaders() throws Exception {
+		db.resetCacheCounters();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final Random random = new Random(t);
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 20000; i++) {
+							int idx = random.nextInt(records.length);
+							int value = db.getInt(records[idx]);
+							if (value != idx) {
+								throw new AssertionError("Expected " + idx + " but read " + value);
+							}
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new Exception(failure.get());
+		}
+		assertTrue(db.getCacheMisses() >= CHUNK_COUNT - 64);
+		assertTrue(db.getCacheEvictions() > 0);
+		assertTrue(db.getCacheHits() > 0);
+	}
+
+	public void testWriteAfterConcurrentReaders() throws Exception {
+		testConcurrentReaders();
+		db.setExclusiveLock();
+		for (int i = 0; i < records.length; i++) {
+			db.putInt(records[i], -i);
+		}
+		db.flush();
+		db.giveUpExclusiveLock(true);
+		db.setLocked(true);
+		for (int i = 0; i < records.length; i++) {
+			assertEquals(-i, db.getInt(records[i]));
+		}
+	}
+}
@@ -13,6 +13,7 @@
 package org.eclipse.cdt.internal.pdom.tests;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.util.Random;
 
 import junit.framework.Test;
@@ -22,6 +23,7 @@ import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
 import org.eclipse.cdt.internal.core.pdom.db.BTree;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
 import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.db.FreeBlockStatistics;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeComparator;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
@@ -142,6 +144,371 @@ public class DatabaseTest extends BaseTestCase {
 		assertEquals(mem2, mem1);
 	}
 
+	public void testLargestBlock() throws Exception {
+		// The size of a block spanning a whole chunk is stored as a signed short.
+		assertTrue(Database.MAX_BLOCK_DELTAS * Database.BLOCK_SIZE_DELTA <= Short.MAX_VALUE);
+		long mem = db.malloc(Database.MAX_MALLOC_SIZE);
+		assertEquals(-Database.MAX_BLOCK_DELTAS * Database.BLOCK_SIZE_DELTA,
+				db.getShort(mem - Database.BLOCK_HEADER_SIZE));
+		db.free(mem);
+		assertEquals(Database.MAX_BLOCK_DELTAS * Database.BLOCK_SIZE_DELTA,
+				db.getShort(mem - Database.BLOCK_HEADER_SIZE));
+		assertEquals(mem, db.malloc(Database.MAX_MALLOC_SIZE));
+	}
+
+	public void testLayoutIsStored() throws Exception {
+		File file= getTestDir().append(getName() + System.currentTimeMillis() + ".dat").toFile();
+		Database ldb= new Database(file, new ChunkCache(), 0, false);
+		try {
+			assertTrue(ldb.isCompatibleLayout());
+			ldb.setExclusiveLock();
+			ldb.malloc(42);
+			ldb.close();
+
+			ldb= new Database(file, new ChunkCache(), 0, false);
+			assertTrue(ldb.isCompatibleLayout());
+			ldb.setExclusiveLock();
+			ldb.putInt(Database.LAYOUT_OFFSET, 0);
+			ldb.close();
+
+			// A file with a different layout is detected and can be cleared.
+			ldb= new Database(file, new ChunkCache(), 0, false);
+			assertFalse(ldb.isCompatibleLayout());
+			ldb.setExclusiveLock();
+			ldb.clear(0);
+			assertTrue(ldb.isCompatibleLayout());
+			ldb.close();
+
+			ldb= new Database(file, new ChunkCache(), 0, false);
+			assertTrue(ldb.isCompatibleLayout());
+			ldb.setExclusiveLock();
+			ldb.close();
+		} finally {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	public void testMemoryMappedDatabase() throws Exception {
+		File file= getTestDir().append(getName() + System.currentTimeMillis() + ".dat").toFile();
+		Database mdb= new Database(file, new ChunkCache(), 0, false, true);
+		long[] records= new long[5000];
+		try {
+			assertTrue(mdb.isMemoryMapped());
+			mdb.setExclusiveLock();
+			for (int i= 0; i < records.length; i++) {
+				records[i]= mdb.malloc(42);
+				mdb.putInt(records[i], i);
+				mdb.putLong(records[i] + 4, -i);
+			}
+			long stringRecord= mdb.newString("memory mapped").getRecord();
+			mdb.giveUpExclusiveLock(true);
+			mdb.setLocked(true);
+			for (int i= 0; i < records.length; i++) {
+				assertEquals(i, mdb.getInt(records[i]));
+			}
+			mdb.setExclusiveLock();
+			mdb.close();
+
+			// The file must not keep the space that was added when mapping a segment.
+			assertEquals(0, file.length() % Database.CHUNK_SIZE);
+			mdb= new Database(file, new ChunkCache(), 0, true, true);
+			mdb.setLocked(true);
+			for (int i= 0; i < records.length; i++) {
+				assertEquals(i, mdb.getInt(records[i]));
+				assertEquals(-i, mdb.getLong(records[i] + 4));
+			}
+			assertEquals("memory mapped", mdb.getString(stringRecord).getString());
+			mdb.setExclusiveLock();
+			mdb.close();
+		} finally {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	public void testWriteAheadLogRecovery() throws Exception {
+		File file= getTestDir().append(getName() + System.currentTimeMillis() + ".dat").toFile();
+		File crashedFile= new File(file.getPath() + ".crashed");
+		File log= new File(file.getPath() + ".wal");
+		File crashedLog= new File(crashedFile.getPath() + ".wal");
+		long[] records= new long[Database.CHUNK_SIZE];
+		Database.setUseWriteAheadLog(true);
+		try {
+			// A small cache, such that chunks are written to the log before the commit.
+			Database wdb= new Database(file, new ChunkCache(16 * Database.CHUNK_SIZE), 0, false, false);
+			assertTrue(wdb.hasWriteAheadLog());
+			wdb.setExclusiveLock();
+			for (int i= 0; i < records.length; i++) {
+				records[i]= wdb.malloc(42);
+				wdb.putInt(records[i], i);
+			}
+			wdb.giveUpExclusiveLock(true);
+
+			// Changes that are not committed.
+			wdb.setExclusiveLock();
+			for (int i= 0; i < records.length; i++) {
+				wdb.putInt(records[i], -1);
+			}
+			wdb.giveUpExclusiveLock(false);
+			assertTrue(log.length() > 16L * Database.CHUNK_SIZE);
+
+			// Simulate a crash by copying the files of the database that is still open.
+			Files.copy(file.toPath(), crashedFile.toPath());
+			Files.copy(log.toPath(), crashedLog.toPath());
+
+			// The committed state is recovered, even if no log is used any more.
+			Database.setUseWriteAheadLog(false);
+			Database cdb= new Database(crashedFile, new ChunkCache(), 0, false, false);
+			assertFalse(cdb.hasWriteAheadLog());
+			assertFalse(crashedLog.exists());
+			cdb.setLocked(true);
+			for (int i= 0; i < records.length; i++) {
+				assertEquals(i, cdb.getInt(records[i]));
+			}
+			cdb.setExclusiveLock();
+			cdb.close();
+
+			// Closing the database commits the changes and removes the log.
+			wdb.setExclusiveLock();
+			wdb.close();
+			assertFalse(log.exists());
+			wdb= new Database(file, new ChunkCache(), 0, true);
+			wdb.setLocked(true);
+			for (int i= 0; i < records.length; i++) {
+				assertEquals(-1, wdb.getInt(records[i]));
+			}
+			wdb.setExclusiveLock();
+			wdb.close();
+		} finally {
+			Database.setUseWriteAheadLog(false);
+			for (File f : new File[] { file, crashedFile, log, crashedLog }) {
+				if (f.exists() && !f.delete()) {
+					f.deleteOnExit();
+				}
+			}
+		}
+	}
+
+	public void testWriteAheadLogCheckpointWhileReading() throws Exception {
+		File file= getTestDir().append(getName() + System.currentTimeMillis() + ".dat").toFile();
+		File log= new File(file.getPath() + ".wal");
+		long[] records= new long[Database.CHUNK_SIZE];
+		Database.setUseWriteAheadLog(true);
+		try {
+			Database wdb= new Database(file, new ChunkCache(16 * Database.CHUNK_SIZE), 0, false, false);
+			wdb.setExclusiveLock();
+			for (int i= 0; i < records.length; i++) {
+				records[i]= wdb.malloc(42);
+				wdb.putInt(records[i], i);
+			}
+			wdb.giveUpExclusiveLock(true);
+			assertTrue(log.length() > 16L * Database.CHUNK_SIZE);
+
+			// A reader opened while the committed chunks are in the log.
+			Database rdb= new Database(file, new ChunkCache(16 * Database.CHUNK_SIZE), 0, true, false);
+			assertTrue(rdb.hasWriteAheadLog());
+			rdb.setLocked(true);
+			for (int i= 0; i < records.length / 2; i++) {
+				assertEquals(i, rdb.getInt(records[i]));
+			}
+
+			// Closing the writer copies the chunks to the file and empties the log.
+			wdb.setExclusiveLock();
+			wdb.close();
+			for (int i= 0; i < records.length; i++) {
+				assertEquals(i, rdb.getInt(records[i]));
+			}
+			rdb.setExclusiveLock();
+			rdb.close();
+		} finally {
+			Database.setUseWriteAheadLog(false);
+			for (File f : new File[] { file, log }) {
+				if (f.exists() && !f.delete()) {
+					f.deleteOnExit();
+				}
+			}
+		}
+	}
+
+	public void testCompact() throws Exception {
+		final int blocksPerChunk = Database.CHUNK_SIZE / 64;
+		final int blockSize = 64 - Database.BLOCK_HEADER_SIZE;
+		long[] records = new long[blocksPerChunk * 20];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = db.malloc(blockSize);
+			db.putInt(records[i], i);
+		}
+		db.flush();
+		final long size = db.getSizeBytes();
+
+		// Free every other pair of blocks in the first half and everything in the second half.
+		for (int i = 0; i < records.length; i++) {
+			if (i >= records.length / 2 || i % 4 < 2) {
+				db.free(records[i]);
+				records[i] = 0;
+			}
+		}
+		FreeBlockStatistics stats = db.getFreeBlockStatistics();
+		assertTrue(stats.getFreeRatio() > 0.7);
+		assertEquals(records.length * 3 / 4, stats.getFreeBlockCount(64));
+
+		long shrunk = db.compact();
+		assertTrue(shrunk >= 9L * Database.CHUNK_SIZE);
+		assertEquals(size - shrunk, db.getSizeBytes());
+		stats = db.getFreeBlockStatistics();
+		assertEquals(0, stats.getFreeChunkCount());
+		assertEquals(records.length / 8, stats.getFreeBlockCount(128));
+		for (int i = 0; i < records.length; i++) {
+			if (records[i] != 0) {
+				assertEquals(i, db.getInt(records[i]));
+			}
+		}
+
+		// The merged blocks are reused.
+		for (int i = 0; i < records.length / 8; i++) {
+			db.malloc(128 - Database.BLOCK_HEADER_SIZE);
+		}
+		assertEquals(size - shrunk, db.getSizeBytes());
+	}
+
+	public void testSnapshots() throws Exception {
+		File file= getTestDir().append(getName() + System.currentTimeMillis() + ".dat").toFile();
+		Database.setUseSnapshots(true);
+		// A cache that is smaller than the database, such that the writer's chunks are evicted.
+		final Database sdb;
+		try {
+			sdb= new Database(file, new ChunkCache(16 * Database.CHUNK_SIZE), 0, false, false);
+		} finally {
+			Database.setUseSnapshots(false);
+		}
+		final long[] records= new long[Database.CHUNK_SIZE];
+		try {
+			assertTrue(sdb.usesSnapshots());
+			sdb.setExclusiveLock();
+			for (int i= 0; i < records.length; i++) {
+				records[i]= sdb.malloc(42);
+				sdb.putInt(records[i], i);
+			}
+			sdb.giveUpExclusiveLock(true);
+			sdb.publishChanges();
+			sdb.setLocked(true);
+
+			// The writer sees its changes, while other threads read the snapshot.
+			sdb.setExclusiveLock();
+			for (int i= 0; i < records.length; i++) {
+				sdb.putInt(records[i], -i);
+			}
+			long added= sdb.malloc(42);
+			sdb.putInt(added, 42);
+			assertFalse(sdb.readsSnapshot());
+			assertEquals(-1, sdb.getInt(records[1]));
+			assertSnapshot(sdb, records, 1);
+			sdb.giveUpExclusiveLock(true);
+			assertTrue(sdb.hasUnpublishedChanges());
+			assertTrue(sdb.getSnapshotChunkCount() > 0);
+			assertSnapshot(sdb, records, 1);
+
+			sdb.publishChanges();
+			assertFalse(sdb.hasUnpublishedChanges());
+			assertEquals(0, sdb.getSnapshotChunkCount());
+			assertSnapshot(sdb, records, -1);
+
+			// Without readers the writer modifies the chunks in place.
+			sdb.excludeReaders();
+			sdb.setExclusiveLock();
+			for (int i= 0; i < records.length; i++) {
+				sdb.putInt(records[i], i);
+			}
+			assertEquals(0, sdb.getSnapshotChunkCount());
+			sdb.giveUpExclusiveLock(true);
+			sdb.publishChanges();
+			assertSnapshot(sdb, records, 1);
+			sdb.setExclusiveLock();
+			assertEquals(42, sdb.getInt(added));
+			sdb.close();
+		} finally {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	public void testPrefetch() throws Exception {
+		File file= getTestDir().append(getName() + System.currentTimeMillis() + ".dat").toFile();
+		Database.setUsePrefetching(true);
+		// A cache that is smaller than the database, such that chunks are evicted.
+		final Database pdb;
+		try {
+			pdb= new Database(file, new ChunkCache(32 * Database.CHUNK_SIZE, 1), 0, false, false);
+		} finally {
+			Database.setUsePrefetching(false);
+		}
+		final long[] records= new long[128];
+		try {
+			assertTrue(pdb.usesPrefetching());
+			pdb.setExclusiveLock();
+			for (int i= 0; i < records.length; i++) {
+				records[i]= pdb.malloc(Database.MAX_MALLOC_SIZE);
+				pdb.putInt(records[i], i);
+			}
+			pdb.giveUpExclusiveLock(true);
+			pdb.setLocked(true);
+
+			// The first chunks have been evicted, they are read in the background.
+			final int count= 8;
+			pdb.resetCacheCounters();
+			pdb.prefetch(records, count);
+			for (int wait= 0; pdb.getPrefetchedChunks() < count && wait < 5000; wait += 10) {
+				Thread.sleep(10);
+			}
+			assertEquals(count, pdb.getPrefetchedChunks());
+			for (int i= 0; i < count; i++) {
+				assertEquals(i, pdb.getInt(records[i]));
+			}
+			assertEquals(0, pdb.getCacheMisses());
+
+			// Cached chunks and null pointers are not prefetched.
+			pdb.resetCacheCounters();
+			pdb.prefetch(new long[] { 0, records[0], records[records.length - 1] }, 3);
+			Thread.sleep(100);
+			assertEquals(0, pdb.getPrefetchedChunks());
+			pdb.setExclusiveLock();
+			pdb.close();
+		} finally {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Checks the values of the records as seen by a thread other than the writer.
+	 */
+	private void assertSnapshot(final Database sdb, final long[] records, final int sign) throws Exception {
+		final Throwable[] failure= new Throwable[1];
+		Thread reader= new Thread() {
+			@Override
+			public void run() {
+				try {
+					assertTrue(sdb.readsSnapshot());
+					for (int i= 0; i < records.length; i++) {
+						assertEquals(sign * i, sdb.getInt(records[i]));
+					}
+				} catch (Throwable e) {
+					failure[0]= e;
+				}
+			}
+		};
+		reader.start();
+		reader.join();
+		if (failure[0] != null) {
+			throw new Exception(failure[0]);
+		}
+	}
+
 	private static class FindVisitor implements IBTreeVisitor {
 		private Database db;
 		private String key;
@@ -251,6 +618,23 @@ public class DatabaseTest extends BaseTestCase {
 		assertCMP("a",  EQ, "A", false);
 	}
 
+	public void testMixedEncodingStringComparison() throws CoreException {
+		// Strings with characters beyond Latin-1 are stored with two bytes per character.
+		assertCMP("abc", LT, "abĀ", true);
+		assertCMP("abä", LT, "abĀ", true);
+		assertCMP("Ā", GT, "ÿÿ", true);
+		assertCMP("ABĀ", EQ, "abĀ", false);
+		assertCMP("abc", LT, "abĀ", false);
+
+		IString latin1 = db.newString("abä");
+		IString wide = db.newString("abäĀ");
+		assertEquals(0, latin1.comparePrefix("ab".toCharArray(), true));
+		assertEquals(0, wide.comparePrefix("abä".toCharArray(), true));
+		assertTrue(latin1.comparePrefix("abäĀ".toCharArray(), true) < 0);
+		assertFalse(latin1.equals(wide));
+		assertEquals(latin1, db.newString("abä".toCharArray()));
+	}
+
 	public void testLongStringComparison() throws CoreException {
 		Random r= new Random(314159265);
 		doTrials(100, ShortString.MAX_BYTE_LENGTH + 1, ShortString.MAX_BYTE_LENGTH * 2, r, true);
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.io.File;
+import java.util.HashMap;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.PDOM;
+import org.eclipse.cdt.internal.core.pdom.WritablePDOM;
+import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
+
+/**
+ * Tests for the directories of file locations shared by the files of the PDOM.
+ */
+public class DirectoryIndexTests extends BaseTestCase {
+	private File fFile;
+	private WritablePDOM fPDOM;
+
+	public static Test suite() {
+		return suite(DirectoryIndexTests.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		fFile= File.createTempFile("directories", ".pdom");
+		fPDOM= new WritablePDOM(fFile, null, new HashMap<String, IPDOMLinkageFactory>());
+		fPDOM.acquireWriteLock(null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		fPDOM.close();
+		fPDOM.releaseWriteLock();
+		fFile.delete();
+		super.tearDown();
+	}
+
+	private long getFreeBytes() throws Exception {
+		return fPDOM.getFreeBlockStatistics().getFreeBytes();
+	}
+
+	public void testSharedDirectory() throws Exception {
+		long dir= fPDOM.acquireDirectory("/usr/include/");
+		assertEquals(dir, fPDOM.acquireDirectory("/usr/include/"));
+		assertTrue(dir != fPDOM.acquireDirectory("/usr/include/sys/"));
+		assertEquals("/usr/include/", PDOM.getDirectoryString(fPDOM.getDB(), dir).getString());
+	}
+
+	public void testReleaseDirectory() throws Exception {
+		long dir= fPDOM.acquireDirectory("/usr/include/");
+		fPDOM.acquireDirectory("/usr/include/");
+		long freeBytes= getFreeBytes();
+
+		// The directory is kept as long as a file references it.
+		fPDOM.releaseDirectory(dir);
+		assertEquals(freeBytes, getFreeBytes());
+		assertEquals("/usr/include/", PDOM.getDirectoryString(fPDOM.getDB(), dir).getString());
+
+		// Releasing the last reference deletes the directory.
+		fPDOM.releaseDirectory(dir);
+		assertTrue(getFreeBytes() > freeBytes);
+		long other= fPDOM.acquireDirectory("/usr/lib/");
+		assertEquals("/usr/lib/", PDOM.getDirectoryString(fPDOM.getDB(), other).getString());
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 Symbian Software Systems and others.
+ * Copyright (c) 2007, 2014 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -202,6 +202,37 @@ public class GeneratePDOMApplicationTest extends PDOMTestBase {
 		verifyProject2Content(wpdom);
 	}
 	
+	public void testMergeShards() throws Exception {
+		URL url= FileLocator.find(CTestPlugin.getDefault().getBundle(), new Path(LOC_TSTPRJ1), null);
+		String baseDir= FileLocator.toFileURL(url).getFile();
+		File[] shards= new File[2];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i]= nonExistentTempFile("shard" + i, ".pdom");
+			doGenerate(new String[] {
+					GeneratePDOMApplication.OPT_TARGET, shards[i].getAbsolutePath(),
+					GeneratePDOMApplication.OPT_PROJECTPROVIDER, ExternalExportProjectProvider.class.getName(),
+					GeneratePDOMApplication.OPT_SHARD, i + "/" + shards.length,
+					ExternalExportProjectProvider.OPT_SOURCE, baseDir,
+					ExternalExportProjectProvider.OPT_FRAGMENT_ID, "generate.pdom.tests.id." + getName()
+			});
+			assertTrue(shards[i].exists());
+		}
+		doGenerate(new String[] {
+				GeneratePDOMApplication.OPT_TARGET, target.getAbsolutePath(),
+				GeneratePDOMApplication.OPT_MERGE, shards[0].getAbsolutePath(), shards[1].getAbsolutePath()
+		});
+		assertTrue(target.exists());
+		WritablePDOM wpdom= new WritablePDOM(target, new URIRelativeLocationConverter(BASEURI),
+				LanguageManager.getInstance().getPDOMLinkageFactoryMappings());
+		verifyProject1Content(wpdom);
+		wpdom.acquireReadLock();
+		try {
+			assertEquals("generate.pdom.tests.id." + getName(), wpdom.getProperty(IIndexFragment.PROPERTY_FRAGMENT_ID));
+		} finally {
+			wpdom.releaseReadLock();
+		}
+	}
+
 	public void testGenerateOnCyclicIncludes1() throws Exception {
 		// testing for zero NON-OK status objects (see BaseTestCase.setExpectedNumberOfLoggedNonOKStatusObjects)
 		WritablePDOM wpdom= generatePDOM(LOC_CYCINC1, ExternalExportProjectProvider.class, null);
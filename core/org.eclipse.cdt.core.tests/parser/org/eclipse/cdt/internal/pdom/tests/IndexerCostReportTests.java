@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.IndexerCostReport;
+import org.eclipse.cdt.internal.core.pdom.IndexerCostReport.FileCost;
+
+/**
+ * Tests for the {@link IndexerCostReport}.
+ */
+public class IndexerCostReportTests extends BaseTestCase {
+
+	public static Test suite() {
+		return suite(IndexerCostReportTests.class);
+	}
+
+	private IndexerCostReport createReport() {
+		IndexerCostReport report= new IndexerCostReport();
+		report.add(new FileCost("/p/a.cpp", 1, 10, 5, 2, 3, 100, 20));
+		report.add(new FileCost("/p/b.cpp", 4, 40, 20, 8, 7, 400, 80));
+		report.add(new FileCost("/p/c\"d.cpp", 0, 1, 0, 0, 0, 10, 2));
+		return report;
+	}
+
+	public void testSlowestFiles() throws Exception {
+		IndexerCostReport report= createReport();
+		List<FileCost> slowest= report.getSlowestFiles(2);
+		assertEquals(2, slowest.size());
+		assertEquals("/p/b.cpp", slowest.get(0).fPath);
+		assertEquals(68, slowest.get(0).getTotalTime());
+		assertEquals("/p/a.cpp", slowest.get(1).fPath);
+		assertEquals(3, report.getSlowestFiles(10).size());
+		assertEquals(3, report.getFiles().size());
+	}
+
+	public void testCSV() throws Exception {
+		StringWriter out= new StringWriter();
+		createReport().writeCSV(out);
+		String[] lines= out.toString().split("\n");
+		assertEquals(4, lines.length);
+		assertEquals("file,preprocessing,parsing,resolution,write,total,includes,tokens,names", lines[0]);
+		assertEquals("\"/p/a.cpp\",1,10,5,2,17,3,100,20", lines[1]);
+		assertEquals("\"/p/c\"\"d.cpp\",0,1,0,0,1,0,10,2", lines[3]);
+	}
+
+	public void testJSON() throws Exception {
+		IndexerCostReport report= createReport();
+		report.addCacheStatistics("headers", 3, 1);
+		report.addCacheStatistics("headers", 1, 3);
+		StringWriter out= new StringWriter();
+		report.writeJSON(out);
+		String json= out.toString();
+		assertTrue(json, json.contains("\"files\": 3, \"preprocessing\": 5, \"parsing\": 51"));
+		assertTrue(json, json.contains("\"headers\": {\"hits\": 4, \"misses\": 4, \"hitRate\": 0.5}"));
+		assertTrue(json, json.contains("{\"file\": \"/p/c\\\"d.cpp\""));
+	}
+
+	public void testEmptyJSON() throws Exception {
+		StringWriter out= new StringWriter();
+		new IndexerCostReport().writeJSON(out);
+		String json= out.toString();
+		assertTrue(json, json.contains("\"caches\": {},"));
+		assertTrue(json, json.endsWith("\"files\": []\n}\n"));
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IndexLocationFactory;
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.IndexingPriorities;
+
+/**
+ * Tests for the {@link IndexingPriorities}.
+ */
+public class IndexingPrioritiesTests extends BaseTestCase {
+
+	public static Test suite() {
+		return suite(IndexingPrioritiesTests.class);
+	}
+
+	private static IIndexFileLocation ifl(String path) {
+		return IndexLocationFactory.getExternalIFL(path);
+	}
+
+	public void testPriorities() throws Exception {
+		IndexingPriorities priorities= new IndexingPriorities();
+		IIndexFileLocation a= ifl("/p/a.cpp");
+		IIndexFileLocation b= ifl("/p/b.cpp");
+		assertEquals(0, priorities.getPriority(a));
+		assertNull(priorities.getActiveFile());
+
+		priorities.fileOpened(a);
+		priorities.fileOpened(b);
+		assertEquals(IndexingPriorities.OPEN, priorities.getPriority(a));
+
+		priorities.fileActivated(a);
+		assertEquals(a, priorities.getActiveFile());
+		assertEquals(IndexingPriorities.ACTIVE, priorities.getPriority(a));
+		assertEquals(IndexingPriorities.OPEN, priorities.getPriority(b));
+
+		priorities.fileActivated(b);
+		assertEquals(IndexingPriorities.OPEN, priorities.getPriority(a));
+		priorities.fileClosed(a);
+		assertEquals(IndexingPriorities.RECENT, priorities.getPriority(a));
+		priorities.fileClosed(b);
+		assertNull(priorities.getActiveFile());
+		assertEquals(IndexingPriorities.RECENT, priorities.getPriority(b));
+	}
+
+	public void testOpenedTwice() throws Exception {
+		IndexingPriorities priorities= new IndexingPriorities();
+		IIndexFileLocation a= ifl("/p/a.cpp");
+		priorities.fileOpened(a);
+		priorities.fileOpened(a);
+		priorities.fileClosed(a);
+		assertEquals(IndexingPriorities.OPEN, priorities.getPriority(a));
+		priorities.fileClosed(a);
+		assertEquals(0, priorities.getPriority(a));
+	}
+
+	public void testModificationCount() throws Exception {
+		IndexingPriorities priorities= new IndexingPriorities();
+		IIndexFileLocation a= ifl("/p/a.cpp");
+		int count= priorities.getModificationCount();
+		priorities.fileOpened(a);
+		assertTrue(count != priorities.getModificationCount());
+		count= priorities.getModificationCount();
+		priorities.fileActivated(a);
+		assertTrue(count != priorities.getModificationCount());
+		count= priorities.getModificationCount();
+		priorities.fileActivated(a);
+		assertEquals(count, priorities.getModificationCount());
+	}
+
+	public void testRecentFilesAreBounded() throws Exception {
+		IndexingPriorities priorities= new IndexingPriorities();
+		IIndexFileLocation first= ifl("/p/0.cpp");
+		priorities.fileActivated(first);
+		for (int i = 1; i <= 100; i++) {
+			priorities.fileActivated(ifl("/p/" + i + ".cpp"));
+		}
+		assertEquals(0, priorities.getPriority(first));
+		assertEquals(IndexingPriorities.RECENT, priorities.getPriority(ifl("/p/99.cpp")));
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.dom.ast.IBasicType.Kind;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPTemplateArgument;
+import org.eclipse.cdt.core.dom.ast.cpp.ICPPTemplateInstance;
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPBasicType;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPTemplateTypeArgument;
+import org.eclipse.cdt.internal.core.pdom.dom.cpp.PDOMInstanceCache;
+
+/**
+ * Tests for the {@link PDOMInstanceCache}.
+ */
+public class PDOMInstanceCacheTests extends BaseTestCase {
+
+	public static Test suite() {
+		return suite(PDOMInstanceCacheTests.class);
+	}
+
+	private static ICPPTemplateArgument[] args(Kind kind) {
+		return new ICPPTemplateArgument[] { new CPPTemplateTypeArgument(new CPPBasicType(kind, 0)) };
+	}
+
+	private static ICPPTemplateInstance instance() {
+		return (ICPPTemplateInstance) Proxy.newProxyInstance(PDOMInstanceCacheTests.class.getClassLoader(),
+				new Class<?>[] { ICPPTemplateInstance.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("equals"))
+							return proxy == args[0];
+						if (method.getName().equals("hashCode"))
+							return System.identityHashCode(proxy);
+						return null;
+					}
+				});
+	}
+
+	public void testLookup() throws Exception {
+		PDOMInstanceCache cache= new PDOMInstanceCache(10);
+		ICPPTemplateInstance intInstance= instance();
+		cache.addInstance(args(Kind.eInt), intInstance);
+
+		long hits= PDOMInstanceCache.getHits();
+		long misses= PDOMInstanceCache.getMisses();
+		assertSame(intInstance, cache.getInstance(args(Kind.eInt)));
+		assertNull(cache.getInstance(args(Kind.eChar)));
+		assertEquals(hits + 1, PDOMInstanceCache.getHits());
+		assertEquals(misses + 1, PDOMInstanceCache.getMisses());
+	}
+
+	public void testEviction() throws Exception {
+		PDOMInstanceCache cache= new PDOMInstanceCache(2);
+		ICPPTemplateInstance intInstance= instance();
+		ICPPTemplateInstance charInstance= instance();
+		ICPPTemplateInstance boolInstance= instance();
+		long evictions= PDOMInstanceCache.getEvictions();
+		cache.addInstance(args(Kind.eInt), intInstance);
+		cache.addInstance(args(Kind.eChar), charInstance);
+		// Using the first instance makes the second one the least recently used.
+		assertSame(intInstance, cache.getInstance(args(Kind.eInt)));
+		cache.addInstance(args(Kind.eBoolean), boolInstance);
+
+		assertEquals(evictions + 1, PDOMInstanceCache.getEvictions());
+		assertSame(intInstance, cache.getInstance(args(Kind.eInt)));
+		assertSame(boolInstance, cache.getInstance(args(Kind.eBoolean)));
+		// The evicted instance is still in use, it keeps its identity.
+		assertEquals(3, cache.getAllInstances().length);
+		assertSame(charInstance, cache.getInstance(args(Kind.eChar)));
+		assertEquals(evictions + 2, PDOMInstanceCache.getEvictions());
+	}
+
+	public void testEvictionOfUnusedInstance() throws Exception {
+		PDOMInstanceCache cache= new PDOMInstanceCache(1);
+		cache.addInstance(args(Kind.eChar), instance());
+		cache.addInstance(args(Kind.eInt), instance());
+		for (int i = 0; i < 100 && cache.getAllInstances().length > 1; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(1, cache.getAllInstances().length);
+		assertNull(cache.getInstance(args(Kind.eChar)));
+	}
+}
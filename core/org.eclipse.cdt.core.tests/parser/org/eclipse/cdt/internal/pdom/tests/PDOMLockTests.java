@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.WritablePDOM;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Tests for the locks of a PDOM that provides snapshots to its readers.
+ */
+public class PDOMLockTests extends BaseTestCase {
+	private File fFile;
+	private WritablePDOM fPDOM;
+
+	public static Test suite() {
+		return suite(PDOMLockTests.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		fFile= File.createTempFile("locks", ".pdom");
+		Database.setUseSnapshots(true);
+		try {
+			fPDOM= new WritablePDOM(fFile, null, new HashMap<String, IPDOMLinkageFactory>());
+		} finally {
+			Database.setUseSnapshots(false);
+		}
+		assertTrue(fPDOM.getDB().usesSnapshots());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		fPDOM.acquireWriteLock(null);
+		try {
+			fPDOM.close();
+		} finally {
+			fPDOM.releaseWriteLock();
+		}
+		fFile.delete();
+		super.tearDown();
+	}
+
+	public void testSingleWriter() throws Exception {
+		final AtomicInteger writers= new AtomicInteger();
+		final AtomicBoolean overlap= new AtomicBoolean();
+		final Throwable[] failure= new Throwable[1];
+		Thread[] threads= new Thread[2];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i]= new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 20; j++) {
+							fPDOM.acquireWriteLock(null);
+							try {
+								if (writers.incrementAndGet() > 1) {
+									overlap.set(true);
+								}
+								fPDOM.getDB().malloc(42);
+								Thread.sleep(2);
+								writers.decrementAndGet();
+							} finally {
+								fPDOM.releaseWriteLock();
+							}
+						}
+					} catch (Throwable e) {
+						failure[0]= e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join(10000);
+		}
+		if (failure[0] != null)
+			throw new AssertionError(failure[0]);
+		assertFalse(overlap.get());
+	}
+
+	public void testWriterWaitsForWriter() throws Exception {
+		fPDOM.acquireWriteLock(null);
+		final CountDownLatch acquired= new CountDownLatch(1);
+		final NullProgressMonitor monitor= new NullProgressMonitor();
+		final Throwable[] failure= new Throwable[1];
+		Thread writer= new Thread() {
+			@Override
+			public void run() {
+				try {
+					fPDOM.acquireWriteLock(monitor);
+					acquired.countDown();
+					fPDOM.releaseWriteLock();
+				} catch (Throwable e) {
+					failure[0]= e;
+				}
+			}
+		};
+		try {
+			writer.start();
+			assertFalse(acquired.await(300, TimeUnit.MILLISECONDS));
+		} finally {
+			fPDOM.releaseWriteLock();
+		}
+		assertTrue(acquired.await(10, TimeUnit.SECONDS));
+		writer.join(10000);
+		if (failure[0] != null)
+			throw new AssertionError(failure[0]);
+
+		// A waiting writer can be canceled.
+		fPDOM.acquireWriteLock(null);
+		try {
+			writer= new Thread() {
+				@Override
+				public void run() {
+					try {
+						fPDOM.acquireWriteLock(monitor);
+						fPDOM.releaseWriteLock();
+					} catch (Throwable e) {
+						failure[0]= e;
+					}
+				}
+			};
+			writer.start();
+			monitor.setCanceled(true);
+			writer.join(10000);
+		} finally {
+			fPDOM.releaseWriteLock();
+		}
+		assertTrue(failure[0] instanceof OperationCanceledException);
+	}
+}
@@ -39,6 +39,14 @@ public class PDOMTests extends TestSuite {
 		suite.addTest(OverloadsWithinSingleTUTests.suite());
 		suite.addTest(OverloadsWithinCommonHeaderTests.suite());
 		suite.addTest(BTreeTests.suite());
+		suite.addTest(ChunkCacheTests.suite());
+		suite.addTest(DirectoryIndexTests.suite());
+		suite.addTest(PDOMLockTests.suite());
+		suite.addTest(IndexerCostReportTests.suite());
+		suite.addTest(IndexingPrioritiesTests.suite());
+		suite.addTest(PDOMInstanceCacheTests.suite());
+		suite.addTest(ResultCacheTests.suite());
+		suite.addTest(TrigramIndexTests.suite());
 		suite.addTest(PDOMStringSetTests.suite());
 		suite.addTest(PDOMTagIndexTests.suite());
 		suite.addTest(FilesOnReindexTests.suite());
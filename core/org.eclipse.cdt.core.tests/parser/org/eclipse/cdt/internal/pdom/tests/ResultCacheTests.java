@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.util.BitSet;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.ResultCache;
+
+/**
+ * Tests for the {@link ResultCache}.
+ */
+public class ResultCacheTests extends BaseTestCase {
+
+	public static Test suite() {
+		return suite(ResultCacheTests.class);
+	}
+
+	public void testEviction() throws Exception {
+		ResultCache cache= new ResultCache(4, 1);
+		for (String key : new String[] { "a", "b", "c", "d" }) {
+			cache.put(key, key + "1", 1, true);
+		}
+		assertEquals("a1", cache.get("a"));
+		cache.put("e", "e1", 1, true);
+		assertEquals(4, cache.size());
+		assertEquals(1, cache.getEvictions());
+		// Entries used once are evicted first.
+		assertNull(cache.get("b"));
+		assertEquals("a1", cache.get("a"));
+		assertEquals("e1", cache.get("e"));
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		cache.resetCounters();
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getEvictions());
+	}
+
+	public void testBound() throws Exception {
+		ResultCache cache= new ResultCache(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(i, i, 1, true);
+			cache.get(i);
+		}
+		assertTrue(cache.size() <= 100);
+		assertEquals(1000 - cache.size(), cache.getEvictions());
+	}
+
+	public void testReplace() throws Exception {
+		ResultCache cache= new ResultCache(4, 1);
+		assertEquals("1", cache.put("k", "1", 0, false));
+		assertEquals("1", cache.put("k", "2", 0, false));
+		assertEquals("3", cache.put("k", "3", 0, true));
+		assertEquals("3", cache.get("k"));
+
+		cache.put("n", null, 0, true);
+		assertEquals("v", cache.put("n", "v", 0, false));
+		cache.remove("n");
+		assertNull(cache.get("n"));
+	}
+
+	public void testPinned() throws Exception {
+		ResultCache cache= new ResultCache(2, 1);
+		Object shared= new Object();
+		assertSame(shared, cache.put("p", shared, 1, false));
+		for (int i = 0; i < 10; i++) {
+			cache.put(i, i, 1, true);
+		}
+		assertEquals(8, cache.getEvictions());
+		assertSame(shared, cache.get("p"));
+		assertSame(shared, cache.put("p", new Object(), 1, false));
+
+		BitSet changed= new BitSet();
+		changed.set(1);
+		cache.invalidate(changed);
+		assertNull(cache.get("p"));
+		assertEquals(0, cache.size());
+	}
+
+	public void testInvalidate() throws Exception {
+		ResultCache cache= new ResultCache(16);
+		cache.put("x", "x", 1, true);
+		cache.put("y", "y", 2, true);
+		cache.put("z", "z", 0, true);
+		BitSet changed= new BitSet();
+		changed.set(1);
+		cache.invalidate(changed);
+		assertNull(cache.get("x"));
+		assertEquals("y", cache.get("y"));
+		assertNull(cache.get("z"));
+		assertEquals(0, cache.getEvictions());
+
+		cache.invalidate(new BitSet());
+		assertEquals("y", cache.get("y"));
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+}
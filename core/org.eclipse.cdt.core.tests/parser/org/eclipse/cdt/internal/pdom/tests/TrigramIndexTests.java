@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.pdom.tests;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.Test;
+
+import org.eclipse.cdt.core.testplugin.util.BaseTestCase;
+import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.db.TrigramIndex;
+
+/**
+ * Tests for the {@link TrigramIndex}.
+ */
+public class TrigramIndexTests extends BaseTestCase {
+	private File dbFile;
+	private Database db;
+	private TrigramIndex index;
+
+	public static Test suite() {
+		return suite(TrigramIndexTests.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dbFile= File.createTempFile("pdomtest", "db");
+		db= new Database(dbFile, new ChunkCache(), 0, false);
+		db.setExclusiveLock();
+		index= new TrigramIndex(db, Database.DATA_AREA);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		db.close();
+		dbFile.deleteOnExit();
+		super.tearDown();
+	}
+
+	private static char[][] literals(String... literals) {
+		char[][] result= new char[literals.length][];
+		for (int i = 0; i < literals.length; i++) {
+			result[i]= literals[i].toCharArray();
+		}
+		return result;
+	}
+
+	// Records are aligned like the ones returned by Database.malloc().
+	private static long rec(int i) {
+		return i * Database.BLOCK_SIZE_DELTA + Database.BLOCK_HEADER_SIZE;
+	}
+
+	private static String recs(int... i) {
+		long[] records= new long[i.length];
+		for (int j = 0; j < i.length; j++) {
+			records[j]= rec(i[j]);
+		}
+		return Arrays.toString(records);
+	}
+
+	private static String toString(char[][] literals) {
+		if (literals == null)
+			return null;
+		StringBuilder buf= new StringBuilder();
+		for (char[] literal : literals) {
+			buf.append('[').append(literal).append(']');
+		}
+		return buf.toString();
+	}
+
+	public void testRequiredLiterals() throws Exception {
+		assertEquals("[Widget]", toString(TrigramIndex.getRequiredLiterals(".*Widget.*")));
+		assertEquals("[foo][bar]", toString(TrigramIndex.getRequiredLiterals("foo.*bar")));
+		assertEquals("[a][c]", toString(TrigramIndex.getRequiredLiterals("ab?c")));
+		assertEquals("[ab][c]", toString(TrigramIndex.getRequiredLiterals("ab+c")));
+		assertEquals("[a][d]", toString(TrigramIndex.getRequiredLiterals("ab{2}d")));
+		assertEquals("[a*b]", toString(TrigramIndex.getRequiredLiterals("a\\*b")));
+		assertEquals("[x][yz]", toString(TrigramIndex.getRequiredLiterals("x\\dyz")));
+		assertEquals("[a.b]", toString(TrigramIndex.getRequiredLiterals("\\Qa.b\\E")));
+		assertEquals("", toString(TrigramIndex.getRequiredLiterals(".*")));
+		assertNull(TrigramIndex.getRequiredLiterals("foo|bar"));
+		assertNull(TrigramIndex.getRequiredLiterals("(foo)?"));
+		assertNull(TrigramIndex.getRequiredLiterals("[abc]def"));
+		assertNull(TrigramIndex.getRequiredLiterals("\\x41bc"));
+	}
+
+	public void testCandidates() throws Exception {
+		index.add("getWidget".toCharArray(), rec(1));
+		index.add("setWidget".toCharArray(), rec(2));
+		index.add("getGadget".toCharArray(), rec(3));
+		index.add("id".toCharArray(), rec(4));
+
+		assertEquals(recs(1, 2), Arrays.toString(index.findCandidates(literals("Widget"))));
+		assertEquals(recs(1, 2), Arrays.toString(index.findCandidates(literals("WIDGET"))));
+		assertEquals(recs(1, 2, 3), Arrays.toString(index.findCandidates(literals("get", "dget"))));
+		assertEquals(recs(3), Arrays.toString(index.findCandidates(literals("get", "adg"))));
+		assertEquals("[]", Arrays.toString(index.findCandidates(literals("gizmo"))));
+		assertNull(index.findCandidates(literals("id", "g")));
+
+		index.remove("getWidget".toCharArray(), rec(1));
+		assertEquals(recs(2), Arrays.toString(index.findCandidates(literals("Widget"))));
+		assertEquals(recs(3), Arrays.toString(index.findCandidates(literals("getG"))));
+		index.remove("setWidget".toCharArray(), rec(2));
+		assertEquals("[]", Arrays.toString(index.findCandidates(literals("Widget"))));
+	}
+
+	public void testManyPostings() throws Exception {
+		for (int i = 1; i <= 100; i++) {
+			index.add(("name" + i).toCharArray(), rec(i));
+		}
+		assertEquals(100, index.findCandidates(literals("name")).length);
+		for (int i = 1; i <= 100; i += 2) {
+			index.remove(("name" + i).toCharArray(), rec(i));
+		}
+		long[] candidates= index.findCandidates(literals("nam"));
+		assertEquals(50, candidates.length);
+		for (long candidate : candidates) {
+			assertEquals(0, ((candidate - Database.BLOCK_HEADER_SIZE) / Database.BLOCK_SIZE_DELTA) % 2);
+		}
+		assertEquals(recs(10, 100), Arrays.toString(index.findCandidates(literals("me10"))));
+		index.pack();
+		assertEquals(50, index.findCandidates(literals("ame")).length);
+	}
+}
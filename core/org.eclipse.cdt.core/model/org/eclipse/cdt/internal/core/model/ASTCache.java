@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2012 Wind River Systems, Inc. and others. All rights reserved.
+ * Copyright (c) 2007, 2014 Wind River Systems, Inc. and others. All rights reserved.
  * This program and the accompanying materials are made available under the
  * terms of the Eclipse Public License v1.0 which accompanies this distribution,
  * and is available at http://www.eclipse.org/legal/epl-v10.html
@@ -11,6 +11,9 @@
  ******************************************************************************/
 package org.eclipse.cdt.internal.core.model;
 
+import java.util.Iterator;
+import java.util.LinkedList;
+
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
 import org.eclipse.cdt.core.index.IIndex;
@@ -18,6 +21,8 @@ import org.eclipse.cdt.core.index.IIndexManager;
 import org.eclipse.cdt.core.model.ILanguage;
 import org.eclipse.cdt.core.model.ITranslationUnit;
 import org.eclipse.cdt.internal.core.dom.parser.ASTTranslationUnit;
+import org.eclipse.cdt.internal.core.parser.scanner.ILocationResolver;
+import org.eclipse.cdt.internal.core.parser.scanner.StreamHasher;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.ISafeRunnable;
@@ -28,7 +33,9 @@ import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.core.runtime.Status;
 
 /**
- * Provides a shared AST of a single translation unit at a time.
+ * Provides a shared AST of a single translation unit at a time. The ASTs of a few previously
+ * active translation units are retained, such that they can be reused when a translation unit
+ * becomes active again with unchanged contents.
  *
  * @since 4.0
  */
@@ -45,6 +52,12 @@ public class ASTCache {
 			| ITranslationUnit.AST_SKIP_TRIVIAL_EXPRESSIONS_IN_AGGREGATE_INITIALIZERS
 			| ITranslationUnit.AST_PARSE_INACTIVE_CODE;
 
+	/**
+	 * Maximum number of ASTs retained for translation units that are no longer active.
+	 */
+	private static final int MAX_RETAINED_ASTS=
+			Integer.getInteger("org.eclipse.cdt.core.astcache.retained", 2); //$NON-NLS-1$
+
 	/**
 	 * Do something with an AST.
 	 *
@@ -76,6 +89,26 @@ public class ASTCache {
 	private long fLastWriteOnIndex;
 	/** Indicates whether the AST is currently being computed */
 	private boolean fIsReconciling;
+	/** ASTs of previously active translation units, the most recently active one last */
+	private final LinkedList<RetainedAST> fRetainedASTs= new LinkedList<>();
+
+	/**
+	 * An AST of a translation unit that is no longer active.
+	 */
+	private static class RetainedAST {
+		final ITranslationUnit fTranslationUnit;
+		final IASTTranslationUnit fAST;
+		final long fLastWriteOnIndex;
+		/** The hash of the contents the AST has been created from */
+		final long fContentsHash;
+
+		RetainedAST(ITranslationUnit tUnit, IASTTranslationUnit ast, long lastWriteOnIndex, long contentsHash) {
+			fTranslationUnit= tUnit;
+			fAST= ast;
+			fLastWriteOnIndex= lastWriteOnIndex;
+			fContentsHash= contentsHash;
+		}
+	}
 
 	/**
 	 * Create a new AST cache.
@@ -362,14 +395,99 @@ public class ASTCache {
 			return;
 		}
 		synchronized (fCacheMutex) {
+			if (fActiveTU != null && fAST != null && !fIsReconciling) {
+				retainAST(fActiveTU, fAST, fLastWriteOnIndex);
+			}
 			fIsReconciling= false;
 			fActiveTU= tUnit;
 			cache(null, tUnit);
+			restoreAST(tUnit);
 		}
 		if (DEBUG)
 			System.out.println(DEBUG_PREFIX + getThreadName() + "active element is: " + toString(tUnit)); //$NON-NLS-1$
 	}
 
+	/**
+	 * Keeps the AST of a translation unit that is no longer active, evicting the AST that has
+	 * been active least recently if necessary.
+	 */
+	private void retainAST(ITranslationUnit tUnit, IASTTranslationUnit ast, long lastWriteOnIndex) {
+		assert Thread.holdsLock(fCacheMutex);
+		if (MAX_RETAINED_ASTS <= 0)
+			return;
+		ILocationResolver resolver= (ILocationResolver) ast.getAdapter(ILocationResolver.class);
+		if (resolver == null)
+			return;
+
+		removeRetainedAST(tUnit);
+		if (fRetainedASTs.size() >= MAX_RETAINED_ASTS) {
+			fRetainedASTs.removeFirst();
+		}
+		fRetainedASTs.add(new RetainedAST(tUnit, ast, lastWriteOnIndex, resolver.getContentsHash()));
+		if (DEBUG)
+			System.out.println(DEBUG_PREFIX + getThreadName() + "retaining AST: " + toString(ast) + " for: " + toString(tUnit)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Makes the retained AST of the given translation unit the cached AST, provided the contents
+	 * of the translation unit have not changed since the AST was created. A retained AST that has
+	 * been invalidated by a write access to the index is disposed when it is requested.
+	 */
+	private void restoreAST(ITranslationUnit tUnit) {
+		assert Thread.holdsLock(fCacheMutex);
+		RetainedAST retained= removeRetainedAST(tUnit);
+		if (retained == null)
+			return;
+
+		StreamHasher hasher= new StreamHasher();
+		hasher.addChunk(tUnit.getContents());
+		if (hasher.computeHash() != retained.fContentsHash) {
+			if (DEBUG)
+				System.out.println(DEBUG_PREFIX + getThreadName() + "discarding outdated AST for: " + toString(tUnit)); //$NON-NLS-1$
+			return;
+		}
+		if (DEBUG)
+			System.out.println(DEBUG_PREFIX + getThreadName() + "restoring AST: " + toString(retained.fAST) + " for: " + toString(tUnit)); //$NON-NLS-1$ //$NON-NLS-2$
+		fAST= retained.fAST;
+		fLastWriteOnIndex= retained.fLastWriteOnIndex;
+		fCacheMutex.notifyAll();
+	}
+
+	private RetainedAST removeRetainedAST(ITranslationUnit tUnit) {
+		if (tUnit == null)
+			return null;
+		for (Iterator<RetainedAST> iterator= fRetainedASTs.iterator(); iterator.hasNext();) {
+			RetainedAST retained= iterator.next();
+			if (retained.fTranslationUnit.equals(tUnit)) {
+				iterator.remove();
+				return retained;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether an AST is cached for the given translation unit, without computing or
+	 * validating it.
+	 *
+	 * @param tUnit  the translation unit
+	 * @return <code>true</code> if an AST is cached for the given translation unit
+	 */
+	public boolean hasCachedAST(ITranslationUnit tUnit) {
+		synchronized (fCacheMutex) {
+			return fAST != null && fActiveTU != null && fActiveTU.equals(tUnit);
+		}
+	}
+
+	/**
+	 * Disposes the ASTs retained for translation units that are no longer active.
+	 */
+	public void disposeRetainedASTs() {
+		synchronized (fCacheMutex) {
+			fRetainedASTs.clear();
+		}
+	}
+
 	/**
 	 * Check whether the given translation unit is the active element of this cache.
 	 *
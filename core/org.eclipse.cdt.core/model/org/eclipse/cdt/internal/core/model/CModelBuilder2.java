@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2012 Wind River Systems, Inc. and others.
+ * Copyright (c) 2006, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -85,6 +85,7 @@ import org.eclipse.cdt.core.parser.ParseError;
 import org.eclipse.cdt.core.parser.ast.ASTAccessVisibility;
 import org.eclipse.cdt.internal.core.dom.parser.ASTQueries;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.CPPVisitor;
+import org.eclipse.cdt.internal.core.parser.scanner.ILocationResolver;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 
@@ -103,6 +104,8 @@ public class CModelBuilder2 implements IContributedModelBuilder {
 	private ASTAccessVisibility fCurrentVisibility;
 	private Stack<ASTAccessVisibility> fVisibilityStack;
 	private HashMap<ISourceReference, int[]> fEqualElements;
+	private int[] fFunctionBodies;
+	private int fFunctionBodyCount;
 
 	/**
 	 * Create a model builder for the given translation unit.
@@ -164,6 +167,10 @@ public class CModelBuilder2 implements IContributedModelBuilder {
 			startTime= System.currentTimeMillis();
 			buildModel(ast);
 			elementInfo.setIsStructureKnown(true);
+			if (IncrementalStructureUpdate.isEnabled() && fTranslationUnit.isWorkingCopy()
+					&& elementInfo instanceof TranslationUnitInfo) {
+				recordContents(ast, (TranslationUnitInfo) elementInfo);
+			}
 			if (DEBUG) {
 				Util.debugLog("CModelBuilder2: building " //$NON-NLS-1$
 						+ "children=" + elementInfo.internalGetChildren().size() //$NON-NLS-1$
@@ -203,6 +210,8 @@ public class CModelBuilder2 implements IContributedModelBuilder {
 	private void buildModel(IASTTranslationUnit ast) throws CModelException, DOMException {
 		fVisibilityStack= new Stack<ASTAccessVisibility>();
 		fEqualElements= new HashMap<ISourceReference, int[]>();
+		fFunctionBodies= new int[32];
+		fFunctionBodyCount= 0;
 
 		// includes
 		final IASTPreprocessorIncludeStatement[] includeDirectives= ast.getIncludeDirectives();
@@ -1012,9 +1021,54 @@ public class CModelBuilder2 implements IContributedModelBuilder {
 		if (!isTemplate) {
 			setBodyPosition(info, functionDeclaration);
 		}
+		recordFunctionBody(functionDeclaration.getBody());
 		return element;
 	}
 
+	/**
+	 * Records the position of a function body, such that edits within the body can be applied
+	 * to the model without parsing the translation unit again.
+	 */
+	private void recordFunctionBody(IASTNode body) {
+		if (body == null)
+			return;
+		final IASTFileLocation location= body.getFileLocation();
+		if (location == null)
+			return;
+		if (fFunctionBodyCount + 2 > fFunctionBodies.length) {
+			int[] newBodies= new int[fFunctionBodies.length * 2];
+			System.arraycopy(fFunctionBodies, 0, newBodies, 0, fFunctionBodyCount);
+			fFunctionBodies= newBodies;
+		}
+		fFunctionBodies[fFunctionBodyCount++]= location.getNodeOffset();
+		fFunctionBodies[fFunctionBodyCount++]= location.getNodeOffset() + location.getNodeLength();
+	}
+
+	/**
+	 * Records the contents of the AST the model was built from.
+	 */
+	private void recordContents(IASTTranslationUnit ast, TranslationUnitInfo info) {
+		final ILocationResolver resolver= (ILocationResolver) ast.getAdapter(ILocationResolver.class);
+		if (resolver == null)
+			return;
+		final char[] contents= resolver.getContents();
+
+		// Bodies resulting from macro expansions are not considered.
+		int count= 0;
+		for (int i= 0; i < fFunctionBodyCount; i += 2) {
+			final int offset= fFunctionBodies[i];
+			final int endOffset= fFunctionBodies[i + 1];
+			if (offset < endOffset && endOffset <= contents.length &&
+					contents[offset] == '{' && contents[endOffset - 1] == '}') {
+				fFunctionBodies[count++]= offset;
+				fFunctionBodies[count++]= endOffset;
+			}
+		}
+		final int[] bodies= new int[count];
+		System.arraycopy(fFunctionBodies, 0, bodies, 0, count);
+		IncrementalStructureUpdate.recordContents(info, contents, bodies);
+	}
+
 	private FunctionDeclaration createFunctionDeclaration(Parent parent, IASTDeclSpecifier declSpecifier, IASTFunctionDeclarator declarator, boolean isTemplate) throws CModelException {
 		IASTDeclarator nestedDeclarator= declarator;
 		while (nestedDeclarator.getNestedDeclarator() != null) {
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.cdt.core.model.ICElement;
+import org.eclipse.cdt.core.model.IParent;
+
+/**
+ * Updates the structure of a working copy for an edit that is confined to the body of a single
+ * function definition, without parsing the translation unit again. The structure of the model
+ * does not depend on the contents of function bodies, therefore such an edit merely moves the
+ * elements following it and changes the length of the elements enclosing it.
+ * <p>
+ * The update is attempted only when the edit cannot affect the preprocessor or the extent of the
+ * body: the changed text must not contain braces, parentheses, quotes, comment delimiters, line
+ * splices, digraphs or trigraphs, and the lines touched by the edit must not contain a directive. Edits
+ * adding or removing line breaks are in addition rejected on lines with comments or literals. An
+ * edit introducing the name of a macro that expands to unbalanced braces is not detected, the
+ * structure is corrected by the next full parse.
+ * <p>
+ * The update can be disabled with {@link #ENABLED_PROPERTY} or {@link #setEnabled(boolean)}.
+ */
+final class IncrementalStructureUpdate {
+	/**
+	 * System property to disable the incremental update of the structure of working copies.
+	 */
+	public static final String ENABLED_PROPERTY = "org.eclipse.cdt.core.model.incrementalUpdate"; //$NON-NLS-1$
+
+	private static boolean sEnabled= !"false".equals(System.getProperty(ENABLED_PROPERTY)); //$NON-NLS-1$
+
+	/**
+	 * Enables or disables the incremental update, for testing purposes.
+	 */
+	public static void setEnabled(boolean enabled) {
+		sEnabled= enabled;
+	}
+
+	public static boolean isEnabled() {
+		return sEnabled;
+	}
+
+	private IncrementalStructureUpdate() {
+	}
+
+	/**
+	 * Records the contents the structure of a translation unit was built from, together with the
+	 * offsets and end offsets of the function bodies, given in pairs.
+	 */
+	static void recordContents(TranslationUnitInfo info, char[] contents, int[] functionBodies) {
+		info.fContents= contents;
+		info.fFunctionBodies= functionBodies;
+	}
+
+	/**
+	 * Attempts to update the structure of the translation unit in place, such that it matches the
+	 * given contents.
+	 * @return whether the structure has been updated, when <code>false</code> is returned the
+	 * structure is unchanged and has to be rebuilt.
+	 */
+	static boolean update(TranslationUnit tu, TranslationUnitInfo info, char[] contents) {
+		final char[] old= info.fContents;
+		final int[] bodies= info.fFunctionBodies;
+		if (!sEnabled || old == null || bodies == null || contents == null)
+			return false;
+
+		// Compute the changed region.
+		final int minLength= Math.min(old.length, contents.length);
+		int start= 0;
+		while (start < minLength && old[start] == contents[start]) {
+			start++;
+		}
+		int suffix= 0;
+		while (suffix < minLength - start &&
+				old[old.length - 1 - suffix] == contents[contents.length - 1 - suffix]) {
+			suffix++;
+		}
+		final int oldEnd= old.length - suffix;
+		final int newEnd= contents.length - suffix;
+		final int delta= newEnd - oldEnd;
+		if (start == oldEnd && delta == 0)
+			return true;
+
+		// The edit has to be strictly inside of the braces of a function body.
+		int body= -1;
+		for (int i= 0; i < bodies.length; i += 2) {
+			if (bodies[i] < start && oldEnd < bodies[i + 1]) {
+				body= i;
+				break;
+			}
+		}
+		if (body < 0)
+			return false;
+		if (!isNeutral(old, start, oldEnd) || !isNeutral(contents, start, newEnd))
+			return false;
+		if (!isNeutralBoundary(old, start, oldEnd) || !isNeutralBoundary(contents, start, newEnd))
+			return false;
+		final int oldLines= countLines(old, start, oldEnd);
+		final int newLines= countLines(contents, start, newEnd);
+		// A new line can end a line comment, a literal or a directive, a removed one can extend them.
+		final String lineChars= oldLines + newLines > 0 ? "#/\"'\\" : "#"; //$NON-NLS-1$ //$NON-NLS-2$
+		if (touchesLineWith(old, start, oldEnd, lineChars) || touchesLineWith(contents, start, newEnd, lineChars))
+			return false;
+
+		final int lineDelta= newLines - oldLines;
+		final List<SourceManipulationInfo> infos= new ArrayList<SourceManipulationInfo>();
+		if (!collectInfos(tu, infos))
+			return false;
+
+		// Check all elements before changing any of them.
+		for (SourceManipulationInfo smi : infos) {
+			final int pos= smi.getStartPos();
+			final int end= pos + smi.getLength();
+			final boolean encloses= pos < start && oldEnd <= end;
+			if (!encloses && pos < oldEnd && start < end)
+				return false;
+			final int idPos= smi.getIdStartPos();
+			if (idPos < oldEnd && start < idPos + smi.getIdLength())
+				return false;
+		}
+		for (SourceManipulationInfo smi : infos) {
+			final int pos= smi.getStartPos();
+			final int length= smi.getLength();
+			final int idPos= smi.getIdStartPos();
+			if (pos >= oldEnd) {
+				smi.setPos(pos + delta, length);
+				smi.setLines(smi.getStartLine() + lineDelta, smi.getEndLine() + lineDelta);
+			} else if (pos + length >= oldEnd) {
+				smi.setPos(pos, length + delta);
+				smi.setLines(smi.getStartLine(), smi.getEndLine() + lineDelta);
+			}
+			if (idPos >= oldEnd) {
+				smi.setIdPos(idPos + delta, smi.getIdLength());
+			}
+		}
+
+		final int[] newBodies= bodies.clone();
+		for (int i= 0; i < newBodies.length; i += 2) {
+			if (newBodies[i] >= oldEnd) {
+				newBodies[i] += delta;
+				newBodies[i + 1] += delta;
+			} else if (newBodies[i + 1] > oldEnd) {
+				newBodies[i + 1] += delta;
+			}
+		}
+		recordContents(info, contents.clone(), newBodies);
+		return true;
+	}
+
+	/**
+	 * Checks whether the characters in the given range can change the tokens of the range only.
+	 */
+	private static boolean isNeutral(char[] text, int start, int end) {
+		for (int i= start; i < end; i++) {
+			switch (text[i]) {
+			case '{': case '}': case '(': case ')': case '"': case '\'': case '/': case '\\':
+			case '#': case '%': case '?':
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the characters around the given range could form a comment delimiter, a line
+	 * splice, a digraph or a trigraph together with the characters of the range.
+	 */
+	private static boolean isNeutralBoundary(char[] text, int start, int end) {
+		if (start > 0) {
+			switch (text[start - 1]) {
+			case '/': case '\\': case '%': case '?':
+				return false;
+			}
+		}
+		if (end < text.length) {
+			switch (text[end]) {
+			case '/': case '%': case '?':
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether one of the lines touched by the given range contains one of the given
+	 * characters outside of the range.
+	 */
+	private static boolean touchesLineWith(char[] text, int start, int end, String chars) {
+		for (int i= start - 1; i >= 0 && text[i] != '\n'; i--) {
+			if (chars.indexOf(text[i]) >= 0)
+				return true;
+		}
+		for (int i= end; i < text.length && text[i] != '\n'; i++) {
+			if (chars.indexOf(text[i]) >= 0)
+				return true;
+		}
+		return false;
+	}
+
+	private static int countLines(char[] text, int start, int end) {
+		int count= 0;
+		for (int i= start; i < end; i++) {
+			if (text[i] == '\n')
+				count++;
+		}
+		return count;
+	}
+
+	private static boolean collectInfos(ICElement element, List<SourceManipulationInfo> infos) {
+		final Object info= CModelManager.getDefault().peekAtInfo(element);
+		if (!(info instanceof CElementInfo))
+			return false;
+		if (info instanceof SourceManipulationInfo) {
+			infos.add((SourceManipulationInfo) info);
+		}
+		if (element instanceof IParent) {
+			for (ICElement child : ((CElementInfo) info).getChildren()) {
+				if (!collectInfos(child, infos))
+					return false;
+			}
+		}
+		return true;
+	}
+}
@@ -59,7 +59,7 @@ public class ReconcileWorkingCopyOperation extends CModelOperation {
 				deltaBuilder = new CElementDeltaBuilder(workingCopy);
 				
 				// update the element infos with the content of the working copy
-				fAST= workingCopy.makeConsistent(fComputeAST, fMonitor);
+				fAST= workingCopy.makeConsistent(fComputeAST, forceProblemDetection, fMonitor);
 
 				deltaBuilder.buildDeltas();
 
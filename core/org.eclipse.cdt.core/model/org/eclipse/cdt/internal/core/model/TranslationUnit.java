@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 QNX Software Systems and others.
+ * Copyright (c) 2000, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -538,9 +538,23 @@ public class TranslationUnit extends Openable implements ITranslationUnit {
 
 	protected IASTTranslationUnit makeConsistent(boolean computeAST, IProgressMonitor monitor)
 			throws CModelException {
+		return makeConsistent(computeAST, false, monitor);
+	}
+
+	/**
+	 * Brings the model in line with the buffer.
+	 * @param computeAST whether an AST shall be computed and returned.
+	 * @param forceProblemDetection whether problem detection is forced, which requires an inconsistent
+	 *     working copy to be parsed again.
+	 */
+	protected IASTTranslationUnit makeConsistent(boolean computeAST, boolean forceProblemDetection,
+			IProgressMonitor monitor) throws CModelException {
 		if (!computeAST && isConsistent()) {
 			return null;
 		}
+		if (!computeAST && !forceProblemDetection && !isProblemReportingActive() && updateStructure()) {
+			return null;
+		}
 
 		// Create a new info and make it the current info
 		// (this will remove the info and its children just before storing the new infos)
@@ -582,6 +596,34 @@ public class TranslationUnit extends Openable implements ITranslationUnit {
 		return null;
 	}
 
+	/**
+	 * Returns whether the problems found by parsing are reported to a problem requestor, only
+	 * the model builder reports them.
+	 */
+	private boolean isProblemReportingActive() {
+		final IProblemRequestor requestor= getProblemRequestor();
+		return requestor != null && requestor.isActive();
+	}
+
+	/**
+	 * Attempts to bring the structure of an open working copy in line with its buffer without
+	 * parsing it again.
+	 * @see IncrementalStructureUpdate
+	 */
+	private boolean updateStructure() {
+		if (!isWorkingCopy() || !isOpen())
+			return false;
+		final CModelManager manager = CModelManager.getDefault();
+		final Object info = manager.peekAtInfo(this);
+		if (!(info instanceof TranslationUnitInfo))
+			return false;
+		final char[] contents = getContents();
+		if (!IncrementalStructureUpdate.update(this, (TranslationUnitInfo) info, contents))
+			return false;
+		manager.getElementsOutOfSynchWithBuffers().remove(this);
+		return true;
+	}
+
 	@Override
 	protected boolean isSourceElement() {
 		return true;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 QNX Software Systems and others.
+ * Copyright (c) 2000, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -23,6 +23,17 @@ class TranslationUnitInfo extends OpenableInfo {
 	 */
 	protected long fTimestamp;
 
+	/**
+	 * Contents of a working copy the structure was built from, or <code>null</code>.
+	 * @see IncrementalStructureUpdate
+	 */
+	protected char[] fContents;
+
+	/**
+	 * Offsets and end offsets of the bodies of the function definitions, in pairs.
+	 */
+	protected int[] fFunctionBodies;
+
 	protected TranslationUnitInfo(CElement element) {
 		super(element);
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2010 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -33,6 +33,8 @@ public class CPPQualifierType implements IQualifierType, ITypeContainer, ISerial
     
     @Override
 	public boolean isSameType(IType o) {
+		if (o == this)
+			return true;
 		if (o instanceof ITypedef)
 			return o.isSameType(this);
 		if (!(o instanceof IQualifierType))
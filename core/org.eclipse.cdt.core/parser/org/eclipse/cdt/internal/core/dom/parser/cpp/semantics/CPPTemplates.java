@@ -139,7 +139,6 @@ import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPMethodTemplateSpecializat
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPParameterPackType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPParameterSpecialization;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPPointerToMemberType;
-import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPPointerType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPTemplateDefinition;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPTemplateNonTypeArgument;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPTemplateNonTypeParameter;
@@ -2552,9 +2551,9 @@ public class CPPTemplates {
 		IType a= arg.getTypeOfNonTypeValue();
 		IType p;
 		if (paramType instanceof IFunctionType) {
-			p = new CPPPointerType(paramType);
+			p = TypeInterner.pointer(paramType);
 	    } else if (paramType instanceof IArrayType) {
-	    	p = new CPPPointerType(((IArrayType) paramType).getType());
+	    	p = TypeInterner.pointer(((IArrayType) paramType).getType());
 		} else {
 			p= paramType;
 			if (p.isSameType(a))
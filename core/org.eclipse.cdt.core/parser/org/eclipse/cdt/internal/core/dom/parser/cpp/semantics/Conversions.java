@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2012 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -60,8 +60,6 @@ import org.eclipse.cdt.internal.core.dom.parser.ArithmeticConversion;
 import org.eclipse.cdt.internal.core.dom.parser.ITypeContainer;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPBasicType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPPointerToMemberType;
-import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPPointerType;
-import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPQualifierType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ClassTypeHelper;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPEvaluation;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.semantics.Cost.DeferredUDC;
@@ -793,11 +791,11 @@ public class Conversions {
 				source = unqualifyStringLiteral(source, (IPointerType) target, cost);
 			}
 			if (!(source instanceof IPointerType)) {
-				source = new CPPPointerType(getNestedType(((IArrayType) source).getType(), TDEF));
+				source = TypeInterner.pointer(getNestedType(((IArrayType) source).getType(), TDEF));
 			}
 		} else if (source instanceof IFunctionType) {
 			// 4.3 function to pointer conversion
-			source = new CPPPointerType(source);
+			source = TypeInterner.pointer(source);
 		} else {
 			if (source instanceof IPointerType) {
 				// A string literal may have been converted to a pointer when 
@@ -836,7 +834,7 @@ public class Conversions {
 			srcTarget= srcQTarget.getType();
 			if (srcTarget instanceof CPPBasicType) {
 				if (((CPPBasicType) srcTarget).isFromStringLiteral()) {
-					source= new CPPPointerType(srcTarget, false, false, false);
+					source= TypeInterner.pointer(srcTarget, false, false, false);
 					CVQualifier cvqTarget = getCVQualifier(targetPtrTgt).add(CVQualifier.CONST);
 					cost.setQualificationAdjustment(cvqTarget.partialComparison(CVQualifier.NONE) << 3);
 				}
@@ -1068,7 +1066,7 @@ public class Conversions {
 					cost.setRank(Rank.CONVERSION);
 					cost.setInheritanceDistance(Short.MAX_VALUE); 
 					CVQualifier cv= getCVQualifier(srcPtr.getType());
-					cost.source= new CPPPointerType(addQualifiers(CPPSemantics.VOID_TYPE, cv.isConst(), cv.isVolatile(), cv.isRestrict()));
+					cost.source= TypeInterner.pointer(addQualifiers(CPPSemantics.VOID_TYPE, cv.isConst(), cv.isVolatile(), cv.isRestrict()));
 					return false; 
 				}
 				
@@ -1088,7 +1086,7 @@ public class Conversions {
 							cost.setRank(Rank.CONVERSION);
 							cost.setInheritanceDistance(depth);
 							CVQualifier cv= getCVQualifier(srcPtr.getType());
-							cost.source= new CPPPointerType(addQualifiers(tgtPtrTgt, cv.isConst(), cv.isVolatile(), cv.isRestrict()));
+							cost.source= TypeInterner.pointer(addQualifiers(tgtPtrTgt, cv.isConst(), cv.isVolatile(), cv.isRestrict()));
 						}
 						return false;
 					}
@@ -1141,10 +1139,10 @@ public class Conversions {
 	public static IType lvalue_to_rvalue(IType type, boolean resolveTypedefs) {
 		IType t= SemanticUtil.getNestedType(type, TDEF | REF);
 		if (t instanceof IArrayType) {
-			return new CPPPointerType(((IArrayType) t).getType());
+			return TypeInterner.pointer(((IArrayType) t).getType());
 		}
 		if (t instanceof IFunctionType) {
-			return new CPPPointerType(t);
+			return TypeInterner.pointer(t);
 		}
 		IType uqType= SemanticUtil.getNestedType(t, TDEF | REF | ALLCVQ);
 		if (uqType instanceof ICPPClassType) {
@@ -1244,7 +1242,7 @@ public class Conversions {
 			return t2;
 
 		// One type is const the other is volatile.
-		return new CPPQualifierType(uq1, true, true);
+		return TypeInterner.qualifier(uq1, true, true);
 	}
 
 	public static IType copyPointer(final IPointerType p1, IType target, final boolean isConst,
@@ -1253,7 +1251,7 @@ public class Conversions {
 			ICPPPointerToMemberType ptm= (ICPPPointerToMemberType) p1;
 			return new CPPPointerToMemberType(target, ptm.getMemberOfClass(), isConst, isVolatile, false);
 		}
-		return new CPPPointerType(target, isConst, isVolatile, false);
+		return TypeInterner.pointer(target, isConst, isVolatile, false);
 	}
 
 	private static boolean isNullPtr(IType t1) {
@@ -73,8 +73,6 @@ import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPASTTranslationUnit;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPClosureType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPFunctionType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPPointerToMemberType;
-import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPPointerType;
-import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPQualifierType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPTemplateTypeArgument;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ClassTypeHelper;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.ICPPDeferredClassInstance;
@@ -286,7 +284,7 @@ public class SemanticUtil {
 							final IType memberOfClass = ((ICPPPointerToMemberType) pt).getMemberOfClass();
 							return new CPPPointerToMemberType(pt.getType(), memberOfClass, false, false, false);
 						} else {
-							return new CPPPointerType(pt.getType(), false, false, false);
+							return TypeInterner.pointer(pt.getType(), false, false, false);
 						}
 					}
 				}
@@ -457,7 +455,7 @@ public class SemanticUtil {
 				return result;
 			if (!(t instanceof ITypeContainer))
 				return null;
-			containerType = (ITypeContainer) t;
+			containerType = (ITypeContainer) newType;
 		}
 	}
 
@@ -582,7 +580,7 @@ public class SemanticUtil {
 			if (baseType instanceof IQualifierType) {
 				IQualifierType qt= (IQualifierType) baseType;
 				if ((cnst && !qt.isConst()) || (vol && !qt.isVolatile())) {
-					return new CPPQualifierType(qt.getType(), cnst || qt.isConst(), vol || qt.isVolatile());
+					return TypeInterner.qualifier(qt.getType(), cnst || qt.isConst(), vol || qt.isVolatile());
 				}
 				return baseType;
 			} else if (baseType instanceof ICPPPointerToMemberType) {
@@ -597,7 +595,7 @@ public class SemanticUtil {
 				IPointerType pt= (IPointerType) baseType;
 				if ((cnst && !pt.isConst()) || (vol && !pt.isVolatile())
 						|| (restrict && !pt.isRestrict())) {
-					return new CPPPointerType(pt.getType(),
+					return TypeInterner.pointer(pt.getType(),
 							cnst || pt.isConst(), vol || pt.isVolatile(), restrict || pt.isRestrict());
 				}
 				return baseType;
@@ -615,7 +613,7 @@ public class SemanticUtil {
 				return null;
 			}
 
-			return new CPPQualifierType(baseType, cnst, vol);
+			return TypeInterner.qualifier(baseType, cnst, vol);
 		}
 		return baseType;
 	}
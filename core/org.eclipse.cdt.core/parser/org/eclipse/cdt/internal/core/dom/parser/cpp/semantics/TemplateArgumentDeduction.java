@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2013 Wind River Systems, Inc. and others.
+ * Copyright (c) 2009, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -63,7 +63,6 @@ import org.eclipse.cdt.internal.core.dom.parser.ITypeContainer;
 import org.eclipse.cdt.internal.core.dom.parser.Value;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPBasicType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPPointerToMemberType;
-import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPPointerType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPReferenceType;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPTemplateNonTypeArgument;
 import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPTemplateParameterMap;
@@ -672,9 +671,9 @@ public class TemplateArgumentDeduction {
 		IType result = type;
 		if (!parameterIsAReferenceType) {
 			if (type instanceof IArrayType) {
-				result = new CPPPointerType(((IArrayType) type).getType());
+				result = TypeInterner.pointer(((IArrayType) type).getType());
 			} else if (type instanceof IFunctionType) {
-				result = new CPPPointerType(type);
+				result = TypeInterner.pointer(type);
 			} else {
 				result = SemanticUtil.getNestedType(type, TDEF | ALLCVQ );
 			}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.dom.parser.cpp.semantics;
+
+import java.lang.ref.WeakReference;
+
+import org.eclipse.cdt.core.dom.ast.IType;
+import org.eclipse.cdt.internal.core.dom.parser.ITypeContainer;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPPointerType;
+import org.eclipse.cdt.internal.core.dom.parser.cpp.CPPQualifierType;
+
+/**
+ * Shares the pointer and qualifier types composed during overload resolution and template
+ * argument deduction. A type is shared if it wraps the identical nested type with the same
+ * qualifiers, such that composing the same type again does not allocate a new object and
+ * comparing it with the shared one succeeds by reference comparison.
+ * <p>
+ * The types are kept per thread in a table of fixed size with weak references, a type is shared
+ * only as long as it is used elsewhere. The shared types must not be modified, a modified copy
+ * has to be obtained via {@link IType#clone()}.
+ */
+public final class TypeInterner {
+	private static final int TABLE_SIZE = 1024;
+
+	// Kinds of the interned types, combined with the qualifiers.
+	private static final int POINTER = 0;
+	private static final int QUALIFIER = 8;
+
+	private static final int CONST = 1;
+	private static final int VOLATILE = 2;
+	private static final int RESTRICT = 4;
+
+	private static volatile boolean sEnabled = true;
+
+	private static final ThreadLocal<Entry[]> sTable = new ThreadLocal<Entry[]>() {
+		@Override
+		protected Entry[] initialValue() {
+			return new Entry[TABLE_SIZE];
+		}
+	};
+
+	// Does not reference the nested type, such that the table keeps only types in use alive.
+	private static final class Entry extends WeakReference<ITypeContainer> {
+		final int fKind;
+
+		Entry(ITypeContainer type, int kind) {
+			super(type);
+			fKind= kind;
+		}
+	}
+
+	private TypeInterner() {
+	}
+
+	/**
+	 * Enables or disables the sharing of types, for comparing the costs.
+	 */
+	public static void setEnabled(boolean enabled) {
+		sEnabled= enabled;
+	}
+
+	/**
+	 * Returns a pointer to the given type.
+	 */
+	public static CPPPointerType pointer(IType type) {
+		return pointer(type, false, false, false);
+	}
+
+	/**
+	 * Returns a pointer to the given type with the given qualifiers.
+	 */
+	public static CPPPointerType pointer(IType type, boolean isConst, boolean isVolatile,
+			boolean isRestrict) {
+		if (!sEnabled || type == null)
+			return new CPPPointerType(type, isConst, isVolatile, isRestrict);
+
+		final int kind= POINTER | qualifiers(isConst, isVolatile, isRestrict);
+		final Entry[] table= sTable.get();
+		final int slot= slot(type, kind);
+		CPPPointerType result= (CPPPointerType) get(table[slot], type, kind);
+		if (result == null) {
+			result= new CPPPointerType(type, isConst, isVolatile, isRestrict);
+			table[slot]= new Entry(result, kind);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the given type with the given qualifiers.
+	 */
+	public static CPPQualifierType qualifier(IType type, boolean isConst, boolean isVolatile) {
+		if (!sEnabled || type == null)
+			return new CPPQualifierType(type, isConst, isVolatile);
+
+		final int kind= QUALIFIER | qualifiers(isConst, isVolatile, false);
+		final Entry[] table= sTable.get();
+		final int slot= slot(type, kind);
+		CPPQualifierType result= (CPPQualifierType) get(table[slot], type, kind);
+		if (result == null) {
+			result= new CPPQualifierType(type, isConst, isVolatile);
+			table[slot]= new Entry(result, kind);
+		}
+		return result;
+	}
+
+	private static ITypeContainer get(Entry entry, IType nested, int kind) {
+		if (entry == null || entry.fKind != kind)
+			return null;
+		final ITypeContainer type= entry.get();
+		return type != null && type.getType() == nested ? type : null;
+	}
+
+	private static int qualifiers(boolean isConst, boolean isVolatile, boolean isRestrict) {
+		return (isConst ? CONST : 0) | (isVolatile ? VOLATILE : 0) | (isRestrict ? RESTRICT : 0);
+	}
+
+	private static int slot(IType nested, int kind) {
+		int h= System.identityHashCode(nested) * 31 + kind;
+		h ^= (h >>> 16);
+		return h & (TABLE_SIZE - 1);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2012 Wind River Systems, Inc. and others.
+ * Copyright (c) 2006, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -24,6 +24,15 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 
 import org.eclipse.cdt.core.CCorePlugin;
@@ -51,6 +60,7 @@ import org.eclipse.cdt.internal.core.index.composite.cpp.CPPCompositesFactory;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubProgressMonitor;
 
 public class CIndex implements IIndex {
@@ -60,6 +70,15 @@ public class CIndex implements IIndex {
 	 */
 	private static final boolean SPECIALCASE_SINGLES = true;
 
+	/**
+	 * System property for the number of threads querying the fragments of an index concurrently,
+	 * a value of one makes the fragments be queried one after the other.
+	 */
+	public static final String QUERY_THREADS_PROPERTY = "org.eclipse.cdt.core.parser.pdom.queryThreads"; //$NON-NLS-1$
+	private static final int MAX_DEFAULT_QUERY_THREADS = 4;
+	private static final long CANCELLATION_POLL_MILLIS = 100;
+	private static ExecutorService sQueryExecutor;
+
 	private final IIndexFragment[] fFragments;
 	private int fReadLock;
 	private ICompositesFactory cppCF, cCF, fCF;
@@ -100,7 +119,7 @@ public class CIndex implements IIndex {
 	}
 
 	@Override
-	public IIndexBinding[] findBindings(Pattern[] patterns, boolean isFullyQualified, IndexFilter filter,
+	public IIndexBinding[] findBindings(final Pattern[] patterns, final boolean isFullyQualified, IndexFilter filter,
 			IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindings(patterns, isFullyQualified, filter, monitor);
@@ -109,18 +128,13 @@ public class CIndex implements IIndex {
 			ILinkage[] linkages = Linkage.getIndexerLinkages();
 			for (ILinkage linkage : linkages) {
 				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fFragments.length][];
-					for (int i = 0; i < fFragments.length; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindings(patterns, isFullyQualified,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+					final IndexFilter linkageFilter= retargetFilter(linkage, filter);
+					IIndexFragmentBinding[][] fragmentBindings= queryFragments(new BindingQuery() {
+						@Override
+						IBinding[] find(IIndexFragment fragment, IProgressMonitor m) throws CoreException {
+							return fragment.findBindings(patterns, isFullyQualified, linkageFilter, m);
 						}
-					}
+					}, new IIndexFragmentBinding[fFragments.length][], monitor);
 					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
 					result.add(factory.getCompositeBindings(fragmentBindings));
 				}
@@ -130,7 +144,7 @@ public class CIndex implements IIndex {
 	}
 
 	@Override
-	public IIndexBinding[] findMacroContainers(Pattern pattern, IndexFilter filter, IProgressMonitor monitor)
+	public IIndexBinding[] findMacroContainers(final Pattern pattern, IndexFilter filter, IProgressMonitor monitor)
 			throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			 return fFragments[0].findMacroContainers(pattern, filter, monitor);
@@ -139,18 +153,13 @@ public class CIndex implements IIndex {
 			ILinkage[] linkages = Linkage.getIndexerLinkages();
 			for (ILinkage linkage : linkages) {
 				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fFragments.length][];
-					for (int i = 0; i < fFragments.length; i++) {
-						try {
-							IBinding[] part = fFragments[i].findMacroContainers(pattern,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+					final IndexFilter linkageFilter= retargetFilter(linkage, filter);
+					IIndexFragmentBinding[][] fragmentBindings= queryFragments(new BindingQuery() {
+						@Override
+						IBinding[] find(IIndexFragment fragment, IProgressMonitor m) throws CoreException {
+							return fragment.findMacroContainers(pattern, linkageFilter, m);
 						}
-					}
+					}, new IIndexFragmentBinding[fFragments.length][], monitor);
 					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
 					result.add(factory.getCompositeBindings(fragmentBindings));
 				}
@@ -160,7 +169,7 @@ public class CIndex implements IIndex {
 	}
 
 	@Override
-	public IIndexName[] findNames(IBinding binding, int flags) throws CoreException {
+	public IIndexName[] findNames(IBinding binding, final int flags) throws CoreException {
 		ArrayList<IIndexFragmentName> result= new ArrayList<>();
 		if (binding instanceof ICPPUsingDeclaration) {
 			IBinding[] bindings= ((ICPPUsingDeclaration) binding).getDelegates();
@@ -183,21 +192,27 @@ public class CIndex implements IIndex {
 		// Read only fragments can be superseded by what the indexer writes into
 		// a writable fragment. Therefore names from a read-only fragment are
 		// ignored if there is a match in a writable fragment.
+		final IBinding target= binding;
+		final IIndexFragmentName[][] fragmentNames= queryFragments(new FragmentQuery<IIndexFragmentName>() {
+			@Override
+			public IIndexFragmentName[] query(IIndexFragment fragment, IProgressMonitor monitor)
+					throws CoreException {
+				return fragment.findNames(target, flags);
+			}
+		}, new IIndexFragmentName[fFragments.length][], null);
 		HashSet<NameKey> encounteredNames = new HashSet<>();
-		for (IIndexFragment fragment : fFragments) {
-			if (fragment instanceof IWritableIndexFragment) {
-				final IIndexFragmentName[] names = fragment.findNames(binding, flags);
-				for (IIndexFragmentName name : names) {
+		for (int i = 0; i < fFragments.length; i++) {
+			if (fFragments[i] instanceof IWritableIndexFragment) {
+				for (IIndexFragmentName name : fragmentNames[i]) {
 					if (encounteredNames.add(new NameKey(name, true))) {
 						result.add(name);
 					}
 				}
 			}
 		}
-		for (IIndexFragment fragment : fFragments) {
-			if (!(fragment instanceof IWritableIndexFragment)) {
-				final IIndexFragmentName[] names = fragment.findNames(binding, flags);
-				for (IIndexFragmentName name : names) {
+		for (int i = 0; i < fFragments.length; i++) {
+			if (!(fFragments[i] instanceof IWritableIndexFragment)) {
+				for (IIndexFragmentName name : fragmentNames[i]) {
 					if (encounteredNames.add(new NameKey(name, false))) {
 						result.add(name);
 					}
@@ -439,7 +454,7 @@ public class CIndex implements IIndex {
 	}
 
 	@Override
-	public IIndexBinding[] findBindings(char[][] names, IndexFilter filter, IProgressMonitor monitor)
+	public IIndexBinding[] findBindings(final char[][] names, IndexFilter filter, IProgressMonitor monitor)
 			throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			try {
@@ -457,18 +472,14 @@ public class CIndex implements IIndex {
 			monitor.beginTask(Messages.CIndex_FindBindingsTask_label, fFragments.length * linkages.length);
 			for (ILinkage linkage : linkages) {
 				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fFragments.length][];
-					for (int i = 0; i < fFragments.length; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindings(names,
-									retargetFilter(linkage, filter), new SubProgressMonitor(monitor, 1));
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+					final IndexFilter linkageFilter= retargetFilter(linkage, filter);
+					IIndexFragmentBinding[][] fragmentBindings= queryFragments(new BindingQuery() {
+						@Override
+						IBinding[] find(IIndexFragment fragment, IProgressMonitor m) throws CoreException {
+							return fragment.findBindings(names, linkageFilter, m);
 						}
-					}
+					}, new IIndexFragmentBinding[fFragments.length][], monitor);
+					monitor.worked(fFragments.length);
 					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
 					result.add(factory.getCompositeBindings(fragmentBindings));
 				}
@@ -522,6 +533,173 @@ public class CIndex implements IIndex {
 		return result;
 	}
 
+	/**
+	 * Runs the query for every fragment and stores the results in the given array, in the order
+	 * of the fragments. With more than one fragment the fragments are queried concurrently, the
+	 * calling thread queries the first one. The queries run under the read-lock held by the
+	 * caller, the worker threads must not acquire it again since a pending writer may block new
+	 * readers. Therefore the method does not return before all the queries have finished, also when
+	 * it fails. A canceled monitor or a failing query cancels the queries still running.
+	 */
+	private <T> T[][] queryFragments(final FragmentQuery<T> query, final T[][] results,
+			final IProgressMonitor monitor) throws CoreException {
+		final ExecutorService executor= fFragments.length > 1 ? getQueryExecutor() : null;
+		if (executor == null) {
+			for (int i = 0; i < fFragments.length; i++) {
+				results[i]= query.query(fFragments[i], monitor);
+			}
+			return results;
+		}
+
+		final CancellationMonitor cancellation= new CancellationMonitor(monitor);
+		final List<Future<T[]>> futures= new ArrayList<>(fFragments.length - 1);
+		try {
+			for (int i = 1; i < fFragments.length; i++) {
+				final IIndexFragment fragment= fFragments[i];
+				futures.add(executor.submit(new Callable<T[]>() {
+					@Override
+					public T[] call() throws CoreException {
+						if (cancellation.isCanceled())
+							return null;
+						return query.query(fragment, cancellation);
+					}
+				}));
+			}
+			results[0]= query.query(fFragments[0], monitor);
+			for (int i = 1; i < fFragments.length; i++) {
+				results[i]= await(futures.get(i - 1), monitor);
+			}
+			return results;
+		} finally {
+			// Queries not started yet are skipped, the running ones may stop early.
+			cancellation.setCanceled(true);
+			boolean interrupted= false;
+			for (Future<T[]> future : futures) {
+				interrupted |= awaitCompletion(future);
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the future is done, ignoring its result.
+	 * @return whether the thread was interrupted while waiting.
+	 */
+	private static boolean awaitCompletion(Future<?> future) {
+		boolean interrupted= false;
+		while (true) {
+			try {
+				future.get();
+				return interrupted;
+			} catch (InterruptedException e) {
+				interrupted= true;
+			} catch (ExecutionException | CancellationException e) {
+				return interrupted;
+			}
+		}
+	}
+
+	private static <T> T await(Future<T> future, IProgressMonitor monitor) throws CoreException {
+		while (true) {
+			if (monitor != null && monitor.isCanceled())
+				throw new OperationCanceledException();
+			try {
+				return future.get(CANCELLATION_POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// Check the monitor again.
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			} catch (ExecutionException e) {
+				final Throwable cause= e.getCause();
+				if (cause instanceof CoreException)
+					throw (CoreException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new CoreException(CCorePlugin.createStatus(cause.getMessage(), cause));
+			}
+		}
+	}
+
+	/**
+	 * Returns the executor shared by all indexes for querying fragments concurrently, or
+	 * <code>null</code> if the fragments are to be queried one after the other.
+	 */
+	private static synchronized ExecutorService getQueryExecutor() {
+		if (sQueryExecutor == null) {
+			final int threads= Integer.getInteger(QUERY_THREADS_PROPERTY,
+					Math.min(MAX_DEFAULT_QUERY_THREADS, Runtime.getRuntime().availableProcessors()));
+			if (threads <= 1)
+				return null;
+			sQueryExecutor= Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private int fCount;
+
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					final Thread thread= new Thread(r, "Index Query " + (++fCount)); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sQueryExecutor;
+	}
+
+	/**
+	 * A query of a single fragment, the query may be run by a worker thread.
+	 */
+	private interface FragmentQuery<T> {
+		T[] query(IIndexFragment fragment, IProgressMonitor monitor) throws CoreException;
+	}
+
+	/**
+	 * A query for bindings, the bindings of a fragment failing with an exception are logged
+	 * and omitted from the result.
+	 */
+	private abstract static class BindingQuery implements FragmentQuery<IIndexFragmentBinding> {
+		@Override
+		public final IIndexFragmentBinding[] query(IIndexFragment fragment, IProgressMonitor monitor) {
+			try {
+				IBinding[] part = find(fragment, monitor);
+				IIndexFragmentBinding[] result = new IIndexFragmentBinding[part.length];
+				System.arraycopy(part, 0, result, 0, part.length);
+				return result;
+			} catch (CoreException e) {
+				CCorePlugin.log(e);
+				return IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+			}
+		}
+
+		abstract IBinding[] find(IIndexFragment fragment, IProgressMonitor monitor) throws CoreException;
+	}
+
+	/**
+	 * Passes the cancellation of a monitor to the worker threads, progress monitors are not
+	 * thread-safe such that progress is not reported.
+	 */
+	private static final class CancellationMonitor extends NullProgressMonitor {
+		private final IProgressMonitor fMonitor;
+		private volatile boolean fCanceled;
+
+		CancellationMonitor(IProgressMonitor monitor) {
+			fMonitor= monitor;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return fCanceled || (fMonitor != null && fMonitor.isCanceled());
+		}
+
+		@Override
+		public void setCanceled(boolean canceled) {
+			fCanceled= canceled;
+		}
+	}
+
 	public IIndexFragment[] getFragments() {
 		return fFragments;
 	}
@@ -576,7 +754,7 @@ public class CIndex implements IIndex {
 	}
 
 	@Override
-	public IIndexBinding[] findBindingsForPrefix(char[] prefix, boolean filescope, IndexFilter filter,
+	public IIndexBinding[] findBindingsForPrefix(final char[] prefix, final boolean filescope, IndexFilter filter,
 			IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindingsForPrefix(prefix, filescope, filter, monitor);
@@ -585,18 +763,13 @@ public class CIndex implements IIndex {
 			ILinkage[] linkages = Linkage.getIndexerLinkages();
 			for (ILinkage linkage : linkages) {
 				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fFragments.length][];
-					for (int i = 0; i < fFragments.length; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindingsForPrefix(prefix, filescope,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+					final IndexFilter linkageFilter= retargetFilter(linkage, filter);
+					IIndexFragmentBinding[][] fragmentBindings= queryFragments(new BindingQuery() {
+						@Override
+						IBinding[] find(IIndexFragment fragment, IProgressMonitor m) throws CoreException {
+							return fragment.findBindingsForPrefix(prefix, filescope, linkageFilter, m);
 						}
-					}
+					}, new IIndexFragmentBinding[fFragments.length][], monitor);
 					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
 					result.add(factory.getCompositeBindings(fragmentBindings));
 				}
@@ -606,7 +779,7 @@ public class CIndex implements IIndex {
 	}
 
 	@Override
-	public IIndexBinding[] findBindingsForContentAssist(char[] prefix, boolean filescope,
+	public IIndexBinding[] findBindingsForContentAssist(final char[] prefix, final boolean filescope,
 			IndexFilter filter, IProgressMonitor monitor) throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindingsForContentAssist(prefix, filescope, filter, monitor);
@@ -615,18 +788,13 @@ public class CIndex implements IIndex {
 			ILinkage[] linkages = Linkage.getIndexerLinkages();
 			for (ILinkage linkage : linkages) {
 				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fFragments.length][];
-					for (int i = 0; i < fFragments.length; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindingsForContentAssist(prefix,
-									filescope, retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+					final IndexFilter linkageFilter= retargetFilter(linkage, filter);
+					IIndexFragmentBinding[][] fragmentBindings= queryFragments(new BindingQuery() {
+						@Override
+						IBinding[] find(IIndexFragment fragment, IProgressMonitor m) throws CoreException {
+							return fragment.findBindingsForContentAssist(prefix, filescope, linkageFilter, m);
 						}
-					}
+					}, new IIndexFragmentBinding[fFragments.length][], monitor);
 					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
 					result.add(factory.getCompositeBindings(fragmentBindings));
 				}
@@ -636,7 +804,7 @@ public class CIndex implements IIndex {
 	}
 
 	@Override
-	public IIndexBinding[] findBindings(char[] name, boolean filescope, IndexFilter filter, IProgressMonitor monitor)
+	public IIndexBinding[] findBindings(final char[] name, final boolean filescope, IndexFilter filter, IProgressMonitor monitor)
 			throws CoreException {
 		if (SPECIALCASE_SINGLES && fFragments.length == 1) {
 			return fFragments[0].findBindings(name, filescope, filter, monitor);
@@ -645,18 +813,13 @@ public class CIndex implements IIndex {
 			ILinkage[] linkages = Linkage.getIndexerLinkages();
 			for (ILinkage linkage : linkages) {
 				if (filter.acceptLinkage(linkage)) {
-					IIndexFragmentBinding[][] fragmentBindings = new IIndexFragmentBinding[fFragments.length][];
-					for (int i = 0; i < fFragments.length; i++) {
-						try {
-							IBinding[] part = fFragments[i].findBindings(name, filescope,
-									retargetFilter(linkage, filter), monitor);
-							fragmentBindings[i] = new IIndexFragmentBinding[part.length];
-							System.arraycopy(part, 0, fragmentBindings[i], 0, part.length);
-						} catch (CoreException e) {
-							CCorePlugin.log(e);
-							fragmentBindings[i] = IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+					final IndexFilter linkageFilter= retargetFilter(linkage, filter);
+					IIndexFragmentBinding[][] fragmentBindings= queryFragments(new BindingQuery() {
+						@Override
+						IBinding[] find(IIndexFragment fragment, IProgressMonitor m) throws CoreException {
+							return fragment.findBindings(name, filescope, linkageFilter, m);
 						}
-					}
+					}, new IIndexFragmentBinding[fFragments.length][], monitor);
 					ICompositesFactory factory = getCompositesFactory(linkage.getLinkageID());
 					result.add(factory.getCompositeBindings(fragmentBindings));
 				}
@@ -726,6 +889,14 @@ public class CIndex implements IIndex {
 		return result;
 	}
 
+	public long getCacheEvictions() {
+		long result= 0;
+		for (IIndexFragment fragment : fFragments) {
+			result += fragment.getCacheEvictions();
+		}
+		return result;
+	}
+
 	public void resetCacheCounters() {
 		for (IIndexFragment fragment : fFragments) {
 			fragment.resetCacheCounters();
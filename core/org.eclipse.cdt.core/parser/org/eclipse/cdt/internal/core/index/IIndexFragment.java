@@ -311,6 +311,11 @@ public interface IIndexFragment {
 	 */
 	long getCacheMisses();
 
+	/**
+	 * Returns the number of chunks evicted from the cache since last reset of counters.
+	 */
+	long getCacheEvictions();
+
 	/**
 	 * Creates an empty file set for this fragment
 	 * @since 5.0
@@ -154,6 +154,11 @@ public interface IWritableIndex extends IIndex {
 	 */
 	long getCacheMisses();
 
+	/**
+	 * Returns the number of chunks evicted from the cache since last reset of counters.
+	 */
+	long getCacheEvictions();
+
 	/**
 	 * Returns the primary writable fragment, or <code>null</code> if there is 
 	 * no writable fragment.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 QNX Software Systems and others.
+ * Copyright (c) 2005, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -50,6 +50,19 @@ import org.eclipse.core.runtime.Path;
  * Code reader factory, that fakes code readers for header files already stored in the index.
  */
 public final class IndexBasedFileContentProvider extends InternalFileContentProvider {
+	/**
+	 * Coordinates parsers running concurrently, such that a header that is not yet stored in the
+	 * index is parsed by one of them, only.
+	 */
+	public interface IHeaderClaims {
+		/**
+		 * Claims the header for the parser using this file content provider. Returns
+		 * <code>false</code> when another parser has claimed the header, the caller then
+		 * skips the header and abandons the translation unit.
+		 */
+		boolean claim(IIndexFileLocation ifl);
+	}
+
 	private static final String GAP = "__gap__"; //$NON-NLS-1$
 
 	private final IIndex fIndex;
@@ -64,6 +77,7 @@ public final class IndexBasedFileContentProvider extends InternalFileContentProv
 	private Set<String> fHeadersToIndexAllVersions = Collections.emptySet();
 
 	private boolean fIndexAllHeaderVersions;
+	private IHeaderClaims fHeaderClaims;
 
 	public IndexBasedFileContentProvider(IIndex index,
 			ASTFilePathResolver pathResolver, int linkage, IncludeFileContentProvider fallbackFactory) {
@@ -90,6 +104,14 @@ public final class IndexBasedFileContentProvider extends InternalFileContentProv
 	public void setLinkage(int linkageID) {
 		fLinkage= linkageID;
 	}
+
+	/**
+	 * Sets the claims for the headers parsed by this provider, or <code>null</code> if the
+	 * parser does not run concurrently with other ones.
+	 */
+	public void setHeaderClaims(IHeaderClaims claims) {
+		fHeaderClaims= claims;
+	}
 	
 	@Override
 	public void resetForTranslationUnit() {
@@ -152,6 +174,12 @@ public final class IndexBasedFileContentProvider extends InternalFileContentProv
 			return new InternalFileContent(path, InclusionKind.SKIP_FILE);
 		}
 
+		if (fHeaderClaims != null && !fHeaderClaims.claim(ifl)) {
+			// The header is parsed by another parser, the translation unit is parsed again
+			// once the header is stored in the index.
+			return new InternalFileContent(path, InclusionKind.SKIP_FILE);
+		}
+
 		if (fFallBackFactory != null) {
 			InternalFileContent ifc= getContentForInclusion(ifl, path);
 			if (ifc != null)
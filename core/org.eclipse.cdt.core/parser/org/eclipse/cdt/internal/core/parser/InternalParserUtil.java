@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2011 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,7 @@ import org.eclipse.cdt.core.parser.FileContent;
 import org.eclipse.cdt.core.parser.ParserFactory;
 import org.eclipse.cdt.internal.core.parser.scanner.AbstractCharArray;
 import org.eclipse.cdt.internal.core.parser.scanner.FileCharArray;
+import org.eclipse.cdt.internal.core.parser.scanner.FileContentCache;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContent;
 import org.eclipse.cdt.internal.core.resources.PathCanonicalizationStrategy;
 import org.eclipse.cdt.utils.UNCPathConverter;
@@ -187,7 +188,7 @@ public class InternalParserUtil extends ParserFactory {
 
 	/**
 	 * Creates a code reader for an external location, normalizing path to 
-	 * canonical path. 
+	 * canonical path. The content of the file is shared via the {@link FileContentCache}.
 	 */
 	public static InternalFileContent createExternalFileContent(final String externalLocation, String encoding) {
 		long fileReadTime = System.currentTimeMillis();
@@ -212,6 +213,11 @@ public class InternalParserUtil extends ParserFactory {
 		if (includeFile != null && includeFile.isFile()) {
 			long timestamp = includeFile.lastModified();
 			long fileSize = includeFile.length();
+			FileContentCache cache = FileContentCache.getSharedInstance();
+			AbstractCharArray chars = cache.get(path, timestamp, fileSize, encoding);
+			if (chars != null) {
+				return new InternalFileContent(path, chars, timestamp, fileSize, fileReadTime);
+			}
 			FileInputStream in;
 			try {
 				in = new FileInputStream(includeFile);
@@ -220,7 +226,11 @@ public class InternalParserUtil extends ParserFactory {
 				return null;
 			}
 			try {
-				return createFileContent(path, localPath, encoding, in, timestamp, fileSize, fileReadTime);
+				InternalFileContent content = createFileContent(path, localPath, encoding, in, timestamp, fileSize, fileReadTime);
+				if (content != null) {
+					cache.put(path, timestamp, fileSize, encoding, content.getSource());
+				}
+				return content;
 			} finally {
 				try {
 					in.close();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2013 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -261,6 +261,8 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 	private Token fPrefetchedTokens;
     private Token fLastToken;
 
+    private final boolean fMeasurePreprocessingTime;
+
 	private InternalFileContent fRootContent;
 	private boolean fHandledEndOfTranslationUnit;
 
@@ -305,6 +307,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
         fMacroDefinitionParser= new MacroDefinitionParser();
         fMacroExpander= new MacroExpander(this, fMacroDictionary, fLocationMap, fLexOptions);
         fIncludeFileResolutionHeuristics= fFileContentProvider.getIncludeHeuristics();
+        fMeasurePreprocessingTime= fFileContentProvider.getMeasurePreprocessingTime();
 
         String contextPath= fFileContentProvider.getContextPath();
         if (contextPath == null) {
@@ -549,6 +552,19 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
     	fPreIncludedFiles= null;
     }
 
+	/**
+	 * Creates the lexer for an included file, which replays the tokens from the shared
+	 * {@link HeaderTokenCache} when the cache is enabled.
+	 */
+	private Lexer createIncludedFileLexer(AbstractCharArray source) {
+		final Lexer lexer= new Lexer(source, fLexOptions, this, this);
+		final HeaderTokenCache.TokenStream tokens= HeaderTokenCache.getSharedInstance().getTokens(source, fLexOptions);
+		if (tokens != null) {
+			lexer.replay(tokens);
+		}
+		return lexer;
+	}
+
 	private char[] createSyntheticFile(String[] files) {
 		int totalLength= 0;
     	final char[] instruction= "#include <".toCharArray(); //$NON-NLS-1$
@@ -610,6 +626,18 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
      * and also without splitting the shift-right operator.
      */
     private Token fetchToken() throws OffsetLimitReachedException {
+    	if (fMeasurePreprocessingTime) {
+    		final long start= System.nanoTime();
+    		try {
+    			return doFetchToken();
+    		} finally {
+    			fLocationMap.addPreprocessingTime(System.nanoTime() - start);
+    		}
+    	}
+    	return doFetchToken();
+    }
+
+    private Token doFetchToken() throws OffsetLimitReachedException {
     	if (fIsFirstFetchToken) {
     		beforeFirstFetchToken();
     		fIsFirstFetchToken= false;
@@ -631,6 +659,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 		final int endOffset= fLocationMap.getSequenceNumberForOffset(t.getEndOffset());
 		t.setOffset(offset, endOffset);
 		t.setNext(null);
+		fLocationMap.countToken();
     	return t;
     }
 
@@ -1541,8 +1570,7 @@ public class CPreprocessor implements ILexerLog, IScanner, IAdaptable {
 			if (source != null) {
 				ILocationCtx ctx= fLocationMap.pushInclusion(poundOffset, nameOffsets[0], nameOffsets[1],
 						condEndOffset, source, path, headerName, userInclude, isHeuristic, fi.isSource());
-				ScannerContext fctx= new ScannerContext(ctx, fCurrentContext,
-						new Lexer(source, fLexOptions, this, this));
+				ScannerContext fctx= new ScannerContext(ctx, fCurrentContext, createIncludedFileLexer(source));
 				fctx.setFoundOnPath(fi.getFoundOnPath(), includeDirective);
 				detectIncludeGuard(path, source, fctx);
 				fCurrentContext= fctx;
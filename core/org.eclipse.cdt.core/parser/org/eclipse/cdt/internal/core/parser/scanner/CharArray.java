@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 Wind River Systems, Inc. and others.
+ * Copyright (c) 2009, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,11 +12,12 @@
 package org.eclipse.cdt.internal.core.parser.scanner;
 
 /**
- * Wrapper around char[] to implement {@link AbstractCharArray}.
+ * Wrapper around char[] to implement {@link AbstractCharArray}. Instances may be shared between
+ * threads, see {@link FileContentCache}.
  */
 public final class CharArray extends AbstractCharArray {
 	private final char[] fArray;
-	private long hash64;
+	private volatile long hash64;
 
 	public CharArray(char[] array) {
 		fArray= array;
@@ -62,11 +63,12 @@ public final class CharArray extends AbstractCharArray {
 
 	@Override
 	public long getContentsHash() {
-		if (hash64 == 0 && fArray.length != 0) {
+		long hash = hash64;
+		if (hash == 0 && fArray.length != 0) {
 			StreamHasher hasher = new StreamHasher();
 			hasher.addChunk(fArray);
-			hash64 = hasher.computeHash();
+			hash64 = hash = hasher.computeHash();
 		}
-		return hash64;
+		return hash;
 	}
 }
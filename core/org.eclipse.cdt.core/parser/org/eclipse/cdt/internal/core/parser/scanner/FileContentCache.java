@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.scanner;
+
+/**
+ * Caches the decoded content of files outside of the workspace, such that a system header that
+ * is read for many translation units is read and decoded only once. Content is looked up by the
+ * path, timestamp and size of the file and the encoding it was decoded with, outdated versions of
+ * a file are evicted like content that is no longer used. Only content held in a single
+ * {@link CharArray} is cached.
+ * <p>
+ * The cache is shared by all content providers, its size is limited by the total number of
+ * characters. Because a change of a file that keeps its timestamp and size is not noticed, the
+ * cache is disabled unless a size is specified with {@link #SIZE_PROPERTY} or
+ * {@link #setMaxSize(long)}.
+ */
+public final class FileContentCache extends SizeLimitedCache<FileContentCache.Key, CharArray> {
+	/**
+	 * System property for the maximum number of characters kept by the shared cache.
+	 */
+	public static final String SIZE_PROPERTY = "org.eclipse.cdt.core.parser.file.content.cache.size"; //$NON-NLS-1$
+
+	private static final FileContentCache sSharedInstance= new FileContentCache(Long.getLong(SIZE_PROPERTY, 0));
+
+	static final class Key {
+		final String fPath;
+		final long fTimestamp;
+		final long fFileSize;
+		final String fEncoding;
+
+		Key(String path, long timestamp, long fileSize, String encoding) {
+			fPath= path;
+			fTimestamp= timestamp;
+			fFileSize= fileSize;
+			fEncoding= encoding;
+		}
+
+		@Override
+		public int hashCode() {
+			return fPath.hashCode() + 31 * (int) (fTimestamp ^ fFileSize);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key other= (Key) obj;
+			return fTimestamp == other.fTimestamp && fFileSize == other.fFileSize
+					&& fPath.equals(other.fPath) && fEncoding.equals(other.fEncoding);
+		}
+	}
+
+	public static FileContentCache getSharedInstance() {
+		return sSharedInstance;
+	}
+
+	/**
+	 * Creates a cache holding at most the given number of characters.
+	 */
+	public FileContentCache(long maxSize) {
+		super(maxSize);
+	}
+
+	@Override
+	protected long getSize(CharArray content) {
+		return content.getLength();
+	}
+
+	/**
+	 * Returns the cached content of a file, or <code>null</code> if the file is not cached with
+	 * the given timestamp, size and encoding.
+	 */
+	public AbstractCharArray get(String path, long timestamp, long fileSize, String encoding) {
+		if (!isEnabled() || encoding == null)
+			return null;
+		return get(new Key(path, timestamp, fileSize, encoding));
+	}
+
+	/**
+	 * Caches the content of a file read with the given timestamp, size and encoding. Content that
+	 * is not held in a {@link CharArray} is ignored.
+	 */
+	public void put(String path, long timestamp, long fileSize, String encoding, AbstractCharArray content) {
+		if (!isEnabled() || !(content instanceof CharArray) || content.hasError() || encoding == null)
+			return;
+		put(new Key(path, timestamp, fileSize, encoding), (CharArray) content);
+	}
+}
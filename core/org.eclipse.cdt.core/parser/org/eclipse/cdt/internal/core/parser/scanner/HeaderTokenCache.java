@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.scanner;
+
+import java.util.Arrays;
+
+import org.eclipse.cdt.core.parser.IToken;
+import org.eclipse.cdt.core.parser.OffsetLimitReachedException;
+import org.eclipse.cdt.internal.core.parser.scanner.Lexer.LexerOptions;
+
+/**
+ * Caches the preprocessor tokens of included files, such that a header that is included by many
+ * translation units is lexed only once. The tokens of a file do not depend on the macros defined
+ * when it is included, they are keyed by the hash of the file content and the lexer options.
+ * A lexer replays the cached tokens instead of computing them from its input, see
+ * {@link Lexer#replay(TokenStream)}.
+ * <p>
+ * The cache is shared by all preprocessors, its size is limited by the total number of tokens.
+ * It is disabled unless a size is specified with {@link #SIZE_PROPERTY} or
+ * {@link #setMaxSize(long)}.
+ */
+public final class HeaderTokenCache extends SizeLimitedCache<HeaderTokenCache.Key, HeaderTokenCache.TokenStream> {
+	/**
+	 * System property for the maximum number of tokens kept by the shared cache.
+	 */
+	public static final String SIZE_PROPERTY = "org.eclipse.cdt.core.parser.scanner.header.token.cache.size"; //$NON-NLS-1$
+
+	private static final HeaderTokenCache sSharedInstance= new HeaderTokenCache(Long.getLong(SIZE_PROPERTY, 0));
+
+	private static final byte PLAIN_TOKEN = 0;
+	private static final byte TOKEN_WITH_IMAGE = 1;
+	private static final byte DIGRAPH_TOKEN = 2;
+	private static final int LINE_COMMENT = -1;
+	private static final int BLOCK_COMMENT = -2;
+
+	/**
+	 * The tokens of a file as computed by the lexer, together with the comments and problems
+	 * it has reported. Instances are immutable.
+	 */
+	static final class TokenStream {
+		private final int fCount;
+		private final byte[] fClasses;
+		private final int[] fKinds;
+		private final int[] fOffsets;
+		private final int[] fEndOffsets;
+		private final char[][] fImages;
+
+		// Comments and problems in the order they were reported, with the index of the token
+		// that was being lexed.
+		private final int fEventCount;
+		private final int[] fEventTokens;
+		private final int[] fEventKinds;
+		private final int[] fEventOffsets;
+		private final int[] fEventEndOffsets;
+		private final char[][] fEventInfos;
+
+		TokenStream(Recorder recorder) {
+			fCount= recorder.fCount;
+			fClasses= Arrays.copyOf(recorder.fClasses, fCount);
+			fKinds= Arrays.copyOf(recorder.fKinds, fCount);
+			fOffsets= Arrays.copyOf(recorder.fOffsets, fCount);
+			fEndOffsets= Arrays.copyOf(recorder.fEndOffsets, fCount);
+			fImages= Arrays.copyOf(recorder.fImages, fCount);
+			fEventCount= recorder.fEventCount;
+			fEventTokens= Arrays.copyOf(recorder.fEventTokens, fEventCount);
+			fEventKinds= Arrays.copyOf(recorder.fEventKinds, fEventCount);
+			fEventOffsets= Arrays.copyOf(recorder.fEventOffsets, fEventCount);
+			fEventEndOffsets= Arrays.copyOf(recorder.fEventEndOffsets, fEventCount);
+			fEventInfos= Arrays.copyOf(recorder.fEventInfos, fEventCount);
+		}
+
+		/**
+		 * Returns the number of tokens, the last one is the end of input.
+		 */
+		int getCount() {
+			return fCount;
+		}
+
+		int getOffset(int index) {
+			return fOffsets[index];
+		}
+
+		int getEndOffset(int index) {
+			return fEndOffsets[index];
+		}
+
+		/**
+		 * Creates the token with the given index. The image of the token is shared with all
+		 * tokens created for the same index.
+		 */
+		Token createToken(int index, Object source) {
+			switch (fClasses[index]) {
+			case TOKEN_WITH_IMAGE:
+				return new TokenWithImage(fKinds[index], source, fOffsets[index], fEndOffsets[index], fImages[index]);
+			case DIGRAPH_TOKEN:
+				return new TokenForDigraph(fKinds[index], source, fOffsets[index], fEndOffsets[index]);
+			default:
+				return new Token(fKinds[index], source, fOffsets[index], fEndOffsets[index]);
+			}
+		}
+
+		/**
+		 * Reports the comments and problems that were detected while lexing the token with the
+		 * given index. The ones of the tokens before it are skipped.
+		 * @param event the index of the first event that has not been reported.
+		 * @return the index of the first event that has not been reported.
+		 */
+		int replayEvents(int token, int event, ILexerLog log, AbstractCharArray input) {
+			while (event < fEventCount && fEventTokens[event] < token) {
+				event++;
+			}
+			for (; event < fEventCount && fEventTokens[event] == token; event++) {
+				final int kind= fEventKinds[event];
+				if (kind == LINE_COMMENT || kind == BLOCK_COMMENT) {
+					log.handleComment(kind == BLOCK_COMMENT, fEventOffsets[event], fEventEndOffsets[event], input);
+				} else {
+					log.handleProblem(kind, fEventInfos[event], fEventOffsets[event], fEventEndOffsets[event]);
+				}
+			}
+			return event;
+		}
+	}
+
+	/**
+	 * Collects the tokens and events while a file is lexed.
+	 */
+	private static final class Recorder implements ILexerLog {
+		int fCount;
+		byte[] fClasses= new byte[256];
+		int[] fKinds= new int[256];
+		int[] fOffsets= new int[256];
+		int[] fEndOffsets= new int[256];
+		char[][] fImages= new char[256][];
+
+		int fEventCount;
+		int[] fEventTokens= new int[16];
+		int[] fEventKinds= new int[16];
+		int[] fEventOffsets= new int[16];
+		int[] fEventEndOffsets= new int[16];
+		char[][] fEventInfos= new char[16][];
+
+		void addToken(Token token) {
+			if (fCount == fKinds.length) {
+				final int length= fCount * 2;
+				fClasses= Arrays.copyOf(fClasses, length);
+				fKinds= Arrays.copyOf(fKinds, length);
+				fOffsets= Arrays.copyOf(fOffsets, length);
+				fEndOffsets= Arrays.copyOf(fEndOffsets, length);
+				fImages= Arrays.copyOf(fImages, length);
+			}
+			if (token instanceof TokenForDigraph) {
+				fClasses[fCount]= DIGRAPH_TOKEN;
+			} else if (token instanceof TokenWithImage) {
+				fClasses[fCount]= TOKEN_WITH_IMAGE;
+				fImages[fCount]= token.getCharImage();
+			} else {
+				fClasses[fCount]= PLAIN_TOKEN;
+			}
+			fKinds[fCount]= token.getType();
+			fOffsets[fCount]= token.getOffset();
+			fEndOffsets[fCount]= token.getEndOffset();
+			fCount++;
+		}
+
+		private void addEvent(int kind, char[] info, int offset, int endOffset) {
+			if (fEventCount == fEventKinds.length) {
+				final int length= fEventCount * 2;
+				fEventTokens= Arrays.copyOf(fEventTokens, length);
+				fEventKinds= Arrays.copyOf(fEventKinds, length);
+				fEventOffsets= Arrays.copyOf(fEventOffsets, length);
+				fEventEndOffsets= Arrays.copyOf(fEventEndOffsets, length);
+				fEventInfos= Arrays.copyOf(fEventInfos, length);
+			}
+			fEventTokens[fEventCount]= fCount;
+			fEventKinds[fEventCount]= kind;
+			fEventOffsets[fEventCount]= offset;
+			fEventEndOffsets[fEventCount]= endOffset;
+			fEventInfos[fEventCount]= info;
+			fEventCount++;
+		}
+
+		@Override
+		public void handleProblem(int problemID, char[] info, int offset, int endOffset) {
+			assert problemID >= 0;
+			addEvent(problemID, info, offset, endOffset);
+		}
+
+		@Override
+		public void handleComment(boolean isBlockComment, int offset, int endOffset, AbstractCharArray input) {
+			addEvent(isBlockComment ? BLOCK_COMMENT : LINE_COMMENT, null, offset, endOffset);
+		}
+	}
+
+	static final class Key {
+		final long fContentsHash;
+		final int fLength;
+		final int fOptions;
+
+		Key(long contentsHash, int length, int options) {
+			fContentsHash= contentsHash;
+			fLength= length;
+			fOptions= options;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (fContentsHash ^ (fContentsHash >>> 32)) + 31 * fLength + fOptions;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key other= (Key) obj;
+			return fContentsHash == other.fContentsHash && fLength == other.fLength
+					&& fOptions == other.fOptions;
+		}
+	}
+
+	public static HeaderTokenCache getSharedInstance() {
+		return sSharedInstance;
+	}
+
+	/**
+	 * Creates a cache holding at most the given number of tokens.
+	 */
+	public HeaderTokenCache(long maxSize) {
+		super(maxSize);
+	}
+
+	@Override
+	protected long getSize(TokenStream tokens) {
+		return tokens.getCount();
+	}
+
+	/**
+	 * Returns the tokens of the given input, lexes and caches them if necessary. Returns
+	 * <code>null</code> if the cache is disabled or the tokens cannot be cached.
+	 */
+	TokenStream getTokens(AbstractCharArray input, LexerOptions options) {
+		if (!isEnabled() || input.hasError())
+			return null;
+		final Key key= new Key(input.getContentsHash(), input.getLength(), getOptionBits(options));
+		TokenStream tokens= get(key);
+		if (tokens == null) {
+			tokens= lex(input, options);
+			if (tokens != null) {
+				put(key, tokens);
+			}
+		}
+		return tokens;
+	}
+
+	private static TokenStream lex(AbstractCharArray input, LexerOptions options) {
+		final Recorder recorder= new Recorder();
+		final Lexer lexer= new Lexer(input, options, recorder, null);
+		try {
+			Token token;
+			do {
+				token= lexer.nextToken();
+				recorder.addToken(token);
+			} while (token.getType() != IToken.tEND_OF_INPUT);
+		} catch (OffsetLimitReachedException e) {
+			// Only thrown in content assist mode.
+			return null;
+		}
+		return new TokenStream(recorder);
+	}
+
+	private static int getOptionBits(LexerOptions options) {
+		int bits= 0;
+		if (options.fSupportDollarInIdentifiers)
+			bits |= 1;
+		if (options.fSupportAtSignInIdentifiers)
+			bits |= 2;
+		if (options.fSupportMinAndMax)
+			bits |= 4;
+		if (options.fSupportSlashPercentComments)
+			bits |= 8;
+		if (options.fSupportUTFLiterals)
+			bits |= 16;
+		if (options.fSupportRawStringLiterals)
+			bits |= 32;
+		return bits;
+	}
+}
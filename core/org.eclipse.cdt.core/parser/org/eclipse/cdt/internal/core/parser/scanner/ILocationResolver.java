@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2009 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -136,6 +136,17 @@ public interface ILocationResolver {
 	 * @see IASTNode#getRawSignature()
 	 */
 	char[] getUnpreprocessedSignature(IASTFileLocation loc);
+
+	/**
+	 * Returns the hash of the contents of the root file of the translation unit, as computed by
+	 * {@link StreamHasher}.
+	 */
+	long getContentsHash();
+
+	/**
+	 * Returns a copy of the contents of the root file of the translation unit.
+	 */
+	char[] getContents();
 	
 	/**
 	 * Searches for a preprocessor node matching the given specification. Candidates are passed to 
@@ -49,6 +49,7 @@ public abstract class InternalFileContentProvider extends IncludeFileContentProv
 	}
 
 	private IIncludeFileResolutionHeuristics fIncludeResolutionHeuristics;
+	private boolean fMeasurePreprocessingTime;
     private final Map<String, IFileNomination> fPragmaOnce= new HashMap<>();
     private final Map<String, List<ISignificantMacros>> fLoadedVersions= new HashMap<>();
 
@@ -131,6 +132,22 @@ public abstract class InternalFileContentProvider extends IncludeFileContentProv
 		fIncludeResolutionHeuristics= heuristics;
 	}
 
+	/**
+	 * Returns whether the preprocessors using this provider measure the time they spend, see
+	 * {@link LocationMap#getPreprocessingTime()}.
+	 */
+	public final boolean getMeasurePreprocessingTime() {
+		return fMeasurePreprocessingTime;
+	}
+
+	/**
+	 * Enables measuring the time spent in the preprocessors using this provider. Measuring is
+	 * disabled by default, since it adds to the cost of every token.
+	 */
+	public final void setMeasurePreprocessingTime(boolean measure) {
+		fMeasurePreprocessingTime= measure;
+	}
+
 	public List<ISignificantMacros> getLoadedVersions(String path) {
 		List<ISignificantMacros> result = fLoadedVersions.get(path);
 		return result == null ? Collections.<ISignificantMacros>emptyList() : result;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2013 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -38,6 +38,11 @@ import org.eclipse.cdt.core.parser.util.CharArrayUtils;
  * <p>
  * The characters in string literals and char-literals are left as they are found, no conversion to
  * an execution character-set is performed.
+ * <p>
+ * Input given as a {@link CharArray} is lexed on a fast path: characters are read directly from
+ * the array and whitespace, identifiers and line comments are scanned in tight loops. Only the
+ * characters that may start a trigraph, a line-splice or a windows line ending are passed through
+ * phases 1-3.
  */
 final public class Lexer implements ITokenSequence {
 	public static final int tBEFORE_INPUT   = IToken.FIRST_RESERVED_SCANNER;
@@ -48,6 +53,10 @@ final public class Lexer implements ITokenSequence {
 	
 	private static final int END_OF_INPUT = -1;
 	private static final int ORIGIN_LEXER = OffsetLimitReachedException.ORIGIN_LEXER;
+
+	/** System property to disable the fast path for plain input. */
+	public static final String FAST_PATH_PROPERTY = "org.eclipse.cdt.core.parser.scanner.lexer.fastpath"; //$NON-NLS-1$
+	private static boolean sUseFastPath= !"false".equals(System.getProperty(FAST_PATH_PROPERTY)); //$NON-NLS-1$
 	
 	public final static class LexerOptions implements Cloneable {
 		public boolean fSupportDollarInIdentifiers= true;
@@ -77,6 +86,8 @@ final public class Lexer implements ITokenSequence {
 	
 	// the input to the lexer
 	private final AbstractCharArray fInput;
+	/** The characters of the input if it can be lexed on the fast path, or <code>null</code>. */
+	private final char[] fPlainInput;
 	private final int fStart;
 	private int fLimit;
 
@@ -104,6 +115,15 @@ final public class Lexer implements ITokenSequence {
 	private boolean fMarkInsideIncludeDirective;
 	private Token fMarkToken;
 	private Token fMarkLastToken;
+	private int fMarkReplayIndex;
+	private int fMarkReplayEvent;
+	private int fMarkReplayEndOffset;
+
+	// Tokens that have been computed for the input in advance, see HeaderTokenCache.
+	private HeaderTokenCache.TokenStream fReplay;
+	private int fReplayIndex;
+	private int fReplayEvent;
+	private int fReplayEndOffset;
 	
 	public Lexer(char[] input, LexerOptions options, ILexerLog log, Object source) {
 		this(new CharArray(input), 0, input.length, options, log, source);
@@ -120,10 +140,46 @@ final public class Lexer implements ITokenSequence {
 		fOptions= options;
 		fLog= log;
 		fSource= source;
+		fPlainInput= getPlainInput(input, start, end);
 		fLastToken= fToken= new Token(tBEFORE_INPUT, source, start, start);
 		nextCharPhase3();
 	}
-	
+
+	/**
+	 * Enables or disables the fast path for lexers created afterwards.
+	 */
+	public static void setUseFastPath(boolean value) {
+		sUseFastPath= value;
+	}
+
+	/**
+	 * Returns whether the input of this lexer is lexed on the fast path.
+	 */
+	public boolean usesFastPath() {
+		return fPlainInput != null;
+	}
+
+	/**
+	 * Returns the characters of the input, if they are available for the fast path.
+	 */
+	private static char[] getPlainInput(AbstractCharArray input, int start, int end) {
+		if (!sUseFastPath || !(input instanceof CharArray))
+			return null;
+
+		final char[] chars= ((CharArray) input).getArray();
+		if (start < 0 || end < start || end > chars.length)
+			return null;
+		return chars;
+	}
+
+	/**
+	 * Checks whether phases 1-3 pass the given character of the input through unchanged,
+	 * regardless of the characters following it.
+	 */
+	private static boolean isPlain(char c) {
+		return c != '?' && c != '\\' && c != '\r';
+	}
+
 	private boolean isValidOffset(int pos) {
 		if (fLimit < 0)
 			return fInput.isValidOffset(pos);
@@ -143,6 +199,7 @@ final public class Lexer implements ITokenSequence {
 	 */
 	public void setContentAssistMode(int offset) {
 		fSupportContentAssist= true;
+		fReplay= null;
 		if (isValidOffset(offset)) {
 			fLimit= offset;
 		}
@@ -155,6 +212,18 @@ final public class Lexer implements ITokenSequence {
 		return fSupportContentAssist;
 	}
 
+	/**
+	 * Makes the lexer return the given tokens, which have been computed for its input in advance,
+	 * rather than lexing the input. Must be called before the first token is fetched.
+	 */
+	void replay(HeaderTokenCache.TokenStream tokens) {
+		assert fToken.getType() == tBEFORE_INPUT && !fSupportContentAssist;
+		fReplay= tokens;
+		fReplayIndex= 0;
+		fReplayEvent= 0;
+		fReplayEndOffset= fStart;
+	}
+
 	/**
 	 * Call this before consuming the name-token in the include directive. It causes the header-file 
 	 * tokens to be created. 
@@ -255,9 +324,41 @@ final public class Lexer implements ITokenSequence {
 	}
 	
 	/**
-	 * Computes the next token.
+	 * Returns the next token, either replayed or computed from the input.
 	 */
 	private Token fetchToken() throws OffsetLimitReachedException {
+		if (fReplay == null)
+			return lexToken();
+
+		if (!fInsideIncludeDirective)
+			return replayToken();
+
+		// Header names are not among the replayed tokens, they are lexed from the input.
+		fEndOffset= fReplayEndOffset;
+		nextCharPhase3();
+		final Token t= lexToken();
+		fReplayEndOffset= t.getEndOffset();
+		return t;
+	}
+
+	private Token replayToken() {
+		final HeaderTokenCache.TokenStream tokens= fReplay;
+		final int last= tokens.getCount() - 1;
+		int i= fReplayIndex;
+		// Skip the tokens that are covered by a header name.
+		while (i < last && tokens.getOffset(i) < fReplayEndOffset) {
+			i++;
+		}
+		fReplayEvent= tokens.replayEvents(i, fReplayEvent, fLog, fInput);
+		fReplayEndOffset= tokens.getEndOffset(i);
+		fReplayIndex= i < last ? i + 1 : last;
+		return tokens.createToken(i, fSource);
+	}
+
+	/**
+	 * Computes the next token.
+	 */
+	private Token lexToken() throws OffsetLimitReachedException {
 		while (true) {
 			final int start= fOffset;
 			final int c= fCharPhase3;
@@ -273,6 +374,9 @@ final public class Lexer implements ITokenSequence {
 			case 0xb:  // vertical tab
 			case '\f': 
 			case '\r':
+				if (fPlainInput != null) {
+					skipWhitespace();
+				}
 				continue;
 
 			case 'L':
@@ -721,6 +825,19 @@ final public class Lexer implements ITokenSequence {
 	}
 
 	private void lineComment(final int start) {
+		if (fPlainInput != null) {
+			final char[] input= fPlainInput;
+			final int limit= fLimit;
+			int pos= fOffset;
+			char c;
+			while (pos < limit && (c= input[pos]) != '\n' && isPlain(c)) {
+				pos++;
+			}
+			if (pos > fOffset) {
+				fEndOffset= pos;
+				nextCharPhase3();
+			}
+		}
 		int c= fCharPhase3;
 		while (true) {
 			switch (c) {
@@ -852,6 +969,29 @@ final public class Lexer implements ITokenSequence {
 	}
 	
 	private Token identifier(int start, int length) {
+		if (fPlainInput != null && fOffset - start == length) {
+			final char[] input= fPlainInput;
+			final int limit= fLimit;
+			int pos= fOffset;
+			while (pos < limit && isAsciiIdentifierPart(input[pos])) {
+				pos++;
+			}
+			if (pos > fOffset) {
+				length+= pos - fOffset;
+				fEndOffset= pos;
+				nextCharPhase3();
+			}
+			switch (fCharPhase3) {
+			case '$': case '@': case '\\': case END_OF_INPUT:
+				break;
+			default:
+				if (!Character.isUnicodeIdentifierPart((char) fCharPhase3)) {
+					// The identifier ends here, its image is a plain copy of the input.
+					return newToken(IToken.tIDENTIFIER, start, length);
+				}
+				break;
+			}
+		}
 		int tokenKind= IToken.tIDENTIFIER;
     	boolean isPartOfIdentifier= true;
     	int c= fCharPhase3;
@@ -1008,6 +1148,33 @@ final public class Lexer implements ITokenSequence {
 	}
 	
 	
+	private static boolean isAsciiIdentifierPart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	/**
+	 * Skips blanks other than newline on the fast path, the current character is the one
+	 * following a blank.
+	 */
+	private void skipWhitespace() {
+		final char[] input= fPlainInput;
+		final int limit= fLimit;
+		int pos= fOffset;
+		loop: while (pos < limit) {
+			switch (input[pos]) {
+			case ' ': case '\t': case 0xb: case '\f':
+				pos++;
+				break;
+			default:
+				break loop;
+			}
+		}
+		if (pos > fOffset) {
+			fEndOffset= pos;
+			nextCharPhase3();
+		}
+	}
+
 	/**
 	 * Saves the current state of phase3, necessary for '...', '%:%:', UNCs and string literals
 	 * with a long prefix.
@@ -1033,6 +1200,14 @@ final public class Lexer implements ITokenSequence {
 	 */
 	private int nextCharPhase3() {
 		int pos= fEndOffset;
+		if (fPlainInput != null && pos < fLimit) {
+			final char c= fPlainInput[pos];
+			if (isPlain(c)) {
+				fOffset= pos;
+				fEndOffset= pos + 1;
+				return fCharPhase3= c;
+			}
+		}
 		do {
 			if (!isValidOffset(pos + 1)) {
 				if (!isValidOffset(pos)) {
@@ -1197,6 +1372,9 @@ final public class Lexer implements ITokenSequence {
 		fMarkInsideIncludeDirective= fInsideIncludeDirective;
 		fMarkToken= fToken;
 		fMarkLastToken= fLastToken;
+		fMarkReplayIndex= fReplayIndex;
+		fMarkReplayEvent= fReplayEvent;
+		fMarkReplayEndOffset= fReplayEndOffset;
 	}
 
 	public void restoreState() {
@@ -1206,5 +1384,8 @@ final public class Lexer implements ITokenSequence {
 		fInsideIncludeDirective= fMarkInsideIncludeDirective;
 		fToken= fMarkToken;
 		fLastToken= fMarkLastToken;
+		fReplayIndex= fMarkReplayIndex;
+		fReplayEvent= fMarkReplayEvent;
+		fReplayEndOffset= fMarkReplayEndOffset;
 	}
 }
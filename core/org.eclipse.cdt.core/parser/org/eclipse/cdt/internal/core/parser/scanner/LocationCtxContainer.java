@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -67,6 +67,14 @@ class LocationCtxContainer extends LocationCtx {
 		return CharArrayUtils.EMPTY;
 	}
 
+	public char[] getSource() {
+		return getSource(0, fSource.getLength());
+	}
+
+	public long getContentsHash() {
+		return fSource.getContentsHash();
+	}
+
 	@Override
 	public final int getSequenceLength() {
 		return fSource.getLength() + fChildSequenceLength;
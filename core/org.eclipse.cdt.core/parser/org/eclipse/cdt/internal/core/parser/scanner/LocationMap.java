@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2013 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -63,6 +63,8 @@ public class LocationMap implements ILocationResolver {
     private LocationCtxFile fRootContext;
     private LocationCtx fCurrentContext;
 	private int fLastChildInsertionOffset;
+	private int fTokenCount;
+	private long fPreprocessingTime;
 
 	// Stuff computed on demand
 	private IdentityHashMap<IBinding, IASTPreprocessorMacroDefinition> fMacroDefinitionMap;
@@ -503,6 +505,39 @@ public class LocationMap implements ILocationResolver {
     	return fRootContext.convertToSequenceEndNumber(sequenceNumber);
 	}
 
+	@Override
+	public long getContentsHash() {
+		return fRootContext.getContentsHash();
+	}
+
+	@Override
+	public char[] getContents() {
+		return fRootContext.getSource();
+	}
+
+	void countToken() {
+		fTokenCount++;
+	}
+
+	void addPreprocessingTime(long nanos) {
+		fPreprocessingTime += nanos;
+	}
+
+	/**
+	 * Returns the number of tokens the preprocessor has passed to the parser.
+	 */
+	public int getTokenCount() {
+		return fTokenCount;
+	}
+
+	/**
+	 * Returns the time spent in the preprocessor in nanoseconds, or zero when it was not measured.
+	 * @see InternalFileContentProvider#setMeasurePreprocessingTime(boolean)
+	 */
+	public long getPreprocessingTime() {
+		return fPreprocessingTime;
+	}
+
 	@Override
 	public char[] getUnpreprocessedSignature(IASTFileLocation loc) {
 		ASTFileLocation floc= convertFileLocation(loc);
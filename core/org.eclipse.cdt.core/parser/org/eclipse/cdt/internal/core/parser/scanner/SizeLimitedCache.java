@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.parser.scanner;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A cache shared between threads that evicts the least recently used values once their total
+ * size exceeds a limit. The size of a value is determined by the subclass, a maximum size of zero
+ * disables the cache.
+ */
+abstract class SizeLimitedCache<K, V> {
+	// Access ordered, the eldest entry is the least recently used one.
+	private final LinkedHashMap<K, V> fEntries= new LinkedHashMap<>(16, 0.75f, true);
+	private long fMaxSize;
+	private long fSize;
+	private long fHits;
+	private long fMisses;
+
+	SizeLimitedCache(long maxSize) {
+		fMaxSize= maxSize;
+	}
+
+	/**
+	 * Returns the size of the given value.
+	 */
+	protected abstract long getSize(V value);
+
+	final synchronized boolean isEnabled() {
+		return fMaxSize > 0;
+	}
+
+	/**
+	 * Returns the value cached for the given key, or <code>null</code>.
+	 */
+	final synchronized V get(K key) {
+		final V value= fEntries.get(key);
+		if (value != null) {
+			fHits++;
+		} else {
+			fMisses++;
+		}
+		return value;
+	}
+
+	/**
+	 * Caches the given value, unless it exceeds the maximum size.
+	 */
+	final synchronized void put(K key, V value) {
+		final long size= getSize(value);
+		if (size > fMaxSize)
+			return;
+		final V old= fEntries.put(key, value);
+		if (old != null) {
+			fSize -= getSize(old);
+		}
+		fSize += size;
+		evict();
+	}
+
+	private void evict() {
+		final Iterator<V> iterator= fEntries.values().iterator();
+		while (fSize > fMaxSize && iterator.hasNext()) {
+			fSize -= getSize(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	public final synchronized long getMaxSize() {
+		return fMaxSize;
+	}
+
+	/**
+	 * Changes the maximum size of the cached values, zero disables the cache.
+	 */
+	public final synchronized void setMaxSize(long maxSize) {
+		fMaxSize= maxSize;
+		evict();
+	}
+
+	/**
+	 * Returns the total size of the cached values.
+	 */
+	public final synchronized long getSize() {
+		return fSize;
+	}
+
+	/**
+	 * Returns the number of requests for which a value was found in the cache.
+	 */
+	public final synchronized long getHits() {
+		return fHits;
+	}
+
+	/**
+	 * Returns the number of requests for which no value was found in the cache.
+	 */
+	public final synchronized long getMisses() {
+		return fMisses;
+	}
+
+	/**
+	 * Removes all values from the cache and resets the counters.
+	 */
+	public final synchronized void clear() {
+		fEntries.clear();
+		fSize= 0;
+		fHits= 0;
+		fMisses= 0;
+	}
+}
@@ -20,6 +20,7 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,6 +45,7 @@ import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit.IDependencyTree.IASTIncl
 import org.eclipse.cdt.core.dom.ast.cpp.ICPPUsingDirective;
 import org.eclipse.cdt.core.index.IIndexFile;
 import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IIndexFileSet;
 import org.eclipse.cdt.core.index.IIndexInclude;
 import org.eclipse.cdt.core.index.IIndexMacro;
 import org.eclipse.cdt.core.index.IIndexManager;
@@ -67,12 +69,17 @@ import org.eclipse.cdt.internal.core.index.FileContentKey;
 import org.eclipse.cdt.internal.core.index.IIndexFragment;
 import org.eclipse.cdt.internal.core.index.IIndexFragmentFile;
 import org.eclipse.cdt.internal.core.index.IWritableIndex;
+import org.eclipse.cdt.internal.core.index.IWritableIndexFragment;
 import org.eclipse.cdt.internal.core.index.IndexBasedFileContentProvider;
+import org.eclipse.cdt.internal.core.model.ProgressMonitorAndCanceler;
 import org.eclipse.cdt.internal.core.parser.IMacroDictionary;
 import org.eclipse.cdt.internal.core.parser.ParserSettings2;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContentProvider;
 import org.eclipse.cdt.internal.core.parser.scanner.InternalFileContentProvider.DependsOnOutdatedFileException;
+import org.eclipse.cdt.internal.core.parser.scanner.LocationMap;
 import org.eclipse.cdt.internal.core.parser.util.LRUCache;
+import org.eclipse.cdt.internal.core.util.ICancelable;
+import org.eclipse.cdt.internal.core.util.ICanceler;
 import org.eclipse.cdt.utils.EFSExtensionManager;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -241,6 +248,26 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		}
 	}
 
+	/**
+	 * A modified version of a file, whose current content is available in the content store.
+	 */
+	private static class StoredVersion {
+		final IIndexFileLocation fLocation;
+		final IIndexFragmentFile fIndexFile;
+		final Object fTu;
+		final UpdateKind fKind;
+		final long fContentsHash;
+
+		StoredVersion(IIndexFileLocation location, IIndexFragmentFile file, Object tu, UpdateKind kind,
+				long contentsHash) {
+			fLocation= location;
+			fIndexFile= file;
+			fTu= tu;
+			fKind= kind;
+			fContentsHash= contentsHash;
+		}
+	}
+
 	public static class IndexFileContent {
 		private Object[] fPreprocessingDirectives;
 		private ICPPUsingDirective[] fDirectives;
@@ -299,6 +326,335 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		}
 	}
 
+	/**
+	 * A source file parsed by one of the parser threads.
+	 */
+	private static class ParseJob {
+		final Object fTu;
+		final AbstractLanguage fLanguage;
+		final IIndexFileLocation fLocation;
+		final IScannerInfo fScannerInfo;
+		final boolean fIsSource;
+		FileContent fCodeReader;
+		IASTTranslationUnit fAST;
+		Throwable fError;
+		long fParsingTime;
+		long fResolutionTime;
+		/** Cancels the current attempt to parse the file. */
+		ProgressMonitorAndCanceler fCanceler;
+		/** Whether parsing was interrupted once to write a batch. */
+		boolean fYielded;
+		/** Whether parsing was abandoned once because of a header claimed by another job. */
+		boolean fDeferred;
+		/** The job that claimed a header this job waits for. */
+		ParseJob fWaitingFor;
+		/** Whether the names may be resolved by the parser thread. */
+		boolean fResolveEarly= true;
+		/** Whether the names have been resolved by the parser thread. */
+		boolean fResolvedEarly;
+
+		ParseJob(Object tu, AbstractLanguage language, IIndexFileLocation location, IScannerInfo scannerInfo,
+				boolean isSource) {
+			fTu= tu;
+			fLanguage= language;
+			fLocation= location;
+			fScannerInfo= scannerInfo;
+			fIsSource= isSource;
+		}
+	}
+
+	/**
+	 * Passes the messages of a parser to the log service of the task and allows for canceling
+	 * the parser.
+	 */
+	private static class CancelableLogService implements IParserLogService, ICanceler {
+		private final IParserLogService fLog;
+		private final ICanceler fCanceler;
+
+		CancelableLogService(IParserLogService log, ICanceler canceler) {
+			fLog= log;
+			fCanceler= canceler;
+		}
+
+		@Override
+		public void traceLog(String message) {
+			fLog.traceLog(message);
+		}
+
+		@Override
+		public boolean isTracing() {
+			return fLog.isTracing();
+		}
+
+		@Override
+		public void setCancelable(ICancelable cancelable) {
+			fCanceler.setCancelable(cancelable);
+		}
+	}
+
+	/**
+	 * Threads parsing source files concurrently and resolving the names of the ASTs. The results
+	 * are collected in batches, while a batch is written to the index no new files are parsed.
+	 * This way the writer does not have to compete with the parser threads for the index lock.
+	 * <p>
+	 * The files being parsed when a batch is written are interrupted and parsed again later, a
+	 * file is interrupted once, only. A header that is not yet stored in the index is parsed by
+	 * one job, the other jobs including it are abandoned and parsed again after the claiming job
+	 * has been written, they then take the header from the index.
+	 */
+	private class ParserPool {
+		private final ArrayDeque<ParseJob> fPending;
+		private final List<ParseJob> fParsed= new ArrayList<>();
+		private final Set<ParseJob> fRunning= new HashSet<>();
+		private final List<ParseJob> fWaiting= new ArrayList<>();
+		private final Map<IIndexFileLocation, ParseJob> fHeaderClaims= new HashMap<>();
+		private final Thread[] fThreads;
+		private final IProgressMonitor fMonitor;
+		private List<ParseJob> fBatch;
+		private boolean fPaused;
+		private boolean fStopped;
+
+		ParserPool(ArrayDeque<ParseJob> jobs, int threadCount, IProgressMonitor monitor) {
+			fPending= jobs;
+			fMonitor= monitor;
+			fThreads= new Thread[threadCount];
+			for (int i = 0; i < threadCount; i++) {
+				final int threadNumber= i;
+				fThreads[i]= new Thread("Indexer Parser " + (i + 1)) { //$NON-NLS-1$
+					@Override
+					public void run() {
+						runParser(threadNumber);
+					}
+				};
+				fThreads[i].setDaemon(true);
+				fThreads[i].start();
+			}
+		}
+
+		/**
+		 * Waits until a batch of parsed files is available and pauses parsing until
+		 * {@link #resume()} is called. The files being parsed are interrupted, unless they have
+		 * been interrupted before. Returns an empty list when the monitor should be checked
+		 * for cancellation and <code>null</code> when all files have been processed.
+		 */
+		synchronized List<ParseJob> awaitBatch() throws InterruptedException {
+			if (fParsed.size() < fThreads.length && !isIdle()) {
+				wait(500);
+				if (fParsed.size() < fThreads.length && !isIdle())
+					return Collections.emptyList();
+			}
+			if (fParsed.isEmpty())
+				return null;
+			fPaused= true;
+			for (ParseJob job : fRunning) {
+				if (!job.fYielded) {
+					job.fYielded= true;
+					job.fCanceler.setCanceled(true);
+				}
+			}
+			fBatch= new ArrayList<>(fParsed);
+			fParsed.clear();
+			return fBatch;
+		}
+
+		private boolean isIdle() {
+			return fRunning.isEmpty() && (fStopped || fPending.isEmpty());
+		}
+
+		private boolean hasUnfinishedJobs() {
+			return !fRunning.isEmpty() || !fWaiting.isEmpty() || !fParsed.isEmpty() || fBatch != null;
+		}
+
+		/**
+		 * Resumes parsing after the batch has been written, the headers claimed by the jobs of
+		 * the batch are now stored in the index.
+		 */
+		synchronized void resume() {
+			if (fBatch != null) {
+				for (ParseJob job : fBatch) {
+					releaseClaims(job);
+				}
+				fBatch= null;
+			}
+			fPaused= false;
+			notifyAll();
+		}
+
+		/**
+		 * Stops parsing further files, the files currently being parsed are completed.
+		 */
+		synchronized void stop() {
+			fStopped= true;
+			notifyAll();
+		}
+
+		void join() throws InterruptedException {
+			for (Thread thread : fThreads) {
+				thread.join();
+			}
+		}
+
+		private synchronized ParseJob nextJob() throws InterruptedException {
+			// Jobs that are running, waiting or part of the batch may be added to the queue again.
+			while (!fStopped && !fMonitor.isCanceled() && (fPaused || (fPending.isEmpty() && hasUnfinishedJobs()))) {
+				wait(500);
+			}
+			if (fStopped || fPending.isEmpty() || fMonitor.isCanceled())
+				return null;
+			ParseJob job= fPending.poll();
+			job.fCanceler= new ProgressMonitorAndCanceler();
+			fRunning.add(job);
+			return job;
+		}
+
+		/**
+		 * Returns the jobs that have not been started, yet.
+		 */
+		synchronized List<ParseJob> getPendingJobs() {
+			return new ArrayList<>(fPending);
+		}
+
+		/**
+		 * Orders the jobs that have not been started by the given priorities, jobs with the same
+		 * priority keep their order. Jobs without a priority have been added to the front of the
+		 * queue in the meantime and stay there. The jobs being parsed are not affected.
+		 */
+		synchronized void reorder(final Map<ParseJob, Integer> priorities) {
+			List<ParseJob> jobs= new ArrayList<>(fPending);
+			Collections.sort(jobs, new Comparator<ParseJob>() {
+				@Override
+				public int compare(ParseJob job1, ParseJob job2) {
+					Integer p1= priorities.get(job1);
+					Integer p2= priorities.get(job2);
+					int v1= p1 == null ? Integer.MAX_VALUE : p1;
+					int v2= p2 == null ? Integer.MAX_VALUE : p2;
+					return v1 > v2 ? -1 : v1 < v2 ? 1 : 0;
+				}
+			});
+			fPending.clear();
+			fPending.addAll(jobs);
+		}
+
+		/**
+		 * Parses the file of a job of the current batch again, without resolving the names on
+		 * the parser thread.
+		 */
+		synchronized void retry(ParseJob job) {
+			job.fCodeReader= null;
+			job.fAST= null;
+			job.fError= null;
+			job.fResolveEarly= false;
+			fPending.addFirst(job);
+			notifyAll();
+		}
+
+		private synchronized void completeJob(ParseJob job) {
+			fRunning.remove(job);
+			if (job.fCanceler.isCanceled()) {
+				// Parse the file again, after the header it waits for has been stored or after
+				// the current batch has been written.
+				job.fCodeReader= null;
+				job.fAST= null;
+				job.fError= null;
+				releaseClaims(job);
+				if (job.fWaitingFor != null && fHeaderClaims.containsValue(job.fWaitingFor)) {
+					fWaiting.add(job);
+				} else {
+					job.fWaitingFor= null;
+					fPending.addFirst(job);
+				}
+			} else {
+				fParsed.add(job);
+			}
+			notifyAll();
+		}
+
+		/**
+		 * Claims a header for the given job. If another job has claimed the header, the given
+		 * job is canceled and waits for the other one to be written, unless this has happened
+		 * before.
+		 */
+		synchronized boolean claimHeader(ParseJob job, IIndexFileLocation ifl) {
+			ParseJob owner= fHeaderClaims.get(ifl);
+			if (owner == null) {
+				fHeaderClaims.put(ifl, job);
+				return true;
+			}
+			if (owner == job || job.fDeferred)
+				return true;
+			job.fDeferred= true;
+			job.fWaitingFor= owner;
+			job.fCanceler.setCanceled(true);
+			return false;
+		}
+
+		private void releaseClaims(ParseJob job) {
+			fHeaderClaims.values().removeAll(Collections.singleton(job));
+			for (Iterator<ParseJob> it= fWaiting.iterator(); it.hasNext();) {
+				ParseJob waiting= it.next();
+				if (waiting.fWaitingFor == job) {
+					waiting.fWaitingFor= null;
+					fPending.addFirst(waiting);
+					it.remove();
+				}
+			}
+		}
+
+		void runParser(int threadNumber) {
+			InternalFileContentProvider codeReaderFactory= null;
+			try {
+				ParseJob job;
+				while ((job= nextJob()) != null) {
+					final ParseJob current= job;
+					long start= System.currentTimeMillis();
+					job.fResolutionTime= 0;
+					job.fResolvedEarly= false;
+					try {
+						// The read lock of the index is bound to the task thread, the parsers lock
+						// the underlying fragment.
+						fIndex.getWritableFragment().acquireReadLock();
+						try {
+							codeReaderFactory= prepareCodeReaderFactory(codeReaderFactory, job.fLanguage, null);
+							if (codeReaderFactory instanceof IndexBasedFileContentProvider) {
+								((IndexBasedFileContentProvider) codeReaderFactory).setHeaderClaims(
+										new IndexBasedFileContentProvider.IHeaderClaims() {
+									@Override
+									public boolean claim(IIndexFileLocation ifl) {
+										return claimHeader(current, ifl);
+									}
+								});
+							}
+							job.fCodeReader= fResolver.getCodeReader(job.fTu);
+							job.fAST= createAST(job.fLanguage, job.fCodeReader, job.fScannerInfo, job.fIsSource,
+									fASTOptions, codeReaderFactory,
+									new CancelableLogService(getLogService(), job.fCanceler), fMonitor);
+							if (job.fAST != null && job.fResolveEarly && !job.fCanceler.isCanceled()) {
+								// Resolve the names on this thread, such that the writer only
+								// stores them. The AST is not shared before the job is completed.
+								long resolutionStart= System.currentTimeMillis();
+								((ASTTranslationUnit) job.fAST).setOriginatingTranslationUnit((ITranslationUnit) job.fTu);
+								resolveBindings(job.fAST, selectFilesToStore(job.fLanguage.getLinkageID(),
+										job.fAST, job.fCodeReader, null), job.fCanceler);
+								job.fResolvedEarly= true;
+								job.fResolutionTime= System.currentTimeMillis() - resolutionStart;
+							}
+						} finally {
+							fIndex.getWritableFragment().releaseReadLock();
+						}
+					} catch (Throwable e) {
+						job.fError= e;
+					}
+					final long time= System.currentTimeMillis() - start;
+					job.fParsingTime= time - job.fResolutionTime;
+					updateParserThreadStatistics(threadNumber, fThreads.length, time);
+					completeJob(job);
+				}
+			} catch (InterruptedException e) {
+				stop();
+			}
+		}
+	}
+
 	protected enum MessageKind { parsingFileTask, errorWhileParsing, tooManyIndexProblems }
 
 	private int fUpdateFlags= IIndexManager.UPDATE_ALL;
@@ -332,6 +688,11 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	boolean fTaskCompleted;
 	private IndexerProgress fInfo= new IndexerProgress();
 	private IProgressMonitor fProgressMonitor;
+	private int fParserThreadCount= 1;
+	private IndexerCostReport fCostReport;
+	private int fShardIndex;
+	private int fShardCount= 1;
+	private IndexContentStore fContentStore;
 
 	public AbstractIndexerTask(Object[] filesToUpdate, Object[] filesToRemove,
 			IndexerInputAdapter resolver, boolean fastIndexer) {
@@ -384,6 +745,48 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		fPragmaPrivatePattern = pattern;
 	}
 
+	/**
+	 * Sets the number of threads parsing the source files. With more than one thread the sources
+	 * are parsed concurrently, whereas the results are written to the index by the thread running
+	 * the task. The input adapter needs to be thread-safe in this case.
+	 */
+	public void setParserThreadCount(int count) {
+		fParserThreadCount= Math.max(1, count);
+	}
+
+	/**
+	 * Sets the report the cost of indexing the individual translation units is added to, or
+	 * <code>null</code> to not collect the costs.
+	 */
+	public void setCostReport(IndexerCostReport report) {
+		fCostReport= report;
+	}
+
+	public IndexerCostReport getCostReport() {
+		return fCostReport;
+	}
+
+	/**
+	 * Restricts the task to the files of one of several shards, such that the index of a project
+	 * can be computed by independent processes and merged afterwards. A file belongs to a shard
+	 * based on the hash code of its path, headers included by the sources of the shard are indexed
+	 * in any case.
+	 */
+	public void setShard(int index, int count) {
+		if (count < 1 || index < 0 || index >= count)
+			throw new IllegalArgumentException();
+		fShardIndex= index;
+		fShardCount= count;
+	}
+
+	private boolean isInShard(IIndexFileLocation ifl) {
+		if (fShardCount == 1)
+			return true;
+		final String path= ifl.getFullPath();
+		final String key= path != null ? path : ifl.getURI().toString();
+		return (key.hashCode() & Integer.MAX_VALUE) % fShardCount == fShardIndex;
+	}
+
 	/**
 	 * @see IPDOMIndexerTask#acceptUrgentTask(IPDOMIndexerTask)
 	 */
@@ -502,6 +905,20 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		}
 	}
 
+	/**
+	 * Records the parsing of a file by one of the parser threads.
+	 */
+	private final void updateParserThreadStatistics(int thread, int threadCount, long parsingTime) {
+		synchronized (fInfo) {
+			if (fInfo.fParsedFilesPerThread == null || fInfo.fParsedFilesPerThread.length != threadCount) {
+				fInfo.fParsedFilesPerThread= new int[threadCount];
+				fInfo.fParsingTimePerThread= new long[threadCount];
+			}
+			fInfo.fParsedFilesPerThread[thread]++;
+			fInfo.fParsingTimePerThread[thread] += parsingTime;
+		}
+	}
+
 	/**
 	 * Updates current progress information with the provided delta.
 	 */
@@ -523,6 +940,8 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 				return;
 			}
 			fTodoTaskUpdater= createTodoTaskUpdater();
+			IWritableIndexFragment fragment= fIndex.getWritableFragment();
+			fContentStore= fragment instanceof WritablePDOM ? ((WritablePDOM) fragment).getContentStore() : null;
 
 			fASTOptions= ILanguage.OPTION_NO_IMAGE_LOCATIONS
 					| ILanguage.OPTION_SKIP_TRIVIAL_EXPRESSIONS_IN_AGGREGATE_INITIALIZERS;
@@ -629,7 +1048,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	private void extractFiles(HashMap<Integer, List<IIndexFileLocation>> files, List<IIndexFragmentFile> filesToRemove,
-			IProgressMonitor monitor) throws CoreException {
+			IProgressMonitor monitor) throws CoreException, InterruptedException {
 		final boolean forceAll= (fUpdateFlags & IIndexManager.UPDATE_ALL) != 0;
 		final boolean checkTimestamps= (fUpdateFlags & IIndexManager.UPDATE_CHECK_TIMESTAMPS) != 0;
 		final boolean checkFileContentsHash = (fUpdateFlags & IIndexManager.UPDATE_CHECK_CONTENTS_HASH) != 0;
@@ -638,13 +1057,14 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		int count= 0;
 		int forceFirst= fForceNumberFiles;
 		BitSet linkages= new BitSet();
+		List<StoredVersion> storedVersions= new ArrayList<>();
 		for (final Object tu : fFilesToUpdate) {
 			if (monitor.isCanceled())
 				return;
 
 			final boolean force= forceAll || --forceFirst >= 0;
 			final IIndexFileLocation ifl= fResolver.resolveFile(tu);
-			if (ifl == null)
+			if (ifl == null || !isInShard(ifl))
 				continue;
 
 			final IIndexFragmentFile[] indexFiles= fIndex.getWritableFiles(ifl);
@@ -666,9 +1086,14 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 							if (ifile != null && ifile.getLinkageID() == linkageID && ifile.hasContent()) {
 								foundInLinkage = true;
 								indexFiles[i]= null;  // Take the file.
-								boolean update= force ||
-										(forceUnresolvedIncludes && ifile.hasUnresolvedInclude()) ||
+								final boolean forceFile= force ||
+										(forceUnresolvedIncludes && ifile.hasUnresolvedInclude());
+								boolean update= forceFile ||
 										isModified(checkTimestamps, checkFileContentsHash, ifl, tu, ifile);
+								if (update && !forceFile &&
+										isStored(ifl, ifile, tu, updateKind, storedVersions)) {
+									update= false;
+								}
 								if (update && requestUpdate(linkageID, ifl, ifile, tu, updateKind)) {
 									count++;
 									linkages.set(linkageID);
@@ -691,9 +1116,14 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 						filesToRemove.add(ifile);
 						count++;
 					} else {
-						boolean update= force ||
-								(forceUnresolvedIncludes && ifile.hasUnresolvedInclude()) ||
+						final boolean forceFile= force ||
+								(forceUnresolvedIncludes && ifile.hasUnresolvedInclude());
+						boolean update= forceFile ||
 								isModified(checkTimestamps, checkFileContentsHash, ifl, tu, ifile);
+						if (update && !forceFile &&
+								isStored(ifl, ifile, tu, UpdateKind.OTHER_HEADER, storedVersions)) {
+							update= false;
+						}
 						final int linkageID = ifile.getLinkageID();
 						if (update && requestUpdate(linkageID, ifl, ifile, tu, UpdateKind.OTHER_HEADER)) {
 							count++;
@@ -710,6 +1140,71 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			incrementRequestedFilesCount(count - fFilesToUpdate.length);
 			fFilesToUpdate= null;
 		}
+		restoreStoredVersions(storedVersions, files, monitor);
+	}
+
+	/**
+	 * Checks whether the current content of a modified file version can be taken from the content
+	 * store, in which case the version is added to the given list instead of being parsed. The
+	 * replaced content is stored when it is overwritten, see {@link WritablePDOM#setContentStore}.
+	 */
+	private boolean isStored(IIndexFileLocation ifl, IIndexFragmentFile ifile, Object tu, UpdateKind kind,
+			List<StoredVersion> storedVersions) throws CoreException, InterruptedException {
+		if (fContentStore == null || !ifile.hasContent())
+			return false;
+		final long hash= computeFileContentsHash(tu);
+		if (hash == 0)
+			return false;
+		if (hash != ifile.getContentsHash() && !fContentStore.contains(ifile, hash))
+			return false;
+		storedVersions.add(new StoredVersion(ifl, ifile, tu, kind, hash));
+		return true;
+	}
+
+	/**
+	 * Takes the content of file versions from the content store, versions that cannot be restored
+	 * are scheduled for parsing. When the task is canceled, the remaining versions are scheduled
+	 * for parsing, too.
+	 */
+	private void restoreStoredVersions(List<StoredVersion> storedVersions,
+			HashMap<Integer, List<IIndexFileLocation>> files, IProgressMonitor monitor)
+			throws CoreException, InterruptedException {
+		if (storedVersions.isEmpty())
+			return;
+
+		List<StoredVersion> failed= new ArrayList<>();
+		fIndex.acquireWriteLock(fProgressMonitor);
+		try {
+			for (StoredVersion version : storedVersions) {
+				if (monitor.isCanceled()) {
+					failed.add(version);
+					continue;
+				}
+				IIndexFragmentFile ifile= version.fIndexFile;
+				// An unchanged content merely needs the new timestamp.
+				if (version.fContentsHash != ifile.getContentsHash()) {
+					ifile= fContentStore.restore(ifile, version.fContentsHash);
+				}
+				if (ifile == null) {
+					failed.add(version);
+				} else {
+					ifile.setTimestamp(fResolver.getLastModified(version.fLocation));
+					ifile.setSizeAndEncodingHashcode(computeFileSizeAndEncodingHashcode(version.fLocation));
+				}
+			}
+		} finally {
+			fIndex.releaseWriteLock();
+		}
+		for (StoredVersion version : failed) {
+			final int linkageID= version.fIndexFile.getLinkageID();
+			if (requestUpdate(linkageID, version.fLocation, version.fIndexFile, version.fTu, version.fKind)) {
+				List<IIndexFileLocation> list= files.get(linkageID);
+				if (list == null || !list.contains(version.fLocation)) {
+					addPerLinkage(linkageID, version.fLocation, files);
+				}
+				incrementRequestedFilesCount(1);
+			}
+		}
 	}
 
 	private void addPerLinkage(int linkageID, IIndexFileLocation ifl, HashMap<Integer, List<IIndexFileLocation>> files) {
@@ -780,7 +1275,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 	}
 
 	@Override
-	protected void reportFileWrittenToIndex(FileInAST file, IIndexFragmentFile ifile) throws CoreException {
+	protected synchronized void reportFileWrittenToIndex(FileInAST file, IIndexFragmentFile ifile) throws CoreException {
 		final FileContentKey fck = file.fileContentKey;
 		final IIndexFileLocation location = fck.getLocation();
 		boolean wasCounted= false;
@@ -861,11 +1356,32 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		if (map == null || files == null || files.isEmpty())
 			return;
 
+		while (parseFilesByPriority(linkageID, map, files, monitor)) {
+			// The priorities have changed, order the remaining files again.
+		}
+	}
+
+	/**
+	 * Parses the files in the order of their priorities. Files included by the active file have
+	 * the priority of the active file.
+	 * @return <code>true</code> if parsing was stopped because the priorities have changed,
+	 *     <code>false</code> if all files have been parsed or the task has to stop.
+	 */
+	private boolean parseFilesByPriority(int linkageID, LinkageTask map, List<IIndexFileLocation> files,
+			IProgressMonitor monitor) throws CoreException, InterruptedException {
+		final int priorityModCount = fResolver.getPriorityModificationCount();
+		final IIndexFileLocation activeFile = fResolver.getActiveFile();
+		final int activePriority = activeFile != null ? fResolver.getIndexingPriority(activeFile) : 0;
+		final Set<IIndexFileLocation> activeClosure = getIncludeClosure(activeFile);
+
 		int maxPriority = Integer.MIN_VALUE;
 		int minPriority = Integer.MAX_VALUE;
 		Map<Integer, List<IIndexFileLocation>> filesByPriority = new HashMap<>();
 		for (IIndexFileLocation file : files) {
-			int priority = fResolver.getIndexingPriority(file);
+			LocationTask task = map.find(file);
+			if (task == null || task.isCompleted())
+				continue;
+			int priority = getIndexingPriority(file, activePriority, activeClosure);
 			List<IIndexFileLocation> list = filesByPriority.get(priority);
 			if (list == null) {
 				list = new LinkedList<>();
@@ -885,17 +1401,24 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 				continue;
 
 			// First parse the required sources.
-			for (Iterator<IIndexFileLocation> it= filesAtPriority.iterator(); it.hasNext();) {
-				IIndexFileLocation ifl= it.next();
-				LocationTask locTask = map.find(ifl);
-				if (locTask == null || locTask.isCompleted()) {
-					it.remove();
-				} else if (locTask.fKind == UpdateKind.REQUIRED_SOURCE) {
-					if (monitor.isCanceled() || hasUrgentTasks())
-						return;
-					final Object tu = locTask.fTu;
-					final IScannerInfo scannerInfo = getScannerInfo(linkageID, tu);
-					parseFile(tu, getLanguage(tu, linkageID), ifl, scannerInfo, null, monitor);
+			if (fParserThreadCount > 1) {
+				if (!parseSourcesInParallel(linkageID, map, filesAtPriority, priorityModCount, monitor))
+					return !monitor.isCanceled() && !hasUrgentTasks();
+			} else {
+				for (Iterator<IIndexFileLocation> it= filesAtPriority.iterator(); it.hasNext();) {
+					IIndexFileLocation ifl= it.next();
+					LocationTask locTask = map.find(ifl);
+					if (locTask == null || locTask.isCompleted()) {
+						it.remove();
+					} else if (locTask.fKind == UpdateKind.REQUIRED_SOURCE) {
+						if (monitor.isCanceled() || hasUrgentTasks())
+							return false;
+						if (havePrioritiesChanged(priorityModCount))
+							return true;
+						final Object tu = locTask.fTu;
+						final IScannerInfo scannerInfo = getScannerInfo(linkageID, tu);
+						parseFile(tu, getLanguage(tu, linkageID), ifl, scannerInfo, null, monitor);
+					}
 				}
 			}
 	
@@ -909,7 +1432,9 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 					for (FileVersionTask versionTask : locTask.fVersionTasks) {
 						if (versionTask.fOutdated) {
 							if (monitor.isCanceled() || hasUrgentTasks())
-								return;
+								return false;
+							if (havePrioritiesChanged(priorityModCount))
+								return true;
 							parseVersionInContext(linkageID, map, ifl, versionTask, locTask.fTu,
 									new LinkedHashSet<IIndexFile>(), monitor);
 						}
@@ -926,7 +1451,9 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 				} else {
 					if (locTask.needsVersion()) {
 						if (monitor.isCanceled() || hasUrgentTasks())
-							return;
+							return false;
+						if (havePrioritiesChanged(priorityModCount))
+							return true;
 						final Object tu = locTask.fTu;
 						final IScannerInfo scannerInfo= getScannerInfo(linkageID, tu);
 						parseFile(tu, getLanguage(tu, linkageID), ifl, scannerInfo, null, monitor);
@@ -945,7 +1472,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 					if (locTask != null && !locTask.isCompleted()) {
 						if (!locTask.needsVersion()) {
 							if (monitor.isCanceled() || hasUrgentTasks())
-								return;
+								return false;
 							Iterator<FileVersionTask> it= locTask.fVersionTasks.iterator();
 							while (it.hasNext()) {
 								FileVersionTask v = it.next();
@@ -964,6 +1491,62 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 				fIndex.releaseWriteLock();
 			}
 		}
+		return false;
+	}
+
+	private boolean havePrioritiesChanged(int priorityModCount) {
+		return fResolver.getPriorityModificationCount() != priorityModCount;
+	}
+
+	/**
+	 * Returns the priority of a file, files included by the active file have the priority of the
+	 * active file.
+	 */
+	private int getIndexingPriority(IIndexFileLocation file, int activePriority,
+			Set<IIndexFileLocation> activeClosure) {
+		int priority = fResolver.getIndexingPriority(file);
+		if (priority < activePriority && activeClosure.contains(file))
+			priority = activePriority;
+		return priority;
+	}
+
+	/**
+	 * Orders the jobs of the pool that have not been started by the current priorities.
+	 */
+	private void reorderPendingJobs(ParserPool pool) throws CoreException, InterruptedException {
+		final IIndexFileLocation activeFile = fResolver.getActiveFile();
+		final int activePriority = activeFile != null ? fResolver.getIndexingPriority(activeFile) : 0;
+		final Set<IIndexFileLocation> activeClosure = getIncludeClosure(activeFile);
+		Map<ParseJob, Integer> priorities= new HashMap<>();
+		for (ParseJob job : pool.getPendingJobs()) {
+			priorities.put(job, getIndexingPriority(job.fLocation, activePriority, activeClosure));
+		}
+		pool.reorder(priorities);
+	}
+
+	/**
+	 * Returns the given file together with the files it includes directly or indirectly, according
+	 * to the index.
+	 */
+	private Set<IIndexFileLocation> getIncludeClosure(IIndexFileLocation location) throws CoreException {
+		if (location == null)
+			return Collections.emptySet();
+		Set<IIndexFileLocation> closure = new HashSet<>();
+		Deque<IIndexFileLocation> todo = new ArrayDeque<>();
+		closure.add(location);
+		todo.add(location);
+		IIndexFileLocation ifl;
+		while ((ifl = todo.poll()) != null) {
+			for (IIndexFile ifile : fIndex.getFiles(ifl)) {
+				for (IIndexInclude include : ifile.getIncludes()) {
+					IIndexFileLocation target = include.getIncludesLocation();
+					if (target != null && closure.add(target)) {
+						todo.add(target);
+					}
+				}
+			}
+		}
+		return closure;
 	}
 
 	private void parseVersionInContext(int linkageID, LinkageTask map, IIndexFileLocation ifl,
@@ -1084,30 +1667,26 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 
 			long start= System.currentTimeMillis();
 			IASTTranslationUnit ast= createAST(lang, codeReader, scanInfo, isSource, fASTOptions, ctx, pm);
-			fStatistics.fParsingTime += System.currentTimeMillis() - start;
+			final long parsingTime= System.currentTimeMillis() - start;
+			fStatistics.fParsingTime += parsingTime;
 			if (ast == null) {
 				++fStatistics.fTooManyTokensCount;
 			} else {
 				// Give the new AST a chance to recognize its translation unit before it is written
 				// to the index.
 				((ASTTranslationUnit) ast).setOriginatingTranslationUnit((ITranslationUnit) tu);
+				final int[] costs= getCostCounters();
 				writeToIndex(lang.getLinkageID(), ast, codeReader, ctx, pm);
 				resultCacheCleared = true;  // The cache was cleared while writing to the index.
+				reportCost(ifl, ast, parsingTime, 0, costs);
 			}
-		} catch (RuntimeException e) {
-			final Throwable cause = e.getCause();
-			if (cause instanceof DependsOnOutdatedFileException)
-				return (DependsOnOutdatedFileException) cause;
-			th= e;
-		} catch (StackOverflowError | CoreException | AssertionError e) {
-			th= e;
-		} catch (OutOfMemoryError e) {
-			if (--fSwallowOutOfMemoryError < 0)
-				throw e;
+		} catch (RuntimeException | StackOverflowError | CoreException | AssertionError | OutOfMemoryError e) {
 			th= e;
 		}
 		if (th != null) {
-			swallowError(path, th);
+			DependsOnOutdatedFileException d= handleError(path, th);
+			if (d != null)
+				return d;
 		}
 
 		if (!resultCacheCleared) {
@@ -1123,6 +1702,182 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		return null;
 	}
 
+	/**
+	 * Handles an exception thrown while parsing a file or storing it in the index. Returns the
+	 * exception indicating that the file depends on an outdated one, or <code>null</code>.
+	 */
+	private DependsOnOutdatedFileException handleError(IPath path, Throwable th) throws CoreException {
+		if (th instanceof RuntimeException) {
+			final Throwable cause = th.getCause();
+			if (cause instanceof DependsOnOutdatedFileException)
+				return (DependsOnOutdatedFileException) cause;
+		} else if (th instanceof OutOfMemoryError) {
+			if (--fSwallowOutOfMemoryError < 0)
+				throw (OutOfMemoryError) th;
+		}
+		swallowError(path, th);
+		return null;
+	}
+
+	/**
+	 * Parses the required sources of the given files using multiple threads and writes the
+	 * results to the index, a batch at a time. When the priorities change, the files that have not
+	 * been started are ordered again, the files being parsed are completed. Returns
+	 * <code>false</code> when parsing was stopped
+	 * because the task was canceled, urgent work needs to be done or the priorities have changed.
+	 */
+	private boolean parseSourcesInParallel(int linkageID, LinkageTask map, List<IIndexFileLocation> files,
+			final int priorityModCount, IProgressMonitor monitor) throws CoreException, InterruptedException {
+		ArrayDeque<ParseJob> jobs= new ArrayDeque<>();
+		for (Iterator<IIndexFileLocation> it= files.iterator(); it.hasNext();) {
+			IIndexFileLocation ifl= it.next();
+			LocationTask locTask = map.find(ifl);
+			if (locTask == null || locTask.isCompleted()) {
+				it.remove();
+			} else if (locTask.fKind == UpdateKind.REQUIRED_SOURCE) {
+				// Build configurations and languages are computed by the task thread, only.
+				final Object tu = locTask.fTu;
+				jobs.add(new ParseJob(tu, getLanguage(tu, linkageID), ifl, getScannerInfo(linkageID, tu),
+						fResolver.isSourceUnit(tu)));
+			}
+		}
+		if (jobs.isEmpty())
+			return true;
+
+		boolean stopped= false;
+		int orderedModCount= priorityModCount;
+		ParserPool pool= new ParserPool(jobs, Math.min(fParserThreadCount, jobs.size()), monitor);
+		try {
+			List<ParseJob> batch;
+			while ((batch= pool.awaitBatch()) != null) {
+				if (!stopped && (monitor.isCanceled() || hasUrgentTasks())) {
+					pool.stop();
+					stopped= true;
+				} else if (!stopped && havePrioritiesChanged(orderedModCount)) {
+					orderedModCount= fResolver.getPriorityModificationCount();
+					reorderPendingJobs(pool);
+				}
+				try {
+					if (!monitor.isCanceled()) {
+						final List<FileInAST> written= new ArrayList<>();
+						for (ParseJob job : batch) {
+							if (job.fResolvedEarly && usesWrittenFiles(job, written)) {
+								// The names may have been resolved to the previous content of
+								// the files.
+								pool.retry(job);
+							} else {
+								storeParsedFile(job, written, monitor);
+							}
+						}
+					}
+				} finally {
+					pool.resume();
+				}
+			}
+		} finally {
+			pool.stop();
+			pool.join();
+		}
+		return !stopped;
+	}
+
+	/**
+	 * Checks whether the AST of a job has taken one of the given files from the index. Names that
+	 * were resolved before such a file was written may refer to its previous content, which may
+	 * have been freed. Only the task thread writes to the index, the check is therefore valid
+	 * until it writes the AST.
+	 */
+	private boolean usesWrittenFiles(ParseJob job, List<FileInAST> written) throws CoreException {
+		if (job.fAST == null || written.isEmpty())
+			return false;
+		final IIndexFileSet fileSet= job.fAST.getIndexFileSet();
+		if (fileSet == null)
+			return false;
+		for (FileInAST file : written) {
+			final FileContentKey key= file.fileContentKey;
+			IIndexFragmentFile indexFile= fIndex.getWritableFile(key.getLinkageID(), key.getLocation(),
+					key.getSignificantMacros());
+			if (indexFile != null && fileSet.contains(indexFile))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the result of a parser thread to the index and adds the files that have been written
+	 * to the given list.
+	 */
+	private void storeParsedFile(ParseJob job, List<FileInAST> written, IProgressMonitor pm)
+			throws CoreException, InterruptedException {
+		IPath path= getLabel(job.fLocation);
+		pm.subTask(getMessage(MessageKind.parsingFileTask,
+				path.lastSegment(), path.removeLastSegments(1).toString()));
+		fStatistics.fParsingTime += job.fParsingTime;
+		fStatistics.fResolutionTime += job.fResolutionTime;
+		Throwable th= job.fError;
+		if (th == null) {
+			try {
+				if (job.fAST == null) {
+					++fStatistics.fTooManyTokensCount;
+				} else {
+					final int[] costs= getCostCounters();
+					Collections.addAll(written,
+							writeToIndex(job.fLanguage.getLinkageID(), job.fAST, job.fCodeReader, null, pm));
+					reportCost(job.fLocation, job.fAST, job.fParsingTime, job.fResolutionTime, costs);
+					return;
+				}
+			} catch (RuntimeException | StackOverflowError | CoreException | AssertionError | OutOfMemoryError e) {
+				th= e;
+			} finally {
+				job.fAST= null;
+			}
+		} else if (th instanceof InterruptedException) {
+			throw (InterruptedException) th;
+		} else if (!(th instanceof RuntimeException || th instanceof CoreException ||
+				th instanceof StackOverflowError || th instanceof AssertionError ||
+				th instanceof OutOfMemoryError)) {
+			throw new CoreException(createStatus(getMessage(MessageKind.errorWhileParsing, path), th));
+		}
+		if (th != null) {
+			// A dependency on an outdated file does not occur without a context.
+			handleError(path, th);
+		}
+		fIndex.acquireWriteLock(fProgressMonitor);
+		try {
+			fIndex.clearResultCache();
+		} finally {
+			fIndex.releaseWriteLock();
+		}
+	}
+
+	/**
+	 * Returns the statistics counters used to compute the cost of writing a single AST.
+	 */
+	private int[] getCostCounters() {
+		return new int[] { fStatistics.fResolutionTime, fStatistics.fAddToIndexTime,
+				fStatistics.fDeclarationCount + fStatistics.fReferenceCount };
+	}
+
+	/**
+	 * Adds the cost of indexing an AST to the cost report, if there is one.
+	 */
+	private void reportCost(IIndexFileLocation ifl, IASTTranslationUnit ast, long parsingTime,
+			long resolutionTime, int[] counters) {
+		if (fCostReport == null)
+			return;
+		int tokens= 0;
+		long preprocessingTime= 0;
+		LocationMap lm= (LocationMap) ast.getAdapter(LocationMap.class);
+		if (lm != null) {
+			tokens= lm.getTokenCount();
+			preprocessingTime= lm.getPreprocessingTime() / 1000000;
+		}
+		fCostReport.add(new IndexerCostReport.FileCost(getLabel(ifl).toString(), preprocessingTime,
+				parsingTime, resolutionTime + fStatistics.fResolutionTime - counters[0],
+				fStatistics.fAddToIndexTime - counters[1], ast.getIncludeDirectives().length, tokens,
+				fStatistics.fDeclarationCount + fStatistics.fReferenceCount - counters[2]));
+	}
+
 	private AbstractLanguage getLanguage(Object tu, int linkageID) {
 		for (AbstractLanguage language : fResolver.getLanguages(tu, UnusedHeaderStrategy.useBoth)) {
 			if (language.getLinkageID() == linkageID) {
@@ -1196,6 +1951,18 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		if (codeReader == null) {
 			return null;
 		}
+		fCodeReaderFactory= prepareCodeReaderFactory(fCodeReaderFactory, language, ctx);
+		return createAST(language, codeReader, scanInfo, isSource, options, fCodeReaderFactory,
+				getLogService(), pm);
+	}
+
+	private IASTTranslationUnit createAST(AbstractLanguage language, FileContent codeReader,
+			IScannerInfo scanInfo, boolean isSource, int options,
+			InternalFileContentProvider codeReaderFactory, IParserLogService log, IProgressMonitor pm)
+			throws CoreException {
+		if (codeReader == null) {
+			return null;
+		}
 		if (isSource) {
 			options |= ILanguage.OPTION_IS_SOURCE_UNIT;
 		}
@@ -1205,8 +1972,22 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			}
 			return null;
 		}
+		IASTTranslationUnit ast= language.getASTTranslationUnit(codeReader, scanInfo, codeReaderFactory,
+				fIndex, options, log);
+		if (pm.isCanceled()) {
+			return null;
+		}
+		return ast;
+	}
+
+	/**
+	 * Creates a file content provider if <code>factory</code> is <code>null</code> and prepares it
+	 * for parsing a file of the given language in the given context.
+	 */
+	private InternalFileContentProvider prepareCodeReaderFactory(InternalFileContentProvider factory,
+			AbstractLanguage language, FileContext ctx) {
 		final IIndexFile[] ctx2header = ctx == null ? null : new IIndexFile[] {ctx.fContext, ctx.fOldFile};
-		if (fCodeReaderFactory == null) {
+		if (factory == null) {
 			InternalFileContentProvider fileContentProvider = createInternalFileContentProvider();
 			if (fIsFastIndexer) {
 				IndexBasedFileContentProvider ibfcp = new IndexBasedFileContentProvider(fIndex, fResolver,
@@ -1215,23 +1996,18 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 				ibfcp.setFileSizeLimit(fIncludedFileSizeLimit);
 				ibfcp.setHeadersToIndexAllVersions(fHeadersToIndexAllVersions);
 				ibfcp.setIndexAllHeaderVersions(fIndexAllHeaderVersions);
-				fCodeReaderFactory= ibfcp;
+				factory= ibfcp;
 			} else {
-				fCodeReaderFactory= fileContentProvider;
+				factory= fileContentProvider;
 			}
-			fCodeReaderFactory.setIncludeResolutionHeuristics(createIncludeHeuristics());
+			factory.setIncludeResolutionHeuristics(createIncludeHeuristics());
+			factory.setMeasurePreprocessingTime(fCostReport != null);
 		} else if (fIsFastIndexer) {
-			final IndexBasedFileContentProvider ibfcp = (IndexBasedFileContentProvider) fCodeReaderFactory;
+			final IndexBasedFileContentProvider ibfcp = (IndexBasedFileContentProvider) factory;
 			ibfcp.setContextToHeaderGap(ctx2header);
 			ibfcp.setLinkage(language.getLinkageID());
 		}
-
-		IASTTranslationUnit ast= language.getASTTranslationUnit(codeReader, scanInfo, fCodeReaderFactory,
-				fIndex, options, getLogService());
-		if (pm.isCanceled()) {
-			return null;
-		}
-		return ast;
+		return factory;
 	}
 
 	private InternalFileContentProvider createInternalFileContentProvider() {
@@ -1242,30 +2018,12 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		throw new IllegalArgumentException("Invalid file content provider"); //$NON-NLS-1$
 	}
 
-	private void writeToIndex(final int linkageID, IASTTranslationUnit ast, FileContent codeReader,
+	/**
+	 * Writes the AST to the index and returns the files that have been selected for storing.
+	 */
+	private FileInAST[] writeToIndex(final int linkageID, IASTTranslationUnit ast, FileContent codeReader,
 			FileContext ctx, IProgressMonitor pm) throws CoreException, InterruptedException {
-		HashSet<FileContentKey> enteredFiles= new HashSet<>();
-		ArrayList<FileInAST> orderedFileKeys= new ArrayList<>();
-
-		final IIndexFileLocation topIfl = fResolver.resolveASTPath(ast.getFilePath());
-		FileContentKey topKey = new FileContentKey(linkageID, topIfl, ast.getSignificantMacros());
-		enteredFiles.add(topKey);
-		IDependencyTree tree= ast.getDependencyTree();
-		IASTInclusionNode[] inclusions= tree.getInclusions();
-		for (IASTInclusionNode inclusion : inclusions) {
-			collectOrderedFileKeys(linkageID, inclusion, enteredFiles, orderedFileKeys);
-		}
-
-		IIndexFragmentFile newFile= selectIndexFile(linkageID, topIfl, ast.getSignificantMacros());
-		if (ctx != null) {
-			orderedFileKeys.add(new FileInAST(topKey, codeReader));
-			// File can be reused
-			ctx.fNewFile= newFile;
-		} else if (newFile == null) {
-			orderedFileKeys.add(new FileInAST(topKey, codeReader));
-		}
-
-		FileInAST[] fileKeys= orderedFileKeys.toArray(new FileInAST[orderedFileKeys.size()]);
+		FileInAST[] fileKeys= selectFilesToStore(linkageID, ast, codeReader, ctx);
 		try {
 			// The default processing is handled by the indexer task.
 			PDOMWriter.Data data = new PDOMWriter.Data(ast, fileKeys, fIndex);
@@ -1298,6 +2056,37 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 			withdrawRequests(linkageID, fileKeys);
 			throw e;
 		}
+		return fileKeys;
+	}
+
+	/**
+	 * Selects the files of the AST that need to be stored in the index, in the order they are
+	 * stored. With a context the root file is always selected, and the context is told whether
+	 * the index file for it can be reused.
+	 */
+	private FileInAST[] selectFilesToStore(int linkageID, IASTTranslationUnit ast, FileContent codeReader,
+			FileContext ctx) throws CoreException {
+		HashSet<FileContentKey> enteredFiles= new HashSet<>();
+		ArrayList<FileInAST> orderedFileKeys= new ArrayList<>();
+
+		final IIndexFileLocation topIfl = fResolver.resolveASTPath(ast.getFilePath());
+		FileContentKey topKey = new FileContentKey(linkageID, topIfl, ast.getSignificantMacros());
+		enteredFiles.add(topKey);
+		IDependencyTree tree= ast.getDependencyTree();
+		IASTInclusionNode[] inclusions= tree.getInclusions();
+		for (IASTInclusionNode inclusion : inclusions) {
+			collectOrderedFileKeys(linkageID, inclusion, enteredFiles, orderedFileKeys);
+		}
+
+		IIndexFragmentFile newFile= selectIndexFile(linkageID, topIfl, ast.getSignificantMacros());
+		if (ctx != null) {
+			orderedFileKeys.add(new FileInAST(topKey, codeReader));
+			// File can be reused
+			ctx.fNewFile= newFile;
+		} else if (newFile == null) {
+			orderedFileKeys.add(new FileInAST(topKey, codeReader));
+		}
+		return orderedFileKeys.toArray(new FileInAST[orderedFileKeys.size()]);
 	}
 
 	private void collectOrderedFileKeys(final int linkageID, IASTInclusionNode inclusion,
@@ -1317,7 +2106,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		}
 	}
 
-	private void withdrawRequests(int linkageID, FileInAST[] fileKeys) {
+	private synchronized void withdrawRequests(int linkageID, FileInAST[] fileKeys) {
 		LinkageTask map = findRequestMap(linkageID);
 		if (map != null) {
 			for (FileInAST fileKey : fileKeys) {
@@ -1416,7 +2205,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		return true;
 	}
 
-	public final IndexFileContent getFileContent(int linkageID, IIndexFileLocation ifl,
+	public final synchronized IndexFileContent getFileContent(int linkageID, IIndexFileLocation ifl,
 			IIndexFile file) throws CoreException, DependsOnOutdatedFileException {
 		LinkageTask map = findRequestMap(linkageID);
 		if (map != null) {
@@ -1435,7 +2224,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		return fc;
 	}
 
-	IIndexFragmentFile selectIndexFile(int linkageID, IIndexFileLocation ifl, ISignificantMacros sigMacros) throws CoreException {
+	synchronized IIndexFragmentFile selectIndexFile(int linkageID, IIndexFileLocation ifl, ISignificantMacros sigMacros) throws CoreException {
 		LinkageTask map = findRequestMap(linkageID);
 		if (map != null) {
 			LocationTask locTask= map.find(ifl);
@@ -1455,7 +2244,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		return null;
 	}
 
-	public IIndexFile selectIndexFile(int linkageID, IIndexFileLocation ifl, IMacroDictionary md) throws CoreException {
+	public synchronized IIndexFile selectIndexFile(int linkageID, IIndexFileLocation ifl, IMacroDictionary md) throws CoreException {
 		LinkageTask map = findRequestMap(linkageID);
 		if (map != null) {
 			LocationTask request= map.find(ifl);
@@ -1480,7 +2269,7 @@ public abstract class AbstractIndexerTask extends PDOMWriter {
 		return null;
 	}
 
-	public IIndexFragmentFile[] getAvailableIndexFiles(int linkageID, IIndexFileLocation ifl)
+	public synchronized IIndexFragmentFile[] getAvailableIndexFiles(int linkageID, IIndexFileLocation ifl)
 			throws CoreException {
 		IIndexFragmentFile[] files= fIndexFilesCache.get(ifl);
 		if (files == null) {
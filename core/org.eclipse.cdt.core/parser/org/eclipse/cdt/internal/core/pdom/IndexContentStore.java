@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.index.IIndexLocationConverter;
+import org.eclipse.cdt.core.parser.ISignificantMacros;
+import org.eclipse.cdt.core.parser.util.CharArrayUtils;
+import org.eclipse.cdt.internal.core.index.IIndexFragmentFile;
+import org.eclipse.cdt.internal.core.parser.scanner.SignificantMacros;
+import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
+import org.eclipse.cdt.internal.core.pdom.dom.PDOMFile;
+import org.eclipse.cdt.internal.core.pdom.dom.PDOMInclude;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Keeps the index contributions of file versions that have been replaced in the index of a
+ * project, keyed by the hash of the file contents in addition to linkage, location and significant
+ * macros. When a file changes back to a content seen before, e.g. after switching between
+ * branches of a version control system, its names, macros and includes are copied back from the
+ * store instead of parsing the file again.
+ * <p>
+ * The store is a separate database next to the one of the project, it uses the same location
+ * converter. The contents hash is added to the significant macros of a stored version, such that
+ * different contents of the same file version can be stored side by side. A version is stored
+ * when its content is replaced in the index. When the number of stored versions reaches the
+ * maximum, the least recently stored or restored version is evicted. The timestamp of a stored
+ * version records its last use, it is replaced when the version is restored.
+ * <p>
+ * The store is disabled by default, the maximum number of stored versions is specified with
+ * {@link #SIZE_PROPERTY}.
+ */
+public class IndexContentStore {
+	/**
+	 * System property for the maximum number of file versions kept in the store of a project.
+	 */
+	public static final String SIZE_PROPERTY = "org.eclipse.cdt.core.parser.pdom.contentStoreSize"; //$NON-NLS-1$
+
+	/** The name of the pseudo macro holding the contents hash, it cannot be the name of a macro. */
+	private static final char[] CONTENTS_HASH_MACRO = "#contents".toCharArray(); //$NON-NLS-1$
+
+	private final WritablePDOM fStore;
+	private final int fMaxFiles;
+	// The stored versions in the order of their last use, loaded on first use.
+	private LinkedHashSet<PDOMFile> fFiles;
+
+	/**
+	 * Returns the configured maximum number of file versions per store, zero when the store is
+	 * disabled.
+	 */
+	public static int getConfiguredSize() {
+		return Math.max(0, Integer.getInteger(SIZE_PROPERTY, 0));
+	}
+
+	/**
+	 * Returns the location of the store for the database of a project.
+	 */
+	public static File getStoreLocation(File pdomLocation) {
+		return new File(pdomLocation.getPath() + ".store"); //$NON-NLS-1$
+	}
+
+	public IndexContentStore(File location, IIndexLocationConverter converter,
+			Map<String, IPDOMLinkageFactory> linkageFactoryMappings, int maxFiles) throws CoreException {
+		fStore= new WritablePDOM(location, converter, linkageFactoryMappings);
+		fMaxFiles= maxFiles;
+		if (!fStore.isSupportedVersion()) {
+			try {
+				fStore.acquireWriteLock(null);
+				try {
+					fStore.clear();
+				} finally {
+					fStore.releaseWriteLock();
+				}
+			} catch (InterruptedException e) {
+				throw new CoreException(CCorePlugin.createStatus(e.getMessage(), e));
+			}
+		}
+	}
+
+	public File getLocation() {
+		return fStore.getDB().getLocation();
+	}
+
+	/**
+	 * Stores a copy of the given file, unless the store already has its content.
+	 * <b>A read-lock must be held on the fragment of the file.</b>
+	 */
+	public synchronized void store(IIndexFragmentFile file) throws CoreException {
+		try {
+			fStore.acquireWriteLock(null);
+		} catch (InterruptedException e) {
+			throw new CoreException(CCorePlugin.createStatus(e.getMessage(), e));
+		}
+		try {
+			storeFile((PDOMFile) file, null);
+		} finally {
+			fStore.releaseWriteLock();
+		}
+	}
+
+	/**
+	 * Stores a copy of the given file, evicting other versions than the one to keep if necessary.
+	 */
+	private void storeFile(PDOMFile file, PDOMFile keep) throws CoreException {
+		final long hash= file.getContentsHash();
+		if (hash == 0 || !file.hasContent() || fMaxFiles <= 0)
+			return;
+
+		final ISignificantMacros key= getStoreKey(file.getSignificantMacros(), hash);
+		PDOMFile stored= fStore.getFile(file.getLinkageID(), file.getLocation(), key);
+		if (stored != null && stored.hasContent()) {
+			markUsed(stored);
+			return;
+		}
+		final LinkedHashSet<PDOMFile> files= getStoredFiles();
+		for (Iterator<PDOMFile> iterator= files.iterator(); files.size() >= fMaxFiles && iterator.hasNext();) {
+			final PDOMFile evicted= iterator.next();
+			if (!evicted.equals(keep)) {
+				fStore.clearFile(evicted);
+				iterator.remove();
+			}
+		}
+		markUsed(fStore.copyFile(file, key));
+	}
+
+	private LinkedHashSet<PDOMFile> getStoredFiles() throws CoreException {
+		if (fFiles == null) {
+			List<PDOMFile> files= new ArrayList<>();
+			for (IIndexFragmentFile file : fStore.getAllFiles()) {
+				if (file.hasContent()) {
+					files.add((PDOMFile) file);
+				}
+			}
+			Collections.sort(files, new Comparator<PDOMFile>() {
+				@Override
+				public int compare(PDOMFile f1, PDOMFile f2) {
+					try {
+						long t1= f1.getTimestamp();
+						long t2= f2.getTimestamp();
+						return t1 < t2 ? -1 : t1 > t2 ? 1 : 0;
+					} catch (CoreException e) {
+						CCorePlugin.log(e);
+						return 0;
+					}
+				}
+			});
+			fFiles= new LinkedHashSet<>(files);
+		}
+		return fFiles;
+	}
+
+	/**
+	 * Makes the stored version the most recently used one.
+	 */
+	private void markUsed(PDOMFile stored) throws CoreException {
+		stored.setTimestamp(System.currentTimeMillis());
+		final LinkedHashSet<PDOMFile> files= getStoredFiles();
+		files.remove(stored);
+		files.add(stored);
+	}
+
+	/**
+	 * Checks whether the store has the content with the given hash for the version of the file.
+	 */
+	public synchronized boolean contains(IIndexFragmentFile file, long contentsHash)
+			throws CoreException, InterruptedException {
+		fStore.acquireReadLock();
+		try {
+			return findStoredFile(file, contentsHash) != null;
+		} finally {
+			fStore.releaseReadLock();
+		}
+	}
+
+	/**
+	 * Replaces the content of the given file with the stored content with the given hash, the
+	 * replaced content is stored in turn. The content is restored only if all files it includes
+	 * are present in the index of the file.
+	 * <b>A write-lock must be held on the fragment of the file.</b>
+	 * @return the file with the restored content, or <code>null</code> if it could not be restored.
+	 */
+	public synchronized IIndexFragmentFile restore(IIndexFragmentFile file, long contentsHash)
+			throws CoreException, InterruptedException {
+		final WritablePDOM target= (WritablePDOM) file.getIndexFragment();
+		fStore.acquireWriteLock(null);
+		try {
+			final PDOMFile stored= findStoredFile(file, contentsHash);
+			if (stored == null)
+				return null;
+			for (PDOMInclude include= stored.getFirstInclude(); include != null;
+					include= include.getNextInIncludes()) {
+				PDOMFile included= (PDOMFile) include.getIncludes();
+				if (included != null) {
+					PDOMFile targetFile= target.getFile(included.getLinkageID(), included.getLocation(),
+							included.getSignificantMacros());
+					if (targetFile == null || !targetFile.hasContent())
+						return null;
+				}
+			}
+			markUsed(stored);
+			storeFile((PDOMFile) file, stored);
+			return target.copyFile(stored, file.getSignificantMacros());
+		} finally {
+			fStore.releaseWriteLock();
+		}
+	}
+
+	private PDOMFile findStoredFile(IIndexFragmentFile file, long contentsHash) throws CoreException {
+		final ISignificantMacros key= getStoreKey(file.getSignificantMacros(), contentsHash);
+		final PDOMFile stored= fStore.getFile(file.getLinkageID(), file.getLocation(), key);
+		return stored != null && stored.hasContent() ? stored : null;
+	}
+
+	private static ISignificantMacros getStoreKey(ISignificantMacros sigMacros, long contentsHash) {
+		final char[] hash= Long.toHexString(contentsHash).toCharArray();
+		final char[] entry= new char[CONTENTS_HASH_MACRO.length + hash.length + 2];
+		entry[0]= (char) CONTENTS_HASH_MACRO.length;
+		System.arraycopy(CONTENTS_HASH_MACRO, 0, entry, 1, CONTENTS_HASH_MACRO.length);
+		entry[CONTENTS_HASH_MACRO.length + 1]= (char) hash.length;
+		System.arraycopy(hash, 0, entry, CONTENTS_HASH_MACRO.length + 2, hash.length);
+		return new SignificantMacros(CharArrayUtils.concat(sigMacros.encode(), entry));
+	}
+
+	public synchronized void close() throws CoreException {
+		fStore.close();
+	}
+}
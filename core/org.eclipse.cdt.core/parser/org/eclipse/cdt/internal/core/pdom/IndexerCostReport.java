@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the cost of indexing the individual translation units, such that expensive files can
+ * be identified. For every translation unit the time spent in the preprocessor, the parser, the
+ * name resolution and the index update is recorded, together with the number of include
+ * directives, tokens and names. In addition the hits and misses of caches can be recorded.
+ * <p>
+ * The report can be written as CSV, with one line per translation unit, or as JSON, which also
+ * contains the totals and the cache statistics. All times are in milliseconds, the parsing time
+ * includes the time spent in the preprocessor.
+ */
+public class IndexerCostReport {
+	private static final Map<String, IndexerCostReport> sReports= new HashMap<>();
+
+	/**
+	 * The cost of indexing a single translation unit.
+	 */
+	public static class FileCost {
+		public final String fPath;
+		public final long fPreprocessingTime;
+		public final long fParsingTime;
+		public final long fResolutionTime;
+		public final long fWriteTime;
+		public final int fIncludes;
+		public final int fTokens;
+		public final int fNames;
+
+		public FileCost(String path, long preprocessingTime, long parsingTime, long resolutionTime,
+				long writeTime, int includes, int tokens, int names) {
+			fPath= path;
+			fPreprocessingTime= preprocessingTime;
+			fParsingTime= parsingTime;
+			fResolutionTime= resolutionTime;
+			fWriteTime= writeTime;
+			fIncludes= includes;
+			fTokens= tokens;
+			fNames= names;
+		}
+
+		public long getTotalTime() {
+			return fParsingTime + fResolutionTime + fWriteTime;
+		}
+	}
+
+	private static final Comparator<FileCost> SLOWEST_FIRST= new Comparator<FileCost>() {
+		@Override
+		public int compare(FileCost c1, FileCost c2) {
+			long t1= c1.getTotalTime();
+			long t2= c2.getTotalTime();
+			return t1 > t2 ? -1 : t1 < t2 ? 1 : c1.fPath.compareTo(c2.fPath);
+		}
+	};
+
+	private final List<FileCost> fFiles= new ArrayList<>();
+	// Hits and misses per cache.
+	private final Map<String, long[]> fCaches= new LinkedHashMap<>();
+
+	/**
+	 * Returns the report that is written to the given file, such that the indexer tasks of one
+	 * session add to the same report.
+	 */
+	public static IndexerCostReport getReport(String fileName) {
+		synchronized (sReports) {
+			IndexerCostReport report= sReports.get(fileName);
+			if (report == null) {
+				report= new IndexerCostReport();
+				sReports.put(fileName, report);
+			}
+			return report;
+		}
+	}
+
+	public synchronized void add(FileCost cost) {
+		fFiles.add(cost);
+	}
+
+	/**
+	 * Adds hits and misses to the statistics of the given cache.
+	 */
+	public synchronized void addCacheStatistics(String cache, long hits, long misses) {
+		long[] stats= fCaches.get(cache);
+		if (stats == null) {
+			stats= new long[2];
+			fCaches.put(cache, stats);
+		}
+		stats[0] += hits;
+		stats[1] += misses;
+	}
+
+	public synchronized List<FileCost> getFiles() {
+		return new ArrayList<>(fFiles);
+	}
+
+	/**
+	 * Returns at most <code>n</code> files with the highest total time, slowest first.
+	 */
+	public synchronized List<FileCost> getSlowestFiles(int n) {
+		List<FileCost> files= new ArrayList<>(fFiles);
+		Collections.sort(files, SLOWEST_FIRST);
+		return files.size() > n ? files.subList(0, n) : files;
+	}
+
+	/**
+	 * Writes the report to the given file, as JSON if the name ends with <code>.json</code>,
+	 * otherwise as CSV.
+	 */
+	public void write(File file) throws IOException {
+		Writer out= new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")); //$NON-NLS-1$
+		try {
+			if (file.getName().toLowerCase().endsWith(".json")) { //$NON-NLS-1$
+				writeJSON(out);
+			} else {
+				writeCSV(out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public synchronized void writeCSV(Writer out) throws IOException {
+		out.write("file,preprocessing,parsing,resolution,write,total,includes,tokens,names\n"); //$NON-NLS-1$
+		for (FileCost cost : fFiles) {
+			out.write('"');
+			out.write(cost.fPath.replace("\"", "\"\"")); //$NON-NLS-1$ //$NON-NLS-2$
+			out.write('"');
+			out.write(',' + Long.toString(cost.fPreprocessingTime));
+			out.write(',' + Long.toString(cost.fParsingTime));
+			out.write(',' + Long.toString(cost.fResolutionTime));
+			out.write(',' + Long.toString(cost.fWriteTime));
+			out.write(',' + Long.toString(cost.getTotalTime()));
+			out.write(',' + Integer.toString(cost.fIncludes));
+			out.write(',' + Integer.toString(cost.fTokens));
+			out.write(',' + Integer.toString(cost.fNames));
+			out.write('\n');
+		}
+	}
+
+	public synchronized void writeJSON(Writer out) throws IOException {
+		long preprocessing= 0, parsing= 0, resolution= 0, write= 0, tokens= 0;
+		for (FileCost cost : fFiles) {
+			preprocessing += cost.fPreprocessingTime;
+			parsing += cost.fParsingTime;
+			resolution += cost.fResolutionTime;
+			write += cost.fWriteTime;
+			tokens += cost.fTokens;
+		}
+		out.write("{\n  \"totals\": {"); //$NON-NLS-1$
+		out.write("\"files\": " + fFiles.size()); //$NON-NLS-1$
+		out.write(", \"preprocessing\": " + preprocessing); //$NON-NLS-1$
+		out.write(", \"parsing\": " + parsing); //$NON-NLS-1$
+		out.write(", \"resolution\": " + resolution); //$NON-NLS-1$
+		out.write(", \"write\": " + write); //$NON-NLS-1$
+		out.write(", \"tokens\": " + tokens); //$NON-NLS-1$
+		out.write("},\n  \"caches\": {"); //$NON-NLS-1$
+		boolean first= true;
+		for (Map.Entry<String, long[]> entry : fCaches.entrySet()) {
+			final long hits= entry.getValue()[0];
+			final long misses= entry.getValue()[1];
+			out.write(first ? "\n    " : ",\n    "); //$NON-NLS-1$ //$NON-NLS-2$
+			writeString(out, entry.getKey());
+			out.write(": {\"hits\": " + hits + ", \"misses\": " + misses); //$NON-NLS-1$ //$NON-NLS-2$
+			out.write(", \"hitRate\": " + (hits + misses == 0 ? 0.0 : (double) hits / (hits + misses))); //$NON-NLS-1$
+			out.write('}');
+			first= false;
+		}
+		out.write(first ? "},\n  \"files\": [" : "\n  },\n  \"files\": ["); //$NON-NLS-1$ //$NON-NLS-2$
+		first= true;
+		for (FileCost cost : fFiles) {
+			out.write(first ? "\n    {\"file\": " : ",\n    {\"file\": "); //$NON-NLS-1$ //$NON-NLS-2$
+			writeString(out, cost.fPath);
+			out.write(", \"preprocessing\": " + cost.fPreprocessingTime); //$NON-NLS-1$
+			out.write(", \"parsing\": " + cost.fParsingTime); //$NON-NLS-1$
+			out.write(", \"resolution\": " + cost.fResolutionTime); //$NON-NLS-1$
+			out.write(", \"write\": " + cost.fWriteTime); //$NON-NLS-1$
+			out.write(", \"total\": " + cost.getTotalTime()); //$NON-NLS-1$
+			out.write(", \"includes\": " + cost.fIncludes); //$NON-NLS-1$
+			out.write(", \"tokens\": " + cost.fTokens); //$NON-NLS-1$
+			out.write(", \"names\": " + cost.fNames); //$NON-NLS-1$
+			out.write('}');
+			first= false;
+		}
+		out.write(first ? "]\n}\n" : "\n  ]\n}\n"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static void writeString(Writer out, String str) throws IOException {
+		out.write('"');
+		for (int i = 0; i < str.length(); i++) {
+			final char c= str.charAt(i);
+			switch (c) {
+			case '"':
+			case '\\':
+				out.write('\\');
+				out.write(c);
+				break;
+			default:
+				if (c < 0x20) {
+					out.write(String.format("\\u%04x", (int) c)); //$NON-NLS-1$
+				} else {
+					out.write(c);
+				}
+				break;
+			}
+		}
+		out.write('"');
+	}
+}
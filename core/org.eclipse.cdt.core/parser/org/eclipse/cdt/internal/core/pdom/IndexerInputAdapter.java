@@ -83,6 +83,21 @@ public abstract class IndexerInputAdapter extends ASTFilePathResolver {
 	 */
 	public abstract int getIndexingPriority(IIndexFileLocation location);
 
+	/**
+	 * Returns the file the user currently works with, the files it includes are indexed with its
+	 * priority. May return <code>null</code>.
+	 */
+	public IIndexFileLocation getActiveFile() {
+		return null;
+	}
+
+	/**
+	 * Returns a number that changes whenever the indexing priorities or the active file change.
+	 */
+	public int getPriorityModificationCount() {
+		return 0;
+	}
+
 	/**
 	 * Tests whether the file in the index is allowed to be part of an SDK. If not
 	 * it will be indexed.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2008 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,8 @@ public class IndexerProgress {
 	public int fPrimaryHeaderCount;	// Headers parsed that were actually requested
 	public int fCompletedHeaders;	// All headers including those found through inclusions
 	public int fTimeEstimate;		// Fall-back for the time where no file-count is available
+	public int[] fParsedFilesPerThread;	// Files parsed by each parser thread, null without parser threads
+	public long[] fParsingTimePerThread;	// Time in milliseconds each parser thread spent parsing
 
 	public IndexerProgress() {
 	}
@@ -25,6 +27,10 @@ public class IndexerProgress {
 		fCompletedSources= info.fCompletedSources;
 		fCompletedHeaders= info.fCompletedHeaders;
 		fPrimaryHeaderCount= info.fPrimaryHeaderCount;
+		if (info.fParsedFilesPerThread != null) {
+			fParsedFilesPerThread= info.fParsedFilesPerThread.clone();
+			fParsingTimePerThread= info.fParsingTimePerThread.clone();
+		}
 	}
 
 	public int getEstimatedTicks() {
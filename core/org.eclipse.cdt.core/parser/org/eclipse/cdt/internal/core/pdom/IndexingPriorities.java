@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+
+/**
+ * Tracks the files the user works with, such that the indexer can update them ahead of other
+ * files. The active file has the highest priority, the files it includes are indexed with the
+ * same priority. Files open in editors come next, followed by the files that have been active
+ * recently.
+ * <p>
+ * Every change increments a modification count, which allows a running indexer task to notice
+ * that the files it has not yet parsed have to be ordered again.
+ */
+public final class IndexingPriorities {
+	public static final int RECENT = 1;
+	public static final int OPEN = 2;
+	public static final int ACTIVE = 3;
+
+	private static final int MAX_RECENT_FILES = 20;
+
+	private final AtomicMultiSet<IIndexFileLocation> fOpenFiles= new AtomicMultiSet<>();
+	// The most recently active file is the last one.
+	private final LinkedHashSet<IIndexFileLocation> fRecentFiles= new LinkedHashSet<>();
+	private IIndexFileLocation fActiveFile;
+	private volatile int fModificationCount;
+
+	/**
+	 * Notifies about a file opened in an editor.
+	 */
+	public synchronized void fileOpened(IIndexFileLocation location) {
+		if (fOpenFiles.add(location) == 1) {
+			fModificationCount++;
+		}
+	}
+
+	/**
+	 * Notifies about an editor of a file being closed.
+	 */
+	public synchronized void fileClosed(IIndexFileLocation location) {
+		if (fOpenFiles.remove(location) == 0) {
+			if (location.equals(fActiveFile)) {
+				fActiveFile= null;
+			}
+			fModificationCount++;
+		}
+	}
+
+	/**
+	 * Notifies about an editor of a file becoming active, e.g. because the user navigated to it.
+	 */
+	public synchronized void fileActivated(IIndexFileLocation location) {
+		if (location.equals(fActiveFile))
+			return;
+		fActiveFile= location;
+		fRecentFiles.remove(location);
+		fRecentFiles.add(location);
+		if (fRecentFiles.size() > MAX_RECENT_FILES) {
+			Iterator<IIndexFileLocation> it= fRecentFiles.iterator();
+			it.next();
+			it.remove();
+		}
+		fModificationCount++;
+	}
+
+	/**
+	 * Returns the file of the active editor, or <code>null</code>.
+	 */
+	public synchronized IIndexFileLocation getActiveFile() {
+		return fActiveFile;
+	}
+
+	/**
+	 * Returns the priority of the given file, zero for files the user does not work with.
+	 * Files included by the active file are not considered.
+	 */
+	public synchronized int getPriority(IIndexFileLocation location) {
+		if (location.equals(fActiveFile))
+			return ACTIVE;
+		if (fOpenFiles.contains(location))
+			return OPEN;
+		if (fRecentFiles.contains(location))
+			return RECENT;
+		return 0;
+	}
+
+	/**
+	 * Returns a number that changes whenever the priority of a file changes.
+	 */
+	public int getModificationCount() {
+		return fModificationCount;
+	}
+}
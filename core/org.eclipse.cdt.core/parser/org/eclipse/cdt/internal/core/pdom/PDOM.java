@@ -74,6 +74,8 @@ import org.eclipse.cdt.internal.core.pdom.db.DBProperties;
 import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeComparator;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
+import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.TrigramIndex;
 import org.eclipse.cdt.internal.core.pdom.dom.BindingCollector;
 import org.eclipse.cdt.internal.core.pdom.dom.FindBinding;
 import org.eclipse.cdt.internal.core.pdom.dom.IPDOMIterator;
@@ -106,6 +108,10 @@ public class PDOM extends PlatformObject implements IPDOM {
 	private static final int BLOCKED_WRITE_LOCK_OUTPUT_INTERVAL = 30000;
 	private static final int LONG_WRITE_LOCK_REPORT_THRESHOLD = 1000;
 	private static final int LONG_READ_LOCK_WAIT_REPORT_THRESHOLD = 1000;
+	// Time after which readers that overlap each other no longer keep changes from being published.
+	private static final int MAX_UNPUBLISHED_TIME = 2000;
+	// Number of chunks kept for the readers of a snapshot, after which the changes need to be published.
+	private static final int MAX_SNAPSHOT_CHUNKS = 16 * 1024 * 1024 / Database.CHUNK_SIZE;
 	static boolean sDEBUG_LOCKS= false; // Initialized in the PDOMManager, because IBM needs PDOM independent of runtime plugin.
 
 	/**
@@ -252,10 +258,14 @@ public class PDOM extends PlatformObject implements IPDOM {
 	 *  170.0 - Unconditionally store arguments of EvalTypeId, bug 430230.
 	 *  171.0 - Replacement headers for Organize Includes, bug 414692.
 	 *  172.0 - Store default values for function parameters, bug 432701.
+	 *  173.0 - Configurable chunk size and block alignment, layout stored in the database header.
+	 *  174.0 - Directories of file locations are shared between files.
+	 *  175.0 - Trigram indexes for the names of bindings and macros.
+	 *  176.0 - The directories of file locations are reference counted.
 	 */
-	private static final int MIN_SUPPORTED_VERSION= version(172, 0);
-	private static final int MAX_SUPPORTED_VERSION= version(172, Short.MAX_VALUE);
-	private static final int DEFAULT_VERSION = version(172, 0);
+	private static final int MIN_SUPPORTED_VERSION= version(176, 0);
+	private static final int MAX_SUPPORTED_VERSION= version(176, Short.MAX_VALUE);
+	private static final int DEFAULT_VERSION = version(176, 0);
 
 	private static int version(int major, int minor) {
 		return (major << 16) + minor;
@@ -292,11 +302,17 @@ public class PDOM extends PlatformObject implements IPDOM {
 	public static final int INDEX_OF_FILES_WITH_UNRESOLVED_INCLUDES = Database.DATA_AREA + 12;
 	public static final int PROPERTIES = Database.DATA_AREA + 16;
 	public static final int TAG_INDEX = Database.DATA_AREA + 20;
-	public static final int END= Database.DATA_AREA + 24;
+	public static final int DIRECTORY_INDEX = Database.DATA_AREA + 24;
+	public static final int END= Database.DATA_AREA + 28;
 	static {
 		assert END <= Database.CHUNK_SIZE;
 	}
 
+	// Layout of the entries of the directory index.
+	private static final int DIRECTORY_STRING = 0;
+	private static final int DIRECTORY_REFERENCES = DIRECTORY_STRING + Database.PTR_SIZE;
+	private static final int DIRECTORY_RECORD_SIZE = DIRECTORY_REFERENCES + Database.INT_SIZE;
+
 	public static class ChangeEvent {
 		public Set<IIndexFileLocation> fClearedFiles= new HashSet<>();
 		public Set<IIndexFileLocation> fFilesWritten= new HashSet<>();
@@ -354,6 +370,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 	// Local caches
 	protected Database db;
 	private BTree fileIndex;
+	private BTree directoryIndex;
 	private PDOMTagIndex tagIndex;
 	private BTree indexOfDefectiveFiles;
 	private BTree indexOfFiledWithUnresolvedIncludes;
@@ -361,7 +378,12 @@ public class PDOM extends PlatformObject implements IPDOM {
 	private File fPath;
 	private final IIndexLocationConverter locationConverter;
 	private final Map<String, IPDOMLinkageFactory> fPDOMLinkageFactoryCache;
-	private final HashMap<Object, Object> fResultCache= new HashMap<>();
+	private final ResultCache fResultCache= new ResultCache();
+	// With snapshots, the writer does not share its results with the readers of the snapshot.
+	private final ResultCache fWriterResultCache= new ResultCache();
+	// Linkages changed by the writer, whose cached results have not been invalidated, guarded by mutex.
+	private final BitSet fChangedLinkages= new BitSet();
+	private final BitSet fUnpublishedLinkages= new BitSet();
 	private List<IListener> listeners;
 	protected ChangeEvent fEvent= new ChangeEvent();
 
@@ -390,7 +412,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	private void loadDatabase(File dbPath, ChunkCache cache) throws CoreException {
 		fPath= dbPath;
-		final boolean lockDB= db == null || lockCount != 0;
+		final boolean lockDB= db == null || isLocked();
 
 		clearCaches();
 		db = new Database(fPath, cache, getDefaultVersion(), isPermanentlyReadOnly());
@@ -399,16 +421,23 @@ public class PDOM extends PlatformObject implements IPDOM {
 		if (isSupportedVersion()) {
 			readLinkages();
 		}
-		db.setLocked(lockCount != 0);
+		db.setLocked(isLocked());
 	}
 
 	public IIndexLocationConverter getLocationConverter() {
 		return locationConverter;
 	}
 
+	/**
+	 * Returns the factories for the linkages of this PDOM, by linkage name.
+	 */
+	protected Map<String, IPDOMLinkageFactory> getLinkageFactoryMappings() {
+		return fPDOMLinkageFactoryCache;
+	}
+
 	public boolean isSupportedVersion() throws CoreException {
-		final int version = db.getVersion();
-		return version >= MIN_SUPPORTED_VERSION && version <= MAX_SUPPORTED_VERSION;
+		// A database with a different chunk size or block alignment cannot be read and is rebuilt.
+		return isSupportedVersion(db.getVersion()) && db.isCompatibleLayout();
 	}
 
 	private void readLinkages() throws CoreException {
@@ -483,6 +512,73 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return fileIndex;
 	}
 
+	/**
+	 * Returns the index of the directories of file locations, the entries are shared by the files
+	 * of a directory.
+	 */
+	private BTree getDirectoryIndex() throws CoreException {
+		if (directoryIndex == null) {
+			directoryIndex = new BTree(getDB(), DIRECTORY_INDEX, new IBTreeComparator() {
+				@Override
+				public int compare(long record1, long record2) throws CoreException {
+					return getDirectoryString(db, record1).compare(getDirectoryString(db, record2), true);
+				}
+			});
+		}
+		return directoryIndex;
+	}
+
+	/**
+	 * Returns the string of an entry of the directory index.
+	 */
+	public static IString getDirectoryString(Database db, long record) throws CoreException {
+		return db.getString(db.getRecPtr(record + DIRECTORY_STRING));
+	}
+
+	/**
+	 * Returns the record of the entry for the given directory of a file location and counts a
+	 * reference to it, the entry is created if it does not yet exist. The entry is shared by all
+	 * files of the directory, each of them has to release it via {@link #releaseDirectory(long)}.
+	 */
+	public long acquireDirectory(String directory) throws CoreException {
+		final char[] key = directory.toCharArray();
+		final long[] result = new long[1];
+		final BTree index = getDirectoryIndex();
+		index.accept(new IBTreeVisitor() {
+			@Override
+			public int compare(long record) throws CoreException {
+				return getDirectoryString(db, record).compare(key, true);
+			}
+			@Override
+			public boolean visit(long record) throws CoreException {
+				result[0] = record;
+				return false;
+			}
+		});
+		if (result[0] == 0) {
+			result[0] = db.malloc(DIRECTORY_RECORD_SIZE);
+			db.putRecPtr(result[0] + DIRECTORY_STRING, db.newString(key).getRecord());
+			index.insert(result[0]);
+		}
+		db.putInt(result[0] + DIRECTORY_REFERENCES, db.getInt(result[0] + DIRECTORY_REFERENCES) + 1);
+		return result[0];
+	}
+
+	/**
+	 * Releases a reference to an entry of the directory index, the entry is deleted together
+	 * with its string when the last file of the directory releases it.
+	 */
+	public void releaseDirectory(long record) throws CoreException {
+		final int references = db.getInt(record + DIRECTORY_REFERENCES) - 1;
+		if (references > 0) {
+			db.putInt(record + DIRECTORY_REFERENCES, references);
+			return;
+		}
+		getDirectoryIndex().delete(record);
+		getDirectoryString(db, record).delete();
+		db.free(record);
+	}
+
 	public PDOMTagIndex getTagIndex() throws CoreException {
 		if (tagIndex == null) {
 			tagIndex = new PDOMTagIndex(db, TAG_INDEX);
@@ -594,12 +690,29 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	protected void clearFileIndex() throws CoreException {
-		db.putRecPtr(FILE_INDEX, 0);
+		getFileIndex().clear();
 		fileIndex = null;
 	}
 
+	/**
+	 * Rebuilds the b-trees for the files and the linkages with completely filled nodes. Inserting
+	 * records leaves the nodes partially filled, packing them makes the trees smaller and faster
+	 * to search. Used when an index is exported, the time for packing is not spent for indexing.
+	 */
+	public void packIndexes() throws CoreException {
+		assert lockCount < 0; // needs write-lock.
+		getFileIndex().pack();
+		getDirectoryIndex().pack();
+		getIndexOfDefectiveFiles().pack();
+		getIndexOfFilesWithUnresolvedIncludes().pack();
+		for (PDOMLinkage linkage : getLinkageList()) {
+			linkage.packIndexes();
+		}
+	}
+
 	protected void clear() throws CoreException {
 		assert lockCount < 0; // needs write-lock.
+		excludeSnapshotReaders();
 
 		// Clear out the database, everything is set to zero.
 		int vers = getDefaultVersion();
@@ -610,6 +723,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	void reloadFromFile(File file) throws CoreException {
 		assert lockCount < 0;	// must have write lock.
+		excludeSnapshotReaders();
 		File oldFile= fPath;
 		clearCaches();
 		try {
@@ -753,6 +867,12 @@ public class PDOM extends PlatformObject implements IPDOM {
 			if (prefix != null) {
 				return findBindingsForPrefix(prefix, isFullyQualified, caseSensitive, filter, monitor);
 			}
+
+			if (patterns.length == 1 && !isFullyQualified) {
+				IIndexFragmentBinding[] result= findBindingsViaTrigrams(patterns[0], filter, monitor);
+				if (result != null)
+					return result;
+			}
 		}
 
 		BindingFinder finder = new BindingFinder(patterns, isFullyQualified, filter, monitor);
@@ -770,6 +890,37 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return finder.getBindings();
 	}
 
+	/**
+	 * Checks the bindings containing the literals of the pattern, which are found with the trigram
+	 * indexes of the linkages. Returns <code>null</code> when the pattern has no literal that is
+	 * long enough.
+	 */
+	private IIndexFragmentBinding[] findBindingsViaTrigrams(Pattern pattern, IndexFilter filter,
+			IProgressMonitor monitor) throws CoreException {
+		final char[][] literals= TrigramIndex.getRequiredLiterals(pattern.pattern());
+		if (literals == null)
+			return null;
+
+		List<IIndexFragmentBinding> result= new ArrayList<>();
+		for (PDOMLinkage linkage : getLinkageList()) {
+			if (filter.acceptLinkage(linkage)) {
+				final long[] candidates= linkage.getBindingTrigramIndex().findCandidates(literals);
+				if (candidates == null)
+					return null;
+				for (long candidate : candidates) {
+					if (monitor.isCanceled())
+						return IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+					PDOMBinding binding= linkage.getBinding(candidate);
+					if (binding != null && pattern.matcher(new String(binding.getNameCharArray())).matches()
+							&& filter.acceptBinding(binding)) {
+						result.add(binding);
+					}
+				}
+			}
+		}
+		return result.toArray(new IIndexFragmentBinding[result.size()]);
+	}
+
 	private Boolean getCaseSensitive(Pattern[] patterns) {
 		Boolean caseSensitive= null;
 		for (Pattern p : patterns) {
@@ -844,6 +995,10 @@ public class PDOM extends PlatformObject implements IPDOM {
 			if (prefix != null) {
 				return findMacroContainers(prefix, true, caseSensitive, filter, monitor);
 			}
+
+			IIndexFragmentBinding[] result= findMacroContainersViaTrigrams(pattern, filter, monitor);
+			if (result != null)
+				return result;
 		}
 
 		List<IIndexFragmentBinding> result= new ArrayList<>();
@@ -863,6 +1018,31 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return  result.toArray(new IIndexFragmentBinding[result.size()]);
 	}
 
+	private IIndexFragmentBinding[] findMacroContainersViaTrigrams(Pattern pattern, IndexFilter filter,
+			IProgressMonitor monitor) throws CoreException {
+		final char[][] literals= TrigramIndex.getRequiredLiterals(pattern.pattern());
+		if (literals == null)
+			return null;
+
+		List<IIndexFragmentBinding> result= new ArrayList<>();
+		for (PDOMLinkage linkage : getLinkageList()) {
+			if (filter.acceptLinkage(linkage)) {
+				final long[] candidates= linkage.getMacroTrigramIndex().findCandidates(literals);
+				if (candidates == null)
+					return null;
+				for (long candidate : candidates) {
+					if (monitor.isCanceled())
+						return IIndexFragmentBinding.EMPTY_INDEX_BINDING_ARRAY;
+					PDOMMacroContainer container= new PDOMMacroContainer(linkage, candidate);
+					if (pattern.matcher(new String(container.getNameCharArray())).matches()) {
+						result.add(container);
+					}
+				}
+			}
+		}
+		return result.toArray(new IIndexFragmentBinding[result.size()]);
+	}
+
 	@Override
 	public IIndexFragmentBinding[] findBindings(char[][] names, IndexFilter filter,
 			IProgressMonitor monitor) throws CoreException {
@@ -928,6 +1108,8 @@ public class PDOM extends PlatformObject implements IPDOM {
 	}
 
 	public void insertLinkage(PDOMLinkage linkage) throws CoreException {
+		// Readers of a snapshot must not find a linkage that is not part of the snapshot.
+		excludeSnapshotReaders();
 		linkage.setNext(db.getRecPtr(LINKAGES));
 		db.putRecPtr(LINKAGES, linkage.getRecord());
 		fLinkageIDCache.put(linkage.getLinkageID(), linkage);
@@ -935,9 +1117,15 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	// Read-write lock rules. Readers don't conflict with other readers,
 	// Writers conflict with readers, and everyone conflicts with writers.
+	// When the database uses snapshots, readers don't conflict with the writer. They read the
+	// state of the database as of the last publication of the changes, which happens when
+	// neither a reader nor the writer holds a lock.
 	private final Object mutex = new Object();
 	private int lockCount;
 	private int waitingReaders;
+	private int snapshotReaders;
+	private boolean readersBlocked;
+	private long unpublishedSince;
 	private long lastWriteAccess= 0;
 	private long lastReadAccess= 0;
 	private long timeWriteLockAcquired;
@@ -946,14 +1134,31 @@ public class PDOM extends PlatformObject implements IPDOM {
 	public void acquireReadLock() throws InterruptedException {
 		long t = sDEBUG_LOCKS ? System.nanoTime() : 0;
 		synchronized (mutex) {
+			final boolean snapshots= db.usesSnapshots();
+			if (snapshots && snapshotReaders == 0 && lockCount == 0) {
+				publishChanges();
+			}
 			++waitingReaders;
 			try {
-				while (lockCount < 0)
-					mutex.wait();
+				if (snapshots) {
+					if (snapshotReaders > 0 && lockCount == 0 && isPublicationOverdue()) {
+						// Let the current readers finish, such that the changes can be published.
+						readersBlocked= true;
+					}
+					while (readersBlocked)
+						mutex.wait();
+				} else {
+					while (lockCount < 0)
+						mutex.wait();
+				}
 			} finally {
 				--waitingReaders;
 			}
-			++lockCount;
+			if (snapshots) {
+				++snapshotReaders;
+			} else {
+				++lockCount;
+			}
 			db.setLocked(true);
 
 			if (sDEBUG_LOCKS) {
@@ -970,17 +1175,22 @@ public class PDOM extends PlatformObject implements IPDOM {
 	public void releaseReadLock() {
 		boolean clearCache= false;
 		synchronized (mutex) {
-			assert lockCount > 0: "No lock to release"; //$NON-NLS-1$
+			assert lockCount > 0 || snapshotReaders > 0: "No lock to release"; //$NON-NLS-1$
 			if (sDEBUG_LOCKS) {
 				decReadLock(fLockDebugging);
 			}
 
 			lastReadAccess= System.currentTimeMillis();
-			if (lockCount > 0)
+			if (snapshotReaders > 0) {
+				if (--snapshotReaders == 0 && lockCount == 0) {
+					publishChanges();
+				}
+			} else if (lockCount > 0) {
 				--lockCount;
+			}
 			mutex.notifyAll();
-			clearCache= lockCount == 0;
-			db.setLocked(lockCount != 0);
+			clearCache= !isLocked();
+			db.setLocked(!clearCache);
 		}
 		if (clearCache) {
 			clearResultCache();
@@ -1011,28 +1221,67 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 			if (giveupReadLocks > 0) {
 				// give up on read locks
-				assert lockCount >= giveupReadLocks: "Not enough locks to release"; //$NON-NLS-1$
-				if (lockCount < giveupReadLocks) {
-					giveupReadLocks= lockCount;
+				final int readLocks= lockCount + snapshotReaders;
+				assert readLocks >= giveupReadLocks: "Not enough locks to release"; //$NON-NLS-1$
+				if (readLocks < giveupReadLocks) {
+					giveupReadLocks= readLocks;
 				}
 			} else {
 				giveupReadLocks= 0;
 			}
 
-			// Let the readers go first
 			long start= sDEBUG_LOCKS ? System.currentTimeMillis() : 0;
-			while (lockCount > giveupReadLocks || waitingReaders > 0) {
-				mutex.wait(CANCELLATION_CHECK_INTERVAL);
-				if (monitor != null && monitor.isCanceled()) {
-					throw new OperationCanceledException();
+			boolean excludeReaders= false;
+			if (db.usesSnapshots()) {
+				// Readers don't conflict with the writer, but another writer must finish first.
+				while (lockCount < 0) {
+					mutex.wait(CANCELLATION_CHECK_INTERVAL);
+					if (monitor != null && monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+					if (sDEBUG_LOCKS) {
+						start = reportBlockedWriteLock(start, giveupReadLocks);
+					}
+				}
+				// The read locks to give up are held as readers of the snapshot.
+				snapshotReaders -= giveupReadLocks;
+				if (snapshotReaders > 0 && isPublicationOverdue()) {
+					// Let the readers finish, such that the previous changes get published.
+					readersBlocked= true;
+					while (snapshotReaders > 0 && isPublicationOverdue()) {
+						mutex.wait(CANCELLATION_CHECK_INTERVAL);
+						if (monitor != null && monitor.isCanceled()) {
+							readersBlocked= false;
+							mutex.notifyAll();
+							throw new OperationCanceledException();
+						}
+					}
+				}
+				if (snapshotReaders == 0) {
+					publishChanges();
+					// Without readers of the snapshot the writer modifies the chunks in place, readers
+					// arriving in the meantime wait until the write lock is released.
+					readersBlocked= true;
+					excludeReaders= true;
 				}
-				if (sDEBUG_LOCKS) {
-					start = reportBlockedWriteLock(start, giveupReadLocks);
+			} else {
+				// Let the readers go first
+				while (lockCount > giveupReadLocks || waitingReaders > 0) {
+					mutex.wait(CANCELLATION_CHECK_INTERVAL);
+					if (monitor != null && monitor.isCanceled()) {
+						throw new OperationCanceledException();
+					}
+					if (sDEBUG_LOCKS) {
+						start = reportBlockedWriteLock(start, giveupReadLocks);
+					}
 				}
 			}
 			lockCount= -1;
 			if (sDEBUG_LOCKS)
 				timeWriteLockAcquired = System.currentTimeMillis();
+			if (excludeReaders) {
+				db.excludeReaders();
+			}
 			db.setExclusiveLock();
 		}
 	}
@@ -1043,9 +1292,14 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	@SuppressWarnings("nls")
 	public void releaseWriteLock(int establishReadLocks, boolean flush) {
-		// When all locks are released we can clear the result cache.
+		// Without the read locks of the writer the results of the changed linkages are stale.
 		if (establishReadLocks == 0) {
-			clearResultCache();
+			final BitSet changedLinkages;
+			synchronized (mutex) {
+				changedLinkages= (BitSet) fChangedLinkages.clone();
+				fChangedLinkages.clear();
+			}
+			getResultCache().invalidate(changedLinkages);
 		}
 		try {
 			db.giveUpExclusiveLock(flush);
@@ -1057,6 +1311,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 			lastWriteAccess= System.currentTimeMillis();
 		final ChangeEvent event= fEvent;
 		fEvent= new ChangeEvent();
+		boolean clearCache= false;
 		synchronized (mutex) {
 			if (sDEBUG_LOCKS) {
 				long timeHeld = lastWriteAccess - timeWriteLockAcquired;
@@ -1066,14 +1321,80 @@ public class PDOM extends PlatformObject implements IPDOM {
 				decWriteLock(establishReadLocks);
 			}
 
-			if (lockCount < 0)
+			if (db.usesSnapshots()) {
+				lockCount= 0;
+				snapshotReaders += establishReadLocks;
+				if (snapshotReaders == 0 || db.excludesReaders()) {
+					// The only readers are the ones of the writer, which have seen the changes.
+					publishChanges();
+				} else if (unpublishedSince == 0) {
+					unpublishedSince= System.currentTimeMillis();
+				}
+			} else if (lockCount < 0) {
 				lockCount= establishReadLocks;
+			}
 			mutex.notifyAll();
-			db.setLocked(lockCount != 0);
+			// When all locks are released we can clear the result cache.
+			clearCache= !isLocked();
+			db.setLocked(!clearCache);
+		}
+		if (clearCache) {
+			clearResultCache();
 		}
 		fireChange(event);
 	}
 
+	private boolean isLocked() {
+		return lockCount != 0 || snapshotReaders != 0;
+	}
+
+	/**
+	 * Makes the changes of the writer visible to the readers. Must be called while holding the mutex,
+	 * when no reader and no writer holds a lock.
+	 */
+	private void publishChanges() {
+		if (db.hasUnpublishedChanges()) {
+			db.publishChanges();
+			fResultCache.invalidate(fUnpublishedLinkages);
+			fUnpublishedLinkages.clear();
+		}
+		unpublishedSince= 0;
+		readersBlocked= false;
+		mutex.notifyAll();
+	}
+
+	private boolean isPublicationOverdue() {
+		return unpublishedSince != 0 && (System.currentTimeMillis() - unpublishedSince > MAX_UNPUBLISHED_TIME
+				|| db.getSnapshotChunkCount() > MAX_SNAPSHOT_CHUNKS);
+	}
+
+	/**
+	 * For changes that cannot be isolated from the readers of a snapshot, waits until no reader
+	 * holds a lock. New readers are blocked until the write lock is released.
+	 */
+	protected void excludeSnapshotReaders() throws CoreException {
+		if (!db.usesSnapshots())
+			return;
+
+		assert lockCount < 0; // needs write-lock.
+
+		synchronized (mutex) {
+			readersBlocked= true;
+			boolean interrupted= false;
+			while (snapshotReaders > 0) {
+				try {
+					mutex.wait();
+				} catch (InterruptedException e) {
+					interrupted= true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		db.excludeReaders();
+	}
+
 	@Override
 	public boolean hasWaitingReaders() {
 		synchronized (mutex) {
@@ -1399,7 +1720,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 			return PDOM.versionString(version);
 		}
 		// play it safe, properties are accessed before version checks.
-		if (PDOM.isSupportedVersion(version)) {
+		if (isSupportedVersion()) {
 			return new DBProperties(db, PROPERTIES).getProperty(propertyName);
 		}
 		if (IIndexFragment.PROPERTY_FRAGMENT_ID.equals(propertyName)) {
@@ -1415,6 +1736,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	private void clearCaches() {
 		fileIndex= null;
+		directoryIndex= null;
 		tagIndex = null;
 		indexOfDefectiveFiles= null;
 		indexOfFiledWithUnresolvedIncludes= null;
@@ -1424,9 +1746,63 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	@Override
 	public void clearResultCache() {
-		synchronized (fResultCache) {
-			fResultCache.clear();
+		fResultCache.clear();
+		fWriterResultCache.clear();
+	}
+
+	private ResultCache getResultCache() {
+		return db.usesSnapshots() && !db.readsSnapshot() ? fWriterResultCache : fResultCache;
+	}
+
+	/**
+	 * Notifies that the writer changed the bindings of the given linkage. When the write lock is
+	 * released, or the changes are published to the readers of a snapshot, the cached results of
+	 * the linkage are dropped. <b>A write-lock must be held.</b>
+	 */
+	protected void linkageChanged(int linkageID) {
+		synchronized (mutex) {
+			fChangedLinkages.set(linkageID);
+			if (db.usesSnapshots()) {
+				fUnpublishedLinkages.set(linkageID);
+			}
+		}
+	}
+
+	/**
+	 * Returns the hits of the result caches since the last reset of the counters.
+	 */
+	public long getResultCacheHits() {
+		return fResultCache.getHits() + fWriterResultCache.getHits();
+	}
+
+	/**
+	 * Returns the misses of the result caches since the last reset of the counters.
+	 */
+	public long getResultCacheMisses() {
+		return fResultCache.getMisses() + fWriterResultCache.getMisses();
+	}
+
+	/**
+	 * Returns the number of results evicted from the result caches since the last reset of
+	 * the counters.
+	 */
+	public long getResultCacheEvictions() {
+		return fResultCache.getEvictions() + fWriterResultCache.getEvictions();
+	}
+
+	/**
+	 * Returns the linkage a cached result belongs to, or zero.
+	 */
+	private static int getLinkageID(Object result) {
+		if (result instanceof Object[] && ((Object[]) result).length > 0) {
+			result= ((Object[]) result)[0];
+		}
+		if (result instanceof PDOMNode) {
+			final PDOMLinkage linkage= ((PDOMNode) result).getLinkage();
+			if (linkage != null)
+				return linkage.getLinkageID();
 		}
+		return 0;
 	}
 
 	@Override
@@ -1439,9 +1815,16 @@ public class PDOM extends PlatformObject implements IPDOM {
 		return db.getCacheMisses();
 	}
 
+	@Override
+	public long getCacheEvictions() {
+		return db.getCacheEvictions();
+	}
+
 	@Override
 	public void resetCacheCounters() {
 		db.resetCacheCounters();
+		fResultCache.resetCounters();
+		fWriterResultCache.resetCounters();
 	}
 
 	protected void flush() throws CoreException {
@@ -1450,9 +1833,7 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	@Override
 	public Object getCachedResult(Object key) {
-		synchronized (fResultCache) {
-			return fResultCache.get(key);
-		}
+		return getResultCache().get(key);
 	}
 
 	public void putCachedResult(Object key, Object result) {
@@ -1461,20 +1842,11 @@ public class PDOM extends PlatformObject implements IPDOM {
 
 	@Override
 	public Object putCachedResult(Object key, Object result, boolean replace) {
-		synchronized (fResultCache) {
-			Object old= fResultCache.put(key, result);
-			if (old != null && !replace) {
-				fResultCache.put(key, old);
-				return old;
-			}
-			return result;
-		}
+		return getResultCache().put(key, result, getLinkageID(result), replace);
 	}
 
 	public void removeCachedResult(Object key) {
-		synchronized (fResultCache) {
-			fResultCache.remove(key);
-		}
+		getResultCache().remove(key);
 	}
 
 	public String createKeyForCache(long record, char[] name) {
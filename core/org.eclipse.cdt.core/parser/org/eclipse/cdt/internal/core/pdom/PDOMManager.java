@@ -159,6 +159,7 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 	private final Job fNotificationJob;
 
 	private final AtomicMultiSet<IIndexFileLocation> fFilesIndexedUnconditionlly= new AtomicMultiSet<>();
+	private final IndexingPriorities fIndexingPriorities= new IndexingPriorities();
 
     /**
      * Stores mapping from pdom to project, used to serialize creation of new pdoms.
@@ -398,6 +399,11 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 				pdom.releaseWriteLock();
 			}
 			pdom.setASTFilePathResolver(new ProjectIndexerInputAdapter(project, false));
+			final int storeSize= IndexContentStore.getConfiguredSize();
+			if (storeSize > 0) {
+				pdom.setContentStore(new IndexContentStore(IndexContentStore.getStoreLocation(dbFile),
+						pdom.getLocationConverter(), getLinkageFactories(), storeSize));
+			}
 			pdom.addListener(this);
 
 			fFileToProject.put(dbFile, project);
@@ -867,6 +873,10 @@ public class PDOMManager implements IWritableIndexManager, IListener {
         					finalpdom.close();
         					if (delete) {
         						finalpdom.getDB().getLocation().delete();
+        						IndexContentStore store= finalpdom.getContentStore();
+        						if (store != null) {
+        							store.getLocation().delete();
+        						}
         					}
         				} catch (CoreException e) {
         					CCorePlugin.log(e);
@@ -1334,6 +1344,42 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 		}
 	}
 
+	/**
+	 * Replaces the database of the project's index by a compacted copy, see
+	 * {@link WritablePDOM#writeCompactedCopy(File)}. The index is locked for writing until the
+	 * copy has been swapped in. Should be used when the free space of the database, as reported
+	 * by {@link WritablePDOM#getFreeBlockStatistics()}, becomes too large. Does nothing while
+	 * the index of the project is being set up.
+	 * @throws OperationCanceledException in case the thread was interrupted
+	 */
+	public void compactProjectPDOM(ICProject project, IProgressMonitor monitor) throws CoreException {
+		IPDOM ipdom= getPDOM(project);
+		if (!(ipdom instanceof WritablePDOM))
+			return;
+		WritablePDOM pdom= (WritablePDOM) ipdom;
+		String newName= createNewDatabaseName(project);
+		File newFile= fileFromDatabaseName(newName);
+		try {
+			pdom.acquireWriteLock(monitor);
+		} catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		}
+		try {
+			try {
+				pdom.writeCompactedCopy(newFile);
+			} catch (CoreException e) {
+				newFile.delete();
+				throw e;
+			}
+			// The copy is complete, the old database is deleted when the copy is loaded.
+			pdom.reloadFromFile(newFile);
+			storeDatabaseName(project.getProject(), newName);
+			writeProjectPDOMProperties(pdom, project.getProject());
+		} finally {
+			pdom.releaseWriteLock();
+		}
+	}
+
 	@Override
 	public void export(ICProject project, String location, int options, IProgressMonitor monitor) throws CoreException {
 		TeamPDOMExportOperation operation= new TeamPDOMExportOperation(project);
@@ -1653,6 +1699,16 @@ public class PDOMManager implements IWritableIndexManager, IListener {
 	}
 
 	public int getIndexingPriority(IIndexFileLocation ifl) {
-		return fFilesIndexedUnconditionlly.getCount(ifl);
+		final int priority= fIndexingPriorities.getPriority(ifl);
+		if (priority < IndexingPriorities.OPEN && fFilesIndexedUnconditionlly.contains(ifl))
+			return IndexingPriorities.OPEN;
+		return priority;
+	}
+
+	/**
+	 * Returns the priorities of the files the user works with, they are updated by the editors.
+	 */
+	public IndexingPriorities getIndexingPriorities() {
+		return fIndexingPriorities;
 	}
 }
@@ -354,6 +354,38 @@ public abstract class PDOMWriter implements IPDOMASTProcessor {
 		}
 	}
 
+	/**
+	 * Resolves the bindings of the names in the given files of the AST ahead of
+	 * {@link #addSymbols}, which then finds them resolved and only needs to store them. May be
+	 * called by a thread other than the one writing to the index, provided the AST is not accessed
+	 * concurrently. When the monitor is canceled the remaining names are left unresolved.
+	 */
+	protected final void resolveBindings(IASTTranslationUnit ast, FileInAST[] selectedFiles,
+			final IProgressMonitor pm) {
+		final Set<IASTPreprocessorIncludeStatement> owners= new HashSet<>();
+		for (FileInAST file : selectedFiles) {
+			owners.add(file.includeStatement);
+		}
+		final IndexerASTVisitor visitor = new IndexerASTVisitor((fSkipReferences & SKIP_IMPLICIT_REFERENCES) == 0) {
+			@Override
+			public void visit(IASTName name, IASTName caller) {
+				if (pm.isCanceled())
+					return;
+				if (fSkipReferences == SKIP_ALL_REFERENCES && name.isReference() && !isRequiredReference(name))
+					return;
+				final IASTFileLocation nameLoc= name.getFileLocation();
+				if (nameLoc == null || !owners.contains(nameLoc.getContextInclusionStatement()))
+					return;
+				try {
+					name.resolveBinding();
+				} catch (RuntimeException | StackOverflowError e) {
+					// The writer resolves the name again in resolveNames(), which reports the failure.
+				}
+			}
+		};
+		ast.accept(visitor);
+	}
+
 	private void resolveNames(Data data, IProgressMonitor pm) {
 		long start= System.currentTimeMillis();
 		for (FileInAST file : data.fSelectedFiles) {
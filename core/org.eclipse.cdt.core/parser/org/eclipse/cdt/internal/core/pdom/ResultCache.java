@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded cache for the results computed from an index fragment. The cache is split into
+ * segments by the hash code of the keys, each segment is guarded by its own lock. A segment is a
+ * segmented LRU: new entries are placed in a probation area and move to a protected area when they
+ * are used again, such that entries used only once are evicted before frequently used ones.
+ * <p>
+ * Each entry records the linkage it was computed for, which allows to drop only the entries of the
+ * linkages changed by a writer. Entries without a linkage are dropped on every invalidation.
+ * <p>
+ * Results stored with {@link #put(Object, Object, int, boolean)} without replacing an existing
+ * result are shared by all the clients of the cache, such that their identity matters. They are
+ * pinned and never evicted, they are dropped only by invalidation or by {@link #clear()}.
+ * <p>
+ * The maximum number of entries is specified with {@link #SIZE_PROPERTY}.
+ */
+public final class ResultCache {
+	/**
+	 * System property for the maximum number of entries of a result cache.
+	 */
+	public static final String SIZE_PROPERTY = "org.eclipse.cdt.core.parser.pdom.resultCacheSize"; //$NON-NLS-1$
+	private static final int DEFAULT_SIZE = 100000;
+	private static final int SEGMENT_COUNT = 16;
+
+	private static final class Entry {
+		final Object fValue;
+		final int fLinkageID;
+
+		Entry(Object value, int linkageID) {
+			fValue= value;
+			fLinkageID= linkageID;
+		}
+	}
+
+	private static final class Segment {
+		// Entries used once, in insertion order.
+		final LinkedHashMap<Object, Entry> fProbation= new LinkedHashMap<>();
+		// Entries used more than once, least recently used first.
+		final LinkedHashMap<Object, Entry> fProtected= new LinkedHashMap<>(16, 0.75f, true);
+		// Entries whose identity matters, not subject to eviction.
+		final HashMap<Object, Entry> fPinned= new HashMap<>();
+		final int fMaxSize;
+		final int fMaxProtected;
+		long fHits;
+		long fMisses;
+		long fEvictions;
+
+		Segment(int maxSize) {
+			fMaxSize= maxSize;
+			fMaxProtected= Math.max(1, maxSize * 4 / 5);
+		}
+
+		Entry get(Object key) {
+			Entry entry= fPinned.get(key);
+			if (entry != null)
+				return entry;
+			entry= fProtected.get(key);
+			if (entry == null) {
+				entry= fProbation.remove(key);
+				if (entry != null) {
+					fProtected.put(key, entry);
+					if (fProtected.size() > fMaxProtected) {
+						// Demote the least recently used protected entry.
+						Iterator<Map.Entry<Object, Entry>> it= fProtected.entrySet().iterator();
+						Map.Entry<Object, Entry> lru= it.next();
+						it.remove();
+						fProbation.put(lru.getKey(), lru.getValue());
+					}
+				}
+			}
+			return entry;
+		}
+
+		void put(Object key, Entry entry) {
+			fPinned.remove(key);
+			if (fProtected.containsKey(key)) {
+				fProtected.put(key, entry);
+				return;
+			}
+			fProbation.put(key, entry);
+			while (fProbation.size() + fProtected.size() > fMaxSize) {
+				Iterator<Entry> it= fProbation.isEmpty() ?
+						fProtected.values().iterator() : fProbation.values().iterator();
+				it.next();
+				it.remove();
+				fEvictions++;
+			}
+		}
+
+		void pin(Object key, Entry entry) {
+			remove(key);
+			fPinned.put(key, entry);
+		}
+
+		Entry peek(Object key) {
+			Entry entry= fPinned.get(key);
+			if (entry == null) {
+				entry= fProbation.get(key);
+			}
+			return entry != null ? entry : fProtected.get(key);
+		}
+
+		Entry remove(Object key) {
+			Entry entry= fPinned.remove(key);
+			if (entry == null) {
+				entry= fProbation.remove(key);
+			}
+			return entry != null ? entry : fProtected.remove(key);
+		}
+
+		void invalidate(BitSet linkageIDs) {
+			invalidate(fPinned, linkageIDs);
+			invalidate(fProbation, linkageIDs);
+			invalidate(fProtected, linkageIDs);
+		}
+
+		void clear() {
+			fPinned.clear();
+			fProbation.clear();
+			fProtected.clear();
+		}
+
+		int size() {
+			return fPinned.size() + fProbation.size() + fProtected.size();
+		}
+
+		private static void invalidate(Map<Object, Entry> map, BitSet linkageIDs) {
+			for (Iterator<Entry> it= map.values().iterator(); it.hasNext();) {
+				final int linkageID= it.next().fLinkageID;
+				if (linkageID <= 0 || linkageIDs.get(linkageID)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private final Segment[] fSegments;
+
+	/**
+	 * Returns the configured maximum number of entries of a result cache.
+	 */
+	public static int getConfiguredSize() {
+		return Math.max(SEGMENT_COUNT, Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+	}
+
+	public ResultCache() {
+		this(getConfiguredSize());
+	}
+
+	public ResultCache(int maxSize) {
+		this(maxSize, SEGMENT_COUNT);
+	}
+
+	/**
+	 * Creates a cache with at most the given number of segments.
+	 */
+	public ResultCache(int maxSize, int segments) {
+		final int segmentCount= Math.max(1, Math.min(segments, maxSize));
+		fSegments= new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			fSegments[i]= new Segment(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+		}
+	}
+
+	private Segment getSegment(Object key) {
+		int h= key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return fSegments[(h & 0x7fffffff) % fSegments.length];
+	}
+
+	/**
+	 * Returns the result cached for the given key, or <code>null</code>.
+	 */
+	public Object get(Object key) {
+		final Segment segment= getSegment(key);
+		synchronized (segment) {
+			final Entry entry= segment.get(key);
+			if (entry == null) {
+				segment.fMisses++;
+				return null;
+			}
+			segment.fHits++;
+			return entry.fValue;
+		}
+	}
+
+	/**
+	 * Caches a result computed for the given linkage, use zero for results that do not belong
+	 * to a single linkage.
+	 * @param replace whether an existing result for the key is replaced. A result stored without
+	 *     replacing is shared by the callers and is never evicted.
+	 * @return the result cached for the key after the operation.
+	 */
+	public Object put(Object key, Object result, int linkageID, boolean replace) {
+		final Segment segment= getSegment(key);
+		synchronized (segment) {
+			if (replace) {
+				segment.put(key, new Entry(result, linkageID));
+			} else {
+				final Entry old= segment.peek(key);
+				if (old != null && old.fValue != null)
+					return old.fValue;
+				segment.pin(key, new Entry(result, linkageID));
+			}
+			return result;
+		}
+	}
+
+	public void remove(Object key) {
+		final Segment segment= getSegment(key);
+		synchronized (segment) {
+			segment.remove(key);
+		}
+	}
+
+	/**
+	 * Removes the results of the given linkages and the results not belonging to a single linkage.
+	 */
+	public void invalidate(BitSet linkageIDs) {
+		for (Segment segment : fSegments) {
+			synchronized (segment) {
+				segment.invalidate(linkageIDs);
+			}
+		}
+	}
+
+	public void clear() {
+		for (Segment segment : fSegments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size= 0;
+		for (Segment segment : fSegments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public long getHits() {
+		long hits= 0;
+		for (Segment segment : fSegments) {
+			synchronized (segment) {
+				hits += segment.fHits;
+			}
+		}
+		return hits;
+	}
+
+	public long getMisses() {
+		long misses= 0;
+		for (Segment segment : fSegments) {
+			synchronized (segment) {
+				misses += segment.fMisses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * Returns the number of entries removed to make room for new ones, entries removed by
+	 * invalidation are not counted. Pinned entries are never evicted.
+	 */
+	public long getEvictions() {
+		long evictions= 0;
+		for (Segment segment : fSegments) {
+			synchronized (segment) {
+				evictions += segment.fEvictions;
+			}
+		}
+		return evictions;
+	}
+
+	public void resetCounters() {
+		for (Segment segment : fSegments) {
+			synchronized (segment) {
+				segment.fHits= 0;
+				segment.fMisses= 0;
+				segment.fEvictions= 0;
+			}
+		}
+	}
+}
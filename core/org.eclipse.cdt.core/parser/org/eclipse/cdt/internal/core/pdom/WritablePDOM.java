@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.ast.IASTFileLocation;
 import org.eclipse.cdt.core.dom.ast.IASTName;
 import org.eclipse.cdt.core.dom.ast.IASTNode;
@@ -37,6 +38,8 @@ import org.eclipse.cdt.internal.core.index.IWritableIndexFragment;
 import org.eclipse.cdt.internal.core.model.TranslationUnit;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
 import org.eclipse.cdt.internal.core.pdom.db.DBProperties;
+import org.eclipse.cdt.internal.core.pdom.db.Database;
+import org.eclipse.cdt.internal.core.pdom.db.FreeBlockStatistics;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
 import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMBinding;
@@ -54,6 +57,9 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 	private PDOMFile fileBeingUpdated;
 	private PDOMFile uncommittedFile;
 	private FileContentKey uncommittedKey;
+	private PDOM fMergeSource;
+	private PDOMFile fMergeSourceFile;
+	private IndexContentStore fContentStore;
 
 	public WritablePDOM(File dbPath, IIndexLocationConverter locationConverter,
 			Map<String, IPDOMLinkageFactory> linkageFactoryMappings) throws CoreException {
@@ -69,6 +75,21 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 		fPathResolver= resolver;
 	}
 
+	/**
+	 * Sets the store the replaced versions of files are added to, it is closed together with this
+	 * fragment.
+	 */
+	public void setContentStore(IndexContentStore store) {
+		fContentStore= store;
+	}
+
+	/**
+	 * Returns the store for replaced versions of files, or <code>null</code>.
+	 */
+	public IndexContentStore getContentStore() {
+		return fContentStore;
+	}
+
 	@Override
 	public IIndexFragmentFile addFile(int linkageID, IIndexFileLocation location, ISignificantMacros sigMacros) throws CoreException {
 		if (uncommittedKey != null && uncommittedKey.equals(new FileContentKey(linkageID, location, sigMacros)))
@@ -106,6 +127,11 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 				defectiveStateChange -= 1;
 			if (fileBeingUpdated.hasUnresolvedInclude())
 				unresolvedIncludeStateChange -= 1;
+			if (fContentStore != null && fMergeSource == null && fileBeingUpdated.hasContent() &&
+					fileBeingUpdated.getContentsHash() != uncommittedFile.getContentsHash()) {
+				// Keep the replaced content in case the file changes back to it.
+				fContentStore.store(fileBeingUpdated);
+			}
 			fileBeingUpdated.replaceContentsFrom(uncommittedFile);
 			file = fileBeingUpdated;
 			fileBeingUpdated = null;
@@ -122,6 +148,7 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 		}
 
 		fEvent.fFilesWritten.add(uncommittedKey.getLocation());
+		linkageChanged(uncommittedKey.getLinkageID());
 		uncommittedFile = null;
 		uncommittedKey = null;
 		return file;
@@ -164,6 +191,74 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 			fEvent.fClearedFiles.remove(location);
 			fEvent.fFilesWritten.add(location);
 		}
+		linkageChanged(pdomFile.getLinkageID());
+	}
+
+	/**
+	 * Copies the files of another fragment that are not yet present in this one, together with
+	 * their names, macros and includes. Files are identified by linkage, location and significant
+	 * macros, bindings are matched like the bindings of other fragments referenced from an AST.
+	 * Both fragments have to use the same internal representation of file locations.
+	 * @return the number of files that have been copied.
+	 */
+	public int mergeFrom(PDOM source) throws CoreException {
+		int count= 0;
+		for (IIndexFragmentFile ifile : source.getAllFiles()) {
+			final PDOMFile sourceFile= (PDOMFile) ifile;
+			if (!sourceFile.hasContent())
+				continue;
+			final ISignificantMacros sigMacros= sourceFile.getSignificantMacros();
+			final PDOMFile file= getFile(sourceFile.getLinkageID(), sourceFile.getLocation(), sigMacros);
+			if (file != null && file.hasContent())
+				continue;
+
+			copyFile(sourceFile, sigMacros);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Copies a file of another fragment into this one, such that it replaces the version with the
+	 * given significant macros. The names, macros and includes are copied in the same way as by
+	 * {@link #mergeFrom(PDOM)}, bindings local to the source file become local to the copy.
+	 * @return the file with the copied content.
+	 */
+	public PDOMFile copyFile(PDOMFile sourceFile, ISignificantMacros sigMacros) throws CoreException {
+		fMergeSource= sourceFile.getPDOM();
+		fMergeSourceFile= sourceFile;
+		try {
+			PDOMFile copy= (PDOMFile) addUncommittedFile(sourceFile.getLinkageID(), sourceFile.getLocation(),
+					sigMacros);
+			copy.copyContentsFrom(sourceFile);
+			return (PDOMFile) commitUncommittedFile();
+		} finally {
+			clearUncommittedFile();
+			fMergeSource= null;
+			fMergeSourceFile= null;
+		}
+	}
+
+	/**
+	 * Checks whether the given fragment is being merged into this one.
+	 */
+	public boolean isMergeSource(IIndexFragment fragment) {
+		return fMergeSource != null && fMergeSource == fragment;
+	}
+
+	/**
+	 * Returns the file of this fragment corresponding to a file of the fragment being merged,
+	 * the file is added without content if necessary.
+	 */
+	public PDOMFile getMergedFile(PDOMFile sourceFile) throws CoreException {
+		if (sourceFile.equals(fMergeSourceFile))
+			return fileBeingUpdated != null ? fileBeingUpdated : uncommittedFile;
+		final int linkageID= sourceFile.getLinkageID();
+		final IIndexFileLocation location= sourceFile.getLocation();
+		final ISignificantMacros sigMacros= sourceFile.getSignificantMacros();
+		if (uncommittedKey != null && uncommittedKey.equals(new FileContentKey(linkageID, location, sigMacros)))
+			return fileBeingUpdated != null ? fileBeingUpdated : uncommittedFile;
+		return (PDOMFile) super.addFile(linkageID, location, sigMacros);
 	}
 
 	@Override
@@ -180,6 +275,7 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 		}
 
 		fEvent.fClearedFiles.add(location);
+		linkageChanged(file.getLinkageID());
 	}
 
 	@Override
@@ -192,6 +288,76 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 		super.flush();
 	}
 
+	@Override
+	public void close() throws CoreException {
+		super.close();
+		if (fContentStore != null) {
+			fContentStore.close();
+		}
+	}
+
+	/**
+	 * Returns statistics about the free blocks of the database, which can be used to decide
+	 * whether to compact it.
+	 *
+	 * <b>A read-lock must be obtained before calling this method</b>
+	 */
+	public FreeBlockStatistics getFreeBlockStatistics() throws CoreException {
+		return getDB().getFreeBlockStatistics();
+	}
+
+	/**
+	 * Writes the content of this index to a new database at the given location. The files are
+	 * copied in the order of the file index together with their names, macros and includes, as
+	 * done by {@link #mergeFrom(PDOM)}. Thus the records of a file are placed next to each other
+	 * and the copy does not contain the free space left over by earlier updates. Use
+	 * {@link PDOMManager#compactProjectPDOM} to replace the database of a project by the copy.
+	 *
+	 * <b>A write-lock must be obtained before calling this method</b>
+	 */
+	public void writeCompactedCopy(File location) throws CoreException {
+		WritablePDOM copy= new WritablePDOM(location, getLocationConverter(), getLinkageFactoryMappings());
+		try {
+			// Nobody else knows the copy, acquiring the lock does not wait.
+			copy.acquireWriteLock(0, null);
+		} catch (InterruptedException e) {
+			throw new CoreException(CCorePlugin.createStatus(e.getMessage(), e));
+		}
+		try {
+			try {
+				copy.clear();
+				DBProperties properties= new DBProperties(db, PROPERTIES);
+				DBProperties copiedProperties= new DBProperties(copy.db, PROPERTIES);
+				for (String key : properties.getKeySet()) {
+					copiedProperties.setProperty(key, properties.getProperty(key));
+				}
+				copy.mergeFrom(this);
+				copy.packIndexes();
+			} finally {
+				// The file of the copy must not stay open, also when copying fails.
+				copy.close();
+			}
+		} finally {
+			copy.releaseWriteLock();
+		}
+	}
+
+	/**
+	 * Packs the b-trees of the index and compacts the database, see {@link Database#compact()}.
+	 * Records are not moved, such that the bindings, names and files of the index remain valid.
+	 * In contrast to {@link #writeCompactedCopy(File)} only the free space at the end of the
+	 * database is returned to the file system.
+	 *
+	 * <b>A write-lock must be obtained before calling this method</b>
+	 *
+	 * @return the number of bytes the database has been shrunk by
+	 */
+	public long compact() throws CoreException {
+		excludeSnapshotReaders();
+		packIndexes();
+		return getDB().compact();
+	}
+
 	@Override
 	public void setProperty(String propertyName, String value) throws CoreException {
 		if (IIndexFragment.PROPERTY_FRAGMENT_FORMAT_ID.equals(propertyName)
@@ -228,15 +394,18 @@ public class WritablePDOM extends PDOM implements IWritableIndexFragment {
 
 		clearFileIndex();
 		final List<PDOMFile> notConverted = new ArrayList<PDOMFile>();
+		final long[] records = new long[pdomfiles.size()];
+		int count = 0;
 		for (PDOMFile file : pdomfiles) {
 			String internalFormat = newConverter.toInternalFormat(file.getLocation());
 			if (internalFormat != null) {
 				file.setInternalLocation(internalFormat);
-				getFileIndex().insert(file.getRecord());
+				records[count++] = file.getRecord();
 			} else {
 				notConverted.add(file);
 			}
 		}
+		getFileIndex().bulkLoad(records, count);
 
 		// remove content where converter returns null
 		for (PDOMFile file : notConverted) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 QNX Software Systems and others.
+ * Copyright (c) 2005, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.cdt.internal.core.pdom.db;
 
+import java.util.Arrays;
+
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
@@ -211,6 +213,209 @@ public class BTree {
 		return db.malloc((2 * MAX_RECORDS + 1) * Database.INT_SIZE);
 	}
 
+	/**
+	 * Builds the b-tree bottom up from the given records. Other than inserting the records one
+	 * by one, which splits nodes on the way down, every node is written once and all but the
+	 * last two nodes of each level are filled completely. Records that compare equal to a
+	 * preceding record are not added, just like {@link #insert(long)} does.
+	 * <p>
+	 * The records are sorted using the comparator of the tree, which is cheap for records that
+	 * are already sorted. The tree must be empty.
+	 *
+	 * @param records the records to add, the array may be reordered
+	 * @param length the number of records in the array to add
+	 */
+	public void bulkLoad(long[] records, int length) throws CoreException {
+		assert getRoot() == 0;
+		if (!isSorted(records, length)) {
+			sort(records, length);
+		}
+		length= removeDuplicates(records, length);
+		if (length == 0)
+			return;
+
+		long[] keys= records;
+		long[] children= null;
+		int keyCount= length;
+		while (keyCount > MAX_RECORDS) {
+			// All nodes but the last two are full, one key between two nodes moves up a level.
+			final int nodeCount= keyCount / (MAX_RECORDS + 1) + 1;
+			final int remaining= keyCount - (nodeCount - 1) - (nodeCount - 2) * MAX_RECORDS;
+			long[] parentKeys= new long[nodeCount - 1];
+			long[] parentChildren= new long[nodeCount];
+			int pos= 0;
+			for (int i= 0; i < nodeCount; i++) {
+				int size= MAX_RECORDS;
+				if (i >= nodeCount - 2 && remaining - MAX_RECORDS < MIN_RECORDS) {
+					// Share the remaining keys, such that the last node is not underfull.
+					size= i == nodeCount - 2 ? remaining - remaining / 2 : remaining / 2;
+				} else if (i == nodeCount - 1) {
+					size= remaining - MAX_RECORDS;
+				}
+				parentChildren[i]= createNode(keys, children, pos, size);
+				pos += size;
+				if (i < nodeCount - 1) {
+					parentKeys[i]= keys[pos++];
+				}
+			}
+			keys= parentKeys;
+			children= parentChildren;
+			keyCount= parentKeys.length;
+		}
+		db.putRecPtr(rootPointer, createNode(keys, children, 0, keyCount));
+	}
+
+	/**
+	 * Rebuilds the b-tree with completely filled nodes, see {@link #bulkLoad(long[], int)}.
+	 * The nodes of the tree are freed before the new ones are allocated, such that the space
+	 * is reused.
+	 *
+	 * @return whether the tree was rebuilt, which is not necessary when it is packed already
+	 */
+	public boolean pack() throws CoreException {
+		RecordCollector collector= new RecordCollector();
+		accept(collector);
+		if (collector.nodeCount <= getPackedNodeCount(collector.recordCount))
+			return false;
+
+		collector.freeNodes();
+		bulkLoad(collector.records, collector.recordCount);
+		return true;
+	}
+
+	/**
+	 * Removes all records from the tree and frees its nodes. The records themselves are
+	 * not deallocated.
+	 */
+	public void clear() throws CoreException {
+		RecordCollector collector= new RecordCollector();
+		accept(collector);
+		collector.freeNodes();
+	}
+
+	private long createNode(long[] keys, long[] children, int from, int size) throws CoreException {
+		final long node= allocateNode();
+		final Chunk chunk= db.getChunk(node);
+		for (int i= 0; i < size; i++) {
+			putRecord(chunk, node, i, keys[from + i]);
+		}
+		if (children != null) {
+			for (int i= 0; i <= size; i++) {
+				putChild(chunk, node, i, children[from + i]);
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the number of nodes created by {@link #bulkLoad(long[], int)} for the given number
+	 * of records.
+	 */
+	private int getPackedNodeCount(int recordCount) {
+		if (recordCount == 0)
+			return 0;
+		int result= 1;
+		while (recordCount > MAX_RECORDS) {
+			int nodeCount= recordCount / (MAX_RECORDS + 1) + 1;
+			result += nodeCount;
+			recordCount= nodeCount - 1;
+		}
+		return result;
+	}
+
+	private boolean isSorted(long[] records, int length) throws CoreException {
+		for (int i= 1; i < length; i++) {
+			if (cmp.compare(records[i - 1], records[i]) > 0)
+				return false;
+		}
+		return true;
+	}
+
+	private int removeDuplicates(long[] records, int length) throws CoreException {
+		if (length == 0)
+			return 0;
+		int j= 0;
+		for (int i= 1; i < length; i++) {
+			if (cmp.compare(records[j], records[i]) != 0) {
+				records[++j]= records[i];
+			}
+		}
+		return j + 1;
+	}
+
+	/**
+	 * Stable merge sort, equal records keep their order, such that the first one is retained.
+	 */
+	private void sort(long[] records, int length) throws CoreException {
+		long[] src= records;
+		long[] dst= new long[length];
+		for (int width= 1; width < length; width *= 2) {
+			for (int lo= 0; lo < length; lo += 2 * width) {
+				final int mid= Math.min(lo + width, length);
+				final int hi= Math.min(lo + 2 * width, length);
+				int i= lo, j= mid, k= lo;
+				while (i < mid && j < hi) {
+					dst[k++]= cmp.compare(src[i], src[j]) <= 0 ? src[i++] : src[j++];
+				}
+				while (i < mid) {
+					dst[k++]= src[i++];
+				}
+				while (j < hi) {
+					dst[k++]= src[j++];
+				}
+			}
+			long[] tmp= src;
+			src= dst;
+			dst= tmp;
+		}
+		if (src != records) {
+			System.arraycopy(src, 0, records, 0, length);
+		}
+	}
+
+	/**
+	 * Collects the records of the tree in order, together with its nodes.
+	 */
+	private class RecordCollector implements IBTreeVisitor2 {
+		long[] records= new long[MAX_RECORDS];
+		int recordCount;
+		long[] nodes= new long[1];
+		int nodeCount;
+
+		@Override
+		public int compare(long record) throws CoreException {
+			return 0;
+		}
+
+		@Override
+		public boolean visit(long record) throws CoreException {
+			if (recordCount == records.length) {
+				records= Arrays.copyOf(records, recordCount * 2);
+			}
+			records[recordCount++]= record;
+			return true;
+		}
+
+		@Override
+		public void preNode(long node) throws CoreException {
+			if (nodeCount == nodes.length) {
+				nodes= Arrays.copyOf(nodes, nodeCount * 2);
+			}
+			nodes[nodeCount++]= node;
+		}
+
+		@Override
+		public void postNode(long node) throws CoreException {
+		}
+
+		void freeNodes() throws CoreException {
+			db.putRecPtr(rootPointer, 0);
+			for (int i= 0; i < nodeCount; i++) {
+				db.free(nodes[i]);
+			}
+		}
+	}
+
 	/**
 	 * Deletes the specified record from the B-tree.
 	 * <p>
@@ -521,6 +726,25 @@ public class BTree {
 		}
 	}
 
+	/**
+	 * Announces the records and children of the node from the given index on to the database,
+	 * such that the chunks holding them are read while the preceding ones are visited.
+	 */
+	private void prefetch(Chunk chunk, long node, int index) {
+		final long[] offsets= new long[2 * (MAX_CHILDREN - index)];
+		int count= 0;
+		int i= index;
+		for (; i < MAX_RECORDS; i++) {
+			final long record= getRecord(chunk, node, i);
+			if (record == 0)
+				break;
+			offsets[count++]= getChild(chunk, node, i);
+			offsets[count++]= record;
+		}
+		offsets[count++]= getChild(chunk, node, i);
+		db.prefetch(offsets, count);
+	}
+
 	/**
 	 * Visit all nodes beginning when the visitor comparator
 	 * returns >= 0 until the visitor visit returns falls.
@@ -568,6 +792,7 @@ public class BTree {
 			}
 			
 			// Start with first record greater or equal, reuse comparison results.
+			boolean prefetched= !db.usesPrefetching();
 			int i= lower;
 			for (; i < MAX_RECORDS; ++i) {
 				long record = getRecord(chunk, node, i);
@@ -579,6 +804,11 @@ public class BTree {
 					// Start point is to the left.
 					return accept(getChild(chunk, node, i), visitor);
 				}  else if (compare == 0) {
+					if (!prefetched) {
+						// The remaining records and subtrees of the node are likely to be visited.
+						prefetch(chunk, node, i);
+						prefetched= true;
+					}
 					if (!accept(getChild(chunk, node, i), visitor)) 
 						return false;
 					if (!visitor.visit(record))
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2012 QNX Software Systems and others.
+ * Copyright (c) 2005, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,14 +15,17 @@ package org.eclipse.cdt.internal.core.pdom.db;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.eclipse.core.runtime.CoreException;
 
 /**
- * Caches the content of a piece of the database.
+ * Caches the content of a piece of the database. The content is either held in a heap buffer
+ * or, for memory mapped databases, is a view on a region of the mapped database file.
  */
 final class Chunk {
-	final private byte[] fBuffer= new byte[Database.CHUNK_SIZE];
+	final private ByteBuffer fBuffer;
+	final private boolean fMapped;
 
 	final Database fDatabase;
 	final int fSequenceNumber;
@@ -35,27 +38,95 @@ final class Chunk {
 	Chunk(Database db, int sequenceNumber) {
 		fDatabase= db;
 		fSequenceNumber= sequenceNumber;
+		fBuffer= ByteBuffer.allocate(Database.CHUNK_SIZE);
+		fMapped= false;
+	}
+
+	/**
+	 * Creates a chunk with content that has been read from the file in advance.
+	 * @param content the buffer holding the content of the chunk starting at the given offset.
+	 */
+	Chunk(Database db, int sequenceNumber, byte[] content, int offset) {
+		this(db, sequenceNumber);
+		System.arraycopy(content, offset, fBuffer.array(), 0, Database.CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a chunk operating directly on a region of the memory mapped database file.
+	 * @param mappedBuffer a buffer of {@link Database#CHUNK_SIZE} bytes starting at the chunk.
+	 */
+	Chunk(Database db, int sequenceNumber, ByteBuffer mappedBuffer) {
+		assert mappedBuffer.capacity() == Database.CHUNK_SIZE;
+		fDatabase= db;
+		fSequenceNumber= sequenceNumber;
+		fBuffer= mappedBuffer;
+		fMapped= true;
+	}
+
+	/**
+	 * Creates a chunk with a copy of the content of the given chunk. The copy is modified by the
+	 * writer, while readers of a snapshot continue to use the given chunk.
+	 */
+	Chunk(Chunk original) {
+		assert !original.fMapped;
+		fDatabase= original.fDatabase;
+		fSequenceNumber= original.fSequenceNumber;
+		fBuffer= ByteBuffer.allocate(Database.CHUNK_SIZE);
+		System.arraycopy(original.fBuffer.array(), 0, fBuffer.array(), 0, Database.CHUNK_SIZE);
+		fMapped= false;
+		fDirty= original.fDirty;
+	}
+
+	boolean isMapped() {
+		return fMapped;
 	}
 
 	void read() throws CoreException {
+		if (fMapped)
+			return;
 		try {
-			final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
+			final ByteBuffer buf= ByteBuffer.wrap(fBuffer.array());
 			fDatabase.read(buf, (long) fSequenceNumber * Database.CHUNK_SIZE);
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
 		}
 	}
 
+	/**
+	 * Replaces the content of the chunk with its latest image in the write-ahead log, if there is one.
+	 */
+	void readFromLog(WriteAheadLog log) throws IOException {
+		assert !fMapped;
+		log.read(fSequenceNumber, ByteBuffer.wrap(fBuffer.array()));
+	}
+
+	/**
+	 * Writes the content of the chunk to the file. For a memory mapped chunk the content is
+	 * already part of the mapping, it is forced to disk by the database.
+	 */
 	void flush() throws CoreException {
-		try {
-			final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
-			fDatabase.write(buf, (long) fSequenceNumber * Database.CHUNK_SIZE);
-		} catch (IOException e) {
-			throw new CoreException(new DBStatus(e));
+		if (!fMapped) {
+			try {
+				final ByteBuffer buf= ByteBuffer.wrap(fBuffer.array());
+				fDatabase.write(buf, (long) fSequenceNumber * Database.CHUNK_SIZE);
+			} catch (IOException e) {
+				throw new CoreException(new DBStatus(e));
+			}
 		}
 		fDirty= false;
 	}
 
+	/**
+	 * Appends the content of the chunk to the write-ahead log of the database rather than writing
+	 * it to the file.
+	 * @param commit whether the chunk completes a commit.
+	 */
+	void flush(WriteAheadLog log, boolean commit) throws IOException {
+		assert !fMapped;
+		log.append(fSequenceNumber, fBuffer.array(), commit);
+		fDirty= false;
+	}
+
 	private static int recPtrToIndex(final long offset) {
 		return (int) (offset & Database.OFFSET_IN_CHUNK_MASK);
 	}
@@ -63,30 +134,27 @@ final class Chunk {
 	public void putByte(final long offset, final byte value) {
 		assert fLocked;
 		fDirty= true;
-		fBuffer[recPtrToIndex(offset)]= value;
+		fBuffer.put(recPtrToIndex(offset), value);
 	}
 	
 	public byte getByte(final long offset) {
-		return fBuffer[recPtrToIndex(offset)];
+		return fBuffer.get(recPtrToIndex(offset));
 	}
 	
 	public byte[] getBytes(final long offset, final int length) {
 		final byte[] bytes = new byte[length];
-		System.arraycopy(fBuffer, recPtrToIndex(offset), bytes, 0, length);
+		get(offset, bytes, 0, length);
 		return bytes;
 	}
 	
 	public void putBytes(final long offset, final byte[] bytes) {
-		assert fLocked;
-		fDirty= true;
-		System.arraycopy(bytes, 0, fBuffer, recPtrToIndex(offset), bytes.length);
+		put(offset, bytes, 0, bytes.length);
 	}
 	
 	public void putInt(final long offset, final int value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex(offset);
-		putInt(value, fBuffer, idx);
+		fBuffer.putInt(recPtrToIndex(offset), value);
 	}
 
 	static final void putInt(final int value, final byte[] buffer, int idx) {
@@ -97,7 +165,7 @@ final class Chunk {
 	}
 	
 	public int getInt(final long offset) {
-		return getInt(fBuffer, recPtrToIndex(offset));
+		return fBuffer.getInt(recPtrToIndex(offset));
 	}
 
 	static final int getInt(final byte[] buffer, int idx) {
@@ -160,8 +228,8 @@ final class Chunk {
 	public void putRecPtr(final long offset, final long value) {
 		assert fLocked;
 		fDirty = true;
-		int idx = recPtrToIndex(offset);
-		putRecPtr(value, fBuffer, idx);
+		final int denseValue = value == 0 ? 0 : compressFreeRecPtr(value - Database.BLOCK_HEADER_SIZE);
+		fBuffer.putInt(recPtrToIndex(offset), denseValue);
 	}
 	
 	/**
@@ -171,123 +239,113 @@ final class Chunk {
 	public void putFreeRecPtr(final long offset, final long value) {
 		assert fLocked;
 		fDirty = true;
-		int idx = recPtrToIndex(offset);
-		putInt(compressFreeRecPtr(value), fBuffer, idx);
+		fBuffer.putInt(recPtrToIndex(offset), compressFreeRecPtr(value));
 	}
 
 	public long getRecPtr(final long offset) {
-		final int idx = recPtrToIndex(offset);
-		return getRecPtr(fBuffer, idx);
+		long address = expandToFreeRecPtr(fBuffer.getInt(recPtrToIndex(offset)));
+		return address != 0 ? (address + Database.BLOCK_HEADER_SIZE) : address;
 	}
 	
 	public long getFreeRecPtr(final long offset) {
-		final int idx = recPtrToIndex(offset);
-		int value = getInt(fBuffer, idx);
-		return expandToFreeRecPtr(value);
+		return expandToFreeRecPtr(fBuffer.getInt(recPtrToIndex(offset)));
 	}
 	
 	public void put3ByteUnsignedInt(final long offset, final int value) {
 		assert fLocked;
 		fDirty= true;
 		int idx= recPtrToIndex(offset);
-		fBuffer[idx]= (byte) (value >> 16);
-		fBuffer[++idx]= (byte) (value >> 8);
-		fBuffer[++idx]= (byte) (value);
+		fBuffer.put(idx, (byte) (value >> 16));
+		fBuffer.put(++idx, (byte) (value >> 8));
+		fBuffer.put(++idx, (byte) (value));
 	}
 	
 	public int get3ByteUnsignedInt(final long offset) {
 		int idx= recPtrToIndex(offset);
-		return ((fBuffer[idx] & 0xff) << 16) |
-				((fBuffer[++idx] & 0xff) <<  8) |
-				((fBuffer[++idx] & 0xff) <<  0);
+		return ((fBuffer.get(idx) & 0xff) << 16) |
+				((fBuffer.get(++idx) & 0xff) <<  8) |
+				((fBuffer.get(++idx) & 0xff) <<  0);
 	}
 
 	public void putShort(final long offset, final short value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex(offset);
-		fBuffer[idx]= (byte) (value >> 8);
-		fBuffer[++idx]= (byte) (value);
+		fBuffer.putShort(recPtrToIndex(offset), value);
 	}
 	
 	public short getShort(final long offset) {
-		int idx= recPtrToIndex(offset);
-		return (short) (((fBuffer[idx] << 8) | (fBuffer[++idx] & 0xff)));
+		return fBuffer.getShort(recPtrToIndex(offset));
 	}
 
 	public long getLong(final long offset) {
-		int idx= recPtrToIndex(offset);
-		return ((((long) fBuffer[idx] & 0xff) << 56) |
-				(((long) fBuffer[++idx] & 0xff) << 48) |
-				(((long) fBuffer[++idx] & 0xff) << 40) |
-				(((long) fBuffer[++idx] & 0xff) << 32) |
-				(((long) fBuffer[++idx] & 0xff) << 24) |
-				(((long) fBuffer[++idx] & 0xff) << 16) |
-				(((long) fBuffer[++idx] & 0xff) <<  8) |
-				(((long) fBuffer[++idx] & 0xff) <<  0));
+		return fBuffer.getLong(recPtrToIndex(offset));
 	}
 
 	public void putLong(final long offset, final long value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex(offset);
-
-		fBuffer[idx]=   (byte) (value >> 56);
-		fBuffer[++idx]= (byte) (value >> 48);
-		fBuffer[++idx]= (byte) (value >> 40);
-		fBuffer[++idx]= (byte) (value >> 32);
-		fBuffer[++idx]= (byte) (value >> 24);
-		fBuffer[++idx]= (byte) (value >> 16);
-		fBuffer[++idx]= (byte) (value >> 8);
-		fBuffer[++idx]= (byte) (value);
+		fBuffer.putLong(recPtrToIndex(offset), value);
 	}
 	
 	public void putChar(final long offset, final char value) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex(offset);
-		fBuffer[idx]= (byte) (value >> 8);
-		fBuffer[++idx]= (byte) (value);
+		fBuffer.putChar(recPtrToIndex(offset), value);
 	}
 	
 	public void putChars(final long offset, char[] chars, int start, int len) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex(offset)-1;
-		final int end= start + len;
-		for (int i = start; i < end; i++) {
-			char value= chars[i];
-			fBuffer[++idx]= (byte) (value >> 8);
-			fBuffer[++idx]= (byte) (value);
+		int idx= recPtrToIndex(offset);
+		if (!fMapped) {
+			// Same byte order as the buffer, which is big endian.
+			final byte[] array= fBuffer.array();
+			final int end= start + len;
+			for (int i = start; i < end; i++) {
+				final char c= chars[i];
+				array[idx++]= (byte) (c >> 8);
+				array[idx++]= (byte) c;
+			}
+			return;
 		}
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(idx);
+		buf.asCharBuffer().put(chars, start, len);
 	}
 
 	public void putCharsAsBytes(final long offset, char[] chars, int start, int len) {
 		assert fLocked;
 		fDirty= true;
-		int idx= recPtrToIndex(offset)-1;
+		int idx= recPtrToIndex(offset);
 		final int end= start + len;
 		for (int i = start; i < end; i++) {
-			char value= chars[i];
-			fBuffer[++idx]= (byte) (value);
+			fBuffer.put(idx++, (byte) chars[i]);
 		}
 	}
 
 	public char getChar(final long offset) {
-		int idx= recPtrToIndex(offset);
-		return (char) (((fBuffer[idx] << 8) | (fBuffer[++idx] & 0xff)));
+		return fBuffer.getChar(recPtrToIndex(offset));
 	}
 
 	public void getChars(final long offset, final char[] result, int start, int len) {
-		final ByteBuffer buf= ByteBuffer.wrap(fBuffer);
-		buf.position(recPtrToIndex(offset));
+		int idx= recPtrToIndex(offset);
+		if (!fMapped) {
+			final byte[] array= fBuffer.array();
+			final int end= start + len;
+			for (int i = start; i < end; i++) {
+				result[i]= (char) (((array[idx++] & 0xff) << 8) | (array[idx++] & 0xff));
+			}
+			return;
+		}
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(idx);
 		buf.asCharBuffer().get(result, start, len);
 	}
 
 	public void getCharsFromBytes(final long offset, final char[] result, int start, int len) {
 		final int pos = recPtrToIndex(offset);
 		for (int i = 0; i < len; i++) {
-			result[start + i] =  (char) (fBuffer[pos + i] & 0xff);
+			result[start + i] =  (char) (fBuffer.get(pos + i) & 0xff);
 		}
 	}
 
@@ -296,8 +354,12 @@ final class Chunk {
 		fDirty= true;
 		int idx = recPtrToIndex(offset);
 		final int end = idx + length;
+		if (!fMapped) {
+			Arrays.fill(fBuffer.array(), idx, end, (byte) 0);
+			return;
+		}
 		for (; idx < end; idx++) {
-			fBuffer[idx] = 0;
+			fBuffer.put(idx, (byte) 0);
 		}
 	}
 
@@ -308,8 +370,14 @@ final class Chunk {
 	void put(final long offset, final byte[] data, int dataPos, final int len) {
 		assert fLocked;
 		fDirty = true;
-		int idx = recPtrToIndex(offset);
-		System.arraycopy(data, dataPos, fBuffer, idx, len);
+		final int idx= recPtrToIndex(offset);
+		if (!fMapped) {
+			System.arraycopy(data, dataPos, fBuffer.array(), idx, len);
+			return;
+		}
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(idx);
+		buf.put(data, dataPos, len);
 	}
 	
 	public void get(final long offset, byte[] data) {
@@ -317,7 +385,14 @@ final class Chunk {
 	}
 
 	public void get(final long offset, byte[] data, int dataPos, int len) {
-		int idx = recPtrToIndex(offset);
-		System.arraycopy(fBuffer, idx, data, dataPos, len);
+		final int idx= recPtrToIndex(offset);
+		if (!fMapped) {
+			System.arraycopy(fBuffer.array(), idx, data, dataPos, len);
+			return;
+		}
+		// The mapped buffer is shared between threads, its position must not be changed.
+		final ByteBuffer buf= fBuffer.duplicate();
+		buf.position(idx);
+		buf.get(data, dataPos, len);
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007 Wind River Systems, Inc. and others.
+ * Copyright (c) 2007, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -7,16 +7,130 @@
  *
  * Contributors:
  *     Markus Schorn - initial API and implementation
- *******************************************************************************/ 
+ *******************************************************************************/
 package org.eclipse.cdt.internal.core.pdom.db;
 
+/**
+ * Cache for the chunks of one or more databases. The cache is divided into segments, each of
+ * them uses its own lock and evicts chunks using the CLOCK algorithm. A chunk is assigned to
+ * a segment by its database and sequence number.
+ * <p>
+ * Marking a chunk that is already cached as recently used does not require a lock, see
+ * {@link #hit(Chunk)}.
+ */
 public final class ChunkCache {
 	private static ChunkCache sSharedInstance= new ChunkCache();
-	
-	private Chunk[] fPageTable;
-	private boolean fTableIsFull;
-	private int fPointer;
-	
+
+	/**
+	 * A part of the cache with its own page table, lock and CLOCK pointer.
+	 */
+	private static final class Segment {
+		Chunk[] fPageTable;
+		boolean fTableIsFull;
+		int fPointer;
+
+		Segment(int length) {
+			fPageTable= new Chunk[length];
+		}
+
+		synchronized void add(Chunk chunk, boolean locked) {
+			if (locked) {
+				chunk.fLocked= true;
+			}
+			if (chunk.fCacheIndex >= 0) {
+				chunk.fCacheHitFlag= true;
+				return;
+			}
+			if (fTableIsFull) {
+				evictChunk();
+				chunk.fCacheIndex= fPointer;
+				fPageTable[fPointer]= chunk;
+			} else {
+				chunk.fCacheIndex= fPointer;
+				fPageTable[fPointer]= chunk;
+
+				fPointer++;
+				if (fPointer == fPageTable.length) {
+					fPointer= 0;
+					fTableIsFull= true;
+				}
+			}
+		}
+
+		/**
+		 * Evicts a chunk from the page table and the chunk table.
+		 * After this method returns, {@link #fPointer}  will contain
+		 * the index of the evicted chunk within the page table.
+		 */
+		private void evictChunk() {
+			/*
+			 * Use the CLOCK algorithm to determine which chunk to evict.
+			 * i.e., if the chunk in the current slot of the page table has been
+			 * recently referenced (i.e. the reference flag is set), unset the
+			 * reference flag and move to the next slot.  Otherwise, evict the
+			 * chunk in the current slot.
+			 */
+			while (true) {
+				Chunk chunk = fPageTable[fPointer];
+				if (chunk.fCacheHitFlag) {
+					chunk.fCacheHitFlag= false;
+					fPointer= (fPointer + 1) % fPageTable.length;
+				} else {
+					chunk.fDatabase.releaseChunk(chunk);
+					chunk.fCacheIndex= -1;
+					fPageTable[fPointer] = null;
+					return;
+				}
+			}
+		}
+
+		synchronized void remove(Chunk chunk) {
+			final int idx= chunk.fCacheIndex;
+			if (idx >= 0) {
+				if (fTableIsFull) {
+					fPointer= fPageTable.length-1;
+					fTableIsFull= false;
+				} else {
+					fPointer--;
+				}
+				chunk.fCacheIndex= -1;
+				final Chunk move= fPageTable[fPointer];
+				fPageTable[idx]= move;
+				move.fCacheIndex= idx;
+				fPageTable[fPointer]= null;
+			}
+		}
+
+		synchronized int getLength() {
+			return fPageTable.length;
+		}
+
+		synchronized void setLength(int newLength) {
+			final int oldLength= fTableIsFull ? fPageTable.length : fPointer;
+			if (newLength > oldLength) {
+				Chunk[] newTable= new Chunk[newLength];
+				System.arraycopy(fPageTable, 0, newTable, 0, oldLength);
+				fTableIsFull= false;
+				fPointer= oldLength;
+				fPageTable= newTable;
+			} else {
+				for (int i= newLength; i < oldLength; i++) {
+					final Chunk chunk= fPageTable[i];
+					chunk.fDatabase.releaseChunk(chunk);
+					chunk.fCacheIndex= -1;
+				}
+				Chunk[] newTable= new Chunk[newLength];
+				System.arraycopy(fPageTable, 0, newTable, 0, newLength);
+				fTableIsFull= true;
+				fPointer= 0;
+				fPageTable= newTable;
+			}
+		}
+	}
+
+	private final Segment[] fSegments;
+	private final int fSegmentMask;
+
 	public static ChunkCache getSharedInstance() {
 		return sSharedInstance;
 	}
@@ -24,113 +138,95 @@ public final class ChunkCache {
 	public ChunkCache() {
 		this(5 * 1024 * 1024);
 	}
-	
+
 	public ChunkCache(long maxSize) {
-		fPageTable= new Chunk[computeLength(maxSize)];
+		this(maxSize, Runtime.getRuntime().availableProcessors() * 2);
 	}
-	
-	public synchronized void add(Chunk chunk, boolean locked) {
-		if (locked) {
-			chunk.fLocked= true;
+
+	/**
+	 * Creates a cache with the given maximum size in bytes, divided into (at most) the given
+	 * number of segments.
+	 */
+	public ChunkCache(long maxSize, int segmentCount) {
+		final int totalLength= computeLength(maxSize);
+		// The number of segments is a power of two, such that each segment holds at least one chunk.
+		int count= Integer.highestOneBit(Math.max(1, Math.min(Math.min(segmentCount, 64), totalLength)));
+		fSegments= new Segment[count];
+		fSegmentMask= count - 1;
+		for (int i= 0; i < count; i++) {
+			fSegments[i]= new Segment(segmentLength(totalLength, i));
 		}
+	}
+
+	/**
+	 * Returns the segment responsible for the chunk with the given sequence number of a database.
+	 * The segment also serves as the lock for loading the chunk.
+	 */
+	Object getSegment(Database db, int sequenceNumber) {
+		int h= db.hashCode() + sequenceNumber * 0x9E3779B9;
+		h ^= h >>> 16;
+		return fSegments[h & fSegmentMask];
+	}
+
+	private Segment segmentOf(Chunk chunk) {
+		return (Segment) getSegment(chunk.fDatabase, chunk.fSequenceNumber);
+	}
+
+	public void add(Chunk chunk, boolean locked) {
+		segmentOf(chunk).add(chunk, locked);
+	}
+
+	/**
+	 * Marks a chunk as recently used. In contrast to {@link #add(Chunk, boolean)} no lock is
+	 * needed when the chunk is already cached. Returns whether the chunk was found in the cache.
+	 */
+	boolean hit(Chunk chunk) {
 		if (chunk.fCacheIndex >= 0) {
+			// A racy update of the flag is harmless, it is merely a hint for the CLOCK algorithm.
 			chunk.fCacheHitFlag= true;
-			return;
-		}
-		if (fTableIsFull) {
-			evictChunk();
-			chunk.fCacheIndex= fPointer;
-			fPageTable[fPointer]= chunk;
-		} else {
-			chunk.fCacheIndex= fPointer;
-			fPageTable[fPointer]= chunk;
-
-			fPointer++;
-			if (fPointer == fPageTable.length) {
-				fPointer= 0;
-				fTableIsFull= true;
-			}
-		}
-	}
-	
-	/**                                                                   
-	 * Evicts a chunk from the page table and the chunk table.            
-	 * After this method returns, {@link #fPointer}  will contain
-	 * the index of the evicted chunk within the page table.              
-	 */                                                                   
-	private void evictChunk() {
-		/*
-		 * Use the CLOCK algorithm to determine which chunk to evict.
-		 * i.e., if the chunk in the current slot of the page table has been
-		 * recently referenced (i.e. the reference flag is set), unset the
-		 * reference flag and move to the next slot.  Otherwise, evict the
-		 * chunk in the current slot.
-		 */
-		while (true) {
-			Chunk chunk = fPageTable[fPointer];
-			if (chunk.fCacheHitFlag) {
-				chunk.fCacheHitFlag= false;
-				fPointer= (fPointer + 1) % fPageTable.length;
-			} else {
-				chunk.fDatabase.releaseChunk(chunk);
-				chunk.fCacheIndex= -1;
-				fPageTable[fPointer] = null;
-				return;
-			}
+			return true;
 		}
+		return false;
 	}
 
-	public synchronized void remove(Chunk chunk) {
-		final int idx= chunk.fCacheIndex;
-		if (idx >= 0) {
-			if (fTableIsFull) {
-				fPointer= fPageTable.length-1;
-				fTableIsFull= false;
-			} else {
-				fPointer--;
-			}
-			chunk.fCacheIndex= -1;
-			final Chunk move= fPageTable[fPointer];
-			fPageTable[idx]= move;
-			move.fCacheIndex= idx;
-			fPageTable[fPointer]= null;
-		}	
+	public void remove(Chunk chunk) {
+		segmentOf(chunk).remove(chunk);
 	}
 
-	/**                                                                           
+	/**
 	 * Returns the maximum size of the chunk cache in bytes.
-	 */                                                                           
-	public synchronized long getMaxSize() {
-		return (long) fPageTable.length * Database.CHUNK_SIZE;
+	 */
+	public long getMaxSize() {
+		long length= 0;
+		for (Segment segment : fSegments) {
+			length += segment.getLength();
+		}
+		return length * Database.CHUNK_SIZE;
 	}
 
-	/**                                                                           
+	/**
+	 * Returns the number of segments the cache is divided into.
+	 */
+	public int getSegmentCount() {
+		return fSegments.length;
+	}
+
+	/**
 	 * Clears the page table and changes it to hold chunks with
-	 * maximum total memory of <code>maxSize</code>.       
-	 * @param maxSize the total size of the chunks in bytes.                
-	 */                                                                           
-	public synchronized void setMaxSize(long maxSize) {
-		final int newLength= computeLength(maxSize);
-		final int oldLength= fTableIsFull ? fPageTable.length : fPointer;
-		if (newLength > oldLength) {
-			Chunk[] newTable= new Chunk[newLength];
-			System.arraycopy(fPageTable, 0, newTable, 0, oldLength);
-			fTableIsFull= false;
-			fPointer= oldLength;
-			fPageTable= newTable;
-		} else {
-			for (int i= newLength; i < oldLength; i++) {
-				final Chunk chunk= fPageTable[i];
-				chunk.fDatabase.releaseChunk(chunk);
-				chunk.fCacheIndex= -1;
-			}
-			Chunk[] newTable= new Chunk[newLength];
-			System.arraycopy(fPageTable, 0, newTable, 0, newLength);
-			fTableIsFull= true;
-			fPointer= 0;
-			fPageTable= newTable;
-		}       
-	}                                                                             
+	 * maximum total memory of <code>maxSize</code>.
+	 * @param maxSize the total size of the chunks in bytes.
+	 */
+	public void setMaxSize(long maxSize) {
+		final int totalLength= Math.max(computeLength(maxSize), fSegments.length);
+		for (int i= 0; i < fSegments.length; i++) {
+			fSegments[i].setLength(segmentLength(totalLength, i));
+		}
+	}
+
+	private int segmentLength(int totalLength, int segmentIndex) {
+		final int count= fSegments.length;
+		return totalLength / count + (segmentIndex < totalLength % count ? 1 : 0);
+	}
 
 	private int computeLength(long maxSize) {
 		long maxLength= Math.min(maxSize / Database.CHUNK_SIZE, Integer.MAX_VALUE);
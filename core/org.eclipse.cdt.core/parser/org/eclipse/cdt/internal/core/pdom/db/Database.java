@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2012 QNX Software Systems and others.
+ * Copyright (c) 2005, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -19,10 +19,23 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.core.runtime.CoreException;
@@ -51,9 +64,19 @@ import com.ibm.icu.text.MessageFormat;
  * INT_SIZE         | pointer to head of linked list of blocks of size MIN_BLOCK_DELTAS*BLOCK_SIZE_DELTA
  * ..               | ...
  * INT_SIZE * m (1) | pointer to head of linked list of blocks of size (m + MIN_BLOCK_DELTAS) * BLOCK_SIZE_DELTA
+ * LAYOUT_OFFSET    | chunk size and block size delta the file was created with (2)
  * DATA_AREA        | undefined (PDOM stores its own house-keeping data in this area)
  *
  * (1) where 2 <= m <= CHUNK_SIZE / BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 1
+ * (2) the offset depends on the layout itself, a file that does not store the expected layout at
+ *     the offset is not compatible with this Database.
+ *
+ * ===== layout
+ *
+ * The chunk size and the block size delta can be chosen when the VM is started, see
+ * CHUNK_SIZE_PROPERTY and WIDE_RECPTR_PROPERTY. Larger chunks reduce the number of I/O operations
+ * and allow for larger records. With wide record pointers the blocks are aligned to 16 bytes, such
+ * that the record pointers that are stored in 4 bytes can address 64 GB rather than 32 GB.
  *
  * ===== block structure
  *
@@ -63,16 +86,64 @@ import com.ibm.icu.text.MessageFormat;
  * PREV_OFFSET      | pointer to previous block (of same size) (only in free blocks)
  * NEXT_OFFSET      | pointer to next block (of same size) (only in free blocks)
  *
+ * ===== memory mapping
+ *
+ * Optionally the file is mapped into memory in segments of MAPPED_SEGMENT_SIZE bytes. Chunks of
+ * such a database are views on the mapping and do not hold a copy of the data on the heap. Writes
+ * go directly into the mapping, the segments are forced to disk when the chunks are flushed.
+ * The header chunk is never mapped, such that the version number is written only after the data
+ * has been forced to disk.
+ *
+ * ===== write-ahead log
+ *
+ * Optionally the chunks are not written to their place in the file but appended to a log next to
+ * the file, see WriteAheadLog. The log is forced to disk once per commit, i.e. when the exclusive
+ * lock is given up with flushing. The file is updated with the committed chunks from time to time
+ * and when the database is closed, such that it never holds a partially written state. A log that
+ * is left over by a crash is applied when the database is opened. Memory mapped databases do not
+ * use a log, because changes to the mapping may be written to the file at any time.
+ *
+ * ===== snapshots
+ *
+ * Optionally readers see a snapshot of the database while a single writer modifies it. Before the
+ * writer accesses a chunk for the first time, the chunk is copied. The writer modifies the copy,
+ * other threads continue to read the original chunk, which is not modified anymore. The changes are
+ * published by dropping the originals, which must be done while no reader uses the snapshot, see
+ * publishChanges(). Clearing and compacting the database cannot be isolated from readers, they
+ * require that no reader uses the database. Memory mapped databases do not support snapshots,
+ * because the writer would modify the mapping shared with the readers.
+ *
+ * ===== prefetching
+ *
+ * Optionally the chunks that are about to be traversed can be announced with prefetch(). The chunks
+ * that are not cached are read by a background thread, adjacent chunks with a single read. A chunk
+ * read in advance is added to the cache only if no chunk has been written in the meantime, such
+ * that it cannot replace newer content. Prefetching is a hint, hints are dropped when the
+ * background thread cannot keep up. Memory mapped databases do not need to prefetch.
  */
 public class Database {
 	// Public for tests only, you shouldn't need these.
 	public static final int INT_SIZE = 4;
-	public static final int CHUNK_SIZE = 1024 * 4;
+	/**
+	 * System property for the size of the chunks in kilobytes, a power of two from 4 to 16.
+	 * The size of a block is stored in its header as a signed short, the sign marking the block
+	 * as used or free. A block of a whole chunk of 32 KB would not be representable.
+	 */
+	public static final String CHUNK_SIZE_PROPERTY = "org.eclipse.cdt.core.parser.pdom.chunk.size"; //$NON-NLS-1$
+	/**
+	 * System property for aligning blocks to 16 bytes, which doubles the size of the database
+	 * addressable with 4 byte record pointers.
+	 */
+	public static final String WIDE_RECPTR_PROPERTY = "org.eclipse.cdt.core.parser.pdom.wide.recptr"; //$NON-NLS-1$
+	// The size of a block spanning a whole chunk has to fit into a signed short.
+	private static final int MAX_CHUNK_SIZE_IN_KB = 16;
+	public static final int CHUNK_SIZE = 1024 * getChunkSizeInKB();
 	public static final int OFFSET_IN_CHUNK_MASK= CHUNK_SIZE - 1;
 	public static final int BLOCK_HEADER_SIZE= 2;
-	public static final int BLOCK_SIZE_DELTA_BITS = 3;
+	public static final int BLOCK_SIZE_DELTA_BITS = Boolean.getBoolean(WIDE_RECPTR_PROPERTY) ? 4 : 3;
 	public static final int BLOCK_SIZE_DELTA= 1 << BLOCK_SIZE_DELTA_BITS;
-	public static final int MIN_BLOCK_DELTAS = 2;	// a block must at least be 2 + 2*4 bytes to link the free blocks.
+	// A block must at least be 2 + 2*4 bytes to link the free blocks.
+	public static final int MIN_BLOCK_DELTAS = (BLOCK_HEADER_SIZE + 2 * INT_SIZE + BLOCK_SIZE_DELTA - 1) / BLOCK_SIZE_DELTA;
 	public static final int MAX_BLOCK_DELTAS = CHUNK_SIZE / BLOCK_SIZE_DELTA;
 	public static final int MAX_MALLOC_SIZE = MAX_BLOCK_DELTAS * BLOCK_SIZE_DELTA - BLOCK_HEADER_SIZE;
 	public static final int PTR_SIZE = 4;  // size of a pointer in the database in bytes
@@ -85,29 +156,80 @@ public class Database {
 	public static final long MAX_DB_SIZE= ((long) 1 << (Integer.SIZE + BLOCK_SIZE_DELTA_BITS));
 
 	public static final int VERSION_OFFSET = 0;
-	public static final int DATA_AREA = (CHUNK_SIZE / BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 2) * INT_SIZE;
+	public static final int LAYOUT_OFFSET = (CHUNK_SIZE / BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 2) * INT_SIZE;
+	public static final int DATA_AREA = LAYOUT_OFFSET + INT_SIZE;
+
+	private static final int LAYOUT_MAGIC = 0x50440000;
+	private static final int LAYOUT = LAYOUT_MAGIC | (Integer.numberOfTrailingZeros(CHUNK_SIZE) << 8) | BLOCK_SIZE_DELTA_BITS;
 
 	private static final int BLOCK_PREV_OFFSET = BLOCK_HEADER_SIZE;
 	private static final int BLOCK_NEXT_OFFSET = BLOCK_HEADER_SIZE + INT_SIZE;
 
+	private static final int MAPPED_SEGMENT_SIZE = 64 * 1024 * 1024;
+	private static final int CHUNKS_PER_MAPPED_SEGMENT = MAPPED_SEGMENT_SIZE / CHUNK_SIZE;
+	private static boolean sUseMemoryMapping=
+			Boolean.getBoolean("org.eclipse.cdt.core.parser.pdom.mmap"); //$NON-NLS-1$
+	private static boolean sUseWriteAheadLog=
+			Boolean.getBoolean("org.eclipse.cdt.core.parser.pdom.wal"); //$NON-NLS-1$
+	private static boolean sUseSnapshots=
+			Boolean.getBoolean("org.eclipse.cdt.core.parser.pdom.snapshots"); //$NON-NLS-1$
+	private static boolean sUsePrefetching=
+			Boolean.getBoolean("org.eclipse.cdt.core.parser.pdom.prefetch"); //$NON-NLS-1$
+	// Maximum number of adjacent chunks that are prefetched with a single read.
+	private static final int MAX_PREFETCH_RUN = 16;
+	// Maximum number of pending prefetch requests, further requests are dropped.
+	private static final int MAX_PENDING_PREFETCHES = 64;
+	private static final ThreadPoolExecutor sPrefetcher = createPrefetcher();
+	// Number of chunks after which compacting unlocks the chunks it has read.
+	private static final int COMPACTION_BATCH_SIZE = 1024;
+	// Size of the write-ahead log that triggers copying the committed chunks to the file.
+	private static final long CHECKPOINT_LOG_SIZE = 32 * 1024 * 1024;
+
 	private final File fLocation;
 	private final boolean fReadOnly;
 	private RandomAccessFile fFile;
 	private boolean fExclusiveLock;	 // Necessary for any write operation.
 	private boolean fLocked;		 // Necessary for any operation.
 	private boolean fIsMarkedIncomplete;
+	private boolean fIsCompatibleLayout;
 
 	private int fVersion;
-	private final Chunk fHeaderChunk;
-	private Chunk[] fChunks;
+	private volatile Chunk fHeaderChunk;
+	// The header chunk is replaced when the writer starts modifying a snapshot.
+	private final Object fFlushLock= new Object();
+	/**
+	 * Chunks are looked up without a lock, they are loaded while holding the lock of the
+	 * cache segment they belong to. The array is replaced and entries are released
+	 * while holding {@link #fChunksLock}.
+	 */
+	private volatile AtomicReferenceArray<Chunk> fChunks;
+	private final Object fChunksLock= new Object();
 	private int fChunksUsed;
 	private int fChunksAllocated;
 	private ChunkCache fCache;
+	private final boolean fMapped;
+	private MappedByteBuffer[] fSegments;	// Protected by fChunksLock.
+	private final WriteAheadLog fLog;
+	// The writer is the thread that sees the unpublished changes, all other threads read the snapshot.
+	private final boolean fUseSnapshots;
+	private volatile Thread fWriter;
+	private volatile Chunk fHeaderSnapshot;
+	// Maps the sequence numbers of the chunks modified by the writer to their published content.
+	private final Map<Integer, Chunk> fSnapshots= new ConcurrentHashMap<>();
+	// Chunks created after the last publication are not visible to readers.
+	private int fPublishedChunkCount;
+	// Whether the writer modifies the chunks in place, because no reader uses the snapshot.
+	private boolean fReadersExcluded;
+	private final boolean fUsePrefetching;
+	// Incremented whenever chunks are written, invalidates the chunks that are being prefetched.
+	private final AtomicLong fWriteCount= new AtomicLong();
 
 	private long malloced;
 	private long freed;
-	private long cacheHits;
-	private long cacheMisses;
+	private long cacheHits;		// Updated without synchronization, thus approximate.
+	private final AtomicLong cacheMisses= new AtomicLong();
+	private final AtomicLong cacheEvictions= new AtomicLong();
+	private final AtomicLong prefetchedChunks= new AtomicLong();
 
 	/**
 	 * Construct a new Database object, creating a backing file if necessary.
@@ -118,25 +240,51 @@ public class Database {
 	 * @throws CoreException
 	 */
 	public Database(File location, ChunkCache cache, int version, boolean openReadOnly) throws CoreException {
+		this(location, cache, version, openReadOnly, sUseMemoryMapping);
+	}
+
+	/**
+	 * Construct a new Database object, creating a backing file if necessary.
+	 * @param location the local file path for the database
+	 * @param cache the cache to be used optimization
+	 * @param version the version number to store in the database (only applicable for new databases)
+	 * @param openReadOnly whether this Database object will ever need writing to
+	 * @param useMemoryMapping whether the chunks shall operate directly on the memory mapped file
+	 * @throws CoreException
+	 */
+	public Database(File location, ChunkCache cache, int version, boolean openReadOnly,
+			boolean useMemoryMapping) throws CoreException {
 		try {
 			fLocation = location;
 			fReadOnly= openReadOnly;
 			fCache= cache;
+			fMapped= useMemoryMapping;
 			openFile();
+			fLog= openLog(sUseWriteAheadLog && !useMemoryMapping);
+			fUseSnapshots= sUseSnapshots && !useMemoryMapping && !openReadOnly;
+			fUsePrefetching= sUsePrefetching && !useMemoryMapping;
 
 			int nChunksOnDisk = (int) (fFile.length() / CHUNK_SIZE);
+			if (fLog != null) {
+				// A read-only database may find committed chunks in the log, only.
+				nChunksOnDisk= Math.max(nChunksOnDisk, fLog.getChunkCount());
+			}
 			fHeaderChunk= new Chunk(this, 0);
 			fHeaderChunk.fLocked= true;		// Never makes it into the cache, needed to satisfy assertions.
 			if (nChunksOnDisk <= 0) {
 				fVersion= version;
-				fChunks= new Chunk[1];
-				fChunksUsed = fChunksAllocated = fChunks.length;
+				fChunks= new AtomicReferenceArray<>(1);
+				fChunksUsed = fChunksAllocated = fChunks.length();
+				fHeaderChunk.putInt(LAYOUT_OFFSET, LAYOUT);
+				fIsCompatibleLayout= true;
 			} else {
 				fHeaderChunk.read();
 				fVersion= fHeaderChunk.getInt(VERSION_OFFSET);
-				fChunks = new Chunk[nChunksOnDisk];	// chunk[0] is unused.
+				fIsCompatibleLayout= fHeaderChunk.getInt(LAYOUT_OFFSET) == LAYOUT;
+				fChunks = new AtomicReferenceArray<>(nChunksOnDisk);	// chunk[0] is unused.
 				fChunksUsed = fChunksAllocated = nChunksOnDisk;
 			}
+			fPublishedChunkCount= fChunksUsed;
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
 		}
@@ -146,7 +294,32 @@ public class Database {
 		fFile = new RandomAccessFile(fLocation, fReadOnly ? "r" : "rw"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	/**
+	 * Opens the write-ahead log of the database. Changes committed to a log that is left over from
+	 * a previous session are copied to the file, even if no log shall be used any more.
+	 */
+	private WriteAheadLog openLog(boolean useLog) throws IOException {
+		final File logLocation= WriteAheadLog.getLocation(fLocation);
+		if (!logLocation.exists() && (fReadOnly || !useLog))
+			return null;
+
+		if (fReadOnly) {
+			// The committed chunks are read from the log.
+			return new WriteAheadLog(logLocation, true);
+		}
+		WriteAheadLog log= new WriteAheadLog(logLocation, false);
+		log.checkpoint(fFile.getChannel());
+		if (useLog)
+			return log;
+
+		log.close();
+		return null;
+	}
+
 	void read(ByteBuffer buf, long position) throws IOException {
+		if (fLog != null && fLog.read((int) (position / CHUNK_SIZE), buf))
+			return;
+
 		int retries= 0;
 		do {
 			try {
@@ -172,6 +345,107 @@ public class Database {
 		}
 	}
 
+	/**
+	 * Returns a buffer of {@link #CHUNK_SIZE} bytes operating directly on the memory mapped
+	 * file region of the chunk with the given index.
+	 */
+	private ByteBuffer mapChunk(int chunkIndex) throws CoreException {
+		final ByteBuffer buf;
+		synchronized (fChunksLock) {
+			buf= getMappedSegment(chunkIndex / CHUNKS_PER_MAPPED_SEGMENT).duplicate();
+		}
+		final int pos= (chunkIndex % CHUNKS_PER_MAPPED_SEGMENT) * CHUNK_SIZE;
+		if (pos + CHUNK_SIZE > buf.capacity()) {
+			databaseCorruptionDetected();
+		}
+		buf.position(pos);
+		buf.limit(pos + CHUNK_SIZE);
+		return buf.slice();
+	}
+
+	private MappedByteBuffer getMappedSegment(int segmentIndex) throws CoreException {
+		if (fSegments == null) {
+			fSegments= new MappedByteBuffer[segmentIndex + 1];
+		} else if (segmentIndex >= fSegments.length) {
+			MappedByteBuffer[] newSegments= new MappedByteBuffer[Math.max(segmentIndex + 1, fSegments.length * 2)];
+			System.arraycopy(fSegments, 0, newSegments, 0, fSegments.length);
+			fSegments= newSegments;
+		}
+		MappedByteBuffer segment= fSegments[segmentIndex];
+		if (segment == null) {
+			final long position= (long) segmentIndex * MAPPED_SEGMENT_SIZE;
+			try {
+				segment= fSegments[segmentIndex]= map(position);
+			} catch (IOException e) {
+				throw new CoreException(new DBStatus(e));
+			}
+		}
+		return segment;
+	}
+
+	private MappedByteBuffer map(long position) throws IOException {
+		int retries= 0;
+		while (true) {
+			try {
+				final FileChannel channel= fFile.getChannel();
+				if (fReadOnly) {
+					// A read-only mapping must not exceed the size of the file.
+					long size= Math.min(MAPPED_SEGMENT_SIZE, channel.size() - position);
+					return channel.map(MapMode.READ_ONLY, position, size);
+				}
+				// Writable segments are mapped completely, this grows the file as necessary.
+				return channel.map(MapMode.READ_WRITE, position, MAPPED_SEGMENT_SIZE);
+			} catch (ClosedChannelException e) {
+				// Bug 219834 file may have be closed by interrupting a thread during an I/O operation.
+				reopen(e, ++retries);
+			}
+		}
+	}
+
+	/**
+	 * Forces the changes made to the memory mapped segments to the disk.
+	 */
+	private void forceMappedSegments() {
+		MappedByteBuffer[] segments;
+		synchronized (fChunksLock) {
+			segments= fSegments;
+		}
+		if (segments != null) {
+			for (MappedByteBuffer segment : segments) {
+				if (segment != null) {
+					segment.force();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Releases the memory mapped segments and truncates the file to the used chunks, because
+	 * mapping a segment may have grown the file beyond them.
+	 */
+	private void unmapSegments(long size) {
+		synchronized (fChunksLock) {
+			if (fSegments == null)
+				return;
+			fSegments= null;
+		}
+		if (!fReadOnly) {
+			try {
+				fFile.getChannel().truncate(size);
+			} catch (IOException e) {
+				// Some platforms do not allow truncating a file while it is still mapped, the
+				// mapping is released by the garbage collector, only. The unused space is harmless.
+			}
+		}
+	}
+
+	private Chunk newChunk(int index) throws CoreException {
+		if (fMapped) {
+			return new Chunk(this, index, mapChunk(index));
+		}
+		return new Chunk(this, index);
+	}
+
 	private void reopen(ClosedChannelException e, int attempt) throws ClosedChannelException, FileNotFoundException {
 		// Only if the current thread was not interrupted we try to reopen the file.
 		if (e instanceof ClosedByInterruptException || attempt >= 20) {
@@ -185,7 +459,7 @@ public class Database {
         final FileChannel from= fFile.getChannel();
         long nRead = 0;
         long position = 0;
-        long size = from.size();
+        long size = fMapped ? getSizeBytes() : from.size();
         while (position < size) {
         	nRead = from.transferTo(position, 4096 * 16, target);
         	if (nRead == 0) {
@@ -194,12 +468,34 @@ public class Database {
         		position+= nRead;
         	}
         }
+        if (fLog != null) {
+        	// The file does not yet contain the chunks written to the log.
+        	fLog.copyImages(target);
+        }
 	}
 
 	public int getVersion() {
 		return fVersion;
 	}
 
+	/**
+	 * Returns whether the file has been created with the chunk size and block size delta used
+	 * by this VM. The content of a database with an incompatible layout must not be accessed,
+	 * it can be cleared, only.
+	 */
+	public boolean isCompatibleLayout() {
+		return fIsCompatibleLayout;
+	}
+
+	private static int getChunkSizeInKB() {
+		int kb= Integer.getInteger(CHUNK_SIZE_PROPERTY, 4);
+		if (kb < 4 || kb > MAX_CHUNK_SIZE_IN_KB || Integer.bitCount(kb) != 1) {
+			CCorePlugin.log(NLS.bind("Unsupported chunk size {0}KB for the index database, using 4KB.", kb)); //$NON-NLS-1$
+			return 4;
+		}
+		return kb;
+	}
+
 	public void setVersion(int version) throws CoreException {
 		assert fExclusiveLock;
 		fHeaderChunk.putInt(VERSION_OFFSET, version);
@@ -212,15 +508,23 @@ public class Database {
 	 */
 	public void clear(int version) throws CoreException {
 		assert fExclusiveLock;
+		// Cannot be isolated from readers, no reader may use a snapshot until the changes are published.
+		excludeReaders();
 		removeChunksFromCache();
 
 		fVersion= version;
 		// Clear the first chunk.
 		fHeaderChunk.clear(0, CHUNK_SIZE);
+		fHeaderChunk.putInt(LAYOUT_OFFSET, LAYOUT);
+		fIsCompatibleLayout= true;
 		// Chunks have been removed from the cache, so we may just reset the array of chunks.
-		fChunks = new Chunk[] {null};
-		fChunksUsed = fChunksAllocated = fChunks.length;
+		fChunks = new AtomicReferenceArray<>(1);
+		fChunksUsed = fChunksAllocated = fChunks.length();
+		unmapSegments(CHUNK_SIZE);
 		try {
+			if (fLog != null) {
+				fLog.truncate();
+			}
 			fHeaderChunk.flush();	// Zero out header chunk.
 			fFile.getChannel().truncate(CHUNK_SIZE);	// Truncate database.
 		} catch (IOException e) {
@@ -245,13 +549,12 @@ public class Database {
 	}
 
 	private void removeChunksFromCache() {
-		synchronized (fCache) {
-			for (int i= 1; i < fChunks.length; i++) {
-				Chunk chunk= fChunks[i];
-				if (chunk != null) {
-					fCache.remove(chunk);
-					fChunks[i]= null;
-				}
+		final AtomicReferenceArray<Chunk> chunks= fChunks;
+		for (int i= 1; i < chunks.length(); i++) {
+			Chunk chunk= chunks.get(i);
+			if (chunk != null) {
+				fCache.remove(chunk);
+				chunks.set(i, null);
 			}
 		}
 	}
@@ -262,30 +565,225 @@ public class Database {
 	 */
 	public Chunk getChunk(long offset) throws CoreException {
 		if (offset < CHUNK_SIZE) {
-			return fHeaderChunk;
+			// The writer replaces the header chunk only after the snapshot has been set.
+			final Chunk header= fHeaderChunk;
+			if (fUseSnapshots && Thread.currentThread() != fWriter) {
+				final Chunk snapshot= fHeaderSnapshot;
+				if (snapshot != null)
+					return snapshot;
+			}
+			return header;
 		}
 		long long_index = offset / CHUNK_SIZE;
 		assert long_index < Integer.MAX_VALUE;
+		if (fMapped && fExclusiveLock && !fIsMarkedIncomplete) {
+			// Changes to the mapping may be written to the file at any time.
+			markFileIncomplete();
+		}
 
-		synchronized (fCache) {
-			assert fLocked;
-			final int index = (int) long_index;
-			if (index < 0 || index >= fChunks.length) {
-				databaseCorruptionDetected();
+		assert fLocked;
+		final int index = (int) long_index;
+		AtomicReferenceArray<Chunk> chunks= fChunks;
+		if (index < 0 || index >= chunks.length()) {
+			databaseCorruptionDetected();
+		}
+		Chunk chunk= chunks.get(index);
+		final boolean readsSnapshot= fUseSnapshots && Thread.currentThread() != fWriter;
+		if (readsSnapshot) {
+			// The writer replaces the chunk only after the snapshot has been set.
+			final Chunk snapshot= getSnapshot(index);
+			if (snapshot != null)
+				return snapshot;
+		}
+		final boolean lock= fExclusiveLock && !readsSnapshot;
+		if (chunk != null && !lock && fCache.hit(chunk)) {
+			// Fast path for readers, no lock is needed.
+			cacheHits++;
+			return chunk;
+		}
+
+		// Loading and locking a chunk needs to be atomic with respect to evicting it.
+		synchronized (fCache.getSegment(this, index)) {
+			if (readsSnapshot) {
+				final Chunk snapshot= getSnapshot(index);
+				if (snapshot != null)
+					return snapshot;
 			}
-			Chunk chunk= fChunks[index];
+			chunks= fChunks;
+			chunk= chunks.get(index);
 			if (chunk == null) {
-				cacheMisses++;
-				chunk = fChunks[index] = new Chunk(this, index);
+				cacheMisses.incrementAndGet();
+				chunk = newChunk(index);
 				chunk.read();
+				// Publish the chunk only after it has been read.
+				synchronized (fChunksLock) {
+					fChunks.set(index, chunk);
+				}
 			} else {
 				cacheHits++;
 			}
-			fCache.add(chunk, fExclusiveLock);
+			if (lock && fUseSnapshots && !fReadersExcluded && index < fPublishedChunkCount
+					&& getSnapshot(index) == null) {
+				chunk= createSnapshot(chunk);
+			}
+			fCache.add(chunk, lock);
 			return chunk;
 		}
 	}
 
+	private Chunk getSnapshot(int index) {
+		return fSnapshots.isEmpty() ? null : fSnapshots.get(index);
+	}
+
+	/**
+	 * Keeps the given chunk for the readers of the snapshot and returns a copy of it, which
+	 * replaces the chunk for the writer. Must be called while holding the lock of the cache segment
+	 * the chunk belongs to.
+	 */
+	private Chunk createSnapshot(Chunk chunk) {
+		final Chunk copy= new Chunk(chunk);
+		fSnapshots.put(chunk.fSequenceNumber, chunk);
+		fCache.remove(chunk);
+		synchronized (fChunksLock) {
+			fChunks.set(chunk.fSequenceNumber, copy);
+		}
+		return copy;
+	}
+
+	/**
+	 * Hints that the chunk containing the given offset will be accessed soon.
+	 * @see #prefetch(long[], int)
+	 */
+	public void prefetch(long offset) {
+		if (fUsePrefetching) {
+			prefetch(new long[] { offset }, 1);
+		}
+	}
+
+	/**
+	 * Hints that the chunks containing the given offsets will be accessed soon. The chunks that are
+	 * not cached are read in the background, the method does not wait for them. Offsets within the
+	 * header chunk, in particular null pointers, are ignored.
+	 * @param offsets the offsets of the records that will be accessed.
+	 * @param length the number of offsets to consider.
+	 */
+	public void prefetch(long[] offsets, int length) {
+		if (!fUsePrefetching || !fLocked)
+			return;
+
+		final AtomicReferenceArray<Chunk> chunks= fChunks;
+		final boolean readsSnapshot= fUseSnapshots && Thread.currentThread() != fWriter;
+		int[] indexes= null;
+		int count= 0;
+		for (int i= 0; i < length; i++) {
+			final long index= offsets[i] / CHUNK_SIZE;
+			if (index <= 0 || index >= chunks.length() || chunks.get((int) index) != null)
+				continue;
+			if (readsSnapshot && getSnapshot((int) index) != null)
+				continue;
+			if (indexes == null) {
+				indexes= new int[length - i];
+			}
+			indexes[count++]= (int) index;
+		}
+		if (count == 0)
+			return;
+
+		Arrays.sort(indexes, 0, count);
+		int unique= 1;
+		for (int i= 1; i < count; i++) {
+			if (indexes[i] != indexes[unique - 1]) {
+				indexes[unique++]= indexes[i];
+			}
+		}
+		final int[] sortedIndexes= indexes;
+		final int chunkCount= unique;
+		sPrefetcher.execute(new Runnable() {
+			@Override
+			public void run() {
+				prefetchChunks(chunks, sortedIndexes, chunkCount);
+			}
+		});
+	}
+
+	/**
+	 * Called on the background thread, reads the chunks with the given sorted indexes and adds
+	 * them to the cache.
+	 */
+	private void prefetchChunks(AtomicReferenceArray<Chunk> chunks, int[] indexes, int count) {
+		for (int i= 0; i < count;) {
+			int end= i + 1;
+			while (end < count && end - i < MAX_PREFETCH_RUN && indexes[end] == indexes[i] + end - i) {
+				end++;
+			}
+			if (fChunks != chunks)
+				return; // The database has been cleared or closed.
+
+			final long writeCount= fWriteCount.get();
+			final Chunk[] loaded;
+			try {
+				loaded= readChunks(indexes[i], end - i);
+			} catch (IOException e) {
+				// Prefetching is a hint, the chunks are read again when they are accessed.
+				return;
+			}
+			for (Chunk chunk : loaded) {
+				final int index= chunk.fSequenceNumber;
+				synchronized (fCache.getSegment(this, index)) {
+					synchronized (fChunksLock) {
+						if (fChunks != chunks || fWriteCount.get() != writeCount)
+							return;
+						if (index >= fChunksUsed || chunks.get(index) != null)
+							continue;
+						chunks.set(index, chunk);
+					}
+					// The chunk is about to be accessed, it shall not be the next one to be evicted.
+					chunk.fCacheHitFlag= true;
+					fCache.add(chunk, false);
+					prefetchedChunks.incrementAndGet();
+				}
+			}
+			i= end;
+		}
+	}
+
+	/**
+	 * Reads adjacent chunks with a single read from the file. Chunks with an image in the
+	 * write-ahead log are taken from the log. Does not reopen the file, such that it cannot be
+	 * reopened after the database has been closed.
+	 */
+	private Chunk[] readChunks(int firstIndex, int count) throws IOException {
+		final ByteBuffer buf= ByteBuffer.allocate(count * CHUNK_SIZE);
+		final long position= (long) firstIndex * CHUNK_SIZE;
+		final FileChannel channel= fFile.getChannel();
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0)
+				break;
+		}
+		final Chunk[] chunks= new Chunk[count];
+		for (int i= 0; i < count; i++) {
+			chunks[i]= new Chunk(this, firstIndex + i, buf.array(), i * CHUNK_SIZE);
+			if (fLog != null) {
+				chunks[i].readFromLog(fLog);
+			}
+		}
+		return chunks;
+	}
+
+	private static ThreadPoolExecutor createPrefetcher() {
+		final ThreadPoolExecutor executor= new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_PENDING_PREFETCHES), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						final Thread thread= new Thread(r, "PDOM prefetch"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.DiscardPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 	private void databaseCorruptionDetected() throws CoreException {
 		String msg = MessageFormat.format(Messages.getString("Database.CorruptedDatabase"), //$NON-NLS-1$
 				new Object[] { fLocation.getName() });
@@ -345,25 +843,27 @@ public class Database {
 
 	private long createNewChunk() throws CoreException {
 		assert fExclusiveLock;
-		synchronized (fCache) {
-			final int newChunkIndex = fChunksUsed; // fChunks.length;
-
-			final Chunk chunk = new Chunk(this, newChunkIndex);
+		final int newChunkIndex = fChunksUsed; // fChunks.length;
+		synchronized (fCache.getSegment(this, newChunkIndex)) {
+			final Chunk chunk = newChunk(newChunkIndex);
 			chunk.fDirty = true;
 
-			if (newChunkIndex >= fChunksAllocated) {
-				int increment = Math.max(1024, fChunksAllocated / 20);
-				Chunk[] newchunks = new Chunk[fChunksAllocated + increment];
-				System.arraycopy(fChunks, 0, newchunks, 0, fChunksAllocated);
-
-				fChunks = newchunks;
-				fChunksAllocated += increment;
+			synchronized (fChunksLock) {
+				if (newChunkIndex >= fChunksAllocated) {
+					int increment = Math.max(1024, fChunksAllocated / 20);
+					fChunks = copyOf(fChunks, fChunksAllocated + increment);
+					fChunksAllocated += increment;
+				}
+				fChunksUsed += 1;
+				fChunks.set(newChunkIndex, chunk);
 			}
-			fChunksUsed += 1;
-			fChunks[newChunkIndex] = chunk;
 
 			fCache.add(chunk, true);
 			long address = (long) newChunkIndex * CHUNK_SIZE;
+			if (chunk.isMapped()) {
+				// The file may contain stale data beyond the used chunks.
+				chunk.clear(address, CHUNK_SIZE);
+			}
 
 			/*
 			 * Non-dense pointers are at most 31 bits dense pointers are at most 35 bits Check the sizes here
@@ -386,24 +886,30 @@ public class Database {
 	 */
 	private long createNewChunks(int numChunks) throws CoreException {
 		assert fExclusiveLock;
-		synchronized (fCache) {
-			final int oldLen= fChunks.length;
-			Chunk[] newchunks = new Chunk[oldLen + numChunks];
-			System.arraycopy(fChunks, 0, newchunks, 0, oldLen);
-			for (int i = oldLen; i < oldLen + numChunks; i++) {
-				newchunks[i]= null;
-			}
-			final Chunk chunk= new Chunk(this, oldLen + numChunks - 1);
+		final int oldLen= fChunks.length();
+		synchronized (fCache.getSegment(this, oldLen + numChunks - 1)) {
+			final Chunk chunk= newChunk(oldLen + numChunks - 1);
 			chunk.fDirty= true;
-			newchunks[ oldLen + numChunks - 1 ] = chunk;
-			fChunks= newchunks;
+			synchronized (fChunksLock) {
+				fChunks= copyOf(fChunks, oldLen + numChunks);
+				fChunks.set(oldLen + numChunks - 1, chunk);
+				fChunksAllocated=oldLen + numChunks;
+				fChunksUsed=oldLen + numChunks;
+			}
 			fCache.add(chunk, true);
-			fChunksAllocated=oldLen + numChunks;
-			fChunksUsed=oldLen + numChunks;
 			return (long) (oldLen + numChunks - 1) * CHUNK_SIZE;
 		}
 	}
 
+	private static AtomicReferenceArray<Chunk> copyOf(AtomicReferenceArray<Chunk> chunks, int newLength) {
+		AtomicReferenceArray<Chunk> result= new AtomicReferenceArray<>(newLength);
+		final int length= Math.min(chunks.length(), newLength);
+		for (int i= 0; i < length; i++) {
+			result.set(i, chunks.get(i));
+		}
+		return result;
+	}
+
 	private long getFirstBlock(int blocksize) throws CoreException {
 		assert fLocked;
 		return fHeaderChunk.getFreeRecPtr((blocksize / BLOCK_SIZE_DELTA - MIN_BLOCK_DELTAS + 1) * INT_SIZE);
@@ -592,16 +1098,139 @@ public class Database {
 		System.out.println("malloc'ed: " + malloced); //$NON-NLS-1$
 		System.out.println("free'd: " + freed); //$NON-NLS-1$
 		System.out.println("wasted: " + (fChunksUsed * CHUNK_SIZE - (malloced - freed))); //$NON-NLS-1$
-		System.out.println("Free blocks"); //$NON-NLS-1$
+		System.out.println(getFreeBlockStatistics());
+	}
+
+	/**
+	 * Computes statistics about the free blocks of the database. In contrast to the counters of
+	 * {@link #reportFreeBlocks()} the statistics are not limited to the current session.
+	 */
+	public FreeBlockStatistics getFreeBlockStatistics() throws CoreException {
+		assert fLocked;
+		FreeBlockStatistics result= new FreeBlockStatistics((long) fChunksUsed * CHUNK_SIZE);
 		for (int bs = MIN_BLOCK_DELTAS*BLOCK_SIZE_DELTA; bs <= CHUNK_SIZE; bs += BLOCK_SIZE_DELTA) {
-			int count = 0;
 			long block = getFirstBlock(bs);
 			while (block != 0) {
-				++count;
+				result.addFreeBlock(bs);
 				block = getFreeRecPtr(block + BLOCK_NEXT_OFFSET);
 			}
-			if (count != 0)
-				System.out.println("Block size: " + bs + "=" + count); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return result;
+	}
+
+	/**
+	 * Merges adjacent free blocks and removes the chunks at the end of the database that are
+	 * free as a whole, such that the file shrinks. Records are not moved, i.e. record pointers
+	 * remain valid. The changes are flushed.
+	 *
+	 * @return the number of bytes the database has been shrunk by
+	 */
+	public long compact() throws CoreException {
+		assert fExclusiveLock;
+		// Cannot be isolated from readers, no reader may use a snapshot until the changes are published.
+		excludeReaders();
+		for (int i= 1; i < fChunksUsed; i++) {
+			mergeFreeBlocks(i);
+			if (i % COMPACTION_BATCH_SIZE == 0) {
+				// Unlock the chunks that have not been modified, such that they can be evicted.
+				giveUpExclusiveLock(false);
+				setExclusiveLock();
+			}
+		}
+
+		Set<Long> freeChunks= new HashSet<>();
+		for (long block= getFirstBlock(CHUNK_SIZE); block != 0; block= getFreeRecPtr(block + BLOCK_NEXT_OFFSET)) {
+			freeChunks.add(block);
+		}
+		final int oldChunksUsed= fChunksUsed;
+		int chunksUsed= oldChunksUsed;
+		while (chunksUsed > 1 && freeChunks.contains((long) (chunksUsed - 1) * CHUNK_SIZE)) {
+			chunksUsed--;
+			final long block= (long) chunksUsed * CHUNK_SIZE;
+			removeBlock(getChunk(block), CHUNK_SIZE, block);
+		}
+		if (chunksUsed < oldChunksUsed) {
+			releaseChunks(chunksUsed, oldChunksUsed);
+		}
+		flush();
+
+		if (chunksUsed < oldChunksUsed && !fMapped) {
+			// A memory mapped file is truncated when it is closed.
+			try {
+				if (fLog != null) {
+					// The log may contain images of the removed chunks.
+					fLog.checkpoint(fFile.getChannel());
+				}
+				fFile.getChannel().truncate((long) chunksUsed * CHUNK_SIZE);
+			} catch (IOException e) {
+				throw new CoreException(new DBStatus(e));
+			}
+		}
+		return (long) (oldChunksUsed - chunksUsed) * CHUNK_SIZE;
+	}
+
+	/**
+	 * Replaces each sequence of adjacent free blocks within the chunk with a single block.
+	 */
+	private void mergeFreeBlocks(int chunkIndex) throws CoreException {
+		// Block sizes are shorts, which requires chunks of less than 32KB.
+		assert CHUNK_SIZE <= Short.MAX_VALUE;
+		final long chunkOffset= (long) chunkIndex * CHUNK_SIZE;
+		final Chunk chunk= getChunk(chunkOffset);
+		long start= 0;
+		int size= 0;
+		int count= 0;
+		for (int pos= 0; pos < CHUNK_SIZE;) {
+			final long block= chunkOffset + pos;
+			final short blocksize= chunk.getShort(block);
+			if (blocksize == 0) {
+				// A chunk that was never used.
+				break;
+			}
+			if (blocksize > 0) {
+				if (count++ == 0) {
+					start= block;
+				}
+				size += blocksize;
+				pos += blocksize;
+			} else {
+				replaceFreeBlocks(chunk, start, size, count);
+				count= size= 0;
+				pos -= blocksize;
+			}
+		}
+		replaceFreeBlocks(chunk, start, size, count);
+	}
+
+	private void replaceFreeBlocks(Chunk chunk, long start, int size, int count) throws CoreException {
+		if (count < 2)
+			return;
+		for (long block= start; block < start + size;) {
+			final int blocksize= chunk.getShort(block);
+			removeBlock(chunk, blocksize, block);
+			block += blocksize;
+		}
+		addBlock(chunk, size, start);
+	}
+
+	/**
+	 * Removes the chunks in the given range from the cache and from the array of chunks.
+	 */
+	private void releaseChunks(int from, int to) {
+		final AtomicReferenceArray<Chunk> chunks= fChunks;
+		for (int i= from; i < to; i++) {
+			Chunk chunk= chunks.get(i);
+			if (chunk != null) {
+				synchronized (fCache.getSegment(this, i)) {
+					fCache.remove(chunk);
+					chunk.fLocked= false;
+					chunk.fDirty= false;
+				}
+				releaseUnlockedChunk(chunk);
+			}
+		}
+		synchronized (fChunksLock) {
+			fChunksUsed= from;
 		}
 	}
 
@@ -619,9 +1248,16 @@ public class Database {
 		// Chunks have been removed from the cache, so we are fine.
 		fHeaderChunk.clear(0, CHUNK_SIZE);
 		fHeaderChunk.fDirty= false;
-		fChunks= new Chunk[] { null };
-		fChunksUsed = fChunksAllocated = fChunks.length;
+		unmapSegments((long) fChunksUsed * CHUNK_SIZE);
+		fChunks= new AtomicReferenceArray<>(1);
+		fChunksUsed = fChunksAllocated = fChunks.length();
 		try {
+			if (fLog != null) {
+				if (!fReadOnly) {
+					fLog.checkpoint(fFile.getChannel());
+				}
+				fLog.close();
+			}
 			fFile.close();
 		} catch (IOException e) {
 			throw new CoreException(new DBStatus(e));
@@ -636,11 +1272,22 @@ public class Database {
 	}
 
 	/**
-	 * Called from any thread via the cache, protected by {@link #fCache}.
+	 * Called from any thread via the cache, while holding the lock of the cache segment
+	 * the chunk belongs to.
 	 */
 	void releaseChunk(final Chunk chunk) {
 		if (!chunk.fLocked) {
-			fChunks[chunk.fSequenceNumber]= null;
+			cacheEvictions.incrementAndGet();
+			releaseUnlockedChunk(chunk);
+		}
+	}
+
+	/**
+	 * Removes the chunk from the array of chunks, unless it has already been replaced.
+	 */
+	private void releaseUnlockedChunk(final Chunk chunk) {
+		synchronized (fChunksLock) {
+			fChunks.compareAndSet(chunk.fSequenceNumber, chunk, null);
 		}
 	}
 
@@ -652,11 +1299,134 @@ public class Database {
 		return fCache;
 	}
 
+	/**
+	 * Returns whether the chunks of this database operate directly on the memory mapped file.
+	 */
+	public boolean isMemoryMapped() {
+		return fMapped;
+	}
+
+	/**
+	 * Sets whether databases shall use memory mapping when not specified otherwise.
+	 */
+	public static void setUseMemoryMapping(boolean useMemoryMapping) {
+		sUseMemoryMapping= useMemoryMapping;
+	}
+
+	/**
+	 * Returns whether changes to this database are written to a write-ahead log.
+	 */
+	public boolean hasWriteAheadLog() {
+		return fLog != null;
+	}
+
+	/**
+	 * Sets whether databases opened for writing shall use a write-ahead log. Does not affect
+	 * memory mapped databases.
+	 */
+	public static void setUseWriteAheadLog(boolean useWriteAheadLog) {
+		sUseWriteAheadLog= useWriteAheadLog;
+	}
+
+	/**
+	 * Returns whether readers see a snapshot of the database while it is modified by the writer.
+	 */
+	public boolean usesSnapshots() {
+		return fUseSnapshots;
+	}
+
+	/**
+	 * Sets whether databases opened for writing shall provide snapshots to the readers. Does not
+	 * affect memory mapped databases.
+	 */
+	public static void setUseSnapshots(boolean useSnapshots) {
+		sUseSnapshots= useSnapshots;
+	}
+
+	/**
+	 * Returns whether the chunks announced with {@link #prefetch(long[], int)} are read in advance.
+	 */
+	public boolean usesPrefetching() {
+		return fUsePrefetching;
+	}
+
+	/**
+	 * Sets whether databases shall read the chunks announced for traversals in the background.
+	 * Does not affect memory mapped databases.
+	 */
+	public static void setUsePrefetching(boolean usePrefetching) {
+		sUsePrefetching= usePrefetching;
+	}
+
+	/**
+	 * Makes the changes of the writer visible to all threads. Must not be called while the writer
+	 * holds the exclusive lock or while a reader uses the snapshot.
+	 */
+	public void publishChanges() {
+		assert !fExclusiveLock;
+		if (fUseSnapshots) {
+			fHeaderSnapshot= null;
+			fSnapshots.clear();
+			fPublishedChunkCount= fChunksUsed;
+			fReadersExcluded= false;
+			fWriter= null;
+		}
+	}
+
+	/**
+	 * Tells the database that no reader will access it until the changes are published, such that
+	 * the writer can modify the chunks without copying them. Clearing and compacting the database
+	 * imply this. The chunks kept for the readers of the snapshot are dropped.
+	 */
+	public void excludeReaders() {
+		fReadersExcluded= true;
+		fSnapshots.clear();
+	}
+
+	/**
+	 * Returns whether the writer modifies the chunks without keeping a snapshot for the readers.
+	 */
+	public boolean excludesReaders() {
+		return fReadersExcluded;
+	}
+
+	/**
+	 * Returns the number of chunks that are kept for the readers of the snapshot.
+	 */
+	public int getSnapshotChunkCount() {
+		return fSnapshots.size();
+	}
+
+	/**
+	 * Returns whether the calling thread reads the snapshot rather than the changes of the writer.
+	 */
+	public boolean readsSnapshot() {
+		return fUseSnapshots && Thread.currentThread() != fWriter;
+	}
+
+	/**
+	 * Returns whether the writer has made changes that are not yet visible to the readers.
+	 */
+	public boolean hasUnpublishedChanges() {
+		return fWriter != null;
+	}
+
 	/**
 	 * Asserts that database is used by one thread exclusively. This is necessary when doing
-	 * write operations.
+	 * write operations. With snapshots, the calling thread becomes the writer and other threads
+	 * may continue to read, unless {@link #excludeReaders()} has been called before.
 	 */
 	public void setExclusiveLock() {
+		if (fUseSnapshots) {
+			fWriter= Thread.currentThread();
+			if (fHeaderSnapshot == null && !fReadersExcluded) {
+				final Chunk header= fHeaderChunk;
+				final Chunk copy= new Chunk(header);
+				copy.fLocked= true;
+				fHeaderSnapshot= header;
+				fHeaderChunk= copy;
+			}
+		}
 		fExclusiveLock= true;
 		fLocked= true;
 	}
@@ -669,17 +1439,18 @@ public class Database {
 		if (fExclusiveLock) {
 			try {
 				ArrayList<Chunk> dirtyChunks= new ArrayList<>();
-				synchronized (fCache) {
-					for (int i= 1; i < fChunksUsed; i++) {
-						Chunk chunk= fChunks[i];
-						if (chunk != null) {
+				final AtomicReferenceArray<Chunk> chunks= fChunks;
+				for (int i= 1; i < fChunksUsed; i++) {
+					Chunk chunk= chunks.get(i);
+					if (chunk != null) {
+						synchronized (fCache.getSegment(this, i)) {
 							if (chunk.fCacheIndex < 0) {
 								// Locked chunk that has been removed from cache.
 								if (chunk.fDirty) {
 									dirtyChunks.add(chunk); // Keep in fChunks until it is flushed.
 								} else {
 									chunk.fLocked= false;
-									fChunks[i]= null;
+									releaseUnlockedChunk(chunk);
 								}
 							} else if (chunk.fLocked) {
 								// Locked chunk, still in cache.
@@ -717,12 +1488,11 @@ public class Database {
 
 		// Be careful as other readers may access chunks concurrently.
 		ArrayList<Chunk> dirtyChunks= new ArrayList<>();
-		synchronized (fCache) {
-			for (int i= 1; i < fChunksUsed ; i++) {
-				Chunk chunk= fChunks[i];
-				if (chunk != null && chunk.fDirty) {
-					dirtyChunks.add(chunk);
-				}
+		final AtomicReferenceArray<Chunk> chunks= fChunks;
+		for (int i= 1; i < fChunksUsed ; i++) {
+			Chunk chunk= chunks.get(i);
+			if (chunk != null && chunk.fDirty) {
+				dirtyChunks.add(chunk);
 			}
 		}
 
@@ -731,31 +1501,39 @@ public class Database {
 	}
 
 	private void flushAndUnlockChunks(final ArrayList<Chunk> dirtyChunks, boolean isComplete) throws CoreException {
-		assert !Thread.holdsLock(fCache);
-		synchronized (fHeaderChunk) {
+		synchronized (fFlushLock) {
 			final boolean haveDirtyChunks = !dirtyChunks.isEmpty();
-			if (haveDirtyChunks || fHeaderChunk.fDirty) {
+			if (fLog != null) {
+				writeToLog(dirtyChunks, isComplete);
+			} else if (haveDirtyChunks || fHeaderChunk.fDirty) {
 				markFileIncomplete();
 			}
 			if (haveDirtyChunks) {
-				for (Chunk chunk : dirtyChunks) {
-					if (chunk.fDirty) {
-						chunk.flush();
+				if (fLog == null) {
+					for (Chunk chunk : dirtyChunks) {
+						if (chunk.fDirty) {
+							chunk.flush();
+						}
+					}
+					if (fMapped) {
+						forceMappedSegments();
 					}
 				}
 
+				// Chunks read in advance may predate the writes, the flushed chunks are still cached.
+				fWriteCount.incrementAndGet();
 				// Only after the chunks are flushed we may unlock and release them.
-				synchronized (fCache) {
-					for (Chunk chunk : dirtyChunks) {
+				for (Chunk chunk : dirtyChunks) {
+					synchronized (fCache.getSegment(this, chunk.fSequenceNumber)) {
 						chunk.fLocked= false;
 						if (chunk.fCacheIndex < 0) {
-							fChunks[chunk.fSequenceNumber]= null;
+							releaseUnlockedChunk(chunk);
 						}
 					}
 				}
 			}
 
-			if (isComplete) {
+			if (isComplete && fLog == null) {
 				if (fHeaderChunk.fDirty || fIsMarkedIncomplete) {
 					fHeaderChunk.putInt(VERSION_OFFSET, fVersion);
 					fHeaderChunk.flush();
@@ -765,6 +1543,30 @@ public class Database {
 		}
 	}
 
+	/**
+	 * Appends the dirty chunks to the write-ahead log. A complete state is committed by appending
+	 * the header chunk and forcing the log to disk, all chunks of a commit share a single force.
+	 */
+	private void writeToLog(final ArrayList<Chunk> dirtyChunks, boolean isComplete) throws CoreException {
+		try {
+			for (Chunk chunk : dirtyChunks) {
+				if (chunk.fDirty) {
+					chunk.flush(fLog, false);
+				}
+			}
+			if (isComplete && (!dirtyChunks.isEmpty() || fHeaderChunk.fDirty || fLog.hasUncommittedFrames())) {
+				fHeaderChunk.putInt(VERSION_OFFSET, fVersion);
+				fHeaderChunk.flush(fLog, true);
+				fLog.force();
+				if (fLog.getSize() > CHECKPOINT_LOG_SIZE) {
+					fLog.checkpoint(fFile.getChannel());
+				}
+			}
+		} catch (IOException e) {
+			throw new CoreException(new DBStatus(e));
+		}
+	}
+
 	private void markFileIncomplete() throws CoreException {
 		if (!fIsMarkedIncomplete) {
 			fIsMarkedIncomplete= true;
@@ -778,18 +1580,48 @@ public class Database {
 	}
 
 	public void resetCacheCounters() {
-		cacheHits= cacheMisses= 0;
+		cacheHits= 0;
+		cacheMisses.set(0);
+		cacheEvictions.set(0);
+		prefetchedChunks.set(0);
 	}
 
+	/**
+	 * Returns the number of chunk accesses that were satisfied from the cache. The value is
+	 * updated without synchronization, it may be slightly too small.
+	 */
 	public long getCacheHits() {
 		return cacheHits;
 	}
 
+	/**
+	 * Returns the number of chunk accesses that required reading the chunk from the file.
+	 */
 	public long getCacheMisses() {
-		return cacheMisses;
+		return cacheMisses.get();
+	}
+
+	/**
+	 * Returns the number of chunks of this database that have been evicted from the cache.
+	 */
+	public long getCacheEvictions() {
+		return cacheEvictions.get();
+	}
+
+	/**
+	 * Returns the number of chunks of this database that have been read in advance and added to
+	 * the cache.
+	 */
+	public long getPrefetchedChunks() {
+		return prefetchedChunks.get();
 	}
 
 	public long getSizeBytes() {
+		if (fMapped || fLog != null) {
+			// The file may have been grown beyond the used chunks by mapping it, or it may not yet
+			// contain the chunks written to the log.
+			return (long) fChunksUsed * CHUNK_SIZE;
+		}
 		try {
 			return fFile.length();
 		} catch (IOException e) {
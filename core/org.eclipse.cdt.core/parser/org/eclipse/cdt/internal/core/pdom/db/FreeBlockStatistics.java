@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+/**
+ * Statistics about the free blocks of a {@link Database}, computed by walking the lists of
+ * free blocks. Can be used to decide whether a database shall be compacted.
+ */
+public final class FreeBlockStatistics {
+	private final long fDatabaseSize;
+	private final int[] fBlockCounts;
+	private long fFreeBytes;
+
+	FreeBlockStatistics(long databaseSize) {
+		fDatabaseSize= databaseSize;
+		fBlockCounts= new int[Database.MAX_BLOCK_DELTAS + 1];
+	}
+
+	void addFreeBlock(int blockSize) {
+		fBlockCounts[blockSize / Database.BLOCK_SIZE_DELTA]++;
+		fFreeBytes += blockSize;
+	}
+
+	/**
+	 * Returns the size of the database in bytes.
+	 */
+	public long getDatabaseSize() {
+		return fDatabaseSize;
+	}
+
+	/**
+	 * Returns the total size of the free blocks in bytes.
+	 */
+	public long getFreeBytes() {
+		return fFreeBytes;
+	}
+
+	/**
+	 * Returns the fraction of the database that is occupied by free blocks.
+	 */
+	public double getFreeRatio() {
+		return fDatabaseSize == 0 ? 0 : (double) fFreeBytes / fDatabaseSize;
+	}
+
+	/**
+	 * Returns the number of free blocks of the given size in bytes.
+	 */
+	public int getFreeBlockCount(int blockSize) {
+		return fBlockCounts[blockSize / Database.BLOCK_SIZE_DELTA];
+	}
+
+	/**
+	 * Returns the number of chunks that are free as a whole.
+	 */
+	public int getFreeChunkCount() {
+		return getFreeBlockCount(Database.CHUNK_SIZE);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf= new StringBuilder();
+		buf.append("Database size: ").append(fDatabaseSize); //$NON-NLS-1$
+		buf.append(", free: ").append(fFreeBytes); //$NON-NLS-1$
+		for (int i= 0; i < fBlockCounts.length; i++) {
+			if (fBlockCounts[i] != 0) {
+				buf.append("\nBlock size: ").append(i * Database.BLOCK_SIZE_DELTA) //$NON-NLS-1$
+					.append('=').append(fBlockCounts[i]);
+			}
+		}
+		return buf.toString();
+	}
+}
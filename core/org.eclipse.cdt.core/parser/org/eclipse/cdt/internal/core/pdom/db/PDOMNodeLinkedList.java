@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2009 QNX Software Systems and others.
+ * Copyright (c) 2005, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -57,6 +57,8 @@ public class PDOMNodeLinkedList {
 		
 		long item = firstItem;
 		do {
+			// Load the next item while the current one is visited.
+			db.prefetch(db.getRecPtr(item + ListItem.NEXT));
 			PDOMNode node;
 			final long record= db.getRecPtr(item + ListItem.ITEM);
 			if (record == 0) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2011 QNX Software Systems and others.
+ * Copyright (c) 2006, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,7 +13,6 @@
 package org.eclipse.cdt.internal.core.pdom.db;
 
 import org.eclipse.cdt.core.CCorePlugin;
-import org.eclipse.cdt.core.parser.util.CharArrayUtils;
 import org.eclipse.core.runtime.CoreException;
 
 /**
@@ -99,7 +98,7 @@ public class ShortString implements IString {
 				if (n1 != n2)
 					return false;
 				
-				return CharArrayUtils.equals(getChars(), string.getChars());
+				return compare(string, true) == 0;
 			} 
 			if (obj instanceof char[]) {
 				char[] chars = (char[])obj;
@@ -108,13 +107,13 @@ public class ShortString implements IString {
 				if (getLength() != chars.length)
 					return false;
 				
-				return CharArrayUtils.equals(getChars(), chars);
+				return compare(chars, true) == 0;
 			} else if (obj instanceof String) {
 				String string = (String)obj;
 				if (getLength() != string.length())
 					return false;
 				
-				return CharArrayUtils.equals(getChars(), string.toCharArray());
+				return compare(string.toCharArray(), true) == 0;
 			}
 		} catch (CoreException e) {
 			CCorePlugin.log(e);
@@ -129,12 +128,13 @@ public class ShortString implements IString {
 	public int hashCode() {
 		int h = hash;
 		if (h == 0) {
-			char chars[];
 			try {
-				chars = getChars();
-				final int len = chars.length;
+				final Chunk chunk = db.getChunk(record);
+				final int l = chunk.getInt(record + LENGTH);
+				final boolean useBytes = l < 0;
+				final int len = Math.abs(l);
 				for (int i = 0; i < len; i++) {
-					h = 31 * h + chars[i];
+					h = 31 * h + charAt(chunk, useBytes, i);
 				}
 			} catch (CoreException e) {
 			}
@@ -153,19 +153,55 @@ public class ShortString implements IString {
 		return chars.length - other.length;
 	}
 
+	/**
+	 * Returns the character at the given index. The characters are read directly from the chunk,
+	 * such that comparisons do not need to copy the string into a char array.
+	 */
+	private char charAt(Chunk chunk, boolean useBytes, int i) {
+		if (useBytes)
+			return (char) (chunk.getByte(record + CHARS + i) & 0xff);
+		return chunk.getChar(record + CHARS + 2 * i);
+	}
+
 	@Override
 	public int compare(char[] other, boolean caseSensitive) throws CoreException {
-		return compare(getChars(), other, caseSensitive);
+		final Chunk chunk = db.getChunk(record);
+		final int l = chunk.getInt(record + LENGTH);
+		final boolean useBytes = l < 0;
+		final int length = Math.abs(l);
+		final int n = Math.min(length, other.length);
+		for (int i = 0; i < n; i++) {
+			int cmp= compareChars(charAt(chunk, useBytes, i), other[i], caseSensitive);
+			if (cmp != 0)
+				return cmp;
+		}
+		return length - other.length;
 	}
 
 	@Override
 	public int compare(IString string, boolean caseSensitive) throws CoreException {
-		return compare(getChars(), string.getChars(), caseSensitive);
+		if (!(string instanceof ShortString))
+			return compare(string.getChars(), caseSensitive);
+
+		final ShortString other = (ShortString) string;
+		final Chunk chunk1 = db.getChunk(record);
+		final Chunk chunk2 = other.db.getChunk(other.record);
+		final int l1 = chunk1.getInt(record + LENGTH);
+		final int l2 = chunk2.getInt(other.record + LENGTH);
+		final int length1 = Math.abs(l1);
+		final int length2 = Math.abs(l2);
+		final int n = Math.min(length1, length2);
+		for (int i = 0; i < n; i++) {
+			int cmp= compareChars(charAt(chunk1, l1 < 0, i), other.charAt(chunk2, l2 < 0, i), caseSensitive);
+			if (cmp != 0)
+				return cmp;
+		}
+		return length1 - length2;
 	}
 		
 	@Override
 	public int compare(String other, boolean caseSensitive) throws CoreException {
-		return compare(getChars(), other.toCharArray(), caseSensitive);
+		return compare(other.toCharArray(), caseSensitive);
 	}
 
 	@Override
@@ -175,7 +211,31 @@ public class ShortString implements IString {
 	
 	@Override
 	public int compareCompatibleWithIgnoreCase(char[] other) throws CoreException {
-		return compareCompatibleWithIgnoreCase(getChars(), other);
+		final Chunk chunk = db.getChunk(record);
+		final int l = chunk.getInt(record + LENGTH);
+		final boolean useBytes = l < 0;
+		final int length = Math.abs(l);
+		final int n = Math.min(length, other.length);
+		int sensitiveCmp= 0;
+
+		for (int i = 0; i < n; i++) {
+			final char c1= charAt(chunk, useBytes, i);
+			final char c2= other[i];
+			if (c1 != c2) {
+				int cmp= compareChars(c1, c2, false); // insensitive
+				if (cmp != 0)
+					return cmp;
+				
+				if (sensitiveCmp == 0) {
+					sensitiveCmp= c1 < c2 ? -1 : 1;
+				}
+			}
+		}
+		int cmp= length - other.length;
+		if (cmp != 0)
+			return cmp;
+		
+		return sensitiveCmp;
 	}
 
 	public static int compareCompatibleWithIgnoreCase(final char[] chars, char[] other) {
@@ -208,7 +268,20 @@ public class ShortString implements IString {
 	
 	@Override
 	public int comparePrefix(char[] other, boolean caseSensitive) throws CoreException {
-		return comparePrefix(getChars(), other, caseSensitive);
+		final Chunk chunk = db.getChunk(record);
+		final int l = chunk.getInt(record + LENGTH);
+		final boolean useBytes = l < 0;
+		final int length = Math.abs(l);
+		final int n = Math.min(length, other.length);
+		for (int i = 0; i < n; i++) {
+			int cmp= compareChars(charAt(chunk, useBytes, i), other[i], caseSensitive);
+			if (cmp != 0)
+				return cmp;
+		}
+		if (length < other.length)
+			return -1;
+			
+		return 0;
 	}
 
 	public static int comparePrefix(final char[] chars, char[] other, boolean caseSensitive) {
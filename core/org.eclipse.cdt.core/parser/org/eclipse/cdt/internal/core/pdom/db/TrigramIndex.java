@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Maps the trigrams (sequences of three characters) of names to the records carrying the names,
+ * such that the candidates for a regular expression can be found without visiting all records.
+ * Trigrams are case-insensitive, the candidates have to be checked against the expression.
+ * <p>
+ * The trigrams are stored in a b-tree, every trigram refers to a list of blocks holding the
+ * records of the names containing the trigram. Names with less than three characters are not
+ * indexed.
+ */
+public class TrigramIndex {
+	// Trigram record.
+	private static final int TRIGRAM = 0;
+	private static final int POSTINGS = 8;
+	private static final int COUNT = 12;
+	private static final int TRIGRAM_RECORD_SIZE = 16;
+
+	// Block of postings.
+	private static final int NEXT = 0;
+	private static final int BLOCK_COUNT = 4;
+	private static final int RECORDS = 8;
+	private static final int BLOCK_CAPACITY = 14;
+	private static final int BLOCK_SIZE = RECORDS + BLOCK_CAPACITY * Database.PTR_SIZE;
+
+	// Once the candidates are this few, checking them is cheaper than reading more postings.
+	private static final int MIN_CANDIDATES_TO_INTERSECT = 32;
+
+	private final Database fDatabase;
+	private final BTree fTrigrams;
+
+	public TrigramIndex(Database db, long rootPointer) {
+		fDatabase= db;
+		fTrigrams= new BTree(db, rootPointer, new IBTreeComparator() {
+			@Override
+			public int compare(long record1, long record2) throws CoreException {
+				return compareTrigrams(fDatabase.getLong(record1 + TRIGRAM), fDatabase.getLong(record2 + TRIGRAM));
+			}
+		});
+	}
+
+	private static int compareTrigrams(long t1, long t2) {
+		return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+	}
+
+	/**
+	 * Adds the record for the given name.
+	 */
+	public void add(char[] name, long record) throws CoreException {
+		for (long trigram : getTrigrams(name)) {
+			long node= findTrigram(trigram);
+			if (node == 0) {
+				node= fDatabase.malloc(TRIGRAM_RECORD_SIZE);
+				fDatabase.putLong(node + TRIGRAM, trigram);
+				fTrigrams.insert(node);
+			}
+			long head= fDatabase.getRecPtr(node + POSTINGS);
+			int count= head == 0 ? BLOCK_CAPACITY : fDatabase.getInt(head + BLOCK_COUNT);
+			if (count == BLOCK_CAPACITY) {
+				final long block= fDatabase.malloc(BLOCK_SIZE);
+				fDatabase.putRecPtr(block + NEXT, head);
+				fDatabase.putRecPtr(node + POSTINGS, block);
+				head= block;
+				count= 0;
+			}
+			fDatabase.putRecPtr(head + RECORDS + count * Database.PTR_SIZE, record);
+			fDatabase.putInt(head + BLOCK_COUNT, count + 1);
+			fDatabase.putInt(node + COUNT, fDatabase.getInt(node + COUNT) + 1);
+		}
+	}
+
+	/**
+	 * Removes the record for the given name.
+	 */
+	public void remove(char[] name, long record) throws CoreException {
+		for (long trigram : getTrigrams(name)) {
+			final long node= findTrigram(trigram);
+			if (node == 0)
+				continue;
+			final long head= fDatabase.getRecPtr(node + POSTINGS);
+			final int headCount= fDatabase.getInt(head + BLOCK_COUNT);
+			final long last= head + RECORDS + (headCount - 1) * Database.PTR_SIZE;
+			long slot= findPosting(head, record);
+			if (slot == 0)
+				continue;
+			// Fill the gap with the last posting of the first block.
+			fDatabase.putRecPtr(slot, fDatabase.getRecPtr(last));
+			if (headCount > 1) {
+				fDatabase.putInt(head + BLOCK_COUNT, headCount - 1);
+			} else {
+				fDatabase.putRecPtr(node + POSTINGS, fDatabase.getRecPtr(head + NEXT));
+				fDatabase.free(head);
+			}
+			final int count= fDatabase.getInt(node + COUNT) - 1;
+			if (count > 0) {
+				fDatabase.putInt(node + COUNT, count);
+			} else {
+				fTrigrams.delete(node);
+				fDatabase.free(node);
+			}
+		}
+	}
+
+	private long findPosting(long block, long record) throws CoreException {
+		for (; block != 0; block= fDatabase.getRecPtr(block + NEXT)) {
+			final int count= fDatabase.getInt(block + BLOCK_COUNT);
+			for (int i = 0; i < count; i++) {
+				final long slot= block + RECORDS + i * Database.PTR_SIZE;
+				if (fDatabase.getRecPtr(slot) == record)
+					return slot;
+			}
+		}
+		return 0;
+	}
+
+	private long findTrigram(final long trigram) throws CoreException {
+		final long[] result= { 0 };
+		fTrigrams.accept(new IBTreeVisitor() {
+			@Override
+			public int compare(long record) throws CoreException {
+				return compareTrigrams(fDatabase.getLong(record + TRIGRAM), trigram);
+			}
+
+			@Override
+			public boolean visit(long record) throws CoreException {
+				result[0]= record;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Returns the sorted records of the names that may contain all of the given literals, or
+	 * <code>null</code> if none of the literals is long enough to use the index.
+	 */
+	public long[] findCandidates(char[][] literals) throws CoreException {
+		long[] trigrams= new long[0];
+		for (char[] literal : literals) {
+			trigrams= concat(trigrams, getTrigrams(literal));
+		}
+		if (trigrams.length == 0)
+			return null;
+
+		// Start with the trigrams of the fewest names.
+		final long[] nodes= new long[trigrams.length];
+		final long[] order= new long[trigrams.length];
+		for (int i = 0; i < trigrams.length; i++) {
+			nodes[i]= findTrigram(trigrams[i]);
+			if (nodes[i] == 0)
+				return new long[0];
+			order[i]= ((long) fDatabase.getInt(nodes[i] + COUNT) << 32) | i;
+		}
+		Arrays.sort(order);
+
+		long[] candidates= null;
+		for (long o : order) {
+			final long[] postings= getPostings(nodes[(int) o]);
+			candidates= candidates == null ? postings : intersect(candidates, postings);
+			if (candidates.length < MIN_CANDIDATES_TO_INTERSECT)
+				break;
+		}
+		return candidates;
+	}
+
+	private long[] getPostings(long node) throws CoreException {
+		final long[] result= new long[fDatabase.getInt(node + COUNT)];
+		int j= 0;
+		for (long block= fDatabase.getRecPtr(node + POSTINGS); block != 0; block= fDatabase.getRecPtr(block + NEXT)) {
+			final int count= fDatabase.getInt(block + BLOCK_COUNT);
+			for (int i = 0; i < count && j < result.length; i++) {
+				result[j++]= fDatabase.getRecPtr(block + RECORDS + i * Database.PTR_SIZE);
+			}
+		}
+		return unique(result, j);
+	}
+
+	private static long[] intersect(long[] a, long[] b) {
+		final long[] result= new long[Math.min(a.length, b.length)];
+		int i= 0, j= 0, k= 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[k++]= a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, k);
+	}
+
+	public void pack() throws CoreException {
+		fTrigrams.pack();
+	}
+
+	/**
+	 * Returns the sorted, distinct trigrams of the given name.
+	 */
+	static long[] getTrigrams(char[] name) {
+		if (name.length < 3)
+			return new long[0];
+		final long[] trigrams= new long[name.length - 2];
+		for (int i = 0; i < trigrams.length; i++) {
+			trigrams[i]= ((long) Character.toLowerCase(name[i]) << 32)
+					| ((long) Character.toLowerCase(name[i + 1]) << 16)
+					| Character.toLowerCase(name[i + 2]);
+		}
+		return unique(trigrams, trigrams.length);
+	}
+
+	private static long[] concat(long[] a, long[] b) {
+		final long[] result= Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return unique(result, result.length);
+	}
+
+	private static long[] unique(long[] values, int length) {
+		Arrays.sort(values, 0, length);
+		int j= 0;
+		for (int i = 0; i < length; i++) {
+			if (j == 0 || values[j - 1] != values[i]) {
+				values[j++]= values[i];
+			}
+		}
+		return j == values.length ? values : Arrays.copyOf(values, j);
+	}
+
+	/**
+	 * Returns sequences of characters that are part of every string matching the given regular
+	 * expression, or <code>null</code> if the expression uses constructs that are not understood.
+	 * The result is conservative, it may miss sequences that are required.
+	 */
+	public static char[][] getRequiredLiterals(String regex) {
+		final List<char[]> result= new ArrayList<>();
+		final StringBuilder run= new StringBuilder();
+		for (int i = 0; i < regex.length(); i++) {
+			final char c= regex.charAt(i);
+			switch (c) {
+			case '\\':
+				if (++i >= regex.length())
+					return null;
+				final char escaped= regex.charAt(i);
+				if (escaped == 'Q') {
+					final int end= regex.indexOf("\\E", i + 1); //$NON-NLS-1$
+					run.append(end < 0 ? regex.substring(i + 1) : regex.substring(i + 1, end));
+					i= end < 0 ? regex.length() : end + 1;
+				} else if ("dDsSwWbBAGZz".indexOf(escaped) >= 0) { //$NON-NLS-1$
+					// A character class or a boundary.
+					addRun(result, run);
+				} else if (Character.isLetterOrDigit(escaped)) {
+					return null;
+				} else {
+					run.append(escaped);
+				}
+				break;
+			case '*':
+			case '?':
+			case '{':
+				// The preceding character is optional.
+				if (run.length() > 0) {
+					run.setLength(run.length() - 1);
+				}
+				addRun(result, run);
+				if (c == '{') {
+					i= regex.indexOf('}', i);
+					if (i < 0)
+						return null;
+				}
+				break;
+			case '.':
+			case '+':
+			case '^':
+			case '$':
+			case '}':
+				addRun(result, run);
+				break;
+			case '|':
+			case '(':
+			case ')':
+			case '[':
+			case ']':
+				return null;
+			default:
+				run.append(c);
+				break;
+			}
+		}
+		addRun(result, run);
+		return result.toArray(new char[result.size()][]);
+	}
+
+	private static void addRun(List<char[]> result, StringBuilder run) {
+		if (run.length() > 0) {
+			result.add(run.toString().toCharArray());
+			run.setLength(0);
+		}
+	}
+}
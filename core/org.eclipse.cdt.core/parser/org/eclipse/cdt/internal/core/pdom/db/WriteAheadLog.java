@@ -0,0 +1,413 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.db;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of chunk images written in front of a {@link Database} file. Rather than
+ * writing modified chunks to their place in the database file, they are appended to the log.
+ * A commit appends the header chunk and forces the log to disk once for all chunks written since
+ * the previous commit. The database file is updated by a checkpoint only, which copies the latest
+ * committed image of every chunk from the log to the database file.
+ * <p>
+ * Thus the database file always reflects a committed state. When a database is opened after a
+ * crash, the committed frames of the log are copied to the database file, frames written after
+ * the last commit are discarded.
+ * <p>
+ * Chunks are read from the log without locking. The frames of the log are not modified until
+ * the log is truncated, a read overlapping with a truncation is repeated. Each checkpoint is
+ * counted in the header of the log, an instance opened read-only compares the count with the one
+ * it has seen and reloads the log after a checkpoint made by the writer.
+ */
+/*
+ * The log starts with a header of LOG_HEADER_SIZE bytes, followed by the frames:
+ *
+ * offset            content
+ * 	                 _____________________________
+ * 0                | LOG_MAGIC
+ * 4                | chunk size of the database
+ * 8                | number of checkpoints made
+ * 12               | reserved
+ *
+ * ===== frame structure
+ *
+ * offset            content
+ * 	                 _____________________________
+ * 0                | sequence number of the chunk
+ * 4                | COMMIT_FLAG if the frame completes a commit, 0 otherwise
+ * 8                | checksum of the sequence number, the flags and the image (CRC32)
+ * FRAME_HEADER_SIZE| image of the chunk (CHUNK_SIZE bytes)
+ */
+final class WriteAheadLog {
+	private static final int LOG_MAGIC = 0x50444c48;
+	private static final int LOG_HEADER_SIZE = 16;
+	private static final int CHECKPOINT_COUNT_OFFSET = 8;
+	private static final int FRAME_HEADER_SIZE = 16;
+	private static final int FRAME_SIZE = FRAME_HEADER_SIZE + Database.CHUNK_SIZE;
+	private static final int COMMIT_FLAG = 1;
+
+	private final File fLocation;
+	private final boolean fReadOnly;
+	private volatile RandomAccessFile fFile;
+	private long fSize;
+	private long fCommittedSize;
+	/** Maps the sequence number of a chunk to the position of its latest image in the log. */
+	private final Map<Integer, Long> fImages= new ConcurrentHashMap<>();
+	/** Odd while the images are discarded or reloaded, incremented twice for each such change. */
+	private volatile int fGeneration;
+	/** The number of checkpoints made, as stored in the header of the log. */
+	private int fCheckpointCount;
+	private int fChunkCount;
+	private final ByteBuffer fFrameHeader= ByteBuffer.allocate(FRAME_HEADER_SIZE);
+	private final CRC32 fChecksum= new CRC32();
+
+	/**
+	 * Returns the location of the log for the database at the given location.
+	 */
+	static File getLocation(File databaseLocation) {
+		return new File(databaseLocation.getPath() + ".wal"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Opens the log at the given location, creating it if necessary. The committed frames of
+	 * an existing log are made available for reading, subsequent frames are discarded.
+	 */
+	WriteAheadLog(File location, boolean openReadOnly) throws IOException {
+		fLocation= location;
+		fReadOnly= openReadOnly;
+		openFile();
+		recover();
+	}
+
+	private void openFile() throws FileNotFoundException {
+		fFile= new RandomAccessFile(fLocation, fReadOnly ? "r" : "rw"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void reopen(ClosedChannelException e, int attempt) throws ClosedChannelException, FileNotFoundException {
+		// Only if the current thread was not interrupted we try to reopen the file.
+		if (e instanceof ClosedByInterruptException || attempt >= 20) {
+			throw e;
+		}
+		openFile();
+	}
+
+	private void recover() throws IOException {
+		fSize= fCommittedSize= LOG_HEADER_SIZE;
+		final long length= fFile.length();
+		final ByteBuffer header= ByteBuffer.allocate(LOG_HEADER_SIZE);
+		if (length >= LOG_HEADER_SIZE) {
+			read(header, 0);
+			// A log written with a different layout cannot be applied.
+			if (header.getInt(0) == LOG_MAGIC && header.getInt(4) == Database.CHUNK_SIZE) {
+				fCheckpointCount= header.getInt(CHECKPOINT_COUNT_OFFSET);
+				readCommittedFrames(length);
+			}
+		}
+		if (!fReadOnly) {
+			writeHeader();
+			// Discard the frames after the last commit.
+			truncate(fCommittedSize);
+		}
+	}
+
+	private void writeHeader() throws IOException {
+		final ByteBuffer header= ByteBuffer.allocate(LOG_HEADER_SIZE);
+		header.putInt(0, LOG_MAGIC);
+		header.putInt(4, Database.CHUNK_SIZE);
+		header.putInt(CHECKPOINT_COUNT_OFFSET, fCheckpointCount);
+		write(header, 0);
+	}
+
+	/**
+	 * Returns whether the writer has made a checkpoint since this read-only instance has loaded
+	 * the log.
+	 */
+	private boolean isOutdated() throws IOException {
+		if (!fReadOnly)
+			return false;
+		final ByteBuffer count= ByteBuffer.allocate(4);
+		read(count, CHECKPOINT_COUNT_OFFSET);
+		return count.getInt(0) != fCheckpointCount;
+	}
+
+	/**
+	 * Reloads the committed frames of the log after a checkpoint made by the writer.
+	 */
+	private synchronized void reload() throws IOException {
+		if (!isOutdated())
+			return;
+		fGeneration++;
+		try {
+			fImages.clear();
+			fChunkCount= 0;
+			recover();
+		} finally {
+			fGeneration++;
+		}
+	}
+
+	private void readCommittedFrames(long length) throws IOException {
+		final ByteBuffer image= ByteBuffer.allocate(Database.CHUNK_SIZE);
+		final Map<Integer, Long> pending= new HashMap<>();
+		long pos= LOG_HEADER_SIZE;
+		while (pos + FRAME_SIZE <= length) {
+			fFrameHeader.clear();
+			read(fFrameHeader, pos);
+			image.clear();
+			read(image, pos + FRAME_HEADER_SIZE);
+			final int sequenceNumber= fFrameHeader.getInt(0);
+			final int flags= fFrameHeader.getInt(4);
+			if (sequenceNumber < 0 || fFrameHeader.getLong(8) != checksum(image.array())) {
+				break;	// Incomplete frame.
+			}
+			pending.put(sequenceNumber, pos);
+			pos += FRAME_SIZE;
+			if ((flags & COMMIT_FLAG) != 0) {
+				for (Map.Entry<Integer, Long> entry : pending.entrySet()) {
+					addImage(entry.getKey(), entry.getValue());
+				}
+				pending.clear();
+				fSize= fCommittedSize= pos;
+			}
+		}
+	}
+
+	/**
+	 * Computes the checksum of a frame, the header of the frame is taken from {@link #fFrameHeader}.
+	 */
+	private long checksum(byte[] image) {
+		fChecksum.reset();
+		fChecksum.update(image, 0, image.length);
+		fChecksum.update(fFrameHeader.array(), 0, 8);
+		return fChecksum.getValue();
+	}
+
+	private void addImage(int sequenceNumber, long position) {
+		fImages.put(sequenceNumber, position);
+		fChunkCount= Math.max(fChunkCount, sequenceNumber + 1);
+	}
+
+	/**
+	 * Appends the image of a chunk to the log. The image becomes durable with the next commit.
+	 * @param commit whether the frame completes a commit, the log still needs to be forced via
+	 *     {@link #force()}.
+	 */
+	synchronized void append(int sequenceNumber, byte[] image, boolean commit) throws IOException {
+		assert !fReadOnly;
+		assert image.length == Database.CHUNK_SIZE;
+		fFrameHeader.clear();
+		fFrameHeader.putInt(0, sequenceNumber);
+		final int flags= commit ? COMMIT_FLAG : 0;
+		fFrameHeader.putInt(4, flags);
+		fFrameHeader.putLong(8, checksum(image));
+		final long pos= fSize;
+		write(fFrameHeader, pos);
+		write(ByteBuffer.wrap(image), pos + FRAME_HEADER_SIZE);
+		fSize= pos + FRAME_SIZE;
+		addImage(sequenceNumber, pos);
+		if (commit) {
+			fCommittedSize= fSize;
+		}
+	}
+
+	/**
+	 * Forces the frames appended to the log to disk.
+	 */
+	synchronized void force() throws IOException {
+		int retries= 0;
+		while (true) {
+			try {
+				fFile.getChannel().force(false);
+				return;
+			} catch (ClosedChannelException e) {
+				reopen(e, ++retries);
+			}
+		}
+	}
+
+	/**
+	 * Reads the latest image of the chunk with the given sequence number into the buffer.
+	 * Returns <code>false</code> if the log does not contain an image of the chunk.
+	 */
+	boolean read(int sequenceNumber, ByteBuffer buf) throws IOException {
+		final int start= buf.position();
+		while (true) {
+			final int generation= fGeneration;
+			if ((generation & 1) != 0) {
+				// The images are being discarded or reloaded.
+				return readLocked(sequenceNumber, buf);
+			}
+			final Long pos= fImages.get(sequenceNumber);
+			IOException error= null;
+			try {
+				if (pos != null) {
+					read(buf, pos + FRAME_HEADER_SIZE);
+				}
+			} catch (IOException e) {
+				// The log may have been truncated meanwhile.
+				error= e;
+			}
+			if (fGeneration == generation && !isOutdated()) {
+				if (error != null)
+					throw error;
+				return pos != null;
+			}
+			buf.position(start);
+			reload();
+		}
+	}
+
+	private synchronized boolean readLocked(int sequenceNumber, ByteBuffer buf) throws IOException {
+		final Long pos= fImages.get(sequenceNumber);
+		if (pos == null)
+			return false;
+
+		read(buf, pos + FRAME_HEADER_SIZE);
+		return true;
+	}
+
+	/**
+	 * Returns the number of chunks of the database including the chunks stored in the log.
+	 */
+	synchronized int getChunkCount() {
+		return fChunkCount;
+	}
+
+	/**
+	 * Returns the size of the log in bytes.
+	 */
+	synchronized long getSize() {
+		return fSize;
+	}
+
+	/**
+	 * Returns whether frames have been appended since the last commit.
+	 */
+	synchronized boolean hasUncommittedFrames() {
+		return fSize > fCommittedSize;
+	}
+
+	/**
+	 * Copies the latest images of the chunks to the given file and forces it to disk. Afterwards
+	 * the log is emptied. Must be called after a commit, only.
+	 */
+	synchronized void checkpoint(FileChannel target) throws IOException {
+		assert !hasUncommittedFrames();
+		if (!fImages.isEmpty()) {
+			copyImages(target);
+			target.force(true);
+		}
+		truncate();
+	}
+
+	/**
+	 * Writes the latest images of the chunks to the given file, without modifying the log.
+	 */
+	synchronized void copyImages(FileChannel target) throws IOException {
+		final ByteBuffer image= ByteBuffer.allocate(Database.CHUNK_SIZE);
+		// Write the chunks in the order of the database file.
+		for (Map.Entry<Integer, Long> entry : new TreeMap<>(fImages).entrySet()) {
+			image.clear();
+			read(image, entry.getValue() + FRAME_HEADER_SIZE);
+			image.flip();
+			final long pos= (long) entry.getKey() * Database.CHUNK_SIZE;
+			while (image.hasRemaining()) {
+				target.write(image, pos + image.position());
+			}
+		}
+	}
+
+	/**
+	 * Discards all frames of the log.
+	 */
+	synchronized void truncate() throws IOException {
+		assert !fReadOnly;
+		fGeneration++;
+		try {
+			fImages.clear();
+			fChunkCount= 0;
+			fSize= fCommittedSize= LOG_HEADER_SIZE;
+			// Makes read-only instances reload the log.
+			fCheckpointCount++;
+			writeHeader();
+			truncate(LOG_HEADER_SIZE);
+		} finally {
+			fGeneration++;
+		}
+	}
+
+	private void truncate(long size) throws IOException {
+		int retries= 0;
+		while (true) {
+			try {
+				fFile.getChannel().truncate(size);
+				return;
+			} catch (ClosedChannelException e) {
+				reopen(e, ++retries);
+			}
+		}
+	}
+
+	/**
+	 * Closes the log, when it does not contain any frames the file is deleted.
+	 */
+	synchronized void close() throws IOException {
+		final boolean isEmpty= fImages.isEmpty() && !fReadOnly;
+		fFile.close();
+		if (isEmpty) {
+			fLocation.delete();
+		}
+	}
+
+	private void read(ByteBuffer buf, long position) throws IOException {
+		int retries= 0;
+		while (true) {
+			try {
+				final FileChannel channel= fFile.getChannel();
+				while (buf.hasRemaining()) {
+					if (channel.read(buf, position + buf.position()) < 0)
+						throw new IOException("Unexpected end of write-ahead log " + fLocation); //$NON-NLS-1$
+				}
+				return;
+			} catch (ClosedChannelException e) {
+				reopen(e, ++retries);
+			}
+		}
+	}
+
+	private void write(ByteBuffer buf, long position) throws IOException {
+		int retries= 0;
+		while (true) {
+			try {
+				final FileChannel channel= fFile.getChannel();
+				while (buf.hasRemaining()) {
+					channel.write(buf, position + buf.position());
+				}
+				return;
+			} catch (ClosedChannelException e) {
+				reopen(e, ++retries);
+			}
+		}
+	}
+}
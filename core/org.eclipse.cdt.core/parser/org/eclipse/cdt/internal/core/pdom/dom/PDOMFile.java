@@ -69,7 +69,10 @@ public class PDOMFile implements IIndexFragmentFile {
 	private static final int FIRST_INCLUDE = FIRST_NAME + Database.PTR_SIZE;
 	private static final int FIRST_INCLUDED_BY = FIRST_INCLUDE + Database.PTR_SIZE;
 	private static final int FIRST_MACRO = FIRST_INCLUDED_BY + Database.PTR_SIZE;
-	private static final int LOCATION_REPRESENTATION = FIRST_MACRO + Database.PTR_SIZE;
+	// The internal representation of the location is split into the directory, which is shared
+	// between the files of the directory, and the remainder, which is stored with the file.
+	private static final int LOCATION_DIRECTORY = FIRST_MACRO + Database.PTR_SIZE;
+	private static final int LOCATION_REPRESENTATION = LOCATION_DIRECTORY + Database.PTR_SIZE;
 	private static final int LINKAGE_ID= LOCATION_REPRESENTATION + Database.PTR_SIZE;  // size 3
 	private static final int FLAGS= LINKAGE_ID + 3;  // size 1
 	private static final int TIME_STAMP= FLAGS + 1;  // long
@@ -80,7 +83,7 @@ public class PDOMFile implements IIndexFragmentFile {
 	private static final int FIRST_MACRO_REFERENCE= LAST_USING_DIRECTIVE + Database.PTR_SIZE;
 	private static final int SIGNIFICANT_MACROS= FIRST_MACRO_REFERENCE + Database.PTR_SIZE;
 	private static final int REPLACEMENT_HEADER = SIGNIFICANT_MACROS + Database.PTR_SIZE;
-	private static final int RECORD_SIZE= REPLACEMENT_HEADER + Database.PTR_SIZE;   // 9*PTR_SIZE + 3+1+8+8+8+4 = 68
+	private static final int RECORD_SIZE= REPLACEMENT_HEADER + Database.PTR_SIZE;   // 10*PTR_SIZE + 3+1+8+8+8+4 = 72
 
 	private static final int FLAG_PRAGMA_ONCE_SEMANTICS	= 0x01;
 
@@ -93,9 +96,24 @@ public class PDOMFile implements IIndexFragmentFile {
 
 		@Override
 		public int compare(long record1, long record2) throws CoreException {
-			IString name1 = db.getString(db.getRecPtr(record1 + LOCATION_REPRESENTATION));
-			IString name2 = db.getString(db.getRecPtr(record2 + LOCATION_REPRESENTATION));
-			int cmp= name1.compare(name2, true);
+			// Files of the same directory share the directory string.
+			int cmp= 0;
+			long dir1= db.getRecPtr(record1 + LOCATION_DIRECTORY);
+			long dir2= db.getRecPtr(record2 + LOCATION_DIRECTORY);
+			if (dir1 != dir2) {
+				if (dir1 == 0) {
+					cmp= -1;
+				} else if (dir2 == 0) {
+					cmp= 1;
+				} else {
+					cmp= PDOM.getDirectoryString(db, dir1).compare(PDOM.getDirectoryString(db, dir2), true);
+				}
+			}
+			if (cmp == 0) {
+				IString name1 = db.getString(db.getRecPtr(record1 + LOCATION_REPRESENTATION));
+				IString name2 = db.getString(db.getRecPtr(record2 + LOCATION_REPRESENTATION));
+				cmp= name1.compare(name2, true);
+			}
 			if (cmp == 0) {
 				cmp= db.get3ByteUnsignedInt(record1 + LINKAGE_ID) - db.get3ByteUnsignedInt(record2 + LINKAGE_ID);
 				if (cmp == 0) {
@@ -132,8 +150,7 @@ public class PDOMFile implements IIndexFragmentFile {
 		String locationString = fLinkage.getPDOM().getLocationConverter().toInternalFormat(location);
 		if (locationString == null)
 			throw new CoreException(CCorePlugin.createStatus(Messages.getString("PDOMFile.toInternalProblem") + location.getURI())); //$NON-NLS-1$
-		IString locationDBString = db.newString(locationString);
-		db.putRecPtr(record + LOCATION_REPRESENTATION, locationDBString.getRecord());
+		putLocation(db, locationString);
 		db.put3ByteUnsignedInt(record + LINKAGE_ID, linkageID);
 		db.putRecPtr(record + SIGNIFICANT_MACROS, db.newString(macros.encode()).getRecord());
 		setTimestamp(-1);
@@ -223,6 +240,101 @@ public class PDOMFile implements IIndexFragmentFile {
 		sourceFile.delete();
 	}
 
+	/**
+	 * Copies names, macros and includes from a file of another fragment to this one, which has to
+	 * be empty. The bindings of the names are added to the linkage of this file, included files
+	 * that are not yet present are added without content.
+	 * @param sourceFile the file of the other fragment to copy the contents from.
+	 * @throws CoreException
+	 */
+	public void copyContentsFrom(PDOMFile sourceFile) throws CoreException {
+		assert getFirstName() == null;
+		assert getFirstMacro() == null;
+		assert getFirstInclude() == null;
+
+		final PDOMLinkage linkage= getLinkage();
+		PDOMMacro lastMacro= null;
+		for (PDOMMacro macro= sourceFile.getFirstMacro(); macro != null; macro= macro.getNextMacro()) {
+			PDOMMacroContainer container= linkage.getMacroContainer(macro.getNameCharArray());
+			PDOMMacro pdomMacro= new PDOMMacro(fLinkage, container, macro, this);
+			if (lastMacro == null) {
+				setFirstMacro(pdomMacro);
+			} else {
+				lastMacro.setNextMacro(pdomMacro);
+			}
+			lastMacro= pdomMacro;
+		}
+
+		// The enclosing definition of a name precedes the name.
+		HashMap<Long, PDOMName> nameCache= new HashMap<Long, PDOMName>();
+		PDOMName lastName= null;
+		for (PDOMName name= sourceFile.getFirstName(); name != null; name= name.getNextInFile()) {
+			PDOMBinding binding= name.getBinding();
+			// Bindings of other fragments are added the same way as the ones referenced by types.
+			PDOMBinding pdomBinding= binding != null ? linkage.addTypeBinding(binding) : null;
+			if (pdomBinding == null)
+				continue;
+
+			PDOMName caller= nameCache.get(name.getEnclosingDefinitionRecord());
+			PDOMName pdomName= new PDOMName(fLinkage, name, this, pdomBinding, caller);
+			linkage.onCopyName(this, name, pdomName);
+			nameCache.put(name.getRecord(), pdomName);
+			if (lastName == null) {
+				setFirstName(pdomName);
+			} else {
+				lastName.setNextInFile(pdomName);
+			}
+			lastName= pdomName;
+		}
+
+		PDOMMacroReferenceName lastMacroName= null;
+		for (PDOMMacroReferenceName mref= sourceFile.getFirstMacroReference(); mref != null;
+				mref= mref.getNextInFile()) {
+			PDOMMacroContainer container= linkage.getMacroContainer(mref.getSimpleID());
+			PDOMMacroReferenceName macroName= new PDOMMacroReferenceName(fLinkage, mref, this, container);
+			if (lastMacroName == null) {
+				setFirstMacroReference(macroName);
+			} else {
+				lastMacroName.setNextInFile(macroName);
+			}
+			lastMacroName= macroName;
+		}
+		linkage.onCopyFile(sourceFile, this);
+
+		// Includes expose this file in the index, they are added last.
+		final IWritableIndexFragment fragment= (IWritableIndexFragment) fLinkage.getPDOM();
+		PDOMInclude lastInclude= null;
+		for (PDOMInclude include= sourceFile.getFirstInclude(); include != null;
+				include= include.getNextInIncludes()) {
+			PDOMFile targetFile= null;
+			PDOMFile sourceTarget= (PDOMFile) include.getIncludes();
+			if (sourceTarget != null) {
+				targetFile= (PDOMFile) fragment.addFile(sourceTarget.getLinkageID(),
+						sourceTarget.getLocation(), sourceTarget.getSignificantMacros());
+			}
+			PDOMInclude pdomInclude= new PDOMInclude(fLinkage, include, this, targetFile);
+			if (targetFile != null) {
+				targetFile.addIncludedBy(pdomInclude, include.isActive() && include.isContext());
+			}
+			if (lastInclude == null) {
+				setFirstInclude(pdomInclude);
+			} else {
+				lastInclude.setNextInIncludes(pdomInclude);
+			}
+			lastInclude= pdomInclude;
+		}
+
+		setTimestamp(sourceFile.getTimestamp());
+		setSourceReadTime(sourceFile.getSourceReadTime());
+		setSizeAndEncodingHashcode(sourceFile.getSizeAndEncodingHashcode());
+		setContentsHash(sourceFile.getContentsHash());
+		setPragmaOnceSemantics(sourceFile.hasPragmaOnceSemantics());
+		String replacementHeader= sourceFile.getReplacementHeader();
+		if (replacementHeader != null) {
+			setReplacementHeader(replacementHeader);
+		}
+	}
+
 	@Override
 	public void transferIncluders(IIndexFragmentFile sourceFile) throws CoreException {
 		PDOMFile source= (PDOMFile) sourceFile;
@@ -294,10 +406,32 @@ public class PDOMFile implements IIndexFragmentFile {
 		long oldRecord = db.getRecPtr(record + LOCATION_REPRESENTATION);
 		if (oldRecord != 0)
 			db.getString(oldRecord).delete();
-		db.putRecPtr(record + LOCATION_REPRESENTATION, db.newString(internalLocation).getRecord());
+		// The new directory is acquired first, such that a directory that does not change is kept.
+		long oldDirectory = db.getRecPtr(record + LOCATION_DIRECTORY);
+		putLocation(db, internalLocation);
+		if (oldDirectory != 0)
+			fLinkage.getPDOM().releaseDirectory(oldDirectory);
 		location= null;
 	}
 
+	private void putLocation(Database db, String internalLocation) throws CoreException {
+		final int dirLength= getDirectoryLength(internalLocation);
+		long dirRecord= 0;
+		if (dirLength > 0) {
+			dirRecord= fLinkage.getPDOM().acquireDirectory(internalLocation.substring(0, dirLength));
+		}
+		db.putRecPtr(record + LOCATION_DIRECTORY, dirRecord);
+		db.putRecPtr(record + LOCATION_REPRESENTATION, db.newString(internalLocation.substring(dirLength)).getRecord());
+	}
+
+	/**
+	 * Returns the length of the directory part of an internal location, including the trailing
+	 * separator.
+	 */
+	private static int getDirectoryLength(String internalLocation) {
+		return internalLocation.lastIndexOf('/') + 1;
+	}
+
 	@Override
 	public int getLinkageID() throws CoreException {
 		Database db = fLinkage.getDB();
@@ -610,6 +744,9 @@ public class PDOMFile implements IIndexFragmentFile {
 		locRecord = db.getRecPtr(record + REPLACEMENT_HEADER);
 		if (locRecord != 0)
 			db.getString(locRecord).delete();
+		locRecord = db.getRecPtr(record + LOCATION_DIRECTORY);
+		if (locRecord != 0)
+			fLinkage.getPDOM().releaseDirectory(locRecord);
 
 		db.free(record);
 	}
@@ -819,7 +956,9 @@ public class PDOMFile implements IIndexFragmentFile {
 	private static class Finder implements IBTreeVisitor {
 		private static final long[] EMPTY = {};
 		private final Database db;
-		private final String rawKey;
+		private final char[] rawDirectory;
+		private final char[] rawName;
+		private long matchingDirectory;
 		private long record;
 		private long[] records;
 		private final int linkageID;
@@ -830,7 +969,9 @@ public class PDOMFile implements IIndexFragmentFile {
 		 */
 		public Finder(Database db, String internalRepresentation, int linkageID, ISignificantMacros sigMacros) {
 			this.db = db;
-			this.rawKey = internalRepresentation;
+			final int dirLength= getDirectoryLength(internalRepresentation);
+			this.rawDirectory = internalRepresentation.substring(0, dirLength).toCharArray();
+			this.rawName = internalRepresentation.substring(dirLength).toCharArray();
 			this.linkageID= linkageID;
 			this.rawSignificantMacros = sigMacros == null ? null : sigMacros.encode();
 			assert linkageID >= 0 || rawSignificantMacros == null;
@@ -848,8 +989,11 @@ public class PDOMFile implements IIndexFragmentFile {
 
 		@Override
 		public int compare(long record) throws CoreException {
-			IString name = db.getString(db.getRecPtr(record + PDOMFile.LOCATION_REPRESENTATION));
-			int cmp= name.compare(rawKey, true);
+			int cmp= compareDirectory(db.getRecPtr(record + LOCATION_DIRECTORY));
+			if (cmp == 0) {
+				IString name = db.getString(db.getRecPtr(record + LOCATION_REPRESENTATION));
+				cmp= name.compare(rawName, true);
+			}
 			if (cmp == 0 && linkageID >= 0) {
 				cmp= db.get3ByteUnsignedInt(record + PDOMFile.LINKAGE_ID) - linkageID;
 				if (cmp == 0 && rawSignificantMacros != null) {
@@ -864,6 +1008,21 @@ public class PDOMFile implements IIndexFragmentFile {
 			return cmp;
 		}
 
+		private int compareDirectory(long dirRecord) throws CoreException {
+			if (dirRecord == 0)
+				return rawDirectory.length == 0 ? 0 : -1;
+			if (dirRecord == matchingDirectory)
+				return 0;
+			if (rawDirectory.length == 0)
+				return 1;
+			int cmp= PDOM.getDirectoryString(db, dirRecord).compare(rawDirectory, true);
+			if (cmp == 0) {
+				// The directory string is shared, further files of the directory match by record.
+				matchingDirectory= dirRecord;
+			}
+			return cmp;
+		}
+
 		private IString getString(long offset) throws CoreException {
 			long rec = db.getRecPtr(offset);
 			return rec != 0 ? db.getString(rec) : null;
@@ -901,6 +1060,10 @@ public class PDOMFile implements IIndexFragmentFile {
 		if (location == null) {
 			Database db = fLinkage.getDB();
 			String raw = db.getString(db.getRecPtr(record + LOCATION_REPRESENTATION)).getString();
+			long dirRecord = db.getRecPtr(record + LOCATION_DIRECTORY);
+			if (dirRecord != 0) {
+				raw = PDOM.getDirectoryString(db, dirRecord).getString() + raw;
+			}
 			location= fLinkage.getPDOM().getLocationConverter().fromInternalFormat(raw);
 			if (location == null) {
 				URI uri;
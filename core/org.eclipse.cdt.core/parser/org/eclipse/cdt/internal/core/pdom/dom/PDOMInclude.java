@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2013 QNX Software Systems and others.
+ * Copyright (c) 2006, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -88,6 +88,44 @@ public class PDOMInclude implements IIndexFragmentInclude {
 		setIncludedBy(containerFile);
 	}
 
+	/**
+	 * Creates a copy of an include directive of another fragment.
+	 */
+	public PDOMInclude(PDOMLinkage linkage, PDOMInclude source, PDOMFile containerFile, PDOMFile targetFile)
+			throws CoreException {
+		this.linkage = linkage;
+		this.record = linkage.getDB().malloc(RECORD_SIZE);
+		final char[] nameChars = source.getFullName().toCharArray();
+		final Database db = linkage.getDB();
+		db.put3ByteUnsignedInt(record + NODE_OFFSET, source.getNameOffset());
+		db.putShort(record + NODE_LENGTH, (short) source.getNameLength());
+		if (targetFile != null) {
+			db.putRecPtr(record + INCLUDED_FILE, targetFile.getRecord());
+		}
+		boolean deducible_name = isDeducibleName(targetFile, nameChars);
+		if (deducible_name) {
+			db.putInt(record + INCLUDE_NAME_OR_LENGTH, nameChars.length);
+		} else {
+			db.putRecPtr(record + INCLUDE_NAME_OR_LENGTH, db.newString(nameChars).getRecord());
+		}
+		byte flags= (byte) (source.getFlag() & ~FLAG_DEDUCIBLE_NAME);
+		if (deducible_name) {
+			flags |= FLAG_DEDUCIBLE_NAME;
+		}
+		setFlag(flags);
+		setIncludedBy(containerFile);
+	}
+
+	/**
+	 * Checks whether this include is the context the included file was parsed in.
+	 */
+	public boolean isContext() throws CoreException {
+		if (!isResolved())
+			return false;
+		PDOMInclude first= ((PDOMFile) getIncludes()).getFirstIncludedBy();
+		return first != null && first.getRecord() == record;
+	}
+
 	private byte encodeFlags(IASTPreprocessorIncludeStatement include, boolean deducible_name) {
 		byte flags= 0;
 		if (include.isSystemInclude()) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2012 QNX Software Systems and others.
+ * Copyright (c) 2005, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -51,6 +51,7 @@ import org.eclipse.cdt.internal.core.pdom.db.Database;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeComparator;
 import org.eclipse.cdt.internal.core.pdom.db.IBTreeVisitor;
 import org.eclipse.cdt.internal.core.pdom.db.IString;
+import org.eclipse.cdt.internal.core.pdom.db.TrigramIndex;
 import org.eclipse.cdt.internal.core.pdom.db.TypeMarshalBuffer;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -68,9 +69,11 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 	private static final int INDEX_OFFSET = PDOMNamedNode.RECORD_SIZE + 8;
 	private static final int NESTED_BINDINGS_INDEX = PDOMNamedNode.RECORD_SIZE + 12;
 	private static final int MACRO_BTREE = PDOMNamedNode.RECORD_SIZE + 16;
+	private static final int BINDING_TRIGRAMS = PDOMNamedNode.RECORD_SIZE + 20;
+	private static final int MACRO_TRIGRAMS = PDOMNamedNode.RECORD_SIZE + 24;
 
 	@SuppressWarnings("hiding")
-	protected static final int RECORD_SIZE = PDOMNamedNode.RECORD_SIZE + 20;
+	protected static final int RECORD_SIZE = PDOMNamedNode.RECORD_SIZE + 28;
 	protected static final long[] FILE_LOCAL_REC_DUMMY = new long[] { 0 };
 
 	private BTree fMacroIndex= null;  // No need for volatile, all fields of BTree are final.
@@ -144,6 +147,32 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		return new BTree(fDatabase, record + NESTED_BINDINGS_INDEX, getNestedBindingsComparator());
 	}
 
+	/**
+	 * Rebuilds the b-trees of the linkage with completely filled nodes, see {@link BTree#pack()}.
+	 */
+	public void packIndexes() throws CoreException {
+		getIndex().pack();
+		getNestedBindingsIndex().pack();
+		getMacroIndex().pack();
+		getBindingTrigramIndex().pack();
+		getMacroTrigramIndex().pack();
+	}
+
+	/**
+	 * Returns the trigram index for the names of the bindings in the index and the nested
+	 * bindings index.
+	 */
+	public TrigramIndex getBindingTrigramIndex() {
+		return new TrigramIndex(fDatabase, record + BINDING_TRIGRAMS);
+	}
+
+	/**
+	 * Returns the trigram index for the names of the macro containers.
+	 */
+	public TrigramIndex getMacroTrigramIndex() {
+		return new TrigramIndex(fDatabase, record + MACRO_TRIGRAMS);
+	}
+
 	@Override
 	public void accept(final IPDOMVisitor visitor) throws CoreException {
 		if (visitor instanceof IBTreeVisitor) {
@@ -171,6 +200,9 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 	@Override
 	public void addChild(PDOMNode child) throws CoreException {
 		getIndex().insert(child.getRecord());
+		if (child instanceof PDOMNamedNode) {
+			getBindingTrigramIndex().add(((PDOMNamedNode) child).getNameCharArray(), child.getRecord());
+		}
 	}
 	
 	public final PDOMBinding getBinding(long record) throws CoreException {
@@ -195,7 +227,8 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		if (inputBinding instanceof PDOMBinding) {
 			PDOMBinding pdomBinding = (PDOMBinding) inputBinding;
 			if (pdomBinding.getPDOM() != getPDOM() && pdomBinding.isFileLocal()) {
-				return true;
+				// File-local bindings can be adapted only while their fragment is merged into this one.
+				return !isMergeSource(pdomBinding);
 			}
 		}
 		return false;
@@ -232,9 +265,23 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		return rec;
 	}
 
+	/**
+	 * Checks whether the binding belongs to the fragment being merged into this one.
+	 */
+	protected final boolean isMergeSource(IBinding binding) {
+		if (!(binding instanceof PDOMBinding))
+			return false;
+		return fPDOM instanceof WritablePDOM && ((WritablePDOM) fPDOM).isMergeSource(((PDOMBinding) binding).getPDOM());
+	}
+
 	protected PDOMFile getLocalToFile(IBinding binding, PDOMBinding glob) throws CoreException {
 		if (fPDOM instanceof WritablePDOM) {
 			final WritablePDOM wpdom= (WritablePDOM) fPDOM;
+			if (binding instanceof PDOMBinding && isMergeSource((PDOMBinding) binding)) {
+				// The binding is local to the copy of its file.
+				PDOMFile file= ((PDOMBinding) binding).getLocalToFile();
+				return file != null ? wpdom.getMergedFile(file) : null;
+			}
 			if (binding instanceof IField) {
 				return null;
 			}
@@ -299,6 +346,28 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		}
 	}
 
+	/**
+	 * Call-back informing the linkage that a name of another fragment has been copied. This is
+	 * used to copy the information that is not stored with the name, like inheritance
+	 * relationships.
+	 * @param file the file the name has been copied to
+	 * @param sourceName the name of the other fragment
+	 * @param pdomName the copy of the name
+	 * @throws CoreException
+	 */
+	public void onCopyName(PDOMFile file, PDOMName sourceName, PDOMName pdomName) throws CoreException {
+	}
+
+	/**
+	 * Call-back informing the linkage that the names of a file of another fragment have been
+	 * copied, such that information stored with the file can be copied.
+	 * @param sourceFile the file of the other fragment
+	 * @param file the file the names have been copied to
+	 * @throws CoreException
+	 */
+	public void onCopyFile(PDOMFile sourceFile, PDOMFile file) throws CoreException {
+	}
+
 	/**
 	 * Callback informing the linkage that a name is about to be deleted. This is
 	 * used to do additional processing, like removing inheritance relationships.
@@ -318,6 +387,7 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 	protected final void insertIntoNestedBindingsIndex(PDOMBinding pdomBinding) throws CoreException {
 		if (pdomBinding.getParentNodeRec() != record) {
 			getNestedBindingsIndex().insert(pdomBinding.getRecord());
+			getBindingTrigramIndex().add(pdomBinding.getNameCharArray(), pdomBinding.getRecord());
 		}
 	}
 
@@ -330,6 +400,7 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 	public void beforeRemoveBinding(PDOMBinding pdomBinding) throws CoreException {
 		if (pdomBinding.getParentNodeRec() != record) {
 			getNestedBindingsIndex().delete(pdomBinding.getRecord());
+			getBindingTrigramIndex().remove(pdomBinding.getNameCharArray(), pdomBinding.getRecord());
 		}
 	}
 
@@ -370,6 +441,7 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		if (result == null) {
 			result= new PDOMMacroContainer(this, name);
 			getMacroIndex().insert(result.getRecord());
+			getMacroTrigramIndex().add(name, result.getRecord());
 			fPDOM.putCachedResult(key, result);
 		}
 		return result;
@@ -379,6 +451,7 @@ public abstract class PDOMLinkage extends PDOMNamedNode implements IIndexLinkage
 		String key= fPDOM.createKeyForCache(record, container.getNameCharArray());
 		fPDOM.putCachedResult(key, null);
 		getMacroIndex().delete(container.getRecord());
+		getMacroTrigramIndex().remove(container.getNameCharArray(), container.getRecord());
 	}
 
 	/**
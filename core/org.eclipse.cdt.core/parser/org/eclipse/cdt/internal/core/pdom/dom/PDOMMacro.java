@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2010 QNX Software Systems and others.
+ * Copyright (c) 2006, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -99,18 +99,41 @@ public class PDOMMacro implements IIndexMacro, IPDOMBinding, IASTFileLocation {
 		this(linkage, container, file, undef.getMacroName());
 	}
 
+	/**
+	 * Creates a copy of a macro definition or undef statement of another fragment.
+	 */
+	public PDOMMacro(PDOMLinkage linkage, PDOMMacroContainer container, PDOMMacro source, PDOMFile file)
+			throws CoreException {
+		this(linkage, container, file, source.getNodeOffset(), source.getNodeLength());
+
+		final Database db= linkage.getDB();
+		final IString expansion= source.getExpansionInDB();
+		if (expansion != null) {
+			db.putRecPtr(fRecord + EXPANSION, db.newString(expansion.getChars()).getRecord());
+		}
+		final IString params= source.getParamListInDB();
+		if (params != null) {
+			db.putRecPtr(fRecord + PARAMETERS, db.newString(params.getChars()).getRecord());
+		}
+	}
+
 	private PDOMMacro(PDOMLinkage linkage, PDOMMacroContainer container, PDOMFile file, IASTName name)
 			throws CoreException {
+		this(linkage, container, file, name.getFileLocation().getNodeOffset(),
+				name.getFileLocation().getNodeLength());
+	}
+
+	private PDOMMacro(PDOMLinkage linkage, PDOMMacroContainer container, PDOMFile file, int offset,
+			int length) throws CoreException {
 		final Database db= linkage.getDB();
 		fLinkage = linkage;
 		fRecord = db.malloc(RECORD_SIZE);
 		fContainer= container;
 
-		final IASTFileLocation fileloc = name.getFileLocation();
 		db.putRecPtr(fRecord + CONTAINER, container.getRecord());
 		db.putRecPtr(fRecord + FILE, file.getRecord());
-		db.putInt(fRecord + NAME_OFFSET, fileloc.getNodeOffset());
-		db.putShort(fRecord + NAME_LENGTH, (short) fileloc.getNodeLength());
+		db.putInt(fRecord + NAME_OFFSET, offset);
+		db.putShort(fRecord + NAME_LENGTH, (short) length);
 
 		container.addDefinition(this);
 	}
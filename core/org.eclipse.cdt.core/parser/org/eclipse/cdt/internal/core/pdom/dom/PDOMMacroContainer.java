@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2009 Wind River Systems, Inc. and others.
+ * Copyright (c) 2008, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -39,7 +39,7 @@ public class PDOMMacroContainer extends PDOMNamedNode implements IIndexMacroCont
 		super(linkage, linkage, name);
 	}
 
-	PDOMMacroContainer(PDOMLinkage linkage, long record) {
+	public PDOMMacroContainer(PDOMLinkage linkage, long record) {
 		super(linkage, record);
 	}
 
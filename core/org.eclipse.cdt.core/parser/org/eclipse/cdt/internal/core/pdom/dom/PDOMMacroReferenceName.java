@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 QNX Software Systems and others.
+ * Copyright (c) 2005, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -47,6 +47,19 @@ public final class PDOMMacroReferenceName implements IIndexFragmentName, IASTFil
 
 	public PDOMMacroReferenceName(PDOMLinkage linkage, IASTName name, PDOMFile file,
 			PDOMMacroContainer container) throws CoreException {
+		this(linkage, name.getFileLocation(), file, container);
+	}
+
+	/**
+	 * Creates a copy of a macro reference of another fragment.
+	 */
+	public PDOMMacroReferenceName(PDOMLinkage linkage, PDOMMacroReferenceName source, PDOMFile file,
+			PDOMMacroContainer container) throws CoreException {
+		this(linkage, (IASTFileLocation) source, file, container);
+	}
+
+	private PDOMMacroReferenceName(PDOMLinkage linkage, IASTFileLocation fileloc, PDOMFile file,
+			PDOMMacroContainer container) throws CoreException {
 		this.linkage = linkage;
 		Database db = linkage.getDB();
 		record = db.malloc(RECORD_SIZE);
@@ -55,7 +68,6 @@ public final class PDOMMacroReferenceName implements IIndexFragmentName, IASTFil
 		db.putRecPtr(record + FILE_REC_OFFSET, file.getRecord());
 
 		// Record our location in the file
-		IASTFileLocation fileloc = name.getFileLocation();
 		db.putInt(record + NODE_OFFSET_OFFSET, fileloc.getNodeOffset());
 		db.putShort(record + NODE_LENGTH_OFFSET, (short) fileloc.getNodeLength());
 		container.addReference(this);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 QNX Software Systems and others.
+ * Copyright (c) 2005, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -61,13 +61,28 @@ public final class PDOMName implements IIndexFragmentName, IASTFileLocation {
 	public PDOMName(PDOMLinkage linkage, IASTName name, PDOMFile file, PDOMBinding binding, PDOMName caller)
 			throws CoreException {
 		this.linkage = linkage;
-		Database db = linkage.getDB();
-		record = db.malloc(RECORD_SIZE);
+		record = linkage.getDB().malloc(RECORD_SIZE);
 
 		// What kind of name are we
 		int flags= getRoleOfName(name);
 
 		flags |= binding.getAdditionalNameFlags(flags, name);
+		init(flags, file, binding, caller, name.getFileLocation());
+	}
+
+	/**
+	 * Creates a copy of a name of another fragment, the copy has the same flags and location.
+	 */
+	public PDOMName(PDOMLinkage linkage, PDOMName source, PDOMFile file, PDOMBinding binding, PDOMName caller)
+			throws CoreException {
+		this.linkage = linkage;
+		record = linkage.getDB().malloc(RECORD_SIZE);
+		init(source.getFlags(0xff), file, binding, caller, source);
+	}
+
+	private void init(int flags, PDOMFile file, PDOMBinding binding, PDOMName caller,
+			IASTFileLocation fileloc) throws CoreException {
+		Database db = linkage.getDB();
 		db.putByte(record + FLAGS, (byte) flags);
 
 		// Hook us up to the binding
@@ -91,7 +106,6 @@ public final class PDOMName implements IIndexFragmentName, IASTFileLocation {
 		}
 
 		// Record our location in the file
-		IASTFileLocation fileloc = name.getFileLocation();
 		db.put3ByteUnsignedInt(record + NODE_OFFSET_OFFSET, fileloc.getNodeOffset());
 		db.putShort(record + NODE_LENGTH_OFFSET, (short) fileloc.getNodeLength());
 	}
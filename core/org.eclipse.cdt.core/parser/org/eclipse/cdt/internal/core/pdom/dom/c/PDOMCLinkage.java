@@ -226,7 +226,8 @@ class PDOMCLinkage extends PDOMLinkage implements IIndexCBindingConstants {
 	final private PDOMNode getAdaptedParent(IBinding binding) throws CoreException {
 		if (binding instanceof IIndexBinding) {
 			IIndexBinding ib= (IIndexBinding) binding;
-			if (ib.isFileLocal()) {
+			// File local bindings of other fragments are adapted only while they are merged.
+			if (ib.isFileLocal() && !isMergeSource(ib)) {
 				return null;
 			}
 		} 
@@ -131,7 +131,7 @@ class PDOMCPPClassType extends PDOMCPPBinding implements IPDOMCPPClassType, IPDO
 		list.accept(visitor);
 	}
 
-	private PDOMCPPBase getFirstBase() throws CoreException {
+	PDOMCPPBase getFirstBase() throws CoreException {
 		long rec = getDB().getRecPtr(record + FIRSTBASE);
 		return rec != 0 ? new PDOMCPPBase(getLinkage(), rec) : null;
 	}
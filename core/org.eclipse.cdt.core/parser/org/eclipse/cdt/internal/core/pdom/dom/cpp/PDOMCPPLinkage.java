@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2013 QNX Software Systems and others.
+ * Copyright (c) 2005, 2014 QNX Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -887,8 +887,9 @@ class PDOMCPPLinkage extends PDOMLinkage implements IIndexCPPBindingConstants {
 
 		if (binding instanceof IIndexBinding) {
 			IIndexBinding ib= (IIndexBinding) binding;
-			// Don't adapt file local bindings from other fragments to this one.
-			if (ib.isFileLocal()) {
+			// Don't adapt file local bindings from other fragments to this one, unless the
+			// fragment is merged.
+			if (ib.isFileLocal() && !isMergeSource(ib)) {
 				return null;
 			}
 		}
@@ -1109,6 +1110,83 @@ class PDOMCPPLinkage extends PDOMLinkage implements IIndexCPPBindingConstants {
 		}
 	}
 
+	@Override
+	public void onCopyName(PDOMFile file, PDOMName sourceName, PDOMName pdomName) throws CoreException {
+		super.onCopyName(file, sourceName, pdomName);
+
+		if (sourceName.isFriendSpecifier()) {
+			PDOMName enclClassName = (PDOMName) pdomName.getEnclosingDefinition();
+			if (enclClassName != null) {
+				PDOMBinding enclClassBinding = enclClassName.getBinding();
+				if (enclClassBinding instanceof PDOMCPPClassType) {
+					((PDOMCPPClassType) enclClassBinding).addFriend(new PDOMCPPFriend(this, pdomName));
+				}
+			}
+		} else if (sourceName.isDefinition()) {
+			PDOMBinding sourceBinding = sourceName.getBinding();
+			PDOMBinding pdomBinding = pdomName.getBinding();
+			PDOMCPPBase firstBase = null;
+			if (sourceBinding instanceof PDOMCPPClassType) {
+				firstBase = ((PDOMCPPClassType) sourceBinding).getFirstBase();
+			} else if (sourceBinding instanceof PDOMCPPClassSpecialization) {
+				firstBase = ((PDOMCPPClassSpecialization) sourceBinding).getFirstBase();
+			} else {
+				sourceBinding = null;
+			}
+			if (sourceBinding != null) {
+				// The bases are stored with the definition they stem from.
+				List<ICPPBase> bases = new ArrayList<ICPPBase>();
+				for (PDOMCPPBase base = firstBase; base != null; base = base.getNextBase()) {
+					PDOMName classDefName = base.getClassDefinitionName();
+					if (classDefName != null && classDefName.getRecord() == sourceName.getRecord()) {
+						bases.add(0, base);
+					}
+				}
+				if (!bases.isEmpty()) {
+					ICPPBase[] baseArray = bases.toArray(new ICPPBase[bases.size()]);
+					if (pdomBinding instanceof PDOMCPPClassType) {
+						((PDOMCPPClassType) pdomBinding).addBases(pdomName, baseArray);
+					} else if (pdomBinding instanceof PDOMCPPClassSpecialization) {
+						((PDOMCPPClassSpecialization) pdomBinding).addBases(pdomName, baseArray);
+					}
+				}
+				if (pdomBinding instanceof PDOMCPPClassType || pdomBinding instanceof PDOMCPPClassSpecialization) {
+					addImplicitMethods(pdomBinding, (ICPPClassType) sourceBinding, null);
+				}
+			}
+		}
+		handlePostProcesses();
+	}
+
+	@Override
+	public void onCopyFile(PDOMFile sourceFile, PDOMFile file) throws CoreException {
+		super.onCopyFile(sourceFile, file);
+
+		for (ICPPUsingDirective directive : sourceFile.getUsingDirectives()) {
+			if (!(directive instanceof PDOMCPPUsingDirective))
+				continue;
+			PDOMCPPUsingDirective ud = (PDOMCPPUsingDirective) directive;
+			PDOMCPPNamespace containerNS = null;
+			IScope container = ud.getContainingScope();
+			if (container instanceof ICPPNamespace) {
+				PDOMBinding binding = addTypeBinding((ICPPNamespace) container);
+				if (!(binding instanceof PDOMCPPNamespace))
+					continue;
+				containerNS = (PDOMCPPNamespace) binding;
+			}
+			IScope nominated = ud.getNominatedScope();
+			if (nominated instanceof ICPPNamespace) {
+				PDOMBinding binding = addTypeBinding((ICPPNamespace) nominated);
+				if (binding != null) {
+					PDOMCPPUsingDirective copy = new PDOMCPPUsingDirective(this,
+							file.getLastUsingDirectiveRec(), containerNS, binding, ud.getPointOfDeclaration());
+					file.setLastUsingDirective(copy.getRecord());
+				}
+			}
+		}
+		handlePostProcesses();
+	}
+
 	@Override
 	public ICPPUsingDirective[] getUsingDirectives(PDOMFile file) throws CoreException {
 		long rec= file.getLastUsingDirectiveRec();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2009 Wind River Systems, Inc. and others.
+ * Copyright (c) 2008, 2014 Wind River Systems, Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,7 +10,14 @@
  *******************************************************************************/ 
 package org.eclipse.cdt.internal.core.pdom.dom.cpp;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.cdt.core.CCorePlugin;
 import org.eclipse.cdt.core.dom.ast.DOMException;
@@ -25,8 +32,31 @@ import org.eclipse.cdt.internal.core.pdom.dom.PDOMNamedNode;
 import org.eclipse.cdt.internal.core.pdom.dom.PDOMNode;
 import org.eclipse.core.runtime.CoreException;
 
+/**
+ * Caches the instances of a template stored in the index together with the instances created
+ * while resolving names against the index. The instances are keyed by the signature of their
+ * arguments. The cache is kept with the cached results of the PDOM, such that it is shared by
+ * all the translation units parsed until the result cache is cleared. It is pinned there, there
+ * is at most one cache per template at a time.
+ * <p>
+ * The instances created while resolving names are not part of the index, the number of these
+ * instances kept per template is bounded by {@link #SIZE_PROPERTY}, the least recently used ones
+ * are evicted first. Since instances are compared by identity, an evicted instance is still
+ * returned as long as it is referenced elsewhere, it is dropped only after it has been garbage
+ * collected. The hits and misses of all caches are counted.
+ */
 public class PDOMInstanceCache {
-	
+	/**
+	 * System property for the maximum number of instances not stored in the index, that are kept
+	 * for a template.
+	 */
+	public static final String SIZE_PROPERTY = "org.eclipse.cdt.core.parser.pdom.instanceCacheSize"; //$NON-NLS-1$
+	private static final int DEFAULT_SIZE = 1000;
+
+	private static final AtomicLong fgHits= new AtomicLong();
+	private static final AtomicLong fgMisses= new AtomicLong();
+	private static final AtomicLong fgEvictions= new AtomicLong();
+
 	public static PDOMInstanceCache getCache(PDOMBinding binding) {
 		final PDOM pdom= binding.getPDOM();
 		final long record= binding.getRecord();
@@ -47,17 +77,39 @@ public class PDOMInstanceCache {
 		return newCache;
 	}
 	
-	private final HashMap<String, ICPPTemplateInstance> fMap;
+	// Instances stored in the index.
+	private final HashMap<String, ICPPTemplateInstance> fStored;
+	// Instances created while resolving names, least recently used first.
+	private final LinkedHashMap<String, ICPPTemplateInstance> fTransient;
+	// Instances evicted from the transient ones, which may still be in use.
+	private final HashMap<String, WeakReference<ICPPTemplateInstance>> fEvicted;
+	private final int fMaxTransient;
 	private ICPPDeferredClassInstance fDeferredInstance;
 
 	public PDOMInstanceCache() {
-		fMap= new HashMap<>();
+		this(Math.max(1, Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE)));
 	}
-	
+
+	/**
+	 * Creates a cache keeping at most the given number of instances not stored in the index.
+	 */
+	public PDOMInstanceCache(int maxTransient) {
+		fStored= new HashMap<>();
+		fTransient= new LinkedHashMap<>(16, 0.75f, true);
+		fEvicted= new HashMap<>();
+		fMaxTransient= maxTransient;
+	}
+
 	synchronized public final void addInstance(ICPPTemplateArgument[] arguments, ICPPTemplateInstance instance) {
 		try {
 			String key= IndexCPPSignatureUtil.getTemplateArgString(arguments, true);
-			fMap.put(key, instance);
+			fEvicted.remove(key);
+			if (instance instanceof PDOMBinding) {
+				fTransient.remove(key);
+				fStored.put(key, instance);
+			} else if (!fStored.containsKey(key)) {
+				addTransient(key, instance);
+			}
 		} catch (CoreException e) {
 			CCorePlugin.log(e);
 		} catch (DOMException e) {
@@ -67,7 +119,21 @@ public class PDOMInstanceCache {
 	synchronized public final ICPPTemplateInstance getInstance(ICPPTemplateArgument[] arguments) {		
 		try {
 			String key= IndexCPPSignatureUtil.getTemplateArgString(arguments, true);
-			return fMap.get(key);
+			ICPPTemplateInstance result= fStored.get(key);
+			if (result == null) {
+				result= fTransient.get(key);
+				if (result == null) {
+					WeakReference<ICPPTemplateInstance> ref= fEvicted.remove(key);
+					if (ref != null) {
+						result= ref.get();
+						if (result != null) {
+							addTransient(key, result);
+						}
+					}
+				}
+			}
+			(result != null ? fgHits : fgMisses).incrementAndGet();
+			return result;
 		} catch (CoreException e) {
 			CCorePlugin.log(e);
 		} catch (DOMException e) {
@@ -75,6 +141,28 @@ public class PDOMInstanceCache {
 		return null;
 	}
 	
+	private void addTransient(String key, ICPPTemplateInstance instance) {
+		fTransient.put(key, instance);
+		if (fTransient.size() > fMaxTransient) {
+			Iterator<Map.Entry<String, ICPPTemplateInstance>> it= fTransient.entrySet().iterator();
+			Map.Entry<String, ICPPTemplateInstance> lru= it.next();
+			it.remove();
+			if (fEvicted.size() >= fMaxTransient) {
+				expungeEvicted();
+			}
+			fEvicted.put(lru.getKey(), new WeakReference<>(lru.getValue()));
+			fgEvictions.incrementAndGet();
+		}
+	}
+
+	private void expungeEvicted() {
+		for (Iterator<WeakReference<ICPPTemplateInstance>> it= fEvicted.values().iterator(); it.hasNext();) {
+			if (it.next().get() == null) {
+				it.remove();
+			}
+		}
+	}
+
 	private void populate(PDOMBinding binding) throws CoreException {
 		PDOMNode parent= binding.getParentNode();
 		if (parent == null) {
@@ -95,7 +183,16 @@ public class PDOMInstanceCache {
 	}
 
 	synchronized public ICPPTemplateInstance[] getAllInstances() {
-		return fMap.values().toArray(new ICPPTemplateInstance[fMap.size()]);
+		List<ICPPTemplateInstance> result= new ArrayList<>(fStored.size() + fTransient.size());
+		result.addAll(fStored.values());
+		result.addAll(fTransient.values());
+		for (WeakReference<ICPPTemplateInstance> ref : fEvicted.values()) {
+			ICPPTemplateInstance instance= ref.get();
+			if (instance != null) {
+				result.add(instance);
+			}
+		}
+		return result.toArray(new ICPPTemplateInstance[result.size()]);
 	}
 
 	public ICPPDeferredClassInstance getDeferredInstance() {
@@ -105,4 +202,26 @@ public class PDOMInstanceCache {
 	public void putDeferredInstance(ICPPDeferredClassInstance deferredInstance) {
 		fDeferredInstance= deferredInstance;
 	}
+
+	/**
+	 * Returns the number of instances found in the caches of all templates.
+	 */
+	public static long getHits() {
+		return fgHits.get();
+	}
+
+	/**
+	 * Returns the number of instances not found in the caches of all templates.
+	 */
+	public static long getMisses() {
+		return fgMisses.get();
+	}
+
+	/**
+	 * Returns the number of instances evicted from the caches of all templates, including the ones
+	 * that have been returned again because they were still in use.
+	 */
+	public static long getEvictions() {
+		return fgEvictions.get();
+	}
 }
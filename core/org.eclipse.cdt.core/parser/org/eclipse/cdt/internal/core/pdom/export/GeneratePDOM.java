@@ -47,6 +47,7 @@ public class GeneratePDOM {
 	protected String indexerID;
 	protected boolean deleteOnExit;
 	protected boolean checkIndexStatus;
+	protected String shard;
 
 	/**
 	 * Runnable to export a PDOM.
@@ -77,6 +78,15 @@ public class GeneratePDOM {
 		this.deleteOnExit= deleteOnExit;
 	}
 
+	/**
+	 * Restricts the indexer to one of several shards of the files of the project, given as
+	 * <code>index/count</code>. By default all files are indexed.
+	 * @see IndexerPreferences#KEY_SHARD
+	 */
+	public void setShard(String shard) {
+		this.shard= shard;
+	}
+
 	/**
 	 * Executes the PDOM generation 
 	 * @return {@link IStatus#OK} if the generated content is complete, {@link IStatus#ERROR} otherwise.
@@ -99,6 +109,9 @@ public class GeneratePDOM {
 		}
 		
 		// Index the project
+		if (shard != null) {
+			IndexerPreferences.set(cproject.getProject(), IndexerPreferences.KEY_SHARD, shard);
+		}
 		IndexerPreferences.set(cproject.getProject(), IndexerPreferences.KEY_INDEXER_ID, indexerID);
 		
 		try {
@@ -140,6 +153,8 @@ public class GeneratePDOM {
 						exportedPDOM.setProperty(entry.getKey(), entry.getValue());
 					}
 				}
+				// Trees that are packed already are left alone.
+				exportedPDOM.packIndexes();
 				exportedPDOM.close();
 			} finally {
 				exportedPDOM.releaseWriteLock();
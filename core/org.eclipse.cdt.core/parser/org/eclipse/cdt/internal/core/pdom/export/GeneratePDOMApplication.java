@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 Symbian Software Systems and others.
+ * Copyright (c) 2007, 2014 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -24,6 +24,7 @@ import org.eclipse.cdt.core.dom.IPDOMIndexerTask;
 import org.eclipse.cdt.core.dom.IPDOMManager;
 import org.eclipse.cdt.core.index.export.ExternalExportProjectProvider;
 import org.eclipse.cdt.core.index.export.IExportProjectProvider;
+import org.eclipse.cdt.internal.core.pdom.indexer.PDOMIndexerTask;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IExtension;
@@ -49,6 +50,21 @@ public class GeneratePDOMApplication implements IApplication {
 	public static final String OPT_TARGET= "-target"; //$NON-NLS-1$
 	public static final String OPT_QUIET= "-quiet"; //$NON-NLS-1$
 	public static final String OPT_INDEXER_ID= "-indexer"; //$NON-NLS-1$
+	/**
+	 * Names a file the cost of indexing the individual translation units is written to,
+	 * as JSON when the name ends with <code>.json</code>, as CSV otherwise.
+	 */
+	public static final String OPT_COST_REPORT= "-costreport"; //$NON-NLS-1$
+	/**
+	 * Restricts the indexer to a subset of the translation units, given as <code>index/count</code>.
+	 * The fragments generated for all indices from <code>0</code> to <code>count-1</code> can be
+	 * combined with {@link #OPT_MERGE}.
+	 */
+	public static final String OPT_SHARD= "-shard"; //$NON-NLS-1$
+	/**
+	 * Merges the given index fragments into the target instead of generating the index for a project.
+	 */
+	public static final String OPT_MERGE= "-merge"; //$NON-NLS-1$
 
 	/**
 	 * Applications needing to fail in an expected way (without stack dump), should throw
@@ -85,6 +101,20 @@ public class GeneratePDOMApplication implements IApplication {
 
 		setupCLIProgressProvider();
 
+		List<String> merge= arguments.get(OPT_MERGE);
+		if (merge != null) {
+			String target= CLIUtil.getArg(arguments, OPT_TARGET, 1).get(0);
+			File[] fragments= new File[merge.size()];
+			for (int i = 0; i < fragments.length; i++) {
+				fragments[i]= new File(merge.get(i));
+			}
+			output(Messages.GeneratePDOMApplication_MergeStarts);
+			IStatus status= new MergePDOM(fragments, new File(target)).run();
+			output(status.getMessage());
+			output(Messages.GeneratePDOMApplication_MergeEnds);
+			return null;
+		}
+
 		String pproviderFQN;
 		if(!arguments.containsKey(OPT_PROJECTPROVIDER)) {
 			output(MessageFormat.format(Messages.GeneratePDOMApplication_UsingDefaultProjectProvider, new Object[] {DEFAULT_PROJECT_PROVIDER}));
@@ -105,6 +135,21 @@ public class GeneratePDOMApplication implements IApplication {
 			}
 		}
 		
+		String oldCostReport= null;
+		List<String> costReports= arguments.get(OPT_COST_REPORT);
+		if (costReports != null) {
+			String costReport= CLIUtil.getArg(arguments, OPT_COST_REPORT, 1).get(0);
+			oldCostReport= System.getProperty(PDOMIndexerTask.TRACE_COST_REPORT);
+			System.setProperty(PDOMIndexerTask.TRACE_COST_REPORT, new File(costReport).getAbsolutePath());
+		}
+
+		List<String> shards= arguments.get(OPT_SHARD);
+		if (shards != null) {
+			if (shards.size() != 1 || !shards.get(0).matches("\\d+/\\d+")) { //$NON-NLS-1$
+				fail(MessageFormat.format(Messages.GeneratePDOMApplication_InvalidShard, new Object[] {OPT_SHARD}));
+			}
+		}
+
 		String[] oldvals= null;
 		if(!quiet) {
 			oldvals= new String[] {
@@ -124,6 +169,9 @@ public class GeneratePDOMApplication implements IApplication {
 			File targetLocation = new File(target);
 
 			GeneratePDOM generate = new GeneratePDOM(pprovider,	appArgs, targetLocation, indexerID);
+			if (shards != null) {
+				generate.setShard(shards.get(0));
+			}
 			output(Messages.GeneratePDOMApplication_GenerationStarts);
 			IStatus status = generate.run(); // CoreException handled in start method
 			if(!status.isOK()){
@@ -136,6 +184,9 @@ public class GeneratePDOMApplication implements IApplication {
 				restoreSystemProperty(IPDOMIndexerTask.TRACE_PROBLEMS, oldvals[1]);
 				restoreSystemProperty(IPDOMIndexerTask.TRACE_STATISTICS, oldvals[2]);
 			}
+			if (costReports != null) {
+				restoreSystemProperty(PDOMIndexerTask.TRACE_COST_REPORT, oldCostReport);
+			}
 		}
 		return null;
 	}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2014 CDT contributors and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     CDT contributors - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.cdt.internal.core.pdom.export;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+
+import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
+import org.eclipse.cdt.core.index.IIndexLocationConverter;
+import org.eclipse.cdt.core.model.LanguageManager;
+import org.eclipse.cdt.internal.core.index.IIndexFragment;
+import org.eclipse.cdt.internal.core.index.IndexFileLocation;
+import org.eclipse.cdt.internal.core.pdom.PDOM;
+import org.eclipse.cdt.internal.core.pdom.WritablePDOM;
+import org.eclipse.cdt.internal.core.pdom.dom.IPDOMLinkageFactory;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import com.ibm.icu.text.MessageFormat;
+
+/**
+ * Merges index fragments that have been generated for disjoint subsets of the translation units
+ * of a project (see {@link GeneratePDOMApplication#OPT_SHARD}) into a single fragment.
+ * <p>
+ * Files are taken from the first fragment containing them, they are identified by linkage,
+ * location and significant macros. Bindings are matched by linkage, in the same way bindings of
+ * a referenced fragment are. The locations are copied in the format they are stored in, such that
+ * the result can be used with the location converter the fragments were generated with.
+ */
+public class MergePDOM {
+	private final File[] fragments;
+	private final File targetLocation;
+
+	/**
+	 * Converts between the internal format and locations without interpreting the internal format.
+	 */
+	private static final IIndexLocationConverter IDENTITY_CONVERTER= new IIndexLocationConverter() {
+		@Override
+		public IIndexFileLocation fromInternalFormat(String raw) {
+			try {
+				return new IndexFileLocation(new URI("pdom", null, '/' + raw, null), raw); //$NON-NLS-1$
+			} catch (URISyntaxException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public String toInternalFormat(IIndexFileLocation location) {
+			return location.getFullPath();
+		}
+	};
+
+	public MergePDOM(File[] fragments, File targetLocation) {
+		this.fragments= fragments;
+		this.targetLocation= targetLocation;
+	}
+
+	/**
+	 * Executes the merge.
+	 * @return {@link IStatus#OK} with a message reporting the number of merged files.
+	 * @throws CoreException if a fragment cannot be read or the target cannot be written.
+	 */
+	public final IStatus run() throws CoreException {
+		if (targetLocation.exists() && !targetLocation.delete()) {
+			GeneratePDOMApplication.fail(MessageFormat.format(Messages.MergePDOM_CannotDeleteTarget,
+					new Object[] { targetLocation.getAbsolutePath() }));
+		}
+		Map<String, IPDOMLinkageFactory> factories= LanguageManager.getInstance().getPDOMLinkageFactoryMappings();
+		int files= 0;
+		WritablePDOM target= new WritablePDOM(targetLocation, IDENTITY_CONVERTER, factories);
+		try {
+			target.acquireWriteLock(0, null);
+			try {
+				target.clear();
+				for (int i = 0; i < fragments.length; i++) {
+					PDOM fragment= new PDOM(fragments[i], IDENTITY_CONVERTER, factories);
+					try {
+						if (!fragment.isSupportedVersion()) {
+							GeneratePDOMApplication.fail(MessageFormat.format(Messages.MergePDOM_UnsupportedVersion,
+									new Object[] { fragments[i].getAbsolutePath() }));
+						}
+						fragment.acquireReadLock();
+						try {
+							if (i == 0) {
+								String id= fragment.getProperty(IIndexFragment.PROPERTY_FRAGMENT_ID);
+								if (id != null) {
+									target.setProperty(IIndexFragment.PROPERTY_FRAGMENT_ID, id);
+								}
+							}
+							files += target.mergeFrom(fragment);
+						} finally {
+							fragment.releaseReadLock();
+						}
+					} finally {
+						fragment.close();
+					}
+				}
+				target.packIndexes();
+				target.close();
+			} finally {
+				target.releaseWriteLock();
+			}
+		} catch (InterruptedException ie) {
+			String msg= MessageFormat.format(Messages.GeneratePDOM_GenericGenerationFailed, new Object[] {ie.getMessage()});
+			throw new CoreException(CCorePlugin.createStatus(msg, ie));
+		}
+		return new Status(IStatus.OK, CCorePlugin.PLUGIN_ID, MessageFormat.format(Messages.MergePDOM_Success,
+				new Object[] { files, fragments.length }));
+	}
+}
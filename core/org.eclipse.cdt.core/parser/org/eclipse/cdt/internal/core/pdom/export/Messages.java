@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2008 Symbian Software Systems and others.
+ * Copyright (c) 2007, 2014 Symbian Software Systems and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -24,6 +24,12 @@ public class Messages extends NLS {
 	public static String GeneratePDOMApplication_Initializing;
 	public static String GeneratePDOMApplication_InvalidIndexerID;
 	public static String GeneratePDOMApplication_UsingDefaultProjectProvider;
+	public static String GeneratePDOMApplication_InvalidShard;
+	public static String GeneratePDOMApplication_MergeStarts;
+	public static String GeneratePDOMApplication_MergeEnds;
+	public static String MergePDOM_CannotDeleteTarget;
+	public static String MergePDOM_Success;
+	public static String MergePDOM_UnsupportedVersion;
 
 	static {
 		// Initialize resource bundle.
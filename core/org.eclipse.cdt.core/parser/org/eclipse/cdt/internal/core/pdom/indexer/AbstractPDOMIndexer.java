@@ -38,6 +38,8 @@ public abstract class AbstractPDOMIndexer implements IPDOMIndexer {
 		fProperties.put(IndexerPreferences.KEY_SKIP_MACRO_REFERENCES, String.valueOf(false)); 
 		fProperties.put(IndexerPreferences.KEY_INDEX_ALL_HEADER_VERSIONS, String.valueOf(false));
 		fProperties.put(IndexerPreferences.KEY_INDEX_ALL_VERSIONS_SPECIFIC_HEADERS, ""); //$NON-NLS-1$
+		fProperties.put(IndexerPreferences.KEY_PARSER_THREADS, String.valueOf(IndexerPreferences.DEFAULT_PARSER_THREADS));
+		fProperties.put(IndexerPreferences.KEY_SHARD, ""); //$NON-NLS-1$
 	}
 
 	@Override
@@ -60,6 +62,8 @@ public abstract class AbstractPDOMIndexer implements IPDOMIndexer {
 		for (Map.Entry<Object, Object> entry : fProperties.entrySet()) {
 			String key = (String) entry.getKey();
 			String val = (String) entry.getValue();
+			if (IndexerPreferences.KEY_PARSER_THREADS.equals(key))
+				continue; // Does not affect the content of the index.
 
 			if (val != null) { // relevant property
 				String v2= (String) props.get(key);
@@ -27,7 +27,7 @@ import org.eclipse.core.runtime.CoreException;
 /**
  * A cache for checking whether a file exists. The cache shall be used for a limited amount of time, only (e.g. one 
  * indexer task). It uses as much memory as it needs. To protect against OutOfMemory situations, a soft reference is
- * used.
+ * used. The cache can be accessed by multiple threads.
  * @since 5.0
  */
 public final class FileExistsCache {
@@ -51,7 +51,7 @@ public final class FileExistsCache {
 		fCache= new SoftReference<Map<String, Content>>(new HashMap<String, Content>());	// before running out of memory the entire map will be thrown away.
 	}
 	
-	public boolean isFile(String path) {
+	public synchronized boolean isFile(String path) {
 		String parent;
 		String name;
 		File file = null;
@@ -60,6 +60,13 @@ public class IndexerPreferences {
 	public static final String KEY_UPDATE_POLICY= "updatePolicy"; //$NON-NLS-1$
 	public static final String KEY_SKIP_FILES_LARGER_THAN_MB = "skipFilesLargerThanMB"; //$NON-NLS-1$
 	public static final String KEY_SKIP_INCLUDED_FILES_LARGER_THAN_MB = "skipIncludedFilesLargerThanMB"; //$NON-NLS-1$
+	public static final String KEY_PARSER_THREADS = "parserThreads"; //$NON-NLS-1$
+	/**
+	 * Restricts the indexer to one of several shards of the files, given as <code>index/count</code>,
+	 * or empty for indexing all files. See
+	 * {@link org.eclipse.cdt.internal.core.pdom.AbstractIndexerTask#setShard(int, int)}.
+	 */
+	public static final String KEY_SHARD = "shard"; //$NON-NLS-1$
 
 	private static final String KEY_INDEXER_PREFS_SCOPE = "preferenceScope"; //$NON-NLS-1$
 	private static final String KEY_INDEX_IMPORT_LOCATION = "indexImportLocation"; //$NON-NLS-1$
@@ -73,6 +80,7 @@ public class IndexerPreferences {
 	private static final int DEFAULT_UPDATE_POLICY= 0;
 	public static final int DEFAULT_FILE_SIZE_LIMIT_MB = 8;
 	public static final int DEFAULT_INCLUDED_FILE_SIZE_LIMIT_MB = 16;
+	public static final int DEFAULT_PARSER_THREADS = 1;
 
 	private static final String QUALIFIER = CCorePlugin.PLUGIN_ID;
 	private static final String INDEXER_NODE = "indexer"; //$NON-NLS-1$
@@ -336,6 +344,8 @@ public class IndexerPreferences {
 		prefs.putBoolean(KEY_SKIP_MACRO_REFERENCES, false);
 		prefs.put(KEY_INDEX_IMPORT_LOCATION, DEFAULT_INDEX_IMPORT_LOCATION);
 		prefs.putBoolean(KEY_INDEX_ALL_HEADER_VERSIONS, false);
+		prefs.putInt(KEY_PARSER_THREADS, DEFAULT_PARSER_THREADS);
+		prefs.put(KEY_SHARD, ""); //$NON-NLS-1$
 	}
 
 	public static void setDefaultIndexerId(String defaultId) {
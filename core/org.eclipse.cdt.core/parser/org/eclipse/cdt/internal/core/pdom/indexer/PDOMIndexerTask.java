@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.cdt.internal.core.pdom.indexer;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
@@ -32,10 +34,15 @@ import org.eclipse.cdt.core.parser.IncludeExportPatterns;
 import org.eclipse.cdt.internal.core.index.IWritableIndex;
 import org.eclipse.cdt.internal.core.index.IWritableIndexManager;
 import org.eclipse.cdt.internal.core.model.CProject;
+import org.eclipse.cdt.internal.core.parser.scanner.FileContentCache;
+import org.eclipse.cdt.internal.core.parser.scanner.HeaderTokenCache;
 import org.eclipse.cdt.internal.core.pdom.AbstractIndexerTask;
 import org.eclipse.cdt.internal.core.pdom.ITodoTaskUpdater;
+import org.eclipse.cdt.internal.core.pdom.IndexerCostReport;
 import org.eclipse.cdt.internal.core.pdom.IndexerProgress;
+import org.eclipse.cdt.internal.core.pdom.PDOM;
 import org.eclipse.cdt.internal.core.pdom.db.ChunkCache;
+import org.eclipse.cdt.internal.core.pdom.dom.cpp.PDOMInstanceCache;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -50,10 +57,18 @@ import com.ibm.icu.text.NumberFormat;
  * Configures the abstract indexer task suitable for indexing projects.
  */
 public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPDOMIndexerTask {
+	/**
+	 * Debug option or system property naming a file the cost of indexing the individual
+	 * translation units is written to, as JSON when the name ends with <code>.json</code> and as
+	 * CSV, otherwise. See {@link IndexerCostReport}.
+	 */
+	public static final String TRACE_COST_REPORT = CCorePlugin.PLUGIN_ID + "/debug/indexer/costreport";  //$NON-NLS-1$
 	private static final String TRUE = Boolean.TRUE.toString();
+	private static final int SLOWEST_FILES_IN_TRACE = 10;
 
 	private AbstractPDOMIndexer fIndexer;
 	private boolean fWriteInfoToLog;
+	private String fCostReportFile;
 
 	protected PDOMIndexerTask(ITranslationUnit[] forceFiles, ITranslationUnit[] updateFiles,
 			ITranslationUnit[] removeFiles, AbstractPDOMIndexer indexer, boolean isFastIndexer) {
@@ -65,9 +80,25 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 		setShowScannerProblems(checkDebugOption(TRACE_SCANNER_PROBLEMS, TRUE));
 		setShowSyntaxProblems(checkDebugOption(TRACE_SYNTAX_PROBLEMS, TRUE));
 		setShowProblems(checkDebugOption(TRACE_PROBLEMS, TRUE));
+		fCostReportFile= getDebugOptionValue(TRACE_COST_REPORT);
+		if (fCostReportFile != null) {
+			setCostReport(IndexerCostReport.getReport(fCostReportFile));
+		}
+		String shard= getIndexer().getProperty(IndexerPreferences.KEY_SHARD);
+		if (shard != null && !shard.isEmpty()) {
+			try {
+				int slash= shard.indexOf('/');
+				setShard(Integer.parseInt(shard.substring(0, slash).trim()),
+						Integer.parseInt(shard.substring(slash + 1).trim()));
+			} catch (RuntimeException e) {
+				CCorePlugin.log(e);
+			}
+		}
 		final long fileLimit = getIntProperty(IndexerPreferences.KEY_SKIP_FILES_LARGER_THAN_MB, 0);
 		final long includedFileLimit = getIntProperty(IndexerPreferences.KEY_SKIP_INCLUDED_FILES_LARGER_THAN_MB, 0);
 		setFileSizeLimits(fileLimit * 1024 * 1024, includedFileLimit * 1024 * 1024);
+		setParserThreadCount(getIntProperty(IndexerPreferences.KEY_PARSER_THREADS,
+				IndexerPreferences.DEFAULT_PARSER_THREADS));
 		setIndexAllHeaderVersions(checkProperty(IndexerPreferences.KEY_INDEX_ALL_HEADER_VERSIONS));
 		setHeadersToIndexAllVersions(getStringSet(IndexerPreferences.KEY_INDEX_ALL_VERSIONS_SPECIFIC_HEADERS));
 		if (checkProperty(IndexerPreferences.KEY_SKIP_ALL_REFERENCES)) {
@@ -158,10 +189,45 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 	@Override
 	public final void run(IProgressMonitor monitor) throws InterruptedException {
 		long start = System.currentTimeMillis();
-		runTask(monitor);
+		final IndexerCostReport report= getCostReport();
+		if (report == null) {
+			runTask(monitor);
+		} else {
+			runTask(report, monitor);
+		}
 		traceEnd(start, fIndex, monitor.isCanceled());
 	}
 
+	private void runTask(IndexerCostReport report, IProgressMonitor monitor) throws InterruptedException {
+		final HeaderTokenCache tokenCache= HeaderTokenCache.getSharedInstance();
+		final FileContentCache contentCache= FileContentCache.getSharedInstance();
+		final long tokenHits= tokenCache.getHits();
+		final long tokenMisses= tokenCache.getMisses();
+		final long contentHits= contentCache.getHits();
+		final long contentMisses= contentCache.getMisses();
+		final long instanceHits= PDOMInstanceCache.getHits();
+		final long instanceMisses= PDOMInstanceCache.getMisses();
+		runTask(monitor);
+		report.addCacheStatistics("headerTokens", tokenCache.getHits() - tokenHits,  //$NON-NLS-1$
+				tokenCache.getMisses() - tokenMisses);
+		report.addCacheStatistics("fileContents", contentCache.getHits() - contentHits,  //$NON-NLS-1$
+				contentCache.getMisses() - contentMisses);
+		report.addCacheStatistics("instances", PDOMInstanceCache.getHits() - instanceHits,  //$NON-NLS-1$
+				PDOMInstanceCache.getMisses() - instanceMisses);
+		if (fIndex != null) {
+			report.addCacheStatistics("database", fIndex.getCacheHits(), fIndex.getCacheMisses());  //$NON-NLS-1$
+			if (fIndex.getWritableFragment() instanceof PDOM) {
+				PDOM pdom= (PDOM) fIndex.getWritableFragment();
+				report.addCacheStatistics("results", pdom.getResultCacheHits(), pdom.getResultCacheMisses());  //$NON-NLS-1$
+			}
+		}
+		try {
+			report.write(new File(fCostReportFile));
+		} catch (IOException e) {
+			CCorePlugin.log(e);
+		}
+	}
+
 	/**
 	 * Checks whether a given debug option is enabled. See {@link IPDOMIndexerTask}
 	 * for valid values.
@@ -173,6 +239,18 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 		return internallyActivated || (trace != null && trace.equalsIgnoreCase(value));
 	}
 
+	/**
+	 * Returns the value of a debug option that may also be set as a system property, or
+	 * <code>null</code> if it is not set.
+	 */
+	private static String getDebugOptionValue(String option) {
+		String value= System.getProperty(option);
+		if (value == null || value.isEmpty()) {
+			value= Platform.getDebugOption(option);
+		}
+		return value == null || value.isEmpty() ? null : value;
+	}
+
 	private boolean checkProperty(String key) {
 		return TRUE.equals(getIndexer().getProperty(key));
 	}
@@ -294,6 +372,16 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 					+ fStatistics.fParsingTime + " parser, "    //$NON-NLS-1$
 					+ fStatistics.fResolutionTime + " resolution, "    //$NON-NLS-1$
 					+ fStatistics.fAddToIndexTime + " index update.");    //$NON-NLS-1$
+			if (info.fParsedFilesPerThread != null) {
+				StringBuilder buf= new StringBuilder();
+				for (int i = 0; i < info.fParsedFilesPerThread.length; i++) {
+					if (i > 0)
+						buf.append(", "); //$NON-NLS-1$
+					final long time= info.fParsingTimePerThread[i];
+					buf.append(info.fParsedFilesPerThread[i]).append(" files in ").append(time).append(" ms"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				System.out.println(indent + " Parser threads: " + buf + '.');  //$NON-NLS-1$
+			}
 			System.out.println(indent + " Errors: "    //$NON-NLS-1$
 					+ fStatistics.fErrorCount + " internal, "    //$NON-NLS-1$
 					+ fStatistics.fUnresolvedIncludesCount + " include, "     //$NON-NLS-1$
@@ -318,7 +406,32 @@ public abstract class PDOMIndexerTask extends AbstractIndexerTask implements IPD
 			System.out.println(indent + " Cache["    //$NON-NLS-1$
 					+ ChunkCache.getSharedInstance().getMaxSize() / 1024 / 1024 + "MB]: " +    //$NON-NLS-1$
 					+ hits + " hits, "      //$NON-NLS-1$
-					+ misses + "(" + nfPercent.format(missPct) + ") misses.");      //$NON-NLS-1$ //$NON-NLS-2$
+					+ misses + "(" + nfPercent.format(missPct) + ") misses, "      //$NON-NLS-1$ //$NON-NLS-2$
+					+ index.getCacheEvictions() + " evictions.");      //$NON-NLS-1$
+			if (index.getWritableFragment() instanceof PDOM) {
+				PDOM pdom= (PDOM) index.getWritableFragment();
+				System.out.println(indent + " Result cache: "    //$NON-NLS-1$
+						+ pdom.getResultCacheHits() + " hits, "      //$NON-NLS-1$
+						+ pdom.getResultCacheMisses() + " misses, "      //$NON-NLS-1$
+						+ pdom.getResultCacheEvictions() + " evictions.");      //$NON-NLS-1$
+			}
+			System.out.println(indent + " Instance cache: "    //$NON-NLS-1$
+					+ PDOMInstanceCache.getHits() + " hits, "      //$NON-NLS-1$
+					+ PDOMInstanceCache.getMisses() + " misses, "      //$NON-NLS-1$
+					+ PDOMInstanceCache.getEvictions() + " evictions.");      //$NON-NLS-1$
+
+			final IndexerCostReport report= getCostReport();
+			if (report != null) {
+				System.out.println(indent + " Slowest files:");      //$NON-NLS-1$
+				for (IndexerCostReport.FileCost cost : report.getSlowestFiles(SLOWEST_FILES_IN_TRACE)) {
+					System.out.println(indent + indent + cost.getTotalTime() + " ms: " + cost.fPath //$NON-NLS-1$
+							+ " (" + cost.fParsingTime + " parser, "    //$NON-NLS-1$ //$NON-NLS-2$
+							+ cost.fResolutionTime + " resolution, "    //$NON-NLS-1$
+							+ cost.fWriteTime + " index update, "    //$NON-NLS-1$
+							+ cost.fIncludes + " includes, "    //$NON-NLS-1$
+							+ cost.fTokens + " tokens)");    //$NON-NLS-1$
+				}
+			}
 
 			if ("true".equals(System.getProperty("SHOW_COMPRESSED_INDEXER_INFO"))) {    //$NON-NLS-1$ //$NON-NLS-2$
 				Calendar cal = Calendar.getInstance();
@@ -94,10 +94,15 @@ public class ProjectIndexerInputAdapter extends IndexerInputAdapter {
 		if (fIflCache == null) {
 			return doResolveASTPath(astPath);
 		}
-		IIndexFileLocation result= fIflCache.get(astPath);
+		IIndexFileLocation result;
+		synchronized (fIflCache) {
+			result= fIflCache.get(astPath);
+		}
 		if (result == null) {
 			result = doResolveASTPath(astPath);
-			fIflCache.put(astPath, result);
+			synchronized (fIflCache) {
+				fIflCache.put(astPath, result);
+			}
 		}
 		return result;
 	}
@@ -114,7 +119,10 @@ public class ProjectIndexerInputAdapter extends IndexerInputAdapter {
 		if (!fExistsCache.isFile(includePath)) {
 			return null;
 		}
-		IIndexFileLocation result= fIflCache.get(includePath);
+		IIndexFileLocation result;
+		synchronized (fIflCache) {
+			result= fIflCache.get(includePath);
+		}
 		if (result == null) {
 			result = doResolveASTPath(includePath);
 			if (result.getFullPath() == null && !UNCPathConverter.isUNC(includePath)) {
@@ -122,10 +130,14 @@ public class ProjectIndexerInputAdapter extends IndexerInputAdapter {
 				String canonicalPath= PathCanonicalizationStrategy.getCanonicalPath(location);
 				if (!includePath.equals(canonicalPath)) {
 					result= IndexLocationFactory.getExternalIFL(canonicalPath);
-					fIflCache.put(canonicalPath, result);
+					synchronized (fIflCache) {
+						fIflCache.put(canonicalPath, result);
+					}
 				}
 			}
-			fIflCache.put(includePath, result);
+			synchronized (fIflCache) {
+				fIflCache.put(includePath, result);
+			}
 		}
 		return result;
 	}
@@ -280,6 +292,16 @@ public class ProjectIndexerInputAdapter extends IndexerInputAdapter {
 		return CCoreInternals.getPDOMManager().getIndexingPriority(ifl);
 	}
 
+	@Override
+	public IIndexFileLocation getActiveFile() {
+		return CCoreInternals.getPDOMManager().getIndexingPriorities().getActiveFile();
+	}
+
+	@Override
+	public int getPriorityModificationCount() {
+		return CCoreInternals.getPDOMManager().getIndexingPriorities().getModificationCount();
+	}
+
 	@Override
 	public boolean isSourceUnit(Object tuo) {
 		ITranslationUnit tu= (ITranslationUnit) tuo;
@@ -329,7 +351,11 @@ public class ProjectIndexerInputAdapter extends IndexerInputAdapter {
 		final FileContent reader= FileContent.create(tu);
 		if (reader != null) {
 			IIndexFileLocation ifl= IndexLocationFactory.getIFL(tu);
-			fIflCache.put(reader.getFileLocation(), ifl);
+			if (fIflCache != null) {
+				synchronized (fIflCache) {
+					fIflCache.put(reader.getFileLocation(), ifl);
+				}
+			}
 		}
 		return reader;
 	}
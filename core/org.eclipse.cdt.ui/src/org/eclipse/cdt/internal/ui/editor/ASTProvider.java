@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -247,6 +247,10 @@ public final class ASTProvider {
 			fTimeStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
 			fCache.setActiveElement(tu);
 		}
+		if (tu != null && fCache.hasCachedAST(tu)) {
+			// The AST retained for the editor is still valid for the contents of the document.
+			updateModificationStamp();
+		}
 
 		// Increase indexing priority of the translation unit of the active editor.
 		fIndexUpdateRequestor.updateIndexInclusion(tu);
@@ -2040,6 +2040,12 @@ public class CEditor extends TextEditor implements ICEditor, ISelectionChangedLi
 		}
 	}
 	
+	@Override
+	public void setFocus() {
+		super.setFocus();
+		fIndexUpdateRequestor.editorActivated();
+	}
+
     /**
      * @see org.eclipse.ui.IWorkbenchPart#dispose()
      */
@@ -22,15 +22,21 @@ import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChang
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
 
 import org.eclipse.cdt.core.CCorePlugin;
+import org.eclipse.cdt.core.index.IIndexFileLocation;
 import org.eclipse.cdt.core.index.IIndexManager;
+import org.eclipse.cdt.core.index.IndexLocationFactory;
 import org.eclipse.cdt.core.model.ICElement;
 import org.eclipse.cdt.core.model.ITranslationUnit;
 
+import org.eclipse.cdt.internal.core.CCoreInternals;
+import org.eclipse.cdt.internal.core.pdom.IndexingPriorities;
 import org.eclipse.cdt.internal.core.pdom.indexer.IndexerPreferences;
 import org.eclipse.cdt.internal.corext.util.CModelUtil;
 
 /**
- * A controller for on-demand indexing of files opened in C/C++ editors. 
+ * A controller for on-demand indexing of files opened in C/C++ editors. In addition it informs
+ * the indexer about the files opened and activated in editors, such that they are indexed with
+ * priority.
  */
 public class IndexUpdateRequestor implements IPreferenceChangeListener {
 	private static class IndexUpdateRequestorJob extends Job {
@@ -66,8 +72,49 @@ public class IndexUpdateRequestor implements IPreferenceChangeListener {
 		}
 	}
 
+	/**
+	 * Reports the editor activated last to the indexer, such that switching quickly between
+	 * editors does not reorder the files to be indexed over and over again.
+	 */
+	private static class ActivationJob extends Job {
+		private IIndexFileLocation fLocation;
+
+		ActivationJob() {
+			super(CEditorMessages.IndexUpdateRequestor_job_name);
+			setSystem(true);
+		}
+
+		synchronized void activate(IIndexFileLocation location) {
+			fLocation = location;
+		}
+
+		synchronized void discard(IIndexFileLocation location) {
+			if (location.equals(fLocation)) {
+				fLocation = null;
+			}
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			IIndexFileLocation location;
+			synchronized (this) {
+				location = fLocation;
+				fLocation = null;
+			}
+			if (location != null) {
+				getIndexingPriorities().fileActivated(location);
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	/** Time in milliseconds an editor has to stay active before the indexer is informed. */
+	private static final long ACTIVATION_DELAY = 500;
+	private static final ActivationJob sActivationJob = new ActivationJob();
+
 	private ITranslationUnit fTu;
 	private ITranslationUnit fTuAddedToIndex;
+	private IIndexFileLocation fOpenLocation;
 
 	public void updateIndexInclusion(ITranslationUnit tu) {
 		IProject oldProject;
@@ -76,6 +123,7 @@ public class IndexUpdateRequestor implements IPreferenceChangeListener {
 			oldProject = fTu == null ? null : fTu.getCProject().getProject();
 			newProject = tu == null ?  null : tu.getCProject().getProject();
 			fTu = tu;
+			updateOpenLocation(tu);
 		}
 
 		if (Objects.equals(newProject, oldProject)) {
@@ -96,6 +144,36 @@ public class IndexUpdateRequestor implements IPreferenceChangeListener {
 		requestIndexUpdate(tu);
 	}
 
+	/**
+	 * Notifies the indexer that the editor has become active, once it stayed active for a moment.
+	 */
+	public synchronized void editorActivated() {
+		if (fOpenLocation != null) {
+			sActivationJob.activate(fOpenLocation);
+			sActivationJob.cancel();
+			sActivationJob.schedule(ACTIVATION_DELAY);
+		}
+	}
+
+	private void updateOpenLocation(ITranslationUnit tu) {
+		IIndexFileLocation location = tu == null ? null : IndexLocationFactory.getIFL(CModelUtil.toOriginal(tu));
+		if (!Objects.equals(location, fOpenLocation)) {
+			IndexingPriorities priorities = getIndexingPriorities();
+			if (fOpenLocation != null) {
+				sActivationJob.discard(fOpenLocation);
+				priorities.fileClosed(fOpenLocation);
+			}
+			fOpenLocation = location;
+			if (location != null) {
+				priorities.fileOpened(location);
+			}
+		}
+	}
+
+	private static IndexingPriorities getIndexingPriorities() {
+		return CCoreInternals.getPDOMManager().getIndexingPriorities();
+	}
+
 	private synchronized void requestIndexUpdate(ITranslationUnit tu) {
 		if (!Objects.equals(tu, fTuAddedToIndex)) {
 			IndexUpdateRequestorJob job = new IndexUpdateRequestorJob(tu, fTuAddedToIndex);